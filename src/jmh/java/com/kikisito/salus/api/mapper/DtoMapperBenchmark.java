@@ -0,0 +1,111 @@
+package com.kikisito.salus.api.mapper;
+
+import com.kikisito.salus.api.dto.AppointmentDTO;
+import com.kikisito.salus.api.dto.AppointmentSlotDTO;
+import com.kikisito.salus.api.entity.*;
+import com.kikisito.salus.api.type.AppointmentStatusType;
+import com.kikisito.salus.api.type.AppointmentType;
+import com.kikisito.salus.api.type.RoleType;
+import org.modelmapper.ModelMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Coste por objeto de DtoMapper frente a ModelMapper para los DTO más usados: huecos (listados de agenda y búsqueda
+// de disponibilidad) y citas. Se ejecuta con ./gradlew jmh
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DtoMapperBenchmark {
+    private DtoMapper dtoMapper;
+    private ModelMapper modelMapper;
+    private AppointmentSlotEntity appointmentSlot;
+    private AppointmentEntity appointment;
+
+    @Setup
+    public void setUp() {
+        dtoMapper = new DtoMapperImpl();
+        modelMapper = new ModelMapper();
+
+        SpecialtyEntity specialty = SpecialtyEntity.builder()
+                .id(1)
+                .name("Cardiología")
+                .build();
+
+        MedicalProfileEntity doctor = MedicalProfileEntity.builder()
+                .id(1)
+                .user(UserEntity.builder()
+                        .id(2)
+                        .nombre("María")
+                        .apellidos("Guerrero")
+                        .rolesList(new ArrayList<>(List.of(RoleType.PROFESSIONAL)))
+                        .build())
+                .license("COLEG-TEST-1")
+                .specialties(new ArrayList<>(List.of(specialty)))
+                .build();
+
+        RoomEntity room = RoomEntity.builder()
+                .id(1)
+                .name("Consulta 1")
+                .medicalCenter(MedicalCenterEntity.builder()
+                        .id(1)
+                        .name("Hospital de Pruebas")
+                        .build())
+                .build();
+
+        appointmentSlot = AppointmentSlotEntity.builder()
+                .id(1)
+                .doctor(doctor)
+                .specialty(specialty)
+                .room(room)
+                .date(LocalDate.now())
+                .startTime(LocalTime.of(10, 0))
+                .endTime(LocalTime.of(10, 30))
+                .build();
+
+        appointment = AppointmentEntity.builder()
+                .id(1)
+                .slot(appointmentSlot)
+                .patient(UserEntity.builder()
+                        .id(1)
+                        .nombre("Juan")
+                        .apellidos("Pérez")
+                        .rolesList(new ArrayList<>(List.of(RoleType.USER)))
+                        .build())
+                .type(AppointmentType.IN_PERSON)
+                .status(AppointmentStatusType.PENDING)
+                .reason("Consulta de rutina")
+                .reports(new ArrayList<>())
+                .prescriptions(new ArrayList<>())
+                .medicalTests(new ArrayList<>())
+                .build();
+        appointmentSlot.setAppointment(appointment);
+    }
+
+    @Benchmark
+    public AppointmentSlotDTO appointmentSlotWithDtoMapper() {
+        return dtoMapper.toAppointmentSlotDTO(appointmentSlot);
+    }
+
+    @Benchmark
+    public AppointmentSlotDTO appointmentSlotWithModelMapper() {
+        return modelMapper.map(appointmentSlot, AppointmentSlotDTO.class);
+    }
+
+    @Benchmark
+    public AppointmentDTO appointmentWithDtoMapper() {
+        return dtoMapper.toAppointmentDTO(appointment);
+    }
+
+    @Benchmark
+    public AppointmentDTO appointmentWithModelMapper() {
+        return modelMapper.map(appointment, AppointmentDTO.class);
+    }
+}
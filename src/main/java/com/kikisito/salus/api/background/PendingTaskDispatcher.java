@@ -0,0 +1,47 @@
+package com.kikisito.salus.api.background;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+// Lanza en segundo plano el procesado de filas pendientes guardadas en la base de datos, como los trabajos de generación
+// o los avisos de anulación. Cada fila se identifica por su id y no se lanza dos veces a la vez en esta instancia.
+// Si el ejecutor no admite más tareas o la tarea falla, la fila sigue pendiente y se vuelve a lanzar en la siguiente revisión
+public class PendingTaskDispatcher {
+    private final Executor executor;
+
+    // Filas que están en la cola o procesándose en esta instancia
+    private final Set<Integer> dispatched = ConcurrentHashMap.newKeySet();
+
+    public PendingTaskDispatcher(Executor executor) {
+        this.executor = executor;
+    }
+
+    public void dispatch(Integer id, Consumer<Integer> task) {
+        if(!dispatched.add(id)) {
+            return;
+        }
+
+        try {
+            executor.execute(() -> {
+                try {
+                    task.accept(id);
+                } catch (RuntimeException e) {
+                    // No se ha podido guardar el resultado; la fila se revisa de nuevo más tarde
+                } finally {
+                    dispatched.remove(id);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            dispatched.remove(id);
+        }
+    }
+
+    // Tipo y mensaje de la excepción, recortados al tamaño de la columna donde se guardan
+    public static String errorMessage(RuntimeException e, int maxLength) {
+        String message = e.getClass().getSimpleName() + ": " + e.getMessage();
+        return message.length() > maxLength ? message.substring(0, maxLength) : message;
+    }
+}
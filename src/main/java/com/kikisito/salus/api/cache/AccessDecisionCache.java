@@ -0,0 +1,95 @@
+package com.kikisito.salus.api.cache;
+
+import com.kikisito.salus.api.transaction.AfterCommit;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+// Caché de las comprobaciones de acceso de los @PreAuthorize. Cada decisión se guarda durante la petición actual,
+// para no repetir la consulta si la misma comprobación se evalúa varias veces, y durante un tiempo corto para el
+// mismo usuario y recurso. Los servicios invalidan las decisiones afectadas cuando cambia la relación en la que se basan
+@Component
+public class AccessDecisionCache {
+    private static final String REQUEST_ATTRIBUTE = AccessDecisionCache.class.getName() + ".decisions";
+
+    @Value("${application.security.access-decision-cache.ttl:30s}")
+    private Duration ttl;
+
+    @Value("${application.security.access-decision-cache.max-entries:10000}")
+    private int maxEntries;
+
+    private ExpiringLruCache<DecisionKey, Boolean> decisions;
+
+    @PostConstruct
+    public void init() {
+        decisions = new ExpiringLruCache<>(maxEntries, ttl);
+    }
+
+    // El sujeto es el perfil médico en las comprobaciones de profesionales y el usuario en las de pacientes
+    public boolean get(AccessCheck check, Integer resourceId, Integer subjectId, Supplier<Boolean> loader) {
+        DecisionKey key = new DecisionKey(check, resourceId, subjectId);
+
+        Map<DecisionKey, Boolean> requestDecisions = this.requestDecisions();
+        if(requestDecisions == null) {
+            return decisions.get(key, k -> loader.get());
+        }
+
+        return requestDecisions.computeIfAbsent(key, k -> decisions.get(k, ignored -> loader.get()));
+    }
+
+    // Ha cambiado algo de un recurso concreto: su médico, su cita o se ha borrado
+    public void invalidateResource(AccessCheck check, Integer resourceId) {
+        AfterCommit.runNowAndAfterCommit(() -> decisions.invalidateIf(key -> key.check() == check && key.resourceId().equals(resourceId)));
+    }
+
+    // Han cambiado varios recursos del mismo tipo sin que se conozcan sus identificadores, como al desvincularlos por lotes
+    public void invalidateCheck(AccessCheck check) {
+        AfterCommit.runNowAndAfterCommit(() -> decisions.invalidateIf(key -> key.check() == check));
+    }
+
+    // Ha cambiado una relación que afecta a muchos recursos, como las especialidades de un médico
+    public void invalidateAll() {
+        AfterCommit.runNowAndAfterCommit(decisions::invalidateAll);
+    }
+
+    public Map<String, CacheStats> getStats() {
+        Map<String, CacheStats> stats = new LinkedHashMap<>();
+        stats.put("accessDecisions", decisions.stats());
+        return stats;
+    }
+
+    // Decisiones ya tomadas en la petición actual. Fuera de una petición (tareas programadas, pruebas) no hay
+    @SuppressWarnings("unchecked")
+    private Map<DecisionKey, Boolean> requestDecisions() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if(attributes == null) {
+            return null;
+        }
+
+        Map<DecisionKey, Boolean> requestDecisions = (Map<DecisionKey, Boolean>) attributes.getAttribute(REQUEST_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if(requestDecisions == null) {
+            requestDecisions = new HashMap<>();
+            attributes.setAttribute(REQUEST_ATTRIBUTE, requestDecisions, RequestAttributes.SCOPE_REQUEST);
+        }
+        return requestDecisions;
+    }
+
+    public enum AccessCheck {
+        APPOINTMENT,
+        REPORT,
+        PRESCRIPTION,
+        MEDICAL_TEST,
+        ATTACHMENT,
+        PATIENT_OF_DOCTOR
+    }
+
+    private record DecisionKey(AccessCheck check, Integer resourceId, Integer subjectId) {}
+}
@@ -0,0 +1,63 @@
+package com.kikisito.salus.api.cache;
+
+import com.kikisito.salus.api.config.AppointmentSlotsConfiguration;
+import com.kikisito.salus.api.dto.AppointmentSlotDTO;
+import com.kikisito.salus.api.dto.MedicalProfileDTO;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+// Caché de las consultas de disponibilidad más frecuentes de los pacientes: los huecos libres de un médico
+// y los médicos con huecos libres de una especialidad en un centro. El calendario de disponibilidad invalida
+// las entradas afectadas cada vez que se reserva, anula, crea o borra un hueco o cambia un turno
+@Component
+@RequiredArgsConstructor
+public class AvailabilityCache {
+    @Autowired
+    private final AppointmentSlotsConfiguration appointmentSlotsConfiguration;
+
+    private ExpiringLruCache<SlotsKey, List<AppointmentSlotDTO>> availableSlots;
+    private ExpiringLruCache<DoctorsKey, List<MedicalProfileDTO>> availableDoctors;
+
+    @PostConstruct
+    public void init() {
+        availableSlots = new ExpiringLruCache<>(appointmentSlotsConfiguration.getAvailabilityCacheMaxEntries(), appointmentSlotsConfiguration.getAvailabilityCacheTtl());
+        availableDoctors = new ExpiringLruCache<>(appointmentSlotsConfiguration.getAvailabilityCacheMaxEntries(), appointmentSlotsConfiguration.getAvailabilityCacheTtl());
+    }
+
+    public List<AppointmentSlotDTO> getAvailableSlots(Integer medicalCenterId, Integer specialtyId, Integer doctorId, Supplier<List<AppointmentSlotDTO>> loader) {
+        return availableSlots.get(new SlotsKey(medicalCenterId, specialtyId, doctorId), key -> loader.get());
+    }
+
+    public List<MedicalProfileDTO> getAvailableDoctors(Integer medicalCenterId, Integer specialtyId, Supplier<List<MedicalProfileDTO>> loader) {
+        return availableDoctors.get(new DoctorsKey(medicalCenterId, specialtyId), key -> loader.get());
+    }
+
+    // Ha cambiado la disponibilidad de un médico para una especialidad en un centro
+    public void invalidate(Integer doctorId, Integer specialtyId, Integer medicalCenterId) {
+        availableSlots.invalidate(new SlotsKey(medicalCenterId, specialtyId, doctorId));
+        availableDoctors.invalidate(new DoctorsKey(medicalCenterId, specialtyId));
+    }
+
+    public void invalidateAll() {
+        availableSlots.invalidateAll();
+        availableDoctors.invalidateAll();
+    }
+
+    public Map<String, CacheStats> getStats() {
+        Map<String, CacheStats> stats = new LinkedHashMap<>();
+        stats.put("availableSlots", availableSlots.stats());
+        stats.put("availableDoctors", availableDoctors.stats());
+        return stats;
+    }
+
+    private record SlotsKey(Integer medicalCenterId, Integer specialtyId, Integer doctorId) {}
+
+    private record DoctorsKey(Integer medicalCenterId, Integer specialtyId) {}
+}
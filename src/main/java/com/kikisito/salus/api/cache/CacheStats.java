@@ -0,0 +1,17 @@
+package com.kikisito.salus.api.cache;
+
+// Métricas de una caché desde que arrancó la aplicación
+public record CacheStats(
+        int size,
+        int maxSize,
+        long hits,
+        long misses,
+        long evictions,
+        long expirations,
+        long invalidations
+) {
+    public double getHitRate() {
+        long requests = hits + misses;
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+}
@@ -0,0 +1,64 @@
+package com.kikisito.salus.api.cache;
+
+import com.kikisito.salus.api.dto.DoctorAgendaDTO;
+import com.kikisito.salus.api.transaction.AfterCommit;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+// Caché de la agenda diaria de cada médico. Una agenda guardada se sirve hasta que cambia algo de ese día: una cita
+// que se reserva, se anula o cambia de estado, o una prueba o receta de uno de sus pacientes. El tiempo de vida solo
+// cubre los cambios que no pasan por aquí, como los datos personales del paciente
+@Component
+public class DoctorAgendaCache {
+    @Value("${application.doctor-agenda-cache.ttl:10m}")
+    private Duration ttl;
+
+    @Value("${application.doctor-agenda-cache.max-entries:1000}")
+    private int maxEntries;
+
+    private ExpiringLruCache<AgendaKey, DoctorAgendaDTO> agendas;
+
+    @PostConstruct
+    public void init() {
+        agendas = new ExpiringLruCache<>(maxEntries, ttl);
+    }
+
+    public DoctorAgendaDTO get(Integer doctorId, LocalDate date, Supplier<DoctorAgendaDTO> loader) {
+        return agendas.get(new AgendaKey(doctorId, date), key -> loader.get());
+    }
+
+    // Ha cambiado una cita del médico en ese día
+    public void invalidateDay(Integer doctorId, LocalDate date) {
+        AgendaKey key = new AgendaKey(doctorId, date);
+        AfterCommit.runNowAndAfterCommit(() -> agendas.invalidate(key));
+    }
+
+    // Ha cambiado algo que afecta a todos los días del médico, como las visitas atendidas que se cuentan en los siguientes
+    public void invalidateDoctor(Integer doctorId) {
+        AfterCommit.runNowAndAfterCommit(() -> agendas.invalidateIf(key -> key.doctorId().equals(doctorId)));
+    }
+
+    // Ha cambiado una prueba o una receta del paciente, que aparece en las agendas en las que tiene cita
+    public void invalidatePatient(Integer patientId) {
+        AfterCommit.runNowAndAfterCommit(() -> agendas.invalidateValuesIf(agenda -> agenda.hasPatient(patientId)));
+    }
+
+    public void invalidateAll() {
+        AfterCommit.runNowAndAfterCommit(agendas::invalidateAll);
+    }
+
+    public Map<String, CacheStats> getStats() {
+        Map<String, CacheStats> stats = new LinkedHashMap<>();
+        stats.put("doctorAgendas", agendas.stats());
+        return stats;
+    }
+
+    private record AgendaKey(Integer doctorId, LocalDate date) {}
+}
@@ -0,0 +1,121 @@
+package com.kikisito.salus.api.cache;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+// Caché en memoria de tamaño limitado. Cuando se llena, se descarta la entrada usada hace más tiempo,
+// y cada entrada caduca pasado el tiempo de vida indicado. Lleva la cuenta de aciertos, fallos y descartes
+public class ExpiringLruCache<K, V> {
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final Clock clock;
+
+    // LinkedHashMap en orden de acceso: la primera entrada es la usada hace más tiempo
+    private final LinkedHashMap<K, Entry<V>> entries;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long expirations;
+    private long invalidations;
+
+    // Aumenta con cada invalidación. Un valor calculado antes de una invalidación no se guarda, porque puede estar desfasado
+    private long version;
+
+    public ExpiringLruCache(int maxEntries, Duration ttl) {
+        this(maxEntries, ttl, Clock.systemUTC());
+    }
+
+    public ExpiringLruCache(int maxEntries, Duration ttl, Clock clock) {
+        this.maxEntries = Math.max(1, maxEntries);
+        this.ttlMillis = ttl.toMillis();
+        this.clock = clock;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    // Devuelve el valor guardado o lo calcula y lo guarda. El cálculo se hace fuera del bloqueo, así que dos
+    // peticiones simultáneas de la misma clave pueden calcularlo las dos; la última en terminar es la que queda
+    public V get(K key, Function<K, V> loader) {
+        long loadVersion;
+        synchronized(this) {
+            Entry<V> entry = entries.get(key);
+            if(entry != null && entry.expiresAt() > clock.millis()) {
+                hits++;
+                return entry.value();
+            }
+
+            if(entry != null) {
+                entries.remove(key);
+                expirations++;
+            }
+            misses++;
+            loadVersion = version;
+        }
+
+        V value = loader.apply(key);
+        synchronized(this) {
+            if(loadVersion == version) {
+                this.put(key, value);
+            }
+        }
+        return value;
+    }
+
+    public synchronized void put(K key, V value) {
+        entries.put(key, new Entry<>(value, clock.millis() + ttlMillis));
+
+        Iterator<Map.Entry<K, Entry<V>>> eldest = entries.entrySet().iterator();
+        while(entries.size() > maxEntries && eldest.hasNext()) {
+            eldest.next();
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    public synchronized void invalidate(K key) {
+        version++;
+        if(entries.remove(key) != null) {
+            invalidations++;
+        }
+    }
+
+    public synchronized void invalidateIf(Predicate<K> condition) {
+        version++;
+        Iterator<K> keys = entries.keySet().iterator();
+        while(keys.hasNext()) {
+            if(condition.test(keys.next())) {
+                keys.remove();
+                invalidations++;
+            }
+        }
+    }
+
+    // Como invalidateIf, pero decidiendo por el valor guardado en lugar de por la clave
+    public synchronized void invalidateValuesIf(Predicate<V> condition) {
+        version++;
+        Iterator<Entry<V>> values = entries.values().iterator();
+        while(values.hasNext()) {
+            if(condition.test(values.next().value())) {
+                values.remove();
+                invalidations++;
+            }
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        version++;
+        invalidations += entries.size();
+        entries.clear();
+    }
+
+    public synchronized CacheStats stats() {
+        return new CacheStats(entries.size(), maxEntries, hits, misses, evictions, expirations, invalidations);
+    }
+
+    private record Entry<V>(V value, long expiresAt) {}
+}
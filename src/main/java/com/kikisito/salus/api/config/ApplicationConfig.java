@@ -4,7 +4,6 @@ import com.kikisito.salus.api.entity.UserEntity;
 import com.kikisito.salus.api.exception.DataNotFoundException;
 import com.kikisito.salus.api.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
-import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -46,11 +45,6 @@ public class ApplicationConfig {
         return configuration.getAuthenticationManager();
     }
 
-    @Bean
-    public ModelMapper modelMapper() {
-        return new ModelMapper();
-    }
-
     @Bean
     public AuditorAware<UserEntity> auditorProvider() {
         return new AuditorAwareConfiguration();
@@ -0,0 +1,82 @@
+package com.kikisito.salus.api.config;
+
+import com.kikisito.salus.api.type.AppointmentSlotModeType;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "application.appointment-slots")
+public class AppointmentSlotsConfiguration {
+    // Forma en la que se obtienen los huecos disponibles
+    @Getter
+    @Setter
+    private AppointmentSlotModeType mode = AppointmentSlotModeType.MATERIALIZED;
+
+    // Número máximo de médicos cuyos huecos se generan a la vez en la generación en paralelo.
+    // Cada uno ocupa una conexión, así que debe ser menor que el tamaño del pool de conexiones
+    @Getter
+    @Setter
+    private int generationConcurrency = 8;
+
+    // Semanas por delante para las que se mantienen generados los huecos de forma automática
+    @Getter
+    @Setter
+    private int horizonWeeks = 8;
+
+    // Activa la generación nocturna de huecos a partir de los turnos
+    @Getter
+    @Setter
+    private boolean materializerEnabled = true;
+
+    // Responde a los filtros de disponibilidad de médicos y centros desde el calendario en memoria
+    @Getter
+    @Setter
+    private boolean availabilityCalendarEnabled = true;
+
+    // Tiempo de vida y número máximo de entradas de la caché de consultas de disponibilidad
+    @Getter
+    @Setter
+    private Duration availabilityCacheTtl = Duration.ofSeconds(30);
+
+    @Getter
+    @Setter
+    private int availabilityCacheMaxEntries = 1000;
+
+    // Tiempo durante el que un hueco queda retenido para un paciente mientras completa la reserva
+    @Getter
+    @Setter
+    private Duration slotHoldTtl = Duration.ofMinutes(5);
+
+    // Retenciones en vigor que puede tener a la vez un mismo paciente, para que no pueda bloquear la agenda de un médico
+    @Getter
+    @Setter
+    private int slotHoldMaxPerUser = 3;
+
+    // Hilos y tamaño de la cola de los trabajos de generación en segundo plano. Si la cola está llena, el trabajo
+    // queda pendiente y se lanza en la siguiente revisión de trabajos pendientes
+    @Getter
+    @Setter
+    private int generationJobThreads = 2;
+
+    @Getter
+    @Setter
+    private int generationJobQueueCapacity = 50;
+
+    // Días que se generan entre dos puntos de control de un trabajo de generación
+    @Getter
+    @Setter
+    private int generationJobChunkDays = 7;
+
+    // Intentos de envío del correo de un aviso de anulación antes de dejarlo sin enviar
+    @Getter
+    @Setter
+    private int cancellationNoticeMaxAttempts = 5;
+
+    public boolean isVirtualMode() {
+        return mode == AppointmentSlotModeType.VIRTUAL;
+    }
+}
@@ -29,10 +29,13 @@ public final class ErrorMessages {
     public static final String DOCTOR_ALREADY_HAS_SPECIALTY = "Doctor already has this specialty assigned";
     public static final String END_TIME_MUST_BE_AFTER_START_TIME = "End time must be after start time";
     public static final String SCHEDULE_CONFLICT = "Schedule conflicts with an existing schedule";
+    public static final String ROOM_SCHEDULE_CONFLICT = "Room is already in use during that schedule";
     public static final String SCHEDULE_NOT_FOUND = "Schedule not found";
     public static final String APPOINTMENT_SLOT_NOT_FOUND = "Appointment slot not found";
     public static final String APPOINTMENT_NOT_FOUND = "Appointment not found";
     public static final String APPOINTMENT_SLOT_IS_ALREADY_TAKEN = "Appointment slot is already taken";
+    public static final String APPOINTMENT_SLOT_IS_HELD = "Appointment slot is temporarily held by another patient";
+    public static final String TOO_MANY_APPOINTMENT_SLOT_HOLDS = "Too many appointment slots are held at the same time";
     public static final String DOCTOR_DOES_NOT_HAVE_SPECIALTY = "Doctor does not have the requested specialty";
     public static final String DOCTOR_HAS_MEDICAL_DATA_LINKED = "Doctor has medical data linked to its profile. Cannot delete";
     public static final String REPORT_NOT_FOUND = "Report not found";
@@ -44,10 +47,20 @@ public final class ErrorMessages {
     public static final String APPOINTMENT_CANNOT_BE_DELETED = "Appointment cannot be deleted";
     public static final String DATE_IN_PAST = "Date is in the past";
     public static final String CHAT_NOT_FOUND = "Chat not found";
+    public static final String WAITLIST_ENTRY_NOT_FOUND = "Waitlist entry not found";
+    public static final String WAITLIST_ENTRY_IS_CLOSED = "Waitlist entry is already fulfilled, expired or cancelled";
+    public static final String DOCTOR_ABSENCE_NOT_FOUND = "Doctor absence not found";
+    public static final String GENERATION_JOB_NOT_FOUND = "Appointment slot generation job not found";
+    public static final String RESCHEDULE_JOB_NOT_FOUND = "Reschedule job not found";
+    public static final String DOCTOR_IS_ABSENT = "Doctor is absent at the requested time";
     public static final String CANNOT_CREATE_CHAT_WITH_SAME_SENDER_AND_RECEIVER = "Cannot create a chat with the same sender and receiver";
     public static final String DAY_MISMATCH = "The selected day does not match the appointment date";
     public static final String INVALID_DATE_OR_DATE_RANGE = "Invalid date or date range";
     public static final String APPOINTMENT_SLOT_CANNOT_BE_BOOKED_BY_DOCTOR = "Appointment slot cannot be booked by the doctor";
     public static final String INVALID_FREQUENCY = "Frequency must be a number with up to 2 decimal places";
     public static final String ACCOUNT_LOCKED = "Account is locked";
+    public static final String INVALID_CURSOR = "Invalid pagination cursor";
+    public static final String INVALID_SCHEDULE = "Invalid schedule";
+    public static final String INVALID_SCHEDULE_IMPORT = "Invalid schedule import file";
+    public static final String APPOINTMENT_SLOT_OR_SCHEDULE_REQUIRED = "Either an appointment slot or a schedule, date and start time must be provided";
 }
\ No newline at end of file
@@ -1,21 +1,40 @@
 package com.kikisito.salus.api.controllers;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kikisito.salus.api.cache.AvailabilityCache;
+import com.kikisito.salus.api.cache.CacheStats;
 import com.kikisito.salus.api.dto.AppointmentSlotDTO;
+import com.kikisito.salus.api.dto.AppointmentSlotGenerationJobDTO;
+import com.kikisito.salus.api.dto.request.AppointmentSlotHoldRequest;
 import com.kikisito.salus.api.dto.request.AppointmentSlotRequest;
+import com.kikisito.salus.api.dto.request.AvailableSlotsSearchRequest;
 import com.kikisito.salus.api.dto.request.GenerateAppointmentSlotByDateRangeRequest;
 import com.kikisito.salus.api.dto.request.GenerateAppointmentSlotByDoctorAndDateRangeRequest;
 import com.kikisito.salus.api.dto.request.GenerateAppointmentSlotByScheduleRequest;
+import com.kikisito.salus.api.dto.response.AppointmentSlotHoldResponse;
+import com.kikisito.salus.api.dto.response.AvailableSlotsSearchResponse;
+import com.kikisito.salus.api.entity.UserEntity;
+import com.kikisito.salus.api.service.AppointmentSlotGenerationJobService;
+import com.kikisito.salus.api.service.AppointmentSlotHoldService;
 import com.kikisito.salus.api.service.AppointmentSlotService;
+import com.kikisito.salus.api.service.AvailabilitySearchService;
+import com.kikisito.salus.api.streaming.NdjsonWriter;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("api/v1/appointment-slots")
@@ -25,6 +44,21 @@ public class AppointmentSlotsController {
     @Autowired
     private final AppointmentSlotService appointmentSlotService;
 
+    @Autowired
+    private final AppointmentSlotGenerationJobService appointmentSlotGenerationJobService;
+
+    @Autowired
+    private final AvailabilitySearchService availabilitySearchService;
+
+    @Autowired
+    private final AppointmentSlotHoldService appointmentSlotHoldService;
+
+    @Autowired
+    private final AvailabilityCache availabilityCache;
+
+    @Autowired
+    private final ObjectMapper objectMapper;
+
     @GetMapping("/{doctorId}/{date}/daily")
     @PreAuthorize("hasAuthority('ADMIN') or (hasAuthority('PROFESSIONAL') and authentication.principal.medicalProfile.id == #doctorId)")
     public ResponseEntity<List<AppointmentSlotDTO>> getDoctorAppointmentSlots(@PathVariable Integer doctorId, @PathVariable @DateTimeFormat(pattern = "dd-MM-yyyy") LocalDate date) {
@@ -37,6 +71,22 @@ public class AppointmentSlotsController {
         return ResponseEntity.ok(appointmentSlotService.getWeeklyAppointmentSlotsByDoctorAndDate(doctorId, date));
     }
 
+    @GetMapping(value = "/{doctorId}/{date}/daily", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @PreAuthorize("hasAuthority('ADMIN') or (hasAuthority('PROFESSIONAL') and authentication.principal.medicalProfile.id == #doctorId)")
+    public void streamDoctorAppointmentSlots(@PathVariable Integer doctorId, @PathVariable @DateTimeFormat(pattern = "dd-MM-yyyy") LocalDate date, HttpServletResponse response) throws IOException {
+        NdjsonWriter writer = NdjsonWriter.of(response, objectMapper);
+        appointmentSlotService.streamAppointmentSlotsByDoctorAndDate(doctorId, date, writer);
+        writer.flush();
+    }
+
+    @GetMapping(value = "/{doctorId}/{date}/weekly", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @PreAuthorize("hasAuthority('ADMIN') or (hasAuthority('PROFESSIONAL') and authentication.principal.medicalProfile.id == #doctorId)")
+    public void streamDoctorWeeklyAppointmentSlots(@PathVariable Integer doctorId, @PathVariable @DateTimeFormat(pattern = "dd-MM-yyyy") LocalDate date, HttpServletResponse response) throws IOException {
+        NdjsonWriter writer = NdjsonWriter.of(response, objectMapper);
+        appointmentSlotService.streamWeeklyAppointmentSlotsByDoctorAndDate(doctorId, date, writer);
+        writer.flush();
+    }
+
     @GetMapping("/{appointmentSlotId}")
     @PreAuthorize("hasAuthority('ADMIN')")
     public ResponseEntity<AppointmentSlotDTO> getAppointmentSlot(@PathVariable Integer appointmentSlotId) {
@@ -49,6 +99,31 @@ public class AppointmentSlotsController {
         return ResponseEntity.ok(appointmentSlotService.getAvailableDatesByDoctorAndMedicalCenterAndSpecialty(medicalCenterId, specialtyId, doctorId));
     }
 
+    @GetMapping("/available/cache-stats")
+    @PreAuthorize("hasAuthority('ADMIN')")
+    public ResponseEntity<Map<String, CacheStats>> getAvailabilityCacheStats() {
+        return ResponseEntity.ok(availabilityCache.getStats());
+    }
+
+    @PostMapping("/available/search")
+    @PreAuthorize("hasAuthority('USER')")
+    public ResponseEntity<AvailableSlotsSearchResponse> searchEarliestAvailableAppointmentSlots(@RequestBody @Valid AvailableSlotsSearchRequest request) {
+        return ResponseEntity.ok(availabilitySearchService.searchEarliestAvailableSlots(request));
+    }
+
+    @PostMapping("/hold")
+    @PreAuthorize("hasAuthority('USER') and authentication.principal.restricted == false")
+    public ResponseEntity<AppointmentSlotHoldResponse> holdAppointmentSlot(@RequestBody @Valid AppointmentSlotHoldRequest request, @AuthenticationPrincipal UserEntity user) {
+        return ResponseEntity.status(HttpStatus.CREATED).body(appointmentSlotHoldService.holdAppointmentSlot(request, user));
+    }
+
+    @DeleteMapping("/{appointmentSlotId}/hold")
+    @PreAuthorize("hasAuthority('USER')")
+    public ResponseEntity<Void> releaseAppointmentSlotHold(@PathVariable Integer appointmentSlotId, @AuthenticationPrincipal UserEntity user) {
+        appointmentSlotHoldService.releaseAppointmentSlotHold(appointmentSlotId, user);
+        return ResponseEntity.noContent().build();
+    }
+
     @PostMapping("/add")
     @PreAuthorize("hasAuthority('ADMIN')")
     public ResponseEntity<AppointmentSlotDTO> createAppointmentSlot(@RequestBody @Valid AppointmentSlotRequest appointmentSlotRequest) {
@@ -71,13 +146,19 @@ public class AppointmentSlotsController {
 
     @PostMapping("/generate/doctor-and-date-range")
     @PreAuthorize("hasAuthority('ADMIN')")
-    public ResponseEntity<List<AppointmentSlotDTO>> generateAppointmentSlotsByDateRange(@RequestBody @Valid GenerateAppointmentSlotByDoctorAndDateRangeRequest request) {
-        return ResponseEntity.ok(appointmentSlotService.generateAppointmentSlotsByDoctorBetweenDates(request.getDoctorId(), request.getStartDate(), request.getEndDate()));
+    public ResponseEntity<AppointmentSlotGenerationJobDTO> generateAppointmentSlotsByDateRange(@RequestBody @Valid GenerateAppointmentSlotByDoctorAndDateRangeRequest request, @AuthenticationPrincipal UserEntity user) {
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(appointmentSlotGenerationJobService.submitDoctorGenerationJob(request.getDoctorId(), request.getStartDate(), request.getEndDate(), user));
     }
 
     @PostMapping("/generate/date-range")
     @PreAuthorize("hasAuthority('ADMIN')")
-    public ResponseEntity<List<AppointmentSlotDTO>> generateAppointmentSlotsByDateRange(@RequestBody @Valid GenerateAppointmentSlotByDateRangeRequest request) {
-        return ResponseEntity.ok(appointmentSlotService.generateAppointmentSlotsBetweenDates(request.getStartDate(), request.getEndDate()));
+    public ResponseEntity<AppointmentSlotGenerationJobDTO> generateAppointmentSlotsByDateRange(@RequestBody @Valid GenerateAppointmentSlotByDateRangeRequest request, @AuthenticationPrincipal UserEntity user) {
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(appointmentSlotGenerationJobService.submitGenerationJob(request.getStartDate(), request.getEndDate(), request.isParallel(), user));
+    }
+
+    @GetMapping("/generate/jobs/{jobId}")
+    @PreAuthorize("hasAuthority('ADMIN')")
+    public ResponseEntity<AppointmentSlotGenerationJobDTO> getGenerationJob(@PathVariable Integer jobId) {
+        return ResponseEntity.ok(appointmentSlotGenerationJobService.getGenerationJob(jobId));
     }
 }
@@ -1,22 +1,34 @@
 package com.kikisito.salus.api.controllers;
 
+import com.kikisito.salus.api.cache.CacheStats;
+import com.kikisito.salus.api.cache.DoctorAgendaCache;
 import com.kikisito.salus.api.dto.AppointmentDTO;
+import com.kikisito.salus.api.dto.DoctorAgendaDTO;
 import com.kikisito.salus.api.dto.ReducedAppointmentDTO;
 import com.kikisito.salus.api.dto.request.AppointmentStatusRequest;
 import com.kikisito.salus.api.dto.request.ObservationsRequest;
 import com.kikisito.salus.api.dto.request.AppointmentRequest;
+import com.kikisito.salus.api.dto.response.AppointmentCancellationResponse;
 import com.kikisito.salus.api.entity.UserEntity;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.kikisito.salus.api.service.AppointmentService;
+import com.kikisito.salus.api.streaming.NdjsonWriter;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("api/v1/appointments")
@@ -26,6 +38,12 @@ public class AppointmentsController {
     @Autowired
     private final AppointmentService appointmentService;
 
+    @Autowired
+    private final ObjectMapper objectMapper;
+
+    @Autowired
+    private final DoctorAgendaCache doctorAgendaCache;
+
     @GetMapping("/@me")
     @PreAuthorize("hasAuthority('USER')")
     public ResponseEntity<List<ReducedAppointmentDTO>> getSessionUserUpcomingAppointments(@AuthenticationPrincipal UserEntity user) {
@@ -70,6 +88,40 @@ public class AppointmentsController {
         return ResponseEntity.ok(appointmentService.getPatientAppointmentsWithDoctorOrItsSpecialties(patientId, doctorId));
     }
 
+    @GetMapping("/doctor/{doctorId}/{date}")
+    @PreAuthorize("hasAuthority('ADMIN') or (hasAuthority('PROFESSIONAL') and authentication.principal.medicalProfile.id == #doctorId)")
+    public ResponseEntity<List<AppointmentDTO>> getDoctorAppointmentsByDate(@PathVariable Integer doctorId, @PathVariable @DateTimeFormat(pattern = "dd-MM-yyyy") LocalDate date) {
+        return ResponseEntity.ok(appointmentService.getAllDoctorAppointmentsByDate(doctorId, date));
+    }
+
+    @GetMapping(value = "/doctor/{doctorId}/{date}", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @PreAuthorize("hasAuthority('ADMIN') or (hasAuthority('PROFESSIONAL') and authentication.principal.medicalProfile.id == #doctorId)")
+    public void streamDoctorAppointmentsByDate(@PathVariable Integer doctorId, @PathVariable @DateTimeFormat(pattern = "dd-MM-yyyy") LocalDate date, HttpServletResponse response) throws IOException {
+        NdjsonWriter writer = NdjsonWriter.of(response, objectMapper);
+        appointmentService.streamAllDoctorAppointmentsByDate(doctorId, date, writer);
+        writer.flush();
+    }
+
+    // Agenda del día con el contexto de cada paciente: visitas anteriores, pruebas pendientes y medicación activa
+    @GetMapping("/doctor/{doctorId}/{date}/agenda")
+    @PreAuthorize("hasAuthority('ADMIN') or (hasAuthority('PROFESSIONAL') and authentication.principal.medicalProfile.id == #doctorId)")
+    public ResponseEntity<DoctorAgendaDTO> getDoctorAgenda(@PathVariable Integer doctorId, @PathVariable @DateTimeFormat(pattern = "dd-MM-yyyy") LocalDate date) {
+        return ResponseEntity.ok(appointmentService.getDoctorAgenda(doctorId, date));
+    }
+
+    @GetMapping("/agenda/cache-stats")
+    @PreAuthorize("hasAuthority('ADMIN')")
+    public ResponseEntity<Map<String, CacheStats>> getDoctorAgendaCacheStats() {
+        return ResponseEntity.ok(doctorAgendaCache.getStats());
+    }
+
+    // Anulación de todas las citas pendientes de un médico en un día, por ejemplo por una baja
+    @DeleteMapping("/doctor/{doctorId}/{date}")
+    @PreAuthorize("hasAuthority('ADMIN')")
+    public ResponseEntity<AppointmentCancellationResponse> cancelDoctorAppointmentsByDate(@PathVariable Integer doctorId, @PathVariable @DateTimeFormat(pattern = "dd-MM-yyyy") LocalDate date) {
+        return ResponseEntity.ok(appointmentService.cancelDoctorAppointmentsByDate(doctorId, date));
+    }
+
     @GetMapping("/{id}")
     @PreAuthorize(  "hasAuthority('ADMIN')" +
                     "or (hasAuthority('PROFESSIONAL') and @appointmentService.canProfessionalAccessAppointment(#id, authentication.principal.medicalProfile.id))" +
@@ -14,6 +14,7 @@ import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("api/v1/chats")
@@ -30,7 +31,7 @@ public class ChatController {
     }
 
     @GetMapping("/doctor/{doctorId}")
-    @PreAuthorize("hasAuthority('PROFESSIONAL') and @medicalProfileService.getAsUser(#doctorId).id == authentication.principal.id")
+    @PreAuthorize("hasAuthority('PROFESSIONAL') and @medicalProfileService.isMedicalProfileOfUser(#doctorId, authentication.principal)")
     public ResponseEntity<List<ChatDTO>> getDoctorChats(@PathVariable Integer doctorId) {
         return ResponseEntity.ok(chatService.getDoctorChats(doctorId));
     }
@@ -38,25 +39,39 @@ public class ChatController {
     @GetMapping("/doctor/{doctorId}/patient/{patientId}/info")
     @PreAuthorize("""
             (hasAuthority('USER') and #patientId == authentication.principal.id) or
-            (hasAuthority('PROFESSIONAL') and @medicalProfileService.getAsUser(#doctorId).id == authentication.principal.id)
+            (hasAuthority('PROFESSIONAL') and @medicalProfileService.isMedicalProfileOfUser(#doctorId, authentication.principal))
             """)
     public ResponseEntity<ChatDTO> getChatInfo(@PathVariable Integer doctorId, @PathVariable Integer patientId, @AuthenticationPrincipal UserEntity userRequest) {
         return ResponseEntity.ok(chatService.getChatInfo(doctorId, patientId, userRequest));
     }
 
-    @GetMapping("/doctor/{doctorId}/patient/{patientId}")
+    @GetMapping(value = {
+            "/doctor/{doctorId}/patient/{patientId}",
+            "/doctor/{doctorId}/patient/{patientId}/limit/{limit}",
+            "/doctor/{doctorId}/patient/{patientId}/before/{before}",
+            "/doctor/{doctorId}/patient/{patientId}/before/{before}/limit/{limit}",
+            "/doctor/{doctorId}/patient/{patientId}/after/{after}",
+            "/doctor/{doctorId}/patient/{patientId}/after/{after}/limit/{limit}"
+    })
     @PreAuthorize("""
             (hasAuthority('USER') and #patientId == authentication.principal.id) or
-            (hasAuthority('PROFESSIONAL') and @medicalProfileService.getAsUser(#doctorId).id == authentication.principal.id)
+            (hasAuthority('PROFESSIONAL') and @medicalProfileService.isMedicalProfileOfUser(#doctorId, authentication.principal))
             """)
-    public ResponseEntity<List<ChatMessageDTO>> getChatMessages(@PathVariable Integer doctorId, @PathVariable Integer patientId, @AuthenticationPrincipal UserEntity userRequest) {
-        return ResponseEntity.ok(chatService.getChatMessages(doctorId, patientId, userRequest));
+    public ResponseEntity<List<ChatMessageDTO>> getChatMessages(
+            @PathVariable Integer doctorId,
+            @PathVariable Integer patientId,
+            @PathVariable Optional<Integer> before,
+            @PathVariable Optional<Integer> after,
+            @PathVariable Optional<Integer> limit,
+            @AuthenticationPrincipal UserEntity userRequest
+    ) {
+        return ResponseEntity.ok(chatService.getChatMessages(doctorId, patientId, before, after, limit, userRequest));
     }
 
     @PostMapping("/doctor/{doctorId}/patient/{patientId}")
     @PreAuthorize("""
             (hasAuthority('USER') and #patientId == authentication.principal.id) or
-            (hasAuthority('PROFESSIONAL') and @medicalProfileService.getAsUser(#doctorId).id == authentication.principal.id)
+            (hasAuthority('PROFESSIONAL') and @medicalProfileService.isMedicalProfileOfUser(#doctorId, authentication.principal))
             """)
     public ResponseEntity<ChatMessageDTO> sendMessage(@PathVariable Integer doctorId, @PathVariable Integer patientId, @RequestBody @Valid ChatMessageRequest chatMessageRequest, @AuthenticationPrincipal UserEntity sender) {
         return ResponseEntity.ok(chatService.sendMessage(doctorId, patientId, chatMessageRequest, sender));
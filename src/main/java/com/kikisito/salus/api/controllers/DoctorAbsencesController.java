@@ -0,0 +1,43 @@
+package com.kikisito.salus.api.controllers;
+
+import com.kikisito.salus.api.dto.DoctorAbsenceDTO;
+import com.kikisito.salus.api.dto.request.DoctorAbsenceRequest;
+import com.kikisito.salus.api.dto.response.DoctorAbsenceResponse;
+import com.kikisito.salus.api.service.DoctorAbsenceService;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("api/v1/absences")
+@RequiredArgsConstructor
+@CrossOrigin
+public class DoctorAbsencesController {
+    @Autowired
+    private final DoctorAbsenceService doctorAbsenceService;
+
+    @GetMapping("/{doctorId}")
+    @PreAuthorize("hasAuthority('ADMIN') or (hasAuthority('PROFESSIONAL') and authentication.principal.medicalProfile.id == #doctorId)")
+    public ResponseEntity<List<DoctorAbsenceDTO>> getDoctorUpcomingAbsences(@PathVariable Integer doctorId) {
+        return ResponseEntity.ok(doctorAbsenceService.getDoctorUpcomingAbsences(doctorId));
+    }
+
+    @PostMapping("/add")
+    @PreAuthorize("hasAuthority('ADMIN')")
+    public ResponseEntity<DoctorAbsenceResponse> addAbsence(@RequestBody @Valid DoctorAbsenceRequest request) {
+        return ResponseEntity.status(HttpStatus.CREATED).body(doctorAbsenceService.addAbsence(request));
+    }
+
+    @DeleteMapping("/{absenceId}")
+    @PreAuthorize("hasAuthority('ADMIN')")
+    public ResponseEntity<Void> deleteAbsence(@PathVariable Integer absenceId) {
+        doctorAbsenceService.deleteAbsence(absenceId);
+        return ResponseEntity.noContent().build();
+    }
+}
@@ -0,0 +1,39 @@
+package com.kikisito.salus.api.controllers;
+
+import com.kikisito.salus.api.dto.request.PatientTimelineRequest;
+import com.kikisito.salus.api.dto.response.PatientTimelineResponse;
+import com.kikisito.salus.api.service.PatientTimelineService;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("api/v1/timeline")
+@RequiredArgsConstructor
+@CrossOrigin
+public class PatientTimelineController {
+    @Autowired
+    private final PatientTimelineService patientTimelineService;
+
+    @PostMapping("/patient/{patientId}")
+    @PreAuthorize("""
+            hasAuthority('ADMIN') or
+            (hasAuthority('USER') and #patientId == authentication.principal.id)
+            """)
+    public ResponseEntity<PatientTimelineResponse> getPatientTimeline(@PathVariable Integer patientId, @RequestBody @Valid PatientTimelineRequest request) {
+        return ResponseEntity.ok(patientTimelineService.getPatientTimeline(patientId, null, request));
+    }
+
+    @PostMapping("/patient/{patientId}/doctor/{doctorId}")
+    @PreAuthorize("hasAuthority('ADMIN') or (hasAuthority('PROFESSIONAL') and #doctorId == authentication.principal.medicalProfile.id)")
+    public ResponseEntity<PatientTimelineResponse> getPatientTimelineWithDoctorOrItsSpecialties(
+            @PathVariable Integer patientId,
+            @PathVariable Integer doctorId,
+            @RequestBody @Valid PatientTimelineRequest request
+    ) {
+        return ResponseEntity.ok(patientTimelineService.getPatientTimeline(patientId, doctorId, request));
+    }
+}
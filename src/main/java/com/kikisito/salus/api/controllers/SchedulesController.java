@@ -1,12 +1,17 @@
 package com.kikisito.salus.api.controllers;
 
 import com.kikisito.salus.api.dto.DoctorScheduleDTO;
+import com.kikisito.salus.api.dto.RescheduleJobDTO;
 import com.kikisito.salus.api.dto.request.DoctorScheduleRequest;
+import com.kikisito.salus.api.dto.response.DoctorScheduleImportResponse;
+import com.kikisito.salus.api.service.AppointmentRescheduleService;
+import com.kikisito.salus.api.service.DoctorScheduleImportService;
 import com.kikisito.salus.api.service.DoctorScheduleService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
@@ -22,6 +27,12 @@ public class SchedulesController {
     @Autowired
     private final DoctorScheduleService doctorScheduleService;
 
+    @Autowired
+    private final AppointmentRescheduleService appointmentRescheduleService;
+
+    @Autowired
+    private final DoctorScheduleImportService doctorScheduleImportService;
+
     @GetMapping("/{doctorId}")
     @PreAuthorize("hasAuthority('ADMIN')")
     public ResponseEntity<List<DoctorScheduleDTO>> getDoctorSchedules(@PathVariable Integer doctorId) {
@@ -40,16 +51,40 @@ public class SchedulesController {
         return ResponseEntity.status(HttpStatus.CREATED).body(doctorScheduleService.addSchedule(doctorScheduleRequest));
     }
 
+    @PostMapping(value = "/import", consumes = MediaType.APPLICATION_JSON_VALUE)
+    @PreAuthorize("hasAuthority('ADMIN')")
+    public ResponseEntity<DoctorScheduleImportResponse> importSchedules(@RequestBody List<DoctorScheduleRequest> doctorScheduleRequests) {
+        return this.importResponse(doctorScheduleImportService.importSchedules(doctorScheduleRequests));
+    }
+
+    @PostMapping(value = "/import", consumes = "text/csv")
+    @PreAuthorize("hasAuthority('ADMIN')")
+    public ResponseEntity<DoctorScheduleImportResponse> importSchedulesFromCsv(@RequestBody String csv) {
+        return this.importResponse(doctorScheduleImportService.importSchedulesFromCsv(csv));
+    }
+
     @PutMapping("/{scheduleId}")
     @PreAuthorize("hasAuthority('ADMIN')")
     public ResponseEntity<DoctorScheduleDTO> updateScheduleEntry(@PathVariable("scheduleId") Integer scheduleId, @RequestBody @Valid DoctorScheduleRequest doctorScheduleRequest) {
         return ResponseEntity.ok(doctorScheduleService.updateSchedule(scheduleId, doctorScheduleRequest));
     }
 
+    @GetMapping("/{scheduleId}/reschedule")
+    @PreAuthorize("hasAuthority('ADMIN')")
+    public ResponseEntity<RescheduleJobDTO> getRescheduleJob(@PathVariable Integer scheduleId) {
+        return ResponseEntity.ok(appointmentRescheduleService.getRescheduleJob(scheduleId));
+    }
+
     @DeleteMapping("/{scheduleId}")
     @PreAuthorize("hasAuthority('ADMIN')")
     public ResponseEntity<Void> deleteScheduleEntry(@PathVariable Integer scheduleId) {
         doctorScheduleService.deleteSchedule(scheduleId);
         return ResponseEntity.noContent().build();
     }
+
+    // Si alguna fila tiene problemas no se ha guardado ninguna
+    private ResponseEntity<DoctorScheduleImportResponse> importResponse(DoctorScheduleImportResponse response) {
+        HttpStatus status = response.getIssues().isEmpty() ? HttpStatus.CREATED : HttpStatus.CONFLICT;
+        return ResponseEntity.status(status).body(response);
+    }
 }
@@ -0,0 +1,44 @@
+package com.kikisito.salus.api.controllers;
+
+import com.kikisito.salus.api.dto.WaitlistEntryDTO;
+import com.kikisito.salus.api.dto.request.WaitlistRequest;
+import com.kikisito.salus.api.entity.UserEntity;
+import com.kikisito.salus.api.service.WaitlistService;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("api/v1/waitlist")
+@RequiredArgsConstructor
+@CrossOrigin
+public class WaitlistController {
+    @Autowired
+    private final WaitlistService waitlistService;
+
+    @GetMapping("/@me")
+    @PreAuthorize("hasAuthority('USER')")
+    public ResponseEntity<List<WaitlistEntryDTO>> getSessionUserWaitlistEntries(@AuthenticationPrincipal UserEntity user) {
+        return ResponseEntity.ok(waitlistService.getUserWaitlistEntries(user));
+    }
+
+    @PostMapping("/new")
+    @PreAuthorize("hasAuthority('USER') and authentication.principal.restricted == false")
+    public ResponseEntity<WaitlistEntryDTO> addToWaitlist(@RequestBody @Valid WaitlistRequest request, @AuthenticationPrincipal UserEntity user) {
+        return ResponseEntity.status(HttpStatus.CREATED).body(waitlistService.addToWaitlist(request, user));
+    }
+
+    @DeleteMapping("/{id}")
+    @PreAuthorize("hasAuthority('ADMIN') or (hasAuthority('USER') and @waitlistService.canUserAccessWaitlistEntry(#id, authentication.principal))")
+    public ResponseEntity<Void> cancelWaitlistEntry(@PathVariable Integer id) {
+        waitlistService.cancelWaitlistEntry(id);
+        return ResponseEntity.noContent().build();
+    }
+}
@@ -0,0 +1,16 @@
+package com.kikisito.salus.api.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+// Medicamento de una receta que el paciente está tomando en una fecha
+public record ActiveMedicationDTO(
+        Integer id,
+        Integer prescriptionId,
+        Integer patientId,
+        String name,
+        String dosage,
+        BigDecimal frequency,
+        LocalDate startDate,
+        LocalDate endDate
+) {}
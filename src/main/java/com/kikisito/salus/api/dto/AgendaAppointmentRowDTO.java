@@ -0,0 +1,25 @@
+package com.kikisito.salus.api.dto;
+
+import com.kikisito.salus.api.type.AppointmentStatusType;
+import com.kikisito.salus.api.type.AppointmentType;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+// Fila plana con una cita de la agenda del médico, su hueco y los datos básicos del paciente, leída en una sola consulta
+public record AgendaAppointmentRowDTO(
+        Integer appointmentId,
+        AppointmentType type,
+        AppointmentStatusType status,
+        String reason,
+        Integer slotId,
+        LocalTime startTime,
+        LocalTime endTime,
+        String roomName,
+        String specialtyName,
+        Integer patientId,
+        String patientNombre,
+        String patientApellidos,
+        String patientSexo,
+        LocalDate patientFechaNacimiento
+) {}
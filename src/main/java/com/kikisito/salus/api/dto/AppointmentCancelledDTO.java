@@ -0,0 +1,23 @@
+package com.kikisito.salus.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+// Aviso al paciente de que su cita se ha anulado, por ejemplo por una baja del médico
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@Builder
+public class AppointmentCancelledDTO {
+    private Integer appointmentId;
+    private LocalDate date;
+    private LocalTime startTime;
+    private LocalTime endTime;
+    private Integer doctorId;
+    private String doctorName;
+}
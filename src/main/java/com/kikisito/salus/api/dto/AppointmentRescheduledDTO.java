@@ -0,0 +1,22 @@
+package com.kikisito.salus.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+// Aviso al paciente de que su cita se ha movido a otro hueco tras un cambio en el turno del médico. Si no quedaba
+// ningún hueco libre en el nuevo turno, slot es null y la cita sigue en su hora anterior
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@Builder
+public class AppointmentRescheduledDTO {
+    private Integer appointmentId;
+    private LocalDate previousDate;
+    private LocalTime previousStartTime;
+    private AppointmentSlotDTO slot;
+}
@@ -0,0 +1,15 @@
+package com.kikisito.salus.api.dto;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+// Representación ligera de un hueco de cita para el calendario de disponibilidad
+public record AppointmentSlotAvailabilityDTO(
+        Integer doctorId,
+        Integer specialtyId,
+        Integer medicalCenterId,
+        LocalDate date,
+        LocalTime startTime,
+        LocalTime endTime,
+        Boolean booked
+) {}
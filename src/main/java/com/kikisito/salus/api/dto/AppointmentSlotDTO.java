@@ -21,4 +21,5 @@ public class AppointmentSlotDTO {
     private LocalTime startTime;
     private LocalTime endTime;
     private Integer appointmentId;
+    private Integer scheduleId; // Solo en los huecos calculados a partir de un turno que aún no se han guardado
 }
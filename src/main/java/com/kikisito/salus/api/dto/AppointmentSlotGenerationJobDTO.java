@@ -0,0 +1,34 @@
+package com.kikisito.salus.api.dto;
+
+import com.kikisito.salus.api.type.GenerationJobStatusType;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@Builder
+public class AppointmentSlotGenerationJobDTO {
+    private Integer id;
+    private Integer doctorId;
+    private LocalDate startDate;
+    private LocalDate endDate;
+    private LocalDate nextDate;
+    private boolean parallel;
+    private GenerationJobStatusType status;
+    private int totalDays;
+    private int processedDays;
+    private int created;
+    private int skipped;
+    private int conflicting;
+    private int absent;
+    private String errorCode;
+    private String errorMessage;
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+}
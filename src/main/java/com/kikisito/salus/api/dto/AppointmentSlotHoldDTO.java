@@ -0,0 +1,10 @@
+package com.kikisito.salus.api.dto;
+
+import java.time.LocalDateTime;
+
+// Representación ligera de una retención de hueco para la tabla de retenciones en memoria
+public record AppointmentSlotHoldDTO(
+        Integer slotId,
+        Integer userId,
+        LocalDateTime expiresAt
+) {}
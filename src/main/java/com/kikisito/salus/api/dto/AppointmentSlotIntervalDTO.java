@@ -0,0 +1,13 @@
+package com.kikisito.salus.api.dto;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+// Representación ligera de un hueco de cita. Solo contiene lo necesario para detectar solapamientos
+public record AppointmentSlotIntervalDTO(
+        Integer doctorId,
+        Integer roomId,
+        LocalDate date,
+        LocalTime startTime,
+        LocalTime endTime
+) {}
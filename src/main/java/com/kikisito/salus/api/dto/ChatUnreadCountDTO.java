@@ -0,0 +1,7 @@
+package com.kikisito.salus.api.dto;
+
+// Número de mensajes no leídos de un chat. Permite contar los de varios chats en una sola consulta
+public record ChatUnreadCountDTO(
+        Integer chatId,
+        Long unread
+) {}
@@ -0,0 +1,20 @@
+package com.kikisito.salus.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@Builder
+public class DoctorAbsenceDTO {
+    private Integer id;
+    private MedicalProfileDTO doctor;
+    private LocalDateTime startDateTime;
+    private LocalDateTime endDateTime;
+    private String reason;
+}
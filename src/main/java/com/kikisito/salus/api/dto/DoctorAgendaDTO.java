@@ -0,0 +1,24 @@
+package com.kikisito.salus.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.util.List;
+
+// Agenda de un médico en un día: sus citas en orden, cada una con el contexto de su paciente
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@Builder
+public class DoctorAgendaDTO {
+    private Integer doctorId;
+    private LocalDate date;
+    private List<DoctorAgendaEntryDTO> appointments;
+
+    public boolean hasPatient(Integer patientId) {
+        return appointments.stream().anyMatch(appointment -> appointment.getPatient().getId().equals(patientId));
+    }
+}
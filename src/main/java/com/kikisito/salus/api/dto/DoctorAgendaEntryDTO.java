@@ -0,0 +1,34 @@
+package com.kikisito.salus.api.dto;
+
+import com.kikisito.salus.api.type.AppointmentStatusType;
+import com.kikisito.salus.api.type.AppointmentType;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+
+// Cita de la agenda con lo que el médico necesita del paciente para prepararla
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@Builder
+public class DoctorAgendaEntryDTO {
+    private Integer appointmentId;
+    private AppointmentType type;
+    private AppointmentStatusType status;
+    private String reason;
+    private Integer slotId;
+    private LocalTime startTime;
+    private LocalTime endTime;
+    private String roomName;
+    private String specialtyName;
+    private ReducedUserDTO patient;
+    private LocalDate patientFechaNacimiento;
+    private long priorVisits;
+    private List<PendingMedicalTestDTO> pendingMedicalTests;
+    private List<ActiveMedicationDTO> activeMedications;
+}
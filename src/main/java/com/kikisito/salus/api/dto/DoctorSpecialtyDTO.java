@@ -0,0 +1,9 @@
+package com.kikisito.salus.api.dto;
+
+// Especialidad de un médico. Permite cargar en una consulta las especialidades de varios médicos a la vez
+public record DoctorSpecialtyDTO(
+        Integer doctorId,
+        Integer specialtyId,
+        String name,
+        String description
+) {}
@@ -0,0 +1,31 @@
+package com.kikisito.salus.api.dto;
+
+import com.kikisito.salus.api.type.AppointmentStatusType;
+import com.kikisito.salus.api.type.AppointmentType;
+import com.kikisito.salus.api.type.TimelineEntryType;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// Entrada del historial de un paciente. Solo lleva lo necesario para la lista: el detalle se pide con el identificador
+// al endpoint de cada tipo. Los campos de la cita solo se rellenan en las entradas de tipo APPOINTMENT
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@Builder
+public class PatientTimelineEntryDTO {
+    private TimelineEntryType type;
+    private Integer id;
+    private LocalDateTime date;
+    private String summary;
+    private Integer appointmentId;
+    private AppointmentType appointmentType;
+    private AppointmentStatusType appointmentStatus;
+    private Integer doctorId;
+    private String doctorName;
+    private Integer specialtyId;
+    private String specialtyName;
+}
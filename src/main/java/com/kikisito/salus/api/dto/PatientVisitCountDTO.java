@@ -0,0 +1,7 @@
+package com.kikisito.salus.api.dto;
+
+// Número de visitas anteriores de un paciente a un médico. Permite contar las de varios pacientes en una sola consulta
+public record PatientVisitCountDTO(
+        Integer patientId,
+        Long visits
+) {}
@@ -0,0 +1,12 @@
+package com.kikisito.salus.api.dto;
+
+import java.time.LocalDate;
+
+// Prueba médica de un paciente que aún no tiene resultado
+public record PendingMedicalTestDTO(
+        Integer id,
+        Integer patientId,
+        String name,
+        LocalDate requestedAt,
+        LocalDate scheduledAt
+) {}
@@ -0,0 +1,44 @@
+package com.kikisito.salus.api.dto;
+
+import com.kikisito.salus.api.type.AppointmentStatusType;
+import com.kikisito.salus.api.type.AppointmentType;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+// Fila plana con las columnas de ReducedAppointmentDTO, salvo el paciente y las especialidades del médico.
+// Se lee con una sola consulta que une la cita con su hueco, médico, especialidad, consulta y centro médico
+public record ReducedAppointmentRowDTO(
+        Integer id,
+        AppointmentType type,
+        AppointmentStatusType status,
+        String reason,
+        Integer slotId,
+        LocalDate date,
+        LocalTime startTime,
+        LocalTime endTime,
+        Integer doctorId,
+        String doctorLicense,
+        String doctorWorkEmail,
+        String doctorWorkPhone,
+        Integer doctorUserId,
+        String doctorNombre,
+        String doctorApellidos,
+        String doctorSexo,
+        Integer specialtyId,
+        String specialtyName,
+        String specialtyDescription,
+        Integer roomId,
+        String roomName,
+        Integer medicalCenterId,
+        String medicalCenterName,
+        String medicalCenterEmail,
+        String medicalCenterPhone,
+        String medicalCenterAddressLine1,
+        String medicalCenterAddressLine2,
+        String medicalCenterZipCode,
+        String medicalCenterCountry,
+        String medicalCenterProvince,
+        String medicalCenterMunicipality,
+        String medicalCenterLocality
+) {}
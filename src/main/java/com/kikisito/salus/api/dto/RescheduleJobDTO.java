@@ -0,0 +1,27 @@
+package com.kikisito.salus.api.dto;
+
+import com.kikisito.salus.api.type.RescheduleJobStatusType;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// Progreso de la reubicación de las citas de un turno modificado
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@Builder
+public class RescheduleJobDTO {
+    private Integer scheduleId;
+    private RescheduleJobStatusType status;
+    private int total;
+    private int processed;
+    private int moved;
+    private int unassigned;
+    private int removedSlots;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+    private String error; // Tipo y mensaje de la excepción si el trabajo ha fallado
+}
@@ -0,0 +1,19 @@
+package com.kikisito.salus.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Problema de una fila de una importación de turnos. Las filas se numeran desde 1 en el orden en el que se envían
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@Builder
+public class ScheduleImportIssueDTO {
+    private int row;
+    private Integer conflictingRow; // Fila de la misma importación con la que choca
+    private Integer conflictingScheduleId; // Turno ya guardado con el que choca
+    private String code;
+    private String message;
+}
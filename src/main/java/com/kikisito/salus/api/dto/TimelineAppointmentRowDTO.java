@@ -0,0 +1,22 @@
+package com.kikisito.salus.api.dto;
+
+import com.kikisito.salus.api.type.AppointmentStatusType;
+import com.kikisito.salus.api.type.AppointmentType;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+// Cita del historial de un paciente, leída con su hueco, médico y especialidad en una sola consulta
+public record TimelineAppointmentRowDTO(
+        Integer id,
+        LocalDate date,
+        LocalTime startTime,
+        AppointmentType type,
+        AppointmentStatusType status,
+        String reason,
+        Integer doctorId,
+        String doctorNombre,
+        String doctorApellidos,
+        Integer specialtyId,
+        String specialtyName
+) {}
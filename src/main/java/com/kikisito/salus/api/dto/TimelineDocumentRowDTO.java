@@ -0,0 +1,22 @@
+package com.kikisito.salus.api.dto;
+
+import java.time.LocalDateTime;
+
+// Informe, receta o prueba médica del historial de un paciente, leído con su médico y especialidad en una sola consulta.
+// El resumen es la descripción del informe o el nombre de la prueba; las recetas no tienen
+public record TimelineDocumentRowDTO(
+        Integer id,
+        LocalDateTime createdAt,
+        String summary,
+        Integer appointmentId,
+        Integer doctorId,
+        String doctorNombre,
+        String doctorApellidos,
+        Integer specialtyId,
+        String specialtyName
+) {
+    public TimelineDocumentRowDTO(Integer id, LocalDateTime createdAt, Integer appointmentId, Integer doctorId, String doctorNombre,
+                                  String doctorApellidos, Integer specialtyId, String specialtyName) {
+        this(id, createdAt, null, appointmentId, doctorId, doctorNombre, doctorApellidos, specialtyId, specialtyName);
+    }
+}
@@ -0,0 +1,25 @@
+package com.kikisito.salus.api.dto;
+
+import com.kikisito.salus.api.type.WaitlistStatusType;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@Builder
+public class WaitlistEntryDTO {
+    private Integer id;
+    private SpecialtyDTO specialty;
+    private MedicalCenterDTO medicalCenter;
+    private MedicalProfileDTO doctor;
+    private LocalDate startDate;
+    private LocalDate endDate;
+    private WaitlistStatusType status;
+    private LocalDateTime offerExpiresAt;
+}
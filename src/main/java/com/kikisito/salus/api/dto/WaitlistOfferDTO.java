@@ -0,0 +1,19 @@
+package com.kikisito.salus.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// Aviso al paciente de la lista de espera con el hueco que se ha liberado y que tiene retenido hasta expiresAt
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@Builder
+public class WaitlistOfferDTO {
+    private Integer waitlistEntryId;
+    private AppointmentSlotDTO slot;
+    private LocalDateTime expiresAt;
+}
@@ -2,20 +2,28 @@ package com.kikisito.salus.api.dto.request;
 
 import com.kikisito.salus.api.constants.ErrorMessages;
 import com.kikisito.salus.api.type.AppointmentType;
+import jakarta.validation.constraints.AssertTrue;
 import jakarta.validation.constraints.NotNull;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.time.LocalDate;
+import java.time.LocalTime;
+
 @AllArgsConstructor
 @NoArgsConstructor
 @Data
 @Builder
 public class AppointmentRequest {
-    @NotNull(message = ErrorMessages.FIELD_CANNOT_BE_BLANK)
     private Integer appointmentSlot;
 
+    // En el modo de huecos virtuales, el hueco se identifica por el turno, la fecha y la hora de inicio
+    private Integer scheduleId;
+    private LocalDate date;
+    private LocalTime startTime;
+
     @NotNull(message = ErrorMessages.FIELD_CANNOT_BE_BLANK)
     private Integer patient;
 
@@ -24,4 +32,11 @@ public class AppointmentRequest {
 
     @NotNull(message = ErrorMessages.FIELD_CANNOT_BE_BLANK)
     private String reason;
+
+    @AssertTrue(message = ErrorMessages.APPOINTMENT_SLOT_OR_SCHEDULE_REQUIRED)
+    public boolean isSlotReferenceValid() {
+        boolean bySlot = appointmentSlot != null;
+        boolean bySchedule = scheduleId != null && date != null && startTime != null;
+        return bySlot != bySchedule;
+    }
 }
@@ -0,0 +1,34 @@
+package com.kikisito.salus.api.dto.request;
+
+import com.kikisito.salus.api.constants.ErrorMessages;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@Builder
+public class AvailableSlotsSearchRequest {
+    @NotNull(message = ErrorMessages.FIELD_CANNOT_BE_BLANK)
+    private Integer specialtyId;
+
+    // Filtros opcionales
+    private Integer medicalCenterId;
+    private Integer doctorId;
+    private LocalDate startDate;
+    private LocalDate endDate;
+
+    @Min(value = 1, message = ErrorMessages.FIELD_IS_NOT_VALID)
+    @Max(value = 50, message = ErrorMessages.FIELD_IS_NOT_VALID)
+    private Integer limit;
+
+    // Cursor devuelto en la página anterior para continuar la búsqueda a partir del último hueco
+    private String cursor;
+}
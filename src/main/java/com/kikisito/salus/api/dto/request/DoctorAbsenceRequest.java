@@ -0,0 +1,27 @@
+package com.kikisito.salus.api.dto.request;
+
+import com.kikisito.salus.api.constants.ErrorMessages;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@Builder
+public class DoctorAbsenceRequest {
+    @NotNull(message = ErrorMessages.FIELD_CANNOT_BE_BLANK)
+    private Integer doctor;
+
+    @NotNull(message = ErrorMessages.FIELD_CANNOT_BE_BLANK)
+    private LocalDateTime startDateTime;
+
+    @NotNull(message = ErrorMessages.FIELD_CANNOT_BE_BLANK)
+    private LocalDateTime endDateTime;
+
+    private String reason;
+}
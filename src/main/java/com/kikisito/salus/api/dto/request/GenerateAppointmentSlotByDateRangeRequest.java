@@ -19,4 +19,7 @@ public class GenerateAppointmentSlotByDateRangeRequest {
 
     @NotNull(message = ErrorMessages.FIELD_CANNOT_BE_BLANK)
     private LocalDate endDate;
+
+    // Si es true, los huecos de cada médico se generan en paralelo, cada uno en su propia transacción
+    private boolean parallel;
 }
@@ -0,0 +1,22 @@
+package com.kikisito.salus.api.dto.request;
+
+import com.kikisito.salus.api.constants.ErrorMessages;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@Builder
+public class PatientTimelineRequest {
+    @Min(value = 1, message = ErrorMessages.FIELD_IS_NOT_VALID)
+    @Max(value = 50, message = ErrorMessages.FIELD_IS_NOT_VALID)
+    private Integer limit;
+
+    // Cursor devuelto en la página anterior para continuar el historial a partir de la última entrada
+    private String cursor;
+}
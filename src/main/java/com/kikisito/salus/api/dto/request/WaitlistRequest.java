@@ -0,0 +1,31 @@
+package com.kikisito.salus.api.dto.request;
+
+import com.kikisito.salus.api.constants.ErrorMessages;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@Builder
+public class WaitlistRequest {
+    @NotNull(message = ErrorMessages.FIELD_CANNOT_BE_BLANK)
+    private Integer specialty;
+
+    @NotNull(message = ErrorMessages.FIELD_CANNOT_BE_BLANK)
+    private Integer medicalCenter;
+
+    // Opcional: si no se indica, sirve cualquier médico de la especialidad
+    private Integer doctor;
+
+    @NotNull(message = ErrorMessages.FIELD_CANNOT_BE_BLANK)
+    private LocalDate startDate;
+
+    @NotNull(message = ErrorMessages.FIELD_CANNOT_BE_BLANK)
+    private LocalDate endDate;
+}
@@ -0,0 +1,16 @@
+package com.kikisito.salus.api.dto.response;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Builder
+public class AppointmentCancellationResponse {
+    // Citas anuladas. Los pacientes reciben el aviso cuando se confirma la anulación
+    private final List<Integer> cancelledAppointments;
+
+    // Huecos libres del médico en ese día que se han borrado, incluidos los de las citas anuladas
+    private final int removedSlots;
+}
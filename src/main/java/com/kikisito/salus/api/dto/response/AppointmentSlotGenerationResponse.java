@@ -0,0 +1,20 @@
+package com.kikisito.salus.api.dto.response;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class AppointmentSlotGenerationResponse {
+    // Huecos nuevos guardados en la base de datos
+    private final int created;
+
+    // Huecos que ya existían con el mismo médico, fecha y horario
+    private final int skipped;
+
+    // Huecos descartados por solapar con otro hueco del médico o de la consulta
+    private final int conflicting;
+
+    // Huecos descartados por caer en una ausencia del médico
+    private final int absent;
+}
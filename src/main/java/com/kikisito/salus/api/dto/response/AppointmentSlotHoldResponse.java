@@ -0,0 +1,16 @@
+package com.kikisito.salus.api.dto.response;
+
+import com.kikisito.salus.api.dto.AppointmentSlotDTO;
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+public class AppointmentSlotHoldResponse {
+    private final AppointmentSlotDTO slot;
+
+    // Hasta cuándo queda retenido el hueco para el paciente
+    private final LocalDateTime expiresAt;
+}
@@ -0,0 +1,16 @@
+package com.kikisito.salus.api.dto.response;
+
+import com.kikisito.salus.api.dto.AppointmentSlotDTO;
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Builder
+public class AvailableSlotsSearchResponse {
+    private final List<AppointmentSlotDTO> slots;
+
+    // Es null cuando no hay más resultados
+    private final String nextCursor;
+}
@@ -0,0 +1,20 @@
+package com.kikisito.salus.api.dto.response;
+
+import com.kikisito.salus.api.dto.AppointmentDTO;
+import com.kikisito.salus.api.dto.DoctorAbsenceDTO;
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Builder
+public class DoctorAbsenceResponse {
+    private final DoctorAbsenceDTO absence;
+
+    // Huecos libres del médico borrados por caer en la ausencia
+    private final int removedSlots;
+
+    // Citas ya reservadas durante la ausencia. No se anulan: se devuelven para avisar a los pacientes o reasignarlas
+    private final List<AppointmentDTO> affectedAppointments;
+}
@@ -0,0 +1,17 @@
+package com.kikisito.salus.api.dto.response;
+
+import com.kikisito.salus.api.dto.DoctorScheduleDTO;
+import com.kikisito.salus.api.dto.ScheduleImportIssueDTO;
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Builder
+public class DoctorScheduleImportResponse {
+    // Turnos guardados. Si hay algún problema no se guarda ninguno
+    private final List<DoctorScheduleDTO> schedules;
+
+    private final List<ScheduleImportIssueDTO> issues;
+}
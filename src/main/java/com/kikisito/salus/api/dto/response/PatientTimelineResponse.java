@@ -0,0 +1,16 @@
+package com.kikisito.salus.api.dto.response;
+
+import com.kikisito.salus.api.dto.PatientTimelineEntryDTO;
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Builder
+public class PatientTimelineResponse {
+    private final List<PatientTimelineEntryDTO> entries;
+
+    // Es null cuando no hay más resultados
+    private final String nextCursor;
+}
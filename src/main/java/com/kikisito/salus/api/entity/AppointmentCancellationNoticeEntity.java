@@ -0,0 +1,64 @@
+package com.kikisito.salus.api.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import lombok.experimental.SuperBuilder;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+
+// Aviso pendiente de enviar a un paciente cuya cita se ha anulado en una anulación por lotes. Se guarda en la misma
+// transacción que la anulación, de forma que los avisos que no se han llegado a enviar se reintentan tras un reinicio.
+// La cita ya no existe, así que se copian los datos que necesita el aviso
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@SuperBuilder
+@Entity
+@Table(name = "appointment_cancellation_notices", indexes = {
+        @Index(name = "idx_appointment_cancellation_notices_pending", columnList = "sent_at, attempts")
+})
+public class AppointmentCancellationNoticeEntity extends DatedEntity {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE)
+    private Integer id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "patient_id", nullable = false)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    private UserEntity patient;
+
+    @Column(nullable = false)
+    private Integer appointmentId;
+
+    @Column(nullable = false)
+    private LocalDate date;
+
+    @Column(nullable = false)
+    private LocalTime startTime;
+
+    @Column(nullable = false)
+    private LocalTime endTime;
+
+    @Column(nullable = false)
+    private Integer doctorId;
+
+    @Column(nullable = false)
+    private String doctorName;
+
+    // Intentos de envío del correo que han fallado
+    @Column(nullable = false)
+    private int attempts;
+
+    // Si es null, el correo todavía no se ha enviado
+    @Column(name = "sent_at")
+    private LocalDateTime sentAt;
+
+    // Tipo y mensaje de la última excepción al enviar el aviso por WebSocket o por correo
+    @Column(length = 1000)
+    private String lastError;
+}
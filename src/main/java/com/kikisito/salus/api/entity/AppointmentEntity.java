@@ -5,6 +5,7 @@ import com.kikisito.salus.api.type.AppointmentType;
 import jakarta.persistence.*;
 import lombok.*;
 import lombok.experimental.SuperBuilder;
+import org.hibernate.annotations.BatchSize;
 import org.springframework.data.annotation.CreatedBy;
 import org.springframework.data.annotation.LastModifiedBy;
 
@@ -16,7 +17,11 @@ import java.util.List;
 @Setter
 @SuperBuilder
 @Entity
-@Table(name = "appointments")
+@Table(name = "appointments", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_appointments_slot_id", columnNames = {"slot_id"})
+}, indexes = {
+        @Index(name = "idx_appointments_patient", columnList = "patient_id")
+})
 public class AppointmentEntity extends DatedEntity {
     @Id
     @GeneratedValue(strategy = GenerationType.SEQUENCE)
@@ -57,11 +62,14 @@ public class AppointmentEntity extends DatedEntity {
     private String doctorObservations;
 
     @OneToMany(mappedBy = "appointment", fetch = FetchType.LAZY)
+    @BatchSize(size = 50)
     private List<ReportEntity> reports;
 
     @OneToMany(mappedBy = "appointment", fetch = FetchType.LAZY)
+    @BatchSize(size = 50)
     private List<PrescriptionEntity> prescriptions;
 
     @OneToMany(mappedBy = "appointment", fetch = FetchType.LAZY)
+    @BatchSize(size = 50)
     private List<MedicalTestEntity> medicalTests;
 }
@@ -14,6 +14,10 @@ import java.time.LocalTime;
 @Entity
 @Table(name = "appointment_slots", uniqueConstraints = {
         @UniqueConstraint(columnNames = {"doctor_id", "date", "start_time", "end_time"})
+}, indexes = {
+        @Index(name = "idx_appointment_slots_date", columnList = "date"),
+        @Index(name = "idx_appointment_slots_specialty_date", columnList = "specialty_id, date, start_time, doctor_id"),
+        @Index(name = "idx_appointment_slots_schedule_date", columnList = "schedule_id, date")
 })
 public class AppointmentSlotEntity {
     @Id
@@ -32,6 +36,11 @@ public class AppointmentSlotEntity {
     @JoinColumn(name = "room_id", nullable = false)
     private RoomEntity room;
 
+    // Turno a partir del que se generó el hueco. Es null en los huecos creados a mano, que no se borran al cambiar los turnos
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "schedule_id")
+    private DoctorScheduleEntity schedule;
+
     @Column(nullable = false)
     private LocalDate date;
 
@@ -0,0 +1,83 @@
+package com.kikisito.salus.api.entity;
+
+import com.kikisito.salus.api.type.GenerationJobStatusType;
+import jakarta.persistence.*;
+import lombok.*;
+import lombok.experimental.SuperBuilder;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+import java.time.LocalDate;
+
+// Generación de huecos en segundo plano. Se procesa por bloques de días y tras cada bloque se guarda el
+// siguiente día pendiente, de forma que si la aplicación se detiene el trabajo continúa desde ahí al arrancar
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@SuperBuilder
+@Entity
+@Table(name = "appointment_slot_generation_jobs", indexes = {
+        @Index(name = "idx_appointment_slot_generation_jobs_status", columnList = "status")
+})
+public class AppointmentSlotGenerationJobEntity extends DatedEntity {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE)
+    private Integer id;
+
+    // Si es null, se generan los huecos de todos los médicos
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "doctor_id")
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    private MedicalProfileEntity doctor;
+
+    // Usuario al que se envía el progreso por WebSocket
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "requested_by")
+    @OnDelete(action = OnDeleteAction.SET_NULL)
+    private UserEntity requestedBy;
+
+    @Column(nullable = false)
+    private LocalDate startDate;
+
+    @Column(nullable = false)
+    private LocalDate endDate;
+
+    // Primer día que queda por generar
+    @Column(nullable = false)
+    private LocalDate nextDate;
+
+    @Column(nullable = false)
+    private boolean parallel;
+
+    @Column(nullable = false)
+    @Enumerated(EnumType.STRING)
+    @Builder.Default
+    private GenerationJobStatusType status = GenerationJobStatusType.PENDING;
+
+    @Column(nullable = false)
+    private int totalDays;
+
+    @Column(nullable = false)
+    private int processedDays;
+
+    @Column(nullable = false)
+    private int created;
+
+    @Column(nullable = false)
+    private int skipped;
+
+    @Column(nullable = false)
+    private int conflicting;
+
+    @Column(nullable = false)
+    private int absent;
+
+    // Código del error si el trabajo ha fallado
+    @Column
+    private String errorCode;
+
+    // Tipo y mensaje de la excepción que hizo fallar el trabajo
+    @Column(length = 1000)
+    private String errorMessage;
+}
@@ -0,0 +1,40 @@
+package com.kikisito.salus.api.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+import java.time.LocalDateTime;
+
+// Retención temporal de un hueco para un paciente mientras completa la reserva
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@Builder
+@Entity
+@Table(name = "appointment_slot_holds", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_appointment_slot_holds_slot_id", columnNames = {"slot_id"})
+}, indexes = {
+        @Index(name = "idx_appointment_slot_holds_expires_at", columnList = "expires_at")
+})
+public class AppointmentSlotHoldEntity {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE)
+    private Integer id;
+
+    // Al borrar el hueco o el usuario, la retención se borra con ellos
+    @OneToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "slot_id", nullable = false)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    private AppointmentSlotEntity slot;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", nullable = false)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    private UserEntity user;
+
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expiresAt;
+}
@@ -1,35 +0,0 @@
-package com.kikisito.salus.api.entity;
-
-import jakarta.persistence.*;
-import lombok.*;
-
-import java.time.LocalDateTime;
-
-@AllArgsConstructor
-@NoArgsConstructor
-@Getter
-@Setter
-@Builder
-@Entity
-@Table(name = "ausencias_medicos", uniqueConstraints = {
-        @UniqueConstraint(columnNames = {"medico_id", "fechaInicio", "fechaFin"})
-})
-// TRADUCIR A INGLÉS E IMPLEMENTAR
-public class AusenciaMedicoEntity {
-    @Id
-    @GeneratedValue(strategy = GenerationType.SEQUENCE)
-    private Integer id;
-
-    @ManyToOne(fetch = FetchType.LAZY)
-    @JoinColumn(name = "medico_id", nullable = false)
-    private UserEntity medico;
-
-    @Column(nullable = false)
-    private LocalDateTime fechaInicio;
-
-    @Column(nullable = false)
-    private LocalDateTime fechaFin;
-
-    @Column
-    private String motivo;
-}
@@ -1,9 +1,11 @@
 package com.kikisito.salus.api.entity;
 
+import com.kikisito.salus.api.type.MessageSenderType;
 import jakarta.persistence.*;
 import lombok.*;
 import lombok.experimental.SuperBuilder;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @AllArgsConstructor
@@ -14,8 +16,13 @@ import java.util.List;
 @Entity
 @Table(name = "chats", uniqueConstraints = {
         @UniqueConstraint(columnNames = {"patient_id", "doctor_id"})
+}, indexes = {
+        @Index(name = "idx_chats_patient_last_activity", columnList = "patient_id, last_activity_at"),
+        @Index(name = "idx_chats_doctor_last_activity", columnList = "doctor_id, last_activity_at")
 })
 public class ChatEntity extends DatedEntity {
+    public static final int LAST_MESSAGE_PREVIEW_LENGTH = 255;
+
     @Id
     @GeneratedValue(strategy = GenerationType.SEQUENCE)
     private Integer id;
@@ -30,4 +37,33 @@ public class ChatEntity extends DatedEntity {
 
     @OneToMany(mappedBy = "chat", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     private List<ChatMessagesEntity> messages;
+
+    // Resumen del último mensaje y mensajes sin leer de cada lado, para que la bandeja de chats no tenga que leer los mensajes.
+    // Se actualizan con una sola sentencia al enviar un mensaje y al marcarlos como leídos
+    @Column
+    private Integer lastMessageId;
+
+    @Column
+    @Enumerated(EnumType.STRING)
+    private MessageSenderType lastMessageSenderType;
+
+    @Column(length = LAST_MESSAGE_PREVIEW_LENGTH)
+    private String lastMessagePreview;
+
+    @Column
+    private LocalDateTime lastMessageAt;
+
+    // Fecha del último mensaje o, si aún no hay ninguno, de creación del chat. Es el orden de la bandeja
+    @Column
+    private LocalDateTime lastActivityAt;
+
+    // Mensajes del médico que el paciente no ha leído
+    @Column(nullable = false, columnDefinition = "INTEGER DEFAULT 0")
+    @Builder.Default
+    private Integer patientUnreadCount = 0;
+
+    // Mensajes del paciente que el médico no ha leído
+    @Column(nullable = false, columnDefinition = "INTEGER DEFAULT 0")
+    @Builder.Default
+    private Integer doctorUnreadCount = 0;
 }
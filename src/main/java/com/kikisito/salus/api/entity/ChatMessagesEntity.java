@@ -14,7 +14,9 @@ import java.util.List;
 @Setter
 @SuperBuilder
 @Entity
-@Table(name = "chat_messages")
+@Table(name = "chat_messages", indexes = {
+        @Index(name = "idx_chat_messages_chat_created_at", columnList = "chat_id, created_at, id")
+})
 @EntityListeners(AuditingEntityListener.class)
 public class ChatMessagesEntity extends DatedEntity {
     @Id
@@ -0,0 +1,37 @@
+package com.kikisito.salus.api.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+// Ausencia de un médico entre dos instantes, por ejemplo vacaciones o una baja. Mientras dura no se generan huecos
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@Builder
+@Entity
+@Table(name = "doctor_absences", uniqueConstraints = {
+        @UniqueConstraint(columnNames = {"doctor_id", "start_date_time", "end_date_time"})
+}, indexes = {
+        @Index(name = "idx_doctor_absences_end_date_time", columnList = "end_date_time")
+})
+public class DoctorAbsenceEntity {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE)
+    private Integer id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "doctor_id", nullable = false)
+    private MedicalProfileEntity doctor;
+
+    @Column(name = "start_date_time", nullable = false)
+    private LocalDateTime startDateTime;
+
+    @Column(name = "end_date_time", nullable = false)
+    private LocalDateTime endDateTime;
+
+    @Column
+    private String reason;
+}
@@ -4,6 +4,7 @@ import jakarta.persistence.*;
 import lombok.*;
 
 import java.time.DayOfWeek;
+import java.time.LocalDate;
 import java.time.LocalTime;
 
 @AllArgsConstructor
@@ -44,4 +45,8 @@ public class DoctorScheduleEntity {
     @Column(nullable = false)
     @Builder.Default
     private Integer duration = 15; // minutes
+
+    // Último día hasta el que el materializador ha generado los huecos del turno. Es null si todavía no se ha generado
+    @Column
+    private LocalDate materializedUntil;
 }
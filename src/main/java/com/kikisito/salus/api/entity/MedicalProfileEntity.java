@@ -3,6 +3,7 @@ package com.kikisito.salus.api.entity;
 import jakarta.persistence.*;
 import lombok.*;
 import lombok.experimental.SuperBuilder;
+import org.hibernate.annotations.BatchSize;
 
 import java.util.List;
 
@@ -31,7 +32,9 @@ public class MedicalProfileEntity {
     @Column
     private String workPhone;
 
-    @ManyToMany(fetch = FetchType.EAGER)
+    // Se cargan por lotes: al listar citas, informes o chats, las especialidades de todos los médicos se leen juntas
+    @ManyToMany(fetch = FetchType.LAZY)
+    @BatchSize(size = 50)
     @JoinTable(name = "doctor_specialties",
             joinColumns = @JoinColumn(name = "doctor_id"),
             foreignKey = @ForeignKey(name = "fk_doctor_specialty__doctor_id"),
@@ -6,6 +6,7 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 import lombok.experimental.SuperBuilder;
+import org.hibernate.annotations.BatchSize;
 import org.springframework.data.annotation.CreatedBy;
 import org.springframework.data.annotation.LastModifiedBy;
 
@@ -18,7 +19,9 @@ import java.util.List;
 @Setter
 @SuperBuilder
 @Entity
-@Table(name = "medical_tests")
+@Table(name = "medical_tests", indexes = {
+        @Index(name = "idx_medical_tests_patient_created_at", columnList = "patient_id, created_at")
+})
 public class MedicalTestEntity extends DatedEntity {
     @Id
     @GeneratedValue(strategy = GenerationType.SEQUENCE)
@@ -51,6 +54,7 @@ public class MedicalTestEntity extends DatedEntity {
     private UserEntity lastModifiedBy;
 
     @OneToMany(mappedBy = "medicalTest", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
+    @BatchSize(size = 50)
     private List<AttachmentEntity> attachments;
 
     @Column(nullable = false)
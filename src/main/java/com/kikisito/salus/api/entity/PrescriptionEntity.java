@@ -3,6 +3,7 @@ package com.kikisito.salus.api.entity;
 import jakarta.persistence.*;
 import lombok.*;
 import lombok.experimental.SuperBuilder;
+import org.hibernate.annotations.BatchSize;
 import org.springframework.data.annotation.CreatedBy;
 import org.springframework.data.annotation.LastModifiedBy;
 
@@ -14,7 +15,9 @@ import java.util.List;
 @Setter
 @SuperBuilder
 @Entity
-@Table(name = "prescriptions")
+@Table(name = "prescriptions", indexes = {
+        @Index(name = "idx_prescriptions_patient_created_at", columnList = "patient_id, created_at")
+})
 public class PrescriptionEntity extends DatedEntity {
     @Id
     @GeneratedValue(strategy = GenerationType.SEQUENCE)
@@ -47,6 +50,7 @@ public class PrescriptionEntity extends DatedEntity {
     private UserEntity lastModifiedBy;
 
     @OneToMany(mappedBy = "prescription", cascade = CascadeType.ALL, fetch = FetchType.LAZY, orphanRemoval = true)
+    @BatchSize(size = 50)
     private List<MedicationEntity> medications;
 
     public void addMedications(List<MedicationEntity> medications) {
@@ -14,7 +14,9 @@ import org.springframework.data.jpa.domain.support.AuditingEntityListener;
 @Setter
 @SuperBuilder
 @Entity
-@Table(name = "reports")
+@Table(name = "reports", indexes = {
+        @Index(name = "idx_reports_patient_created_at", columnList = "patient_id, created_at")
+})
 @EntityListeners(AuditingEntityListener.class)
 public class ReportEntity extends DatedEntity {
     @Id
@@ -73,7 +73,7 @@ public class UserEntity implements UserDetails {
     @Builder.Default
     private AccountStatusType accountStatusType = AccountStatusType.NOT_VERIFIED;
 
-    @OneToMany(mappedBy = "user", fetch = FetchType.EAGER)
+    @OneToMany(mappedBy = "user", fetch = FetchType.LAZY)
     @JsonManagedReference
     private List<SessionEntity> sessions;
 
@@ -0,0 +1,67 @@
+package com.kikisito.salus.api.entity;
+
+import com.kikisito.salus.api.type.WaitlistStatusType;
+import jakarta.persistence.*;
+import lombok.*;
+import lombok.experimental.SuperBuilder;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+// Petición de un paciente para recibir el primer hueco que se libere de una especialidad en un centro médico,
+// opcionalmente con un médico concreto, entre dos fechas
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@SuperBuilder
+@Entity
+@Table(name = "waitlist_entries", indexes = {
+        @Index(name = "idx_waitlist_entries_matching", columnList = "specialty_id, medical_center_id, status"),
+        @Index(name = "idx_waitlist_entries_status_offer_expires_at", columnList = "status, offer_expires_at")
+})
+public class WaitlistEntryEntity extends DatedEntity {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE)
+    private Integer id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "patient_id", nullable = false)
+    private UserEntity patient;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "specialty_id", nullable = false)
+    private SpecialtyEntity specialty;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "medical_center_id", nullable = false)
+    private MedicalCenterEntity medicalCenter;
+
+    // Si es null, sirve cualquier médico de la especialidad
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "doctor_id")
+    private MedicalProfileEntity doctor;
+
+    @Column(nullable = false)
+    private LocalDate startDate;
+
+    @Column(nullable = false)
+    private LocalDate endDate;
+
+    @Column(nullable = false)
+    @Enumerated(EnumType.STRING)
+    @Builder.Default
+    private WaitlistStatusType status = WaitlistStatusType.WAITING;
+
+    // Hueco ofrecido al paciente cuando se liberó. Si después se borra el hueco, se quita de la entrada
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "offered_slot_id")
+    @OnDelete(action = OnDeleteAction.SET_NULL)
+    private AppointmentSlotEntity offeredSlot;
+
+    // Fin del plazo para reservar el hueco ofrecido, que coincide con el de su retención
+    @Column
+    private LocalDateTime offerExpiresAt;
+}
@@ -0,0 +1,4 @@
+package com.kikisito.salus.api.event;
+
+// Se publica cuando un hueco reservado vuelve a quedar libre, por ejemplo al anular una cita
+public record AppointmentSlotReleasedEvent(Integer appointmentSlotId) {}
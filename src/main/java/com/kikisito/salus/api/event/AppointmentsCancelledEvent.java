@@ -0,0 +1,6 @@
+package com.kikisito.salus.api.event;
+
+import java.util.List;
+
+// Se publica cuando se anulan varias citas de una vez, con los avisos guardados que hay que enviar a los pacientes
+public record AppointmentsCancelledEvent(List<Integer> noticeIds) {}
@@ -0,0 +1,4 @@
+package com.kikisito.salus.api.event;
+
+// Se publica cuando se modifica un turno, con los datos que tenía antes del cambio
+public record DoctorScheduleChangedEvent(Integer scheduleId, ScheduleSnapshot previous) {}
@@ -0,0 +1,20 @@
+package com.kikisito.salus.api.event;
+
+import com.kikisito.salus.api.entity.DoctorScheduleEntity;
+
+import java.time.DayOfWeek;
+import java.time.LocalTime;
+
+// Datos de un turno antes de modificarlo o borrarlo
+public record ScheduleSnapshot(Integer scheduleId, Integer doctorId, Integer roomId, DayOfWeek dayOfWeek, LocalTime startTime, LocalTime endTime) {
+    public static ScheduleSnapshot of(DoctorScheduleEntity schedule) {
+        return new ScheduleSnapshot(
+                schedule.getId(),
+                schedule.getDoctor().getId(),
+                schedule.getRoom().getId(),
+                schedule.getDayOfWeek(),
+                schedule.getStartTime(),
+                schedule.getEndTime()
+        );
+    }
+}
@@ -14,4 +14,16 @@ public class BadRequestException extends ApiRuntimeException {
     public static BadRequestException invalidDateOrDateRange() {
         return new BadRequestException("bad_request.invalid_date_or_date_range", ErrorMessages.INVALID_DATE_OR_DATE_RANGE);
     }
+
+    public static BadRequestException invalidCursor() {
+        return new BadRequestException("bad_request.invalid_cursor", ErrorMessages.INVALID_CURSOR);
+    }
+
+    public static BadRequestException invalidSchedule() {
+        return new BadRequestException("bad_request.invalid_schedule", ErrorMessages.INVALID_SCHEDULE);
+    }
+
+    public static BadRequestException invalidScheduleImport() {
+        return new BadRequestException("bad_request.invalid_schedule_import", ErrorMessages.INVALID_SCHEDULE_IMPORT);
+    }
 }
\ No newline at end of file
@@ -39,10 +39,26 @@ public class ConflictException extends ApiRuntimeException {
         return new ConflictException("conflict.schedule_conflict", ErrorMessages.SCHEDULE_CONFLICT);
     }
 
+    public static ConflictException roomScheduleConflict() {
+        return new ConflictException("conflict.room_schedule_conflict", ErrorMessages.ROOM_SCHEDULE_CONFLICT);
+    }
+
     public static ConflictException appointmentSlotIsAlreadyTaken() {
         return new ConflictException("conflict.appointment_slot_is_already_taken", ErrorMessages.APPOINTMENT_SLOT_IS_ALREADY_TAKEN);
     }
 
+    public static ConflictException appointmentSlotIsHeld() {
+        return new ConflictException("conflict.appointment_slot_is_held", ErrorMessages.APPOINTMENT_SLOT_IS_HELD);
+    }
+
+    public static ConflictException tooManyAppointmentSlotHolds() {
+        return new ConflictException("conflict.too_many_appointment_slot_holds", ErrorMessages.TOO_MANY_APPOINTMENT_SLOT_HOLDS);
+    }
+
+    public static ConflictException doctorIsAbsent() {
+        return new ConflictException("conflict.doctor_is_absent", ErrorMessages.DOCTOR_IS_ABSENT);
+    }
+
     public static ConflictException doctorHasMedicalDataLinked() {
         return new ConflictException("conflict.doctor_has_appointments", ErrorMessages.DOCTOR_HAS_MEDICAL_DATA_LINKED);
     }
@@ -66,4 +82,8 @@ public class ConflictException extends ApiRuntimeException {
     public static ConflictException appointmentSlotCannotBeBookedByDoctor() {
         return new ConflictException("conflict.appointment_slot_cannot_be_booked_by_doctor", ErrorMessages.APPOINTMENT_SLOT_CANNOT_BE_BOOKED_BY_DOCTOR);
     }
+
+    public static ConflictException waitlistEntryIsClosed() {
+        return new ConflictException("conflict.waitlist_entry_is_closed", ErrorMessages.WAITLIST_ENTRY_IS_CLOSED);
+    }
 }
@@ -66,4 +66,20 @@ public class DataNotFoundException extends ApiRuntimeException {
     public static DataNotFoundException chatNotFound() {
         return new DataNotFoundException("data_not_found.chat", ErrorMessages.CHAT_NOT_FOUND);
     }
-}
\ No newline at end of file
+
+    public static DataNotFoundException waitlistEntryNotFound() {
+        return new DataNotFoundException("data_not_found.waitlist_entry", ErrorMessages.WAITLIST_ENTRY_NOT_FOUND);
+    }
+
+    public static DataNotFoundException doctorAbsenceNotFound() {
+        return new DataNotFoundException("data_not_found.doctor_absence", ErrorMessages.DOCTOR_ABSENCE_NOT_FOUND);
+    }
+
+    public static DataNotFoundException rescheduleJobNotFound() {
+        return new DataNotFoundException("data_not_found.reschedule_job", ErrorMessages.RESCHEDULE_JOB_NOT_FOUND);
+    }
+
+    public static DataNotFoundException generationJobNotFound() {
+        return new DataNotFoundException("data_not_found.generation_job", ErrorMessages.GENERATION_JOB_NOT_FOUND);
+    }
+}
@@ -0,0 +1,80 @@
+package com.kikisito.salus.api.mapper;
+
+import com.kikisito.salus.api.dto.*;
+import com.kikisito.salus.api.embeddable.DireccionEmbeddable;
+import com.kikisito.salus.api.entity.*;
+import org.mapstruct.Builder;
+import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
+import org.mapstruct.MappingConstants;
+import org.mapstruct.Named;
+
+// Conversión de entidades a DTO. La implementación la genera MapStruct al compilar, así que cada DTO se rellena
+// con llamadas directas a getters y setters y solo se leen las asociaciones que aparecen en el DTO.
+// Los campos del DTO que no salen de la entidad se ignoran explícitamente
+@Mapper(componentModel = MappingConstants.ComponentModel.SPRING, builder = @Builder(disableBuilder = true))
+public interface DtoMapper {
+    UserDTO toUserDTO(UserEntity user);
+
+    ReducedUserDTO toReducedUserDTO(UserEntity user);
+
+    DireccionDTO toDireccionDTO(DireccionEmbeddable direccion);
+
+    SpecialtyDTO toSpecialtyDTO(SpecialtyEntity specialty);
+
+    MedicalCenterDTO toMedicalCenterDTO(MedicalCenterEntity medicalCenter);
+
+    RoomDTO toRoomDTO(RoomEntity room);
+
+    MedicalProfileDTO toMedicalProfileDTO(MedicalProfileEntity medicalProfile);
+
+    // El identificador del turno solo se usa en los huecos calculados en el modo virtual
+    @Mapping(target = "appointmentId", source = "appointment.id")
+    @Mapping(target = "scheduleId", ignore = true)
+    AppointmentSlotDTO toAppointmentSlotDTO(AppointmentSlotEntity appointmentSlot);
+
+    AppointmentDTO toAppointmentDTO(AppointmentEntity appointment);
+
+    // Para las respuestas NDJSON: sin los documentos de cada cita, que se cargarían cita a cita
+    @Named("streamedAppointment")
+    @Mapping(target = "reports", ignore = true)
+    @Mapping(target = "prescriptions", ignore = true)
+    @Mapping(target = "medicalTests", ignore = true)
+    AppointmentDTO toStreamedAppointmentDTO(AppointmentEntity appointment);
+
+    ReducedAppointmentDTO toReducedAppointmentDTO(AppointmentEntity appointment);
+
+    @Mapping(target = "appointmentId", source = "appointment.id")
+    ReportDTO toReportDTO(ReportEntity report);
+
+    @Mapping(target = "prescriptionId", source = "prescription.id")
+    MedicationDTO toMedicationDTO(MedicationEntity medication);
+
+    @Mapping(target = "appointmentId", source = "appointment.id")
+    PrescriptionDTO toPrescriptionDTO(PrescriptionEntity prescription);
+
+    @Mapping(target = "uploadDate", ignore = true)
+    AttachmentDTO toAttachmentDTO(AttachmentEntity attachment);
+
+    @Mapping(target = "appointmentId", source = "appointment.id")
+    MedicalTestDTO toMedicalTestDTO(MedicalTestEntity medicalTest);
+
+    // La fecha de envío se devuelve como texto con el mismo formato que LocalDateTime.toString()
+    @Mapping(target = "chatId", source = "chat.id")
+    @Mapping(target = "createdAt", expression = "java(message.getCreatedAt() == null ? null : message.getCreatedAt().toString())")
+    ChatMessageDTO toChatMessageDTO(ChatMessagesEntity message);
+
+    // El último mensaje y los mensajes sin leer los calcula ChatService
+    @Mapping(target = "lastMessage", ignore = true)
+    @Mapping(target = "unreadMessages", ignore = true)
+    ChatDTO toChatDTO(ChatEntity chat);
+
+    DoctorScheduleDTO toDoctorScheduleDTO(DoctorScheduleEntity schedule);
+
+    DoctorAbsenceDTO toDoctorAbsenceDTO(DoctorAbsenceEntity absence);
+
+    WaitlistEntryDTO toWaitlistEntryDTO(WaitlistEntryEntity entry);
+
+    @Mapping(target = "doctorId", source = "doctor.id")
+    AppointmentSlotGenerationJobDTO toAppointmentSlotGenerationJobDTO(AppointmentSlotGenerationJobEntity job);
+}
@@ -0,0 +1,46 @@
+package com.kikisito.salus.api.mapper;
+
+import com.kikisito.salus.api.dto.DireccionDTO;
+import com.kikisito.salus.api.dto.request.*;
+import com.kikisito.salus.api.embeddable.DireccionEmbeddable;
+import com.kikisito.salus.api.entity.*;
+import org.mapstruct.*;
+
+// Conversión de peticiones a entidades. Solo se copian los datos simples de la petición: las asociaciones llegan como
+// identificadores y las busca y asigna cada servicio, así que se ignoran aquí. Los campos de las entidades que no
+// aparecen en la petición (identificador, listas de relaciones, auditoría...) no se tocan
+@Mapper(componentModel = MappingConstants.ComponentModel.SPRING, builder = @Builder(disableBuilder = true), unmappedTargetPolicy = ReportingPolicy.IGNORE)
+public interface RequestMapper {
+    @Mapping(target = "doctor", ignore = true)
+    @Mapping(target = "specialty", ignore = true)
+    @Mapping(target = "room", ignore = true)
+    DoctorScheduleEntity toDoctorScheduleEntity(DoctorScheduleRequest request);
+
+    MedicalCenterEntity toMedicalCenterEntity(NewMedicalCenterRequest request);
+
+    void updateMedicalCenterEntity(NewMedicalCenterRequest request, @MappingTarget MedicalCenterEntity medicalCenter);
+
+    @Mapping(target = "medicalCenter", ignore = true)
+    RoomEntity toRoomEntity(RoomRequest request);
+
+    @Mapping(target = "medicalCenter", ignore = true)
+    void updateRoomEntity(RoomRequest request, @MappingTarget RoomEntity room);
+
+    SpecialtyEntity toSpecialtyEntity(AddSpecialtyRequest request);
+
+    void updateSpecialtyEntity(AddSpecialtyRequest request, @MappingTarget SpecialtyEntity specialty);
+
+    @Mapping(target = "appointment", ignore = true)
+    @Mapping(target = "specialty", ignore = true)
+    @Mapping(target = "doctor", ignore = true)
+    @Mapping(target = "patient", ignore = true)
+    void updateReportEntity(ReportRequest request, @MappingTarget ReportEntity report);
+
+    @Mapping(target = "doctor", ignore = true)
+    @Mapping(target = "patient", ignore = true)
+    @Mapping(target = "specialty", ignore = true)
+    @Mapping(target = "appointment", ignore = true)
+    MedicalTestEntity toMedicalTestEntity(MedicalTestRequest request);
+
+    DireccionEmbeddable toDireccionEmbeddable(DireccionDTO direccion);
+}
@@ -0,0 +1,104 @@
+package com.kikisito.salus.api.occupancy;
+
+import com.kikisito.salus.api.entity.DoctorAbsenceEntity;
+import com.kikisito.salus.api.repository.DoctorAbsenceRepository;
+import com.kikisito.salus.api.transaction.AfterCommit;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.*;
+
+// Índice en memoria de las ausencias de los médicos de hoy en adelante. Por cada médico se guardan las ausencias
+// fusionadas en intervalos que no solapan, ordenados por inicio, de forma que comprobar si un hueco cae en una
+// ausencia es una búsqueda en un árbol. Lo consultan todas las formas de generar o calcular huecos
+@Component
+@RequiredArgsConstructor
+public class AbsenceIndex {
+    private static final int MINUTES_PER_DAY = 24 * 60;
+
+    @Autowired
+    private final DoctorAbsenceRepository doctorAbsenceRepository;
+
+    // Se sustituye entero en cada recarga, así que se puede leer sin bloqueos
+    private volatile Map<Integer, NavigableMap<LocalDateTime, LocalDateTime>> absences = Map.of();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        this.rebuild();
+    }
+
+    // Las ausencias cambian poco, así que tras cada cambio se vuelven a cargar todas
+    public synchronized void rebuild() {
+        Map<Integer, NavigableMap<LocalDateTime, LocalDateTime>> loaded = new HashMap<>();
+        List<DoctorAbsenceEntity> upcoming = new ArrayList<>(doctorAbsenceRepository.findByEndDateTimeAfter(LocalDate.now().atStartOfDay()));
+        upcoming.sort(Comparator.comparing(DoctorAbsenceEntity::getStartDateTime));
+
+        for(DoctorAbsenceEntity absence : upcoming) {
+            NavigableMap<LocalDateTime, LocalDateTime> doctorAbsences = loaded.computeIfAbsent(absence.getDoctor().getId(), id -> new TreeMap<>());
+
+            // Como se recorren por orden de inicio, una ausencia solo puede fusionarse con la última añadida
+            Map.Entry<LocalDateTime, LocalDateTime> last = doctorAbsences.lastEntry();
+            if(last != null && !absence.getStartDateTime().isAfter(last.getValue())) {
+                if(absence.getEndDateTime().isAfter(last.getValue())) {
+                    doctorAbsences.put(last.getKey(), absence.getEndDateTime());
+                }
+            } else {
+                doctorAbsences.put(absence.getStartDateTime(), absence.getEndDateTime());
+            }
+        }
+
+        absences = loaded;
+    }
+
+    // Vuelve a cargar el índice cuando se confirma la transacción actual
+    public void rebuildAfterCommit() {
+        AfterCommit.run(this::rebuild);
+    }
+
+    // Indica si el médico está ausente en algún momento del intervalo [inicio, fin)
+    public boolean overlaps(Integer doctorId, LocalDateTime start, LocalDateTime end) {
+        NavigableMap<LocalDateTime, LocalDateTime> doctorAbsences = absences.get(doctorId);
+        if(doctorAbsences == null) {
+            return false;
+        }
+
+        // La última ausencia que empieza antes del fin es la única que puede solapar, porque no solapan entre sí
+        Map.Entry<LocalDateTime, LocalDateTime> candidate = doctorAbsences.lowerEntry(end);
+        return candidate != null && candidate.getValue().isAfter(start);
+    }
+
+    public boolean overlaps(Integer doctorId, LocalDate date, LocalTime startTime, LocalTime endTime) {
+        return this.overlaps(doctorId, date.atTime(startTime), date.atTime(endTime));
+    }
+
+    // Minutos del día en los que el médico está ausente, para descontarlos al calcular huecos
+    public IntervalSet absentMinutes(Integer doctorId, LocalDate date) {
+        NavigableMap<LocalDateTime, LocalDateTime> doctorAbsences = absences.get(doctorId);
+        if(doctorAbsences == null) {
+            return IntervalSet.EMPTY;
+        }
+
+        LocalDateTime dayStart = date.atStartOfDay();
+        LocalDateTime dayEnd = date.plusDays(1).atStartOfDay();
+
+        // Ausencias que empiezan antes de que acabe el día, empezando por la que puede venir del día anterior
+        LocalDateTime from = Optional.ofNullable(doctorAbsences.lowerKey(dayStart)).orElse(dayStart);
+        IntervalSet minutes = IntervalSet.EMPTY;
+        for(Map.Entry<LocalDateTime, LocalDateTime> absence : doctorAbsences.subMap(from, true, dayEnd, false).entrySet()) {
+            if(!absence.getValue().isAfter(dayStart)) {
+                continue;
+            }
+
+            int start = absence.getKey().isAfter(dayStart) ? IntervalSet.minuteOf(absence.getKey().toLocalTime()) : 0;
+            int end = absence.getValue().isBefore(dayEnd) ? IntervalSet.minuteOf(absence.getValue().toLocalTime()) : MINUTES_PER_DAY;
+            minutes = minutes.with(start, end);
+        }
+        return minutes;
+    }
+}
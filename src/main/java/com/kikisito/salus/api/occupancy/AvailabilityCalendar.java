@@ -0,0 +1,305 @@
+package com.kikisito.salus.api.occupancy;
+
+import com.kikisito.salus.api.cache.AvailabilityCache;
+import com.kikisito.salus.api.config.AppointmentSlotsConfiguration;
+import com.kikisito.salus.api.dto.AppointmentSlotAvailabilityDTO;
+import com.kikisito.salus.api.entity.AppointmentSlotEntity;
+import com.kikisito.salus.api.entity.DoctorScheduleEntity;
+import com.kikisito.salus.api.repository.AppointmentSlotRepository;
+import com.kikisito.salus.api.repository.DoctorScheduleRepository;
+import com.kikisito.salus.api.transaction.AfterCommit;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.BiConsumer;
+import java.util.function.UnaryOperator;
+
+// Calendario en memoria de los huecos libres de cada médico, por especialidad y centro médico, con un mapa de bits
+// por día. Permite saber qué médicos y centros tienen huecos libres sin consultar la base de datos. Se carga al
+// arrancar, se actualiza al reservar, anular, crear y borrar huecos, y se reconcilia periódicamente con la base de datos.
+// Cada cambio invalida también las entradas afectadas de la caché de disponibilidad
+@Component
+@RequiredArgsConstructor
+public class AvailabilityCalendar {
+    @Autowired
+    private final AppointmentSlotRepository appointmentSlotRepository;
+
+    @Autowired
+    private final DoctorScheduleRepository doctorScheduleRepository;
+
+    @Autowired
+    private final AppointmentSlotsConfiguration appointmentSlotsConfiguration;
+
+    @Autowired
+    private final AvailabilityCache availabilityCache;
+
+    @Autowired
+    private final AbsenceIndex absenceIndex;
+
+    private volatile Calendars calendars = new Calendars();
+
+    // Cambios confirmados mientras se carga el calendario. Es null cuando no hay ninguna carga en curso
+    private List<CalendarChange> pendingChanges;
+
+    private final Object changesLock = new Object();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        if(appointmentSlotsConfiguration.isAvailabilityCalendarEnabled()) {
+            this.rebuild();
+        }
+    }
+
+    // Reconciliación periódica con la base de datos. También descarta los días que ya han pasado
+    @Scheduled(cron = "${application.appointment-slots.availability-calendar-reconcile-cron:0 */15 * * * *}")
+    public void reconcile() {
+        if(appointmentSlotsConfiguration.isAvailabilityCalendarEnabled()) {
+            this.rebuild();
+        }
+    }
+
+    // Vuelve a cargar el calendario completo desde la base de datos. Los cambios que se confirman durante la carga se
+    // aplican también sobre el calendario nuevo antes de sustituir al anterior, para que no se pierdan
+    public synchronized void rebuild() {
+        Calendars loaded = this.loadWithChanges(null);
+        synchronized(changesLock) {
+            pendingChanges.forEach(change -> change.applyTo(loaded));
+            pendingChanges = null;
+            calendars = loaded;
+        }
+        availabilityCache.invalidateAll();
+    }
+
+    // Vuelve a cargar el calendario de un médico cuando se confirma la transacción actual
+    public void reloadDoctor(Integer doctorId) {
+        AfterCommit.run(() -> {
+            synchronized(this) {
+                Calendars doctorCalendars = this.loadWithChanges(doctorId);
+
+                Set<CalendarKey> affected = new HashSet<>();
+                synchronized(changesLock) {
+                    pendingChanges.stream().filter(change -> change.key().doctorId().equals(doctorId)).forEach(change -> change.applyTo(doctorCalendars));
+                    pendingChanges = null;
+
+                    // Se invalidan las consultas de disponibilidad de las especialidades y centros que tenía y que tiene ahora
+                    affected.addAll(calendars.removeDoctor(doctorId));
+                    doctorCalendars.forEach((key, days) -> {
+                        calendars.put(key, days);
+                        affected.add(key);
+                    });
+                }
+                affected.forEach(key -> availabilityCache.invalidate(key.doctorId(), key.specialtyId(), key.medicalCenterId()));
+            }
+        });
+    }
+
+    // Vuelve a cargar el calendario completo cuando se confirma la transacción actual
+    public void rebuildAfterCommit() {
+        AfterCommit.run(this::rebuild);
+    }
+
+    // Los datos del hueco se leen en el momento, dentro de la transacción, y el cambio se aplica al confirmarla
+    public void addSlot(AppointmentSlotEntity slot) {
+        int start = this.minuteOf(slot.getStartTime());
+        int end = this.minuteOf(slot.getEndTime());
+        boolean isFree = slot.getAppointment() == null;
+        this.update(slot, bitmap -> bitmap.with(start, end, isFree));
+    }
+
+    public void removeSlot(AppointmentSlotEntity slot) {
+        int start = this.minuteOf(slot.getStartTime());
+        this.update(slot, bitmap -> bitmap.without(start));
+    }
+
+    public void markBooked(AppointmentSlotEntity slot) {
+        int start = this.minuteOf(slot.getStartTime());
+        this.update(slot, bitmap -> bitmap.withState(start, false));
+    }
+
+    public void markFree(AppointmentSlotEntity slot) {
+        int start = this.minuteOf(slot.getStartTime());
+        this.update(slot, bitmap -> bitmap.withState(start, true));
+    }
+
+    public boolean hasAvailability(Integer doctorId, Integer specialtyId, Integer medicalCenterId) {
+        NavigableMap<LocalDate, SlotBitmap> days = calendars.get(new CalendarKey(doctorId, specialtyId, medicalCenterId));
+        return days != null && this.hasUpcomingFreeSlot(days);
+    }
+
+    // Médicos con algún hueco libre de la especialidad en el centro médico. Solo se recorren los médicos de ese centro
+    public Set<Integer> findAvailableDoctorIds(Integer medicalCenterId, Integer specialtyId) {
+        Set<Integer> doctorIds = new HashSet<>();
+        calendars.doctors(specialtyId, medicalCenterId).forEach((doctorId, days) -> {
+            if(this.hasUpcomingFreeSlot(days)) {
+                doctorIds.add(doctorId);
+            }
+        });
+        return doctorIds;
+    }
+
+    // Centros médicos con algún hueco libre de la especialidad. Solo se recorren los centros de esa especialidad, y de
+    // cada uno hasta encontrar un médico con huecos libres
+    public Set<Integer> findAvailableMedicalCenterIds(Integer specialtyId) {
+        Set<Integer> medicalCenterIds = new HashSet<>();
+        calendars.medicalCenters(specialtyId).forEach((medicalCenterId, doctors) -> {
+            if(doctors.values().stream().anyMatch(this::hasUpcomingFreeSlot)) {
+                medicalCenterIds.add(medicalCenterId);
+            }
+        });
+        return medicalCenterIds;
+    }
+
+    // Abre el registro de cambios y carga el calendario. Quien lo llama aplica después los cambios registrados y lo cierra
+    private Calendars loadWithChanges(Integer doctorId) {
+        synchronized(changesLock) {
+            pendingChanges = new ArrayList<>();
+        }
+
+        try {
+            return this.load(doctorId);
+        } catch (RuntimeException e) {
+            synchronized(changesLock) {
+                pendingChanges = null;
+            }
+            throw e;
+        }
+    }
+
+    // Carga los huecos de hoy en adelante, de todos los médicos o de uno solo. En el modo virtual se parte de la rejilla
+    // de los turnos hasta el horizonte y encima se colocan los huecos que ya existen como fila
+    private Calendars load(Integer doctorId) {
+        LocalDate today = LocalDate.now();
+        Calendars loaded = new Calendars();
+
+        if(appointmentSlotsConfiguration.isVirtualMode()) {
+            LocalDate endDate = today.plusWeeks(appointmentSlotsConfiguration.getHorizonWeeks());
+            for(DoctorScheduleEntity schedule : doctorScheduleRepository.findWithRoom(doctorId)) {
+                if(schedule.getDuration() == null || schedule.getDuration() <= 0) {
+                    continue;
+                }
+
+                CalendarKey key = new CalendarKey(schedule.getDoctor().getId(), schedule.getSpecialty().getId(), schedule.getRoom().getMedicalCenter().getId());
+                SlotBitmap grid = SlotBitmap.grid(this.minuteOf(schedule.getStartTime()), this.minuteOf(schedule.getEndTime()), schedule.getDuration());
+
+                LocalDate date = today.plusDays(Math.floorMod(schedule.getDayOfWeek().getValue() - today.getDayOfWeek().getValue(), 7));
+                for(; !date.isAfter(endDate); date = date.plusWeeks(1)) {
+                    // Los huecos que caen en una ausencia del médico no se ofrecen
+                    SlotBitmap dayGrid = grid.withoutOverlapping(absenceIndex.absentMinutes(key.doctorId(), date));
+                    if(!dayGrid.isEmpty()) {
+                        loaded.getOrCreate(key).merge(date, dayGrid, SlotBitmap::withAll);
+                    }
+                }
+            }
+        }
+
+        for(AppointmentSlotAvailabilityDTO slot : appointmentSlotRepository.findAvailabilityFrom(today, doctorId)) {
+            CalendarKey key = new CalendarKey(slot.doctorId(), slot.specialtyId(), slot.medicalCenterId());
+            int start = this.minuteOf(slot.startTime());
+            int end = this.minuteOf(slot.endTime());
+            loaded.getOrCreate(key).compute(slot.date(), (date, bitmap) -> (bitmap == null ? SlotBitmap.EMPTY : bitmap).with(start, end, !slot.booked()));
+        }
+
+        return loaded;
+    }
+
+    private void update(AppointmentSlotEntity slot, UnaryOperator<SlotBitmap> change) {
+        CalendarKey key = new CalendarKey(slot.getDoctor().getId(), slot.getSpecialty().getId(), slot.getRoom().getMedicalCenter().getId());
+        LocalDate slotDate = slot.getDate();
+
+        AfterCommit.run(() -> {
+            CalendarChange calendarChange = new CalendarChange(key, slotDate, change);
+            synchronized(changesLock) {
+                calendarChange.applyTo(calendars);
+                if(pendingChanges != null) {
+                    pendingChanges.add(calendarChange);
+                }
+            }
+            availabilityCache.invalidate(key.doctorId(), key.specialtyId(), key.medicalCenterId());
+        });
+    }
+
+    private boolean hasUpcomingFreeSlot(NavigableMap<LocalDate, SlotBitmap> days) {
+        LocalDate today = LocalDate.now();
+        int now = this.minuteOf(LocalTime.now());
+
+        for(Map.Entry<LocalDate, SlotBitmap> day : days.tailMap(today, true).entrySet()) {
+            boolean hasFreeSlot = day.getKey().isEqual(today) ? day.getValue().hasFreeAfter(now) : day.getValue().freeCount() > 0;
+            if(hasFreeSlot) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int minuteOf(LocalTime time) {
+        return IntervalSet.minuteOf(time);
+    }
+
+    private record CalendarKey(Integer doctorId, Integer specialtyId, Integer medicalCenterId) {}
+
+    // Cambio de un día del calendario de un médico. Todos los cambios de huecos dejan el hueco en un estado concreto, así que
+    // aplicarlo otra vez sobre un calendario cargado después de confirmarse no cambia el resultado
+    private record CalendarChange(CalendarKey key, LocalDate date, UnaryOperator<SlotBitmap> change) {
+        void applyTo(Calendars calendars) {
+            calendars.getOrCreate(key).compute(date, (day, bitmap) -> {
+                SlotBitmap updated = change.apply(bitmap == null ? SlotBitmap.EMPTY : bitmap);
+                return updated.isEmpty() ? null : updated;
+            });
+        }
+    }
+
+    // Calendarios de los médicos agrupados por especialidad y centro médico, para que las búsquedas de disponibilidad
+    // solo recorran los médicos y centros de la especialidad buscada
+    private static final class Calendars {
+        private final Map<Integer, Map<Integer, Map<Integer, NavigableMap<LocalDate, SlotBitmap>>>> bySpecialty = new ConcurrentHashMap<>();
+
+        NavigableMap<LocalDate, SlotBitmap> get(CalendarKey key) {
+            return this.doctors(key.specialtyId(), key.medicalCenterId()).get(key.doctorId());
+        }
+
+        NavigableMap<LocalDate, SlotBitmap> getOrCreate(CalendarKey key) {
+            return bySpecialty.computeIfAbsent(key.specialtyId(), id -> new ConcurrentHashMap<>())
+                    .computeIfAbsent(key.medicalCenterId(), id -> new ConcurrentHashMap<>())
+                    .computeIfAbsent(key.doctorId(), id -> new ConcurrentSkipListMap<>());
+        }
+
+        void put(CalendarKey key, NavigableMap<LocalDate, SlotBitmap> days) {
+            bySpecialty.computeIfAbsent(key.specialtyId(), id -> new ConcurrentHashMap<>())
+                    .computeIfAbsent(key.medicalCenterId(), id -> new ConcurrentHashMap<>())
+                    .put(key.doctorId(), days);
+        }
+
+        Map<Integer, Map<Integer, NavigableMap<LocalDate, SlotBitmap>>> medicalCenters(Integer specialtyId) {
+            return bySpecialty.getOrDefault(specialtyId, Map.of());
+        }
+
+        Map<Integer, NavigableMap<LocalDate, SlotBitmap>> doctors(Integer specialtyId, Integer medicalCenterId) {
+            return this.medicalCenters(specialtyId).getOrDefault(medicalCenterId, Map.of());
+        }
+
+        // Quita los calendarios de un médico y devuelve de qué especialidades y centros eran
+        List<CalendarKey> removeDoctor(Integer doctorId) {
+            List<CalendarKey> removed = new ArrayList<>();
+            bySpecialty.forEach((specialtyId, medicalCenters) -> medicalCenters.forEach((medicalCenterId, doctors) -> {
+                if(doctors.remove(doctorId) != null) {
+                    removed.add(new CalendarKey(doctorId, specialtyId, medicalCenterId));
+                }
+            }));
+            return removed;
+        }
+
+        void forEach(BiConsumer<CalendarKey, NavigableMap<LocalDate, SlotBitmap>> action) {
+            bySpecialty.forEach((specialtyId, medicalCenters) -> medicalCenters.forEach((medicalCenterId, doctors) ->
+                    doctors.forEach((doctorId, days) -> action.accept(new CalendarKey(doctorId, specialtyId, medicalCenterId), days))));
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.kikisito.salus.api.occupancy;
+
+import java.time.LocalTime;
+import java.util.Arrays;
+
+// Conjunto inmutable de intervalos [inicio, fin) expresados en minutos desde medianoche.
+// Los intervalos se guardan ordenados por inicio junto con el máximo fin acumulado, de forma
+// que comprobar si un intervalo solapa con alguno del conjunto es una búsqueda binaria.
+// Cada modificación devuelve un conjunto nuevo, por lo que se puede leer sin bloqueos
+public final class IntervalSet {
+    public static final IntervalSet EMPTY = new IntervalSet(new int[0], new int[0]);
+
+    private final int[] starts;
+    private final int[] ends;
+
+    // maxEnds[i] es el mayor fin de los intervalos 0..i
+    private final int[] maxEnds;
+
+    private IntervalSet(int[] starts, int[] ends) {
+        this.starts = starts;
+        this.ends = ends;
+        this.maxEnds = new int[ends.length];
+        for(int i = 0; i < ends.length; i++) {
+            this.maxEnds[i] = i == 0 ? ends[i] : Math.max(this.maxEnds[i - 1], ends[i]);
+        }
+    }
+
+    // Construye el conjunto a partir de pares {inicio, fin} sin ordenar
+    public static IntervalSet of(int[][] intervals) {
+        int[][] sorted = intervals.clone();
+        Arrays.sort(sorted, (a, b) -> a[0] != b[0] ? Integer.compare(a[0], b[0]) : Integer.compare(a[1], b[1]));
+
+        int[] starts = new int[sorted.length];
+        int[] ends = new int[sorted.length];
+        for(int i = 0; i < sorted.length; i++) {
+            starts[i] = sorted[i][0];
+            ends[i] = sorted[i][1];
+        }
+        return new IntervalSet(starts, ends);
+    }
+
+    public static int minuteOf(LocalTime time) {
+        return time.toSecondOfDay() / 60;
+    }
+
+    public int size() {
+        return starts.length;
+    }
+
+    public boolean isEmpty() {
+        return starts.length == 0;
+    }
+
+    // Dos intervalos [s1, e1) y [s2, e2) solapan si s1 < e2 y e1 > s2. Basta con mirar el mayor fin
+    // de los intervalos que empiezan antes de que termine el nuevo
+    public boolean overlaps(int start, int end) {
+        int last = this.lastStartBefore(end);
+        return last >= 0 && maxEnds[last] > start;
+    }
+
+    public boolean contains(int start, int end) {
+        return this.indexOf(start, end) >= 0;
+    }
+
+    public IntervalSet with(int start, int end) {
+        // Se inserta tras los intervalos que empiezan antes o a la vez que el nuevo
+        int position = this.lastStartBefore(start + 1) + 1;
+
+        int[] newStarts = new int[starts.length + 1];
+        int[] newEnds = new int[ends.length + 1];
+        System.arraycopy(starts, 0, newStarts, 0, position);
+        System.arraycopy(ends, 0, newEnds, 0, position);
+        newStarts[position] = start;
+        newEnds[position] = end;
+        System.arraycopy(starts, position, newStarts, position + 1, starts.length - position);
+        System.arraycopy(ends, position, newEnds, position + 1, ends.length - position);
+        return new IntervalSet(newStarts, newEnds);
+    }
+
+    // Elimina una aparición del intervalo. Si no existe, se devuelve el mismo conjunto
+    public IntervalSet without(int start, int end) {
+        int index = this.indexOf(start, end);
+        if(index < 0) {
+            return this;
+        }
+
+        int[] newStarts = new int[starts.length - 1];
+        int[] newEnds = new int[ends.length - 1];
+        System.arraycopy(starts, 0, newStarts, 0, index);
+        System.arraycopy(ends, 0, newEnds, 0, index);
+        System.arraycopy(starts, index + 1, newStarts, index, starts.length - index - 1);
+        System.arraycopy(ends, index + 1, newEnds, index, ends.length - index - 1);
+        return new IntervalSet(newStarts, newEnds);
+    }
+
+    private int indexOf(int start, int end) {
+        for(int i = this.lastStartBefore(start + 1); i >= 0 && starts[i] == start; i--) {
+            if(ends[i] == end) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Índice del último intervalo cuyo inicio es estrictamente menor que el valor dado, o -1 si no hay ninguno
+    private int lastStartBefore(int value) {
+        int low = 0;
+        int high = starts.length;
+        while(low < high) {
+            int middle = (low + high) >>> 1;
+            if(starts[middle] < value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low - 1;
+    }
+}
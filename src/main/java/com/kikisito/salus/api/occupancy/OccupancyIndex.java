@@ -0,0 +1,316 @@
+package com.kikisito.salus.api.occupancy;
+
+import com.kikisito.salus.api.dto.AppointmentSlotIntervalDTO;
+import com.kikisito.salus.api.repository.AppointmentSlotRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Índice en memoria de la ocupación de médicos y consultas por día. Se carga al arrancar con los huecos
+// de hoy en adelante y se mantiene al crear y borrar huecos, de forma que comprobar un solapamiento no
+// necesita consultar la base de datos. Las fechas anteriores a las cubiertas se consultan en la base de datos
+@Component
+@RequiredArgsConstructor
+public class OccupancyIndex {
+    @Autowired
+    private final AppointmentSlotRepository appointmentSlotRepository;
+
+    private volatile Map<OccupancyKey, IntervalSet> doctorOccupancy = new ConcurrentHashMap<>();
+    private volatile Map<OccupancyKey, IntervalSet> roomOccupancy = new ConcurrentHashMap<>();
+
+    // Primera fecha cubierta por el índice. Es null mientras no se ha cargado
+    private volatile LocalDate coveredFrom;
+
+    // Reservas y liberaciones inmediatas cuya transacción aún no ha terminado. La tabla de huecos todavía no las
+    // refleja, así que una recarga las vuelve a aplicar. Se protegen con el bloqueo del índice
+    private final Map<AppointmentSlotIntervalDTO, Integer> pendingReservations = new HashMap<>();
+    private final Map<AppointmentSlotIntervalDTO, Integer> pendingReleases = new HashMap<>();
+
+    // Cambios hechos mientras se recarga el índice, que se aplican a los mapas nuevos antes de cambiarlos por los actuales.
+    // Es null cuando no hay ninguna recarga en curso
+    private List<OccupancyChange> rebuildJournal;
+
+    private final Object rebuildLock = new Object();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        this.rebuild();
+    }
+
+    // Vuelve a cargar el índice desde la tabla de huecos. Los mapas nuevos se construyen aparte, sin bloquear las reservas,
+    // y se cambian por los actuales tras aplicarles los cambios que han llegado mientras tanto
+    public void rebuild() {
+        synchronized(rebuildLock) {
+            LocalDate today = LocalDate.now();
+
+            // Las transacciones que siguen abiertas pueden confirmarse antes o después de la lectura, así que sus cambios
+            // se apuntan desde el principio
+            synchronized(this) {
+                rebuildJournal = new ArrayList<>();
+                pendingReservations.forEach((interval, count) -> rebuildJournal.add(new OccupancyChange(interval, true)));
+                pendingReleases.forEach((interval, count) -> rebuildJournal.add(new OccupancyChange(interval, false)));
+            }
+
+            Map<OccupancyKey, IntervalSet> newDoctorOccupancy = new ConcurrentHashMap<>();
+            Map<OccupancyKey, IntervalSet> newRoomOccupancy = new ConcurrentHashMap<>();
+            try {
+                Map<OccupancyKey, List<int[]>> doctorIntervals = new HashMap<>();
+                Map<OccupancyKey, List<int[]>> roomIntervals = new HashMap<>();
+                for(AppointmentSlotIntervalDTO interval : appointmentSlotRepository.findIntervalsFrom(today)) {
+                    int[] minutes = this.minutesOf(interval);
+                    doctorIntervals.computeIfAbsent(new OccupancyKey(interval.doctorId(), interval.date()), key -> new ArrayList<>()).add(minutes);
+                    roomIntervals.computeIfAbsent(new OccupancyKey(interval.roomId(), interval.date()), key -> new ArrayList<>()).add(minutes);
+                }
+
+                doctorIntervals.forEach((key, intervals) -> newDoctorOccupancy.put(key, IntervalSet.of(intervals.toArray(int[][]::new))));
+                roomIntervals.forEach((key, intervals) -> newRoomOccupancy.put(key, IntervalSet.of(intervals.toArray(int[][]::new))));
+            } catch (RuntimeException e) {
+                synchronized(this) {
+                    rebuildJournal = null;
+                }
+                throw e;
+            }
+
+            synchronized(this) {
+                // Una reserva que ya se confirmó antes de la lectura está en los mapas nuevos y no se añade dos veces
+                for(OccupancyChange change : rebuildJournal) {
+                    int[] minutes = this.minutesOf(change.interval());
+                    OccupancyKey doctorKey = new OccupancyKey(change.interval().doctorId(), change.interval().date());
+                    OccupancyKey roomKey = new OccupancyKey(change.interval().roomId(), change.interval().date());
+                    if(change.occupied()) {
+                        this.addIfAbsent(newDoctorOccupancy, doctorKey, minutes);
+                        this.addIfAbsent(newRoomOccupancy, roomKey, minutes);
+                    } else {
+                        this.remove(newDoctorOccupancy, doctorKey, minutes);
+                        this.remove(newRoomOccupancy, roomKey, minutes);
+                    }
+                }
+
+                doctorOccupancy = newDoctorOccupancy;
+                roomOccupancy = newRoomOccupancy;
+                rebuildJournal = null;
+                coveredFrom = today;
+            }
+        }
+    }
+
+    // Cada noche se descartan los días que ya han pasado
+    @Scheduled(cron = "0 0 0 * * *")
+    public synchronized void evictPastDays() {
+        LocalDate today = LocalDate.now();
+        doctorOccupancy.keySet().removeIf(key -> key.date().isBefore(today));
+        roomOccupancy.keySet().removeIf(key -> key.date().isBefore(today));
+        if(coveredFrom != null) {
+            coveredFrom = today;
+        }
+    }
+
+    public boolean covers(LocalDate date) {
+        LocalDate from = coveredFrom;
+        return from != null && !date.isBefore(from);
+    }
+
+    // Indica si el intervalo solapa con otro hueco del médico o de la consulta
+    public boolean isOccupied(AppointmentSlotIntervalDTO interval) {
+        if(!this.covers(interval.date())) {
+            return appointmentSlotRepository.existsOverlappingSlot(interval.doctorId(), interval.roomId(), interval.date(), interval.startTime(), interval.endTime());
+        }
+
+        int[] minutes = this.minutesOf(interval);
+        return this.overlaps(doctorOccupancy, new OccupancyKey(interval.doctorId(), interval.date()), minutes)
+                || this.overlaps(roomOccupancy, new OccupancyKey(interval.roomId(), interval.date()), minutes);
+    }
+
+    // Comprueba de una pasada una lista de intervalos candidatos. Devuelve los que solapan con el índice
+    // o con un candidato anterior de la misma lista
+    public List<AppointmentSlotIntervalDTO> findConflicts(Collection<AppointmentSlotIntervalDTO> candidates) {
+        Map<OccupancyKey, IntervalSet> acceptedByDoctor = new HashMap<>();
+        Map<OccupancyKey, IntervalSet> acceptedByRoom = new HashMap<>();
+
+        List<AppointmentSlotIntervalDTO> conflicts = new ArrayList<>();
+        for(AppointmentSlotIntervalDTO candidate : candidates) {
+            int[] minutes = this.minutesOf(candidate);
+            OccupancyKey doctorKey = new OccupancyKey(candidate.doctorId(), candidate.date());
+            OccupancyKey roomKey = new OccupancyKey(candidate.roomId(), candidate.date());
+
+            if(this.isOccupied(candidate) || this.overlaps(acceptedByDoctor, doctorKey, minutes) || this.overlaps(acceptedByRoom, roomKey, minutes)) {
+                conflicts.add(candidate);
+                continue;
+            }
+
+            this.add(acceptedByDoctor, doctorKey, minutes);
+            this.add(acceptedByRoom, roomKey, minutes);
+        }
+
+        return conflicts;
+    }
+
+    // Reserva el intervalo si no solapa con ningún otro. La comprobación y la reserva son atómicas.
+    // Si la transacción actual se revierte, la reserva se libera
+    public boolean tryReserve(AppointmentSlotIntervalDTO interval) {
+        return this.tryReserveAll(List.of(interval));
+    }
+
+    // Reserva todos los intervalos o ninguno
+    public boolean tryReserveAll(Collection<AppointmentSlotIntervalDTO> intervals) {
+        if(intervals.isEmpty()) {
+            return true;
+        }
+
+        // Las fechas no cubiertas por el índice se consultan en la base de datos y no se reservan
+        List<AppointmentSlotIntervalDTO> indexed = intervals.stream().filter(interval -> this.covers(interval.date())).toList();
+        List<AppointmentSlotIntervalDTO> notIndexed = intervals.stream().filter(interval -> !this.covers(interval.date())).toList();
+        if(!this.findConflicts(notIndexed).isEmpty()) {
+            return false;
+        }
+
+        synchronized(this) {
+            if(!this.findConflicts(indexed).isEmpty()) {
+                return false;
+            }
+
+            indexed.forEach(this::occupy);
+
+            TransactionChanges changes = this.transactionChanges();
+            if(changes != null) {
+                changes.reserved.addAll(indexed);
+                indexed.forEach(interval -> pendingReservations.merge(interval, 1, Integer::sum));
+            }
+        }
+
+        return true;
+    }
+
+    // Libera el intervalo al confirmar la transacción actual, junto con el resto de sus cambios. No usa AfterCommit
+    // para no registrar una sincronización por cada intervalo en las anulaciones por lotes
+    public void release(AppointmentSlotIntervalDTO interval) {
+        TransactionChanges changes = this.transactionChanges();
+        if(changes == null) {
+            this.vacate(interval);
+            return;
+        }
+
+        changes.released.add(interval);
+    }
+
+    // Libera el intervalo en el momento, para que la misma transacción pueda volver a reservarlo.
+    // Si la transacción se revierte, el intervalo vuelve a quedar ocupado
+    public synchronized void releaseImmediately(AppointmentSlotIntervalDTO interval) {
+        this.vacate(interval);
+
+        TransactionChanges changes = this.transactionChanges();
+        if(changes != null) {
+            changes.releasedImmediately.add(interval);
+            pendingReleases.merge(interval, 1, Integer::sum);
+        }
+    }
+
+    // Cambios de la transacción actual, que se aplican o se deshacen con una única sincronización al terminar.
+    // Devuelve null si no hay ninguna transacción
+    private TransactionChanges transactionChanges() {
+        if(!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return null;
+        }
+
+        TransactionChanges changes = (TransactionChanges) TransactionSynchronizationManager.getResource(this);
+        if(changes == null) {
+            changes = new TransactionChanges();
+            TransactionSynchronizationManager.bindResource(this, changes);
+            TransactionSynchronizationManager.registerSynchronization(changes);
+        }
+        return changes;
+    }
+
+    private synchronized void complete(TransactionChanges changes, boolean committed) {
+        if(committed) {
+            changes.released.forEach(this::vacate);
+        } else {
+            changes.reserved.forEach(this::vacate);
+            changes.releasedImmediately.forEach(this::occupy);
+        }
+
+        changes.reserved.forEach(interval -> pendingReservations.computeIfPresent(interval, (k, count) -> count > 1 ? count - 1 : null));
+        changes.releasedImmediately.forEach(interval -> pendingReleases.computeIfPresent(interval, (k, count) -> count > 1 ? count - 1 : null));
+    }
+
+    private synchronized void occupy(AppointmentSlotIntervalDTO interval) {
+        int[] minutes = this.minutesOf(interval);
+        this.add(doctorOccupancy, new OccupancyKey(interval.doctorId(), interval.date()), minutes);
+        this.add(roomOccupancy, new OccupancyKey(interval.roomId(), interval.date()), minutes);
+        if(rebuildJournal != null) {
+            rebuildJournal.add(new OccupancyChange(interval, true));
+        }
+    }
+
+    private synchronized void vacate(AppointmentSlotIntervalDTO interval) {
+        int[] minutes = this.minutesOf(interval);
+        this.remove(doctorOccupancy, new OccupancyKey(interval.doctorId(), interval.date()), minutes);
+        this.remove(roomOccupancy, new OccupancyKey(interval.roomId(), interval.date()), minutes);
+        if(rebuildJournal != null) {
+            rebuildJournal.add(new OccupancyChange(interval, false));
+        }
+    }
+
+    private boolean overlaps(Map<OccupancyKey, IntervalSet> occupancy, OccupancyKey key, int[] minutes) {
+        IntervalSet intervals = occupancy.get(key);
+        return intervals != null && intervals.overlaps(minutes[0], minutes[1]);
+    }
+
+    private void add(Map<OccupancyKey, IntervalSet> occupancy, OccupancyKey key, int[] minutes) {
+        occupancy.compute(key, (k, intervals) -> (intervals == null ? IntervalSet.EMPTY : intervals).with(minutes[0], minutes[1]));
+    }
+
+    private void addIfAbsent(Map<OccupancyKey, IntervalSet> occupancy, OccupancyKey key, int[] minutes) {
+        occupancy.compute(key, (k, intervals) -> {
+            IntervalSet current = intervals == null ? IntervalSet.EMPTY : intervals;
+            return current.contains(minutes[0], minutes[1]) ? current : current.with(minutes[0], minutes[1]);
+        });
+    }
+
+    private void remove(Map<OccupancyKey, IntervalSet> occupancy, OccupancyKey key, int[] minutes) {
+        occupancy.computeIfPresent(key, (k, intervals) -> {
+            IntervalSet remaining = intervals.without(minutes[0], minutes[1]);
+            return remaining.isEmpty() ? null : remaining;
+        });
+    }
+
+    private int[] minutesOf(AppointmentSlotIntervalDTO interval) {
+        return new int[] { IntervalSet.minuteOf(interval.startTime()), IntervalSet.minuteOf(interval.endTime()) };
+    }
+
+    private record OccupancyKey(Integer id, LocalDate date) {}
+
+    private record OccupancyChange(AppointmentSlotIntervalDTO interval, boolean occupied) {}
+
+    // Si la transacción se suspende para abrir otra nueva, sus cambios dejan de estar asociados al hilo hasta que se reanuda
+    private class TransactionChanges implements TransactionSynchronization {
+        private final List<AppointmentSlotIntervalDTO> reserved = new ArrayList<>();
+        private final List<AppointmentSlotIntervalDTO> released = new ArrayList<>();
+        private final List<AppointmentSlotIntervalDTO> releasedImmediately = new ArrayList<>();
+
+        @Override
+        public void suspend() {
+            TransactionSynchronizationManager.unbindResource(OccupancyIndex.this);
+        }
+
+        @Override
+        public void resume() {
+            TransactionSynchronizationManager.bindResource(OccupancyIndex.this, this);
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(OccupancyIndex.this);
+            OccupancyIndex.this.complete(this, status == STATUS_COMMITTED);
+        }
+    }
+}
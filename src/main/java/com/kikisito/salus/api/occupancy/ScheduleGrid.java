@@ -0,0 +1,22 @@
+package com.kikisito.salus.api.occupancy;
+
+// Regla que decide qué huecos forman la rejilla de un turno: [inicio, inicio + duración), [inicio + duración, ...)
+// mientras el hueco termine dentro del turno. La usan la generación, el listado y la reserva de huecos virtuales y la
+// reubicación de citas, para que ninguno ofrezca un hueco que otro rechace
+public final class ScheduleGrid {
+    private ScheduleGrid() {}
+
+    // Los minutos son desde medianoche. Como el fin del turno es como mucho las 23:59, un hueco que cabe en el turno
+    // nunca pasa de medianoche
+    public static boolean fits(int scheduleStart, int scheduleEnd, int duration, int slotStart, int slotEnd) {
+        return duration > 0
+                && slotStart >= scheduleStart
+                && (slotStart - scheduleStart) % duration == 0
+                && slotEnd - slotStart == duration
+                && slotEnd <= scheduleEnd;
+    }
+
+    public static boolean fits(int scheduleStart, int scheduleEnd, int duration, int slotStart) {
+        return fits(scheduleStart, scheduleEnd, duration, slotStart, slotStart + duration);
+    }
+}
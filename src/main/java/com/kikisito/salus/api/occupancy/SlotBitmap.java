@@ -0,0 +1,191 @@
+package com.kikisito.salus.api.occupancy;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+// Huecos de un médico en un día con un bit por hueco que indica si está libre. Los huecos se guardan
+// ordenados por hora de inicio, de forma que el bit de cada hueco es su posición en la rejilla del turno.
+// Al igual que IntervalSet, es inmutable: cada cambio devuelve un mapa nuevo y se puede leer sin bloqueos
+public final class SlotBitmap {
+    public static final SlotBitmap EMPTY = new SlotBitmap(new int[0], new int[0], new BitSet());
+
+    private final int[] starts;
+    private final int[] ends;
+    private final BitSet free;
+
+    private SlotBitmap(int[] starts, int[] ends, BitSet free) {
+        this.starts = starts;
+        this.ends = ends;
+        this.free = free;
+    }
+
+    // Rejilla de huecos libres de un turno: [inicio, inicio + duración), [inicio + duración, ...) hasta el fin
+    public static SlotBitmap grid(int start, int end, int duration) {
+        int count = duration <= 0 || end <= start ? 0 : (end - start) / duration;
+
+        int[] starts = new int[count];
+        int[] ends = new int[count];
+        for(int i = 0; i < count; i++) {
+            starts[i] = start + i * duration;
+            ends[i] = starts[i] + duration;
+        }
+
+        BitSet free = new BitSet(count);
+        free.set(0, count);
+        return new SlotBitmap(starts, ends, free);
+    }
+
+    public int size() {
+        return starts.length;
+    }
+
+    public boolean isEmpty() {
+        return starts.length == 0;
+    }
+
+    public int freeCount() {
+        return free.cardinality();
+    }
+
+    public boolean isFree(int start) {
+        int index = Arrays.binarySearch(starts, start);
+        return index >= 0 && free.get(index);
+    }
+
+    // Indica si hay algún hueco libre que empiece después del minuto dado
+    public boolean hasFreeAfter(int minute) {
+        int index = this.firstStartAfter(minute);
+        return index < starts.length && free.nextSetBit(index) >= 0;
+    }
+
+    // Añade un hueco. Los huecos que solapan con él se sustituyen, por ejemplo el hueco calculado
+    // de la rejilla cuando se guarda como fila
+    public SlotBitmap with(int start, int end, boolean isFree) {
+        int kept = 0;
+        for(int i = 0; i < starts.length; i++) {
+            if(!(starts[i] < end && ends[i] > start)) {
+                kept++;
+            }
+        }
+
+        int[] newStarts = new int[kept + 1];
+        int[] newEnds = new int[kept + 1];
+        BitSet newFree = new BitSet(kept + 1);
+
+        int position = 0;
+        boolean inserted = false;
+        for(int i = 0; i < starts.length; i++) {
+            if(starts[i] < end && ends[i] > start) {
+                continue;
+            }
+
+            if(!inserted && starts[i] > start) {
+                this.put(newStarts, newEnds, newFree, position++, start, end, isFree);
+                inserted = true;
+            }
+            this.put(newStarts, newEnds, newFree, position++, starts[i], ends[i], free.get(i));
+        }
+
+        if(!inserted) {
+            this.put(newStarts, newEnds, newFree, position, start, end, isFree);
+        }
+
+        return new SlotBitmap(newStarts, newEnds, newFree);
+    }
+
+    // Añade todos los huecos de otro mapa, por ejemplo los de otro turno del mismo día
+    public SlotBitmap withAll(SlotBitmap other) {
+        SlotBitmap result = this;
+        for(int i = 0; i < other.starts.length; i++) {
+            result = result.with(other.starts[i], other.ends[i], other.free.get(i));
+        }
+        return result;
+    }
+
+    // Elimina el hueco que empieza a la hora dada. Si no existe, se devuelve el mismo mapa
+    public SlotBitmap without(int start) {
+        int index = Arrays.binarySearch(starts, start);
+        if(index < 0) {
+            return this;
+        }
+
+        int[] newStarts = new int[starts.length - 1];
+        int[] newEnds = new int[ends.length - 1];
+        System.arraycopy(starts, 0, newStarts, 0, index);
+        System.arraycopy(ends, 0, newEnds, 0, index);
+        System.arraycopy(starts, index + 1, newStarts, index, starts.length - index - 1);
+        System.arraycopy(ends, index + 1, newEnds, index, ends.length - index - 1);
+
+        BitSet newFree = new BitSet(newStarts.length);
+        for(int i = free.nextSetBit(0); i >= 0; i = free.nextSetBit(i + 1)) {
+            if(i != index) {
+                newFree.set(i < index ? i : i - 1);
+            }
+        }
+
+        return new SlotBitmap(newStarts, newEnds, newFree);
+    }
+
+    // Elimina los huecos que solapan con alguno de los intervalos dados, por ejemplo con una ausencia del médico
+    public SlotBitmap withoutOverlapping(IntervalSet blocked) {
+        if(blocked.isEmpty()) {
+            return this;
+        }
+
+        int kept = 0;
+        for(int i = 0; i < starts.length; i++) {
+            if(!blocked.overlaps(starts[i], ends[i])) {
+                kept++;
+            }
+        }
+        if(kept == starts.length) {
+            return this;
+        }
+
+        int[] newStarts = new int[kept];
+        int[] newEnds = new int[kept];
+        BitSet newFree = new BitSet(kept);
+
+        int position = 0;
+        for(int i = 0; i < starts.length; i++) {
+            if(!blocked.overlaps(starts[i], ends[i])) {
+                this.put(newStarts, newEnds, newFree, position++, starts[i], ends[i], free.get(i));
+            }
+        }
+
+        return new SlotBitmap(newStarts, newEnds, newFree);
+    }
+
+    // Marca como libre u ocupado el hueco que empieza a la hora dada. Si no existe, se devuelve el mismo mapa
+    public SlotBitmap withState(int start, boolean isFree) {
+        int index = Arrays.binarySearch(starts, start);
+        if(index < 0 || free.get(index) == isFree) {
+            return this;
+        }
+
+        BitSet newFree = (BitSet) free.clone();
+        newFree.set(index, isFree);
+        return new SlotBitmap(starts, ends, newFree);
+    }
+
+    private void put(int[] newStarts, int[] newEnds, BitSet newFree, int position, int start, int end, boolean isFree) {
+        newStarts[position] = start;
+        newEnds[position] = end;
+        newFree.set(position, isFree);
+    }
+
+    // Índice del primer hueco que empieza después del minuto dado, o el número de huecos si no hay ninguno
+    private int firstStartAfter(int minute) {
+        int low = 0;
+        int high = starts.length;
+        while(low < high) {
+            int middle = (low + high) >>> 1;
+            if(starts[middle] <= minute) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
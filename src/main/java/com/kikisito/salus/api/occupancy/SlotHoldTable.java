@@ -0,0 +1,103 @@
+package com.kikisito.salus.api.occupancy;
+
+import com.kikisito.salus.api.dto.AppointmentSlotHoldDTO;
+import com.kikisito.salus.api.repository.AppointmentSlotHoldRepository;
+import com.kikisito.salus.api.transaction.AfterCommit;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+// Tabla en memoria de los huecos retenidos por un paciente mientras completa la reserva. Las retenciones se toman
+// con operaciones atómicas del mapa (putIfAbsent y replace), sin cerrojos, y las lecturas no bloquean. Se carga al
+// arrancar desde la tabla de retenciones, de forma que las retenciones sobreviven a un reinicio
+@Component
+@RequiredArgsConstructor
+public class SlotHoldTable {
+    @Autowired
+    private final AppointmentSlotHoldRepository appointmentSlotHoldRepository;
+
+    private final ConcurrentMap<Integer, Hold> holds = new ConcurrentHashMap<>();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        for(AppointmentSlotHoldDTO hold : appointmentSlotHoldRepository.findActive(LocalDateTime.now())) {
+            holds.put(hold.slotId(), new Hold(hold.userId(), hold.expiresAt()));
+        }
+    }
+
+    // Retiene el hueco para el usuario hasta la fecha indicada. Falla si otro usuario lo tiene retenido y su retención
+    // no ha caducado. Si el usuario ya lo tenía retenido, se amplía el plazo. Si la transacción actual se revierte,
+    // se deshace el cambio
+    public boolean tryHold(Integer slotId, Integer userId, LocalDateTime expiresAt) {
+        Hold hold = new Hold(userId, expiresAt);
+        LocalDateTime now = LocalDateTime.now();
+
+        Hold previous;
+        while(true) {
+            previous = holds.putIfAbsent(slotId, hold);
+            if(previous == null) {
+                break;
+            }
+
+            if(previous.isActive(now) && !previous.userId().equals(userId)) {
+                return false;
+            }
+
+            if(holds.replace(slotId, previous, hold)) {
+                break;
+            }
+        }
+
+        Hold replaced = previous;
+        AfterCommit.onRollback(() -> {
+            if(replaced == null) {
+                holds.remove(slotId, hold);
+            } else {
+                holds.replace(slotId, hold, replaced);
+            }
+        });
+        return true;
+    }
+
+    // Libera la retención del usuario cuando se confirma la transacción actual
+    public void release(Integer slotId, Integer userId) {
+        AfterCommit.run(() -> {
+            Hold current = holds.get(slotId);
+            if(current != null && current.userId().equals(userId)) {
+                holds.remove(slotId, current);
+            }
+        });
+    }
+
+    public boolean isHeld(Integer slotId) {
+        Hold hold = slotId == null ? null : holds.get(slotId);
+        return hold != null && hold.isActive(LocalDateTime.now());
+    }
+
+    public boolean isHeldByOther(Integer slotId, Integer userId) {
+        Hold hold = slotId == null ? null : holds.get(slotId);
+        return hold != null && hold.isActive(LocalDateTime.now()) && !hold.userId().equals(userId);
+    }
+
+    // Número de retenciones en la tabla, incluidas las caducadas que aún no se han descartado
+    public int size() {
+        return holds.size();
+    }
+
+    // Descarta las retenciones caducadas. Una retención renovada mientras tanto no se descarta
+    public void evictExpired(LocalDateTime now) {
+        holds.entrySet().removeIf(entry -> !entry.getValue().isActive(now));
+    }
+
+    private record Hold(Integer userId, LocalDateTime expiresAt) {
+        boolean isActive(LocalDateTime now) {
+            return expiresAt.isAfter(now);
+        }
+    }
+}
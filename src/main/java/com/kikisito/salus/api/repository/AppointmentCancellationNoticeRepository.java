@@ -0,0 +1,25 @@
+package com.kikisito.salus.api.repository;
+
+import com.kikisito.salus.api.entity.AppointmentCancellationNoticeEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface AppointmentCancellationNoticeRepository extends JpaRepository<AppointmentCancellationNoticeEntity, Integer> {
+    // Avisos sin enviar a los que aún les quedan intentos
+    @Query("""
+            SELECT n.id FROM AppointmentCancellationNoticeEntity n
+            WHERE n.sentAt IS NULL AND n.attempts < :maxAttempts
+            ORDER BY n.id
+            """)
+    List<Integer> findPendingIds(@Param("maxAttempts") int maxAttempts);
+
+    // El aviso se envía fuera de una transacción, así que el paciente se carga con él
+    @Query("SELECT n FROM AppointmentCancellationNoticeEntity n JOIN FETCH n.patient WHERE n.id = :id")
+    Optional<AppointmentCancellationNoticeEntity> findWithPatientById(@Param("id") Integer id);
+}
@@ -1,35 +1,185 @@
 package com.kikisito.salus.api.repository;
 
+import com.kikisito.salus.api.dto.AgendaAppointmentRowDTO;
+import com.kikisito.salus.api.dto.PatientVisitCountDTO;
+import com.kikisito.salus.api.dto.ReducedAppointmentRowDTO;
+import com.kikisito.salus.api.dto.TimelineAppointmentRowDTO;
 import com.kikisito.salus.api.entity.AppointmentEntity;
 import com.kikisito.salus.api.entity.MedicalProfileEntity;
 import com.kikisito.salus.api.entity.SpecialtyEntity;
 import com.kikisito.salus.api.entity.UserEntity;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
+import java.time.LocalTime;
 import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
 public interface AppointmentRepository extends JpaRepository<AppointmentEntity, Integer> {
+    // Columnas de ReducedAppointmentRowDTO. Se unen de forma explícita todas las tablas que necesita el DTO
+    // para que la lista se lea en una sola consulta, sin cargar las entidades
+    String REDUCED_APPOINTMENT_SELECT = """
+            SELECT new com.kikisito.salus.api.dto.ReducedAppointmentRowDTO(
+                a.id, a.type, a.status, a.reason,
+                s.id, s.date, s.startTime, s.endTime,
+                d.id, d.license, d.workEmail, d.workPhone,
+                du.id, du.nombre, du.apellidos, du.sexo,
+                sp.id, sp.name, sp.description,
+                r.id, r.name,
+                mc.id, mc.name, mc.email, mc.phone, mc.addressLine1, mc.addressLine2,
+                mc.zipCode, mc.country, mc.province, mc.municipality, mc.locality
+            )
+            FROM AppointmentEntity a
+            JOIN a.slot s
+            JOIN s.doctor d
+            JOIN d.user du
+            JOIN s.specialty sp
+            JOIN s.room r
+            JOIN r.medicalCenter mc
+            """;
+
     List<AppointmentEntity> findBySlot_DoctorAndSlot_Date(MedicalProfileEntity slotDoctor, LocalDate slotDate);
 
+    // Para las respuestas NDJSON: las citas se leen con un cursor, por bloques del tamaño indicado, en lugar de cargarlas todas.
+    // Cada fila trae el paciente y el hueco con todo lo que aparece en el DTO, porque el contexto de persistencia se vacía
+    // entre bloques. El perfil médico del paciente se trae también porque la relación inversa no se puede cargar en diferido
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "100"))
+    @Query("""
+            SELECT a FROM AppointmentEntity a
+            JOIN FETCH a.slot s
+            JOIN FETCH s.doctor d
+            JOIN FETCH d.user
+            JOIN FETCH s.specialty
+            JOIN FETCH s.room r
+            JOIN FETCH r.medicalCenter
+            LEFT JOIN FETCH a.patient p
+            LEFT JOIN FETCH p.medicalProfile
+            WHERE s.doctor = :doctor AND s.date = :date
+            ORDER BY s.startTime
+            """)
+    Stream<AppointmentEntity> streamByDoctorAndDate(@Param("doctor") MedicalProfileEntity doctor, @Param("date") LocalDate date);
+
+    // Las listas completas de citas cargan el hueco con su médico, especialidad y consulta en la misma consulta.
+    // Los informes, recetas y pruebas de cada cita y las especialidades de los médicos se cargan por lotes
+    @EntityGraph(attributePaths = {"slot", "slot.doctor", "slot.doctor.user", "slot.specialty", "slot.room", "slot.room.medicalCenter"})
     List<AppointmentEntity> findByPatient(UserEntity patient);
 
+    @EntityGraph(attributePaths = {"slot", "slot.doctor", "slot.doctor.user", "slot.specialty", "slot.room", "slot.room.medicalCenter"})
     @Query("SELECT a FROM AppointmentEntity a WHERE a.patient = :patient AND (a.slot.doctor = :doctor OR a.slot.specialty IN :specialties)")
     List<AppointmentEntity> findByPatientWithDoctorOrItsSpecialties(UserEntity patient, MedicalProfileEntity doctor, Collection<SpecialtyEntity> specialties);
 
     boolean existsBySlot_Doctor(MedicalProfileEntity doctor);
 
-    boolean existsBySlot_DoctorAndPatient(MedicalProfileEntity doctor, UserEntity patient);
+    boolean existsBySlot_Doctor_IdAndPatient_Id(Integer doctorId, Integer patientId);
 
-    @Query("SELECT a FROM AppointmentEntity a WHERE a.patient = :patient AND a.slot.date >= CURRENT_DATE")
-    List<AppointmentEntity> findUpcomingAppointmentsByPatient(UserEntity patient);
+    // Comprobación de acceso de un profesional con una sola consulta, sin cargar entidades:
+    // la cita es suya o es de una de sus especialidades
+    @Query("""
+            SELECT CASE WHEN COUNT(a) > 0 THEN true ELSE false END
+            FROM AppointmentEntity a
+            JOIN a.slot s
+            WHERE a.id = :appointmentId
+                AND (s.doctor.id = :doctorId
+                    OR s.specialty IN (SELECT ds FROM MedicalProfileEntity d JOIN d.specialties ds WHERE d.id = :doctorId))
+            """)
+    boolean canDoctorAccessAppointment(@Param("appointmentId") Integer appointmentId, @Param("doctorId") Integer doctorId);
 
-    @Query("SELECT a FROM AppointmentEntity a WHERE a.patient = :patient AND a.slot.date < CURRENT_DATE")
-    List<AppointmentEntity> findPastAppointmentsByPatient(UserEntity patient);
+    @Query(REDUCED_APPOINTMENT_SELECT + "WHERE a.patient = :patient AND s.date >= CURRENT_DATE ORDER BY s.date, s.startTime")
+    List<ReducedAppointmentRowDTO> findUpcomingReducedAppointmentsByPatient(@Param("patient") UserEntity patient);
+
+    @Query(REDUCED_APPOINTMENT_SELECT + "WHERE a.patient = :patient AND s.date < CURRENT_DATE ORDER BY s.date DESC, s.startTime DESC")
+    List<ReducedAppointmentRowDTO> findPastReducedAppointmentsByPatient(@Param("patient") UserEntity patient);
 
     Integer countByPatient(UserEntity patient);
-}
+
+    // Citas de un médico cuyo hueco solapa con el intervalo que va de (startDate, startTime) a (endDate, endTime)
+    @Query("""
+            SELECT a FROM AppointmentEntity a
+            JOIN FETCH a.slot slots
+            JOIN FETCH a.patient
+            WHERE slots.doctor.id = :doctorId
+                AND (slots.date > :startDate OR (slots.date = :startDate AND slots.endTime > :startTime))
+                AND (slots.date < :endDate OR (slots.date = :endDate AND slots.startTime < :endTime))
+            ORDER BY slots.date, slots.startTime
+            """)
+    List<AppointmentEntity> findByDoctorOverlapping(@Param("doctorId") Integer doctorId,
+                                                    @Param("startDate") LocalDate startDate,
+                                                    @Param("startTime") LocalTime startTime,
+                                                    @Param("endDate") LocalDate endDate,
+                                                    @Param("endTime") LocalTime endTime);
+
+    // Borra en una sola sentencia las citas anuladas. Sus documentos se tienen que haber desvinculado antes
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("DELETE FROM AppointmentEntity a WHERE a.id IN :ids")
+    int deleteAppointmentsByIdIn(@Param("ids") Collection<Integer> ids);
+
+    // Citas de la agenda de un médico en un día, con su hueco y su paciente, en una sola consulta
+    @Query("""
+            SELECT new com.kikisito.salus.api.dto.AgendaAppointmentRowDTO(
+                a.id, a.type, a.status, a.reason,
+                s.id, s.startTime, s.endTime, r.name, sp.name,
+                p.id, p.nombre, p.apellidos, p.sexo, p.fechaNacimiento
+            )
+            FROM AppointmentEntity a
+            JOIN a.slot s
+            JOIN s.room r
+            JOIN s.specialty sp
+            JOIN a.patient p
+            WHERE s.doctor.id = :doctorId AND s.date = :date
+            ORDER BY s.startTime
+            """)
+    List<AgendaAppointmentRowDTO> findAgendaRowsByDoctorAndDate(@Param("doctorId") Integer doctorId, @Param("date") LocalDate date);
+
+    // Visitas atendidas por el médico antes de la fecha, agrupadas por paciente
+    @Query("""
+            SELECT new com.kikisito.salus.api.dto.PatientVisitCountDTO(a.patient.id, COUNT(a))
+            FROM AppointmentEntity a
+            JOIN a.slot s
+            WHERE s.doctor.id = :doctorId
+                AND a.patient.id IN :patientIds
+                AND s.date < :date
+                AND a.status = com.kikisito.salus.api.type.AppointmentStatusType.COMPLETED
+            GROUP BY a.patient.id
+            """)
+    List<PatientVisitCountDTO> countPriorVisitsByPatientIdIn(@Param("doctorId") Integer doctorId, @Param("patientIds") Collection<Integer> patientIds, @Param("date") LocalDate date);
+
+    // Citas del historial de un paciente, de la más reciente a la más antigua, a partir de la posición dada (paginación por clave).
+    // Sin médico se devuelven todas; con médico, las suyas y las de sus especialidades
+    @Query("""
+            SELECT new com.kikisito.salus.api.dto.TimelineAppointmentRowDTO(
+                a.id, s.date, s.startTime, a.type, a.status, a.reason,
+                d.id, du.nombre, du.apellidos, sp.id, sp.name
+            )
+            FROM AppointmentEntity a
+            JOIN a.slot s
+            JOIN s.doctor d
+            JOIN d.user du
+            JOIN s.specialty sp
+            WHERE a.patient.id = :patientId
+                AND (:doctorId IS NULL
+                    OR d.id = :doctorId
+                    OR sp IN (SELECT ds FROM MedicalProfileEntity md JOIN md.specialties ds WHERE md.id = :doctorId))
+                AND (:beforeDate IS NULL
+                    OR s.date < :beforeDate
+                    OR (s.date = :beforeDate AND s.startTime < :beforeTime)
+                    OR (s.date = :beforeDate AND s.startTime = :beforeTime AND a.id < :beforeId))
+            ORDER BY s.date DESC, s.startTime DESC, a.id DESC
+            """)
+    List<TimelineAppointmentRowDTO> findTimelineRows(@Param("patientId") Integer patientId,
+                                                     @Param("doctorId") Integer doctorId,
+                                                     @Param("beforeDate") LocalDate beforeDate,
+                                                     @Param("beforeTime") LocalTime beforeTime,
+                                                     @Param("beforeId") Integer beforeId,
+                                                     Pageable pageable);
+}
\ No newline at end of file
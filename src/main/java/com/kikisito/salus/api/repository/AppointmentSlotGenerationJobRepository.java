@@ -0,0 +1,27 @@
+package com.kikisito.salus.api.repository;
+
+import com.kikisito.salus.api.entity.AppointmentSlotGenerationJobEntity;
+import com.kikisito.salus.api.type.GenerationJobStatusType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface AppointmentSlotGenerationJobRepository extends JpaRepository<AppointmentSlotGenerationJobEntity, Integer> {
+    @Query("SELECT j.id FROM AppointmentSlotGenerationJobEntity j WHERE j.status IN :statuses ORDER BY j.id")
+    List<Integer> findIdsByStatusIn(@Param("statuses") Collection<GenerationJobStatusType> statuses);
+
+    // El trabajo se ejecuta fuera de una transacción, así que el médico y el usuario se cargan con él
+    @Query("""
+            SELECT j FROM AppointmentSlotGenerationJobEntity j
+            LEFT JOIN FETCH j.doctor
+            LEFT JOIN FETCH j.requestedBy
+            WHERE j.id = :id
+            """)
+    Optional<AppointmentSlotGenerationJobEntity> findWithDoctorAndRequesterById(@Param("id") Integer id);
+}
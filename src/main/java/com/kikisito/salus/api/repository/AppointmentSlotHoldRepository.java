@@ -0,0 +1,43 @@
+package com.kikisito.salus.api.repository;
+
+import com.kikisito.salus.api.dto.AppointmentSlotHoldDTO;
+import com.kikisito.salus.api.entity.AppointmentSlotHoldEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+@Repository
+public interface AppointmentSlotHoldRepository extends JpaRepository<AppointmentSlotHoldEntity, Integer> {
+    Optional<AppointmentSlotHoldEntity> findBySlot_Id(Integer slotId);
+
+    @Query("""
+            SELECT new com.kikisito.salus.api.dto.AppointmentSlotHoldDTO(holds.slot.id, holds.user.id, holds.expiresAt)
+            FROM AppointmentSlotHoldEntity holds
+            WHERE holds.expiresAt > :now
+            """)
+    List<AppointmentSlotHoldDTO> findActive(@Param("now") LocalDateTime now);
+
+    // Cuáles de los huecos dados tienen una retención en vigor
+    @Query("SELECT holds.slot.id FROM AppointmentSlotHoldEntity holds WHERE holds.slot.id IN :slotIds AND holds.expiresAt > :now")
+    Set<Integer> findActiveSlotIdsIn(@Param("slotIds") Collection<Integer> slotIds, @Param("now") LocalDateTime now);
+
+    // Retenciones en vigor del usuario sobre huecos distintos del dado
+    @Query("SELECT COUNT(holds) FROM AppointmentSlotHoldEntity holds WHERE holds.user.id = :userId AND holds.slot.id <> :slotId AND holds.expiresAt > :now")
+    long countActiveByUserExcludingSlot(@Param("userId") Integer userId, @Param("slotId") Integer slotId, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("DELETE FROM AppointmentSlotHoldEntity holds WHERE holds.slot.id = :slotId")
+    int deleteBySlotId(@Param("slotId") Integer slotId);
+
+    @Modifying
+    @Query("DELETE FROM AppointmentSlotHoldEntity holds WHERE holds.expiresAt <= :now")
+    int deleteExpired(@Param("now") LocalDateTime now);
+}
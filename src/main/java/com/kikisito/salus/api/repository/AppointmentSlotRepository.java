@@ -1,20 +1,134 @@
 package com.kikisito.salus.api.repository;
 
+import com.kikisito.salus.api.dto.AppointmentSlotAvailabilityDTO;
+import com.kikisito.salus.api.dto.AppointmentSlotIntervalDTO;
 import com.kikisito.salus.api.entity.*;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface AppointmentSlotRepository extends JpaRepository<AppointmentSlotEntity, Integer> {
     List<AppointmentSlotEntity> findByDoctorAndDate(MedicalProfileEntity doctor, LocalDate date);
-    List<AppointmentSlotEntity> findByDoctorAndDateBetween(MedicalProfileEntity doctor, LocalDate start, LocalDate end);
     List<AppointmentSlotEntity> findByRoomAndDate(RoomEntity room, LocalDate date);
+    Optional<AppointmentSlotEntity> findByDoctorAndDateAndStartTimeAndEndTime(MedicalProfileEntity doctor, LocalDate date, LocalTime startTime, LocalTime endTime);
+
+    // Las agendas y los listados de huecos mapean la consulta con su centro médico y la cita de cada hueco
+    @EntityGraph(attributePaths = {"specialty", "room", "room.medicalCenter", "appointment"})
+    List<AppointmentSlotEntity> findByDoctorAndDateBetween(MedicalProfileEntity doctor, LocalDate start, LocalDate end);
+
+    @EntityGraph(attributePaths = {"doctor", "doctor.user", "specialty", "room", "room.medicalCenter", "appointment"})
+    List<AppointmentSlotEntity> findByDoctorInAndDateBetween(Collection<MedicalProfileEntity> doctors, LocalDate start, LocalDate end);
+
+    // Para las respuestas NDJSON: los huecos se leen con un cursor, por bloques del tamaño indicado, en lugar de cargarlos todos.
+    // Cada fila trae todo lo que aparece en el DTO, porque el contexto de persistencia se vacía entre bloques
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "100"))
+    @Query("""
+            SELECT s FROM AppointmentSlotEntity s
+            JOIN FETCH s.doctor d
+            JOIN FETCH d.user
+            JOIN FETCH s.specialty
+            JOIN FETCH s.room r
+            JOIN FETCH r.medicalCenter
+            LEFT JOIN FETCH s.appointment
+            WHERE s.doctor = :doctor AND s.date BETWEEN :startDate AND :endDate
+            ORDER BY s.date, s.startTime
+            """)
+    Stream<AppointmentSlotEntity> streamByDoctorAndDateBetween(@Param("doctor") MedicalProfileEntity doctor,
+                                                               @Param("startDate") LocalDate startDate,
+                                                               @Param("endDate") LocalDate endDate);
+
+    @Query("""
+            SELECT new com.kikisito.salus.api.dto.AppointmentSlotIntervalDTO(slots.doctor.id, slots.room.id, slots.date, slots.startTime, slots.endTime)
+            FROM AppointmentSlotEntity slots
+            WHERE slots.date BETWEEN :startDate AND :endDate
+            """)
+    List<AppointmentSlotIntervalDTO> findIntervalsBetween(@Param("startDate") LocalDate startDate,
+                                                          @Param("endDate") LocalDate endDate);
+
+    @Query("""
+            SELECT new com.kikisito.salus.api.dto.AppointmentSlotIntervalDTO(slots.doctor.id, slots.room.id, slots.date, slots.startTime, slots.endTime)
+            FROM AppointmentSlotEntity slots
+            WHERE slots.date BETWEEN :startDate AND :endDate
+                AND (slots.doctor.id = :doctorId OR slots.room.id IN :roomIds)
+            """)
+    List<AppointmentSlotIntervalDTO> findIntervalsByDoctorOrRoomsBetween(@Param("doctorId") Integer doctorId,
+                                                                         @Param("roomIds") Collection<Integer> roomIds,
+                                                                         @Param("startDate") LocalDate startDate,
+                                                                         @Param("endDate") LocalDate endDate);
+
+    // Huecos de cualquier médico en las consultas dadas, para no ofrecer en el modo virtual un horario en el que la consulta está ocupada
+    @Query("""
+            SELECT new com.kikisito.salus.api.dto.AppointmentSlotIntervalDTO(slots.doctor.id, slots.room.id, slots.date, slots.startTime, slots.endTime)
+            FROM AppointmentSlotEntity slots
+            WHERE slots.date BETWEEN :startDate AND :endDate
+                AND slots.room.id IN :roomIds
+            """)
+    List<AppointmentSlotIntervalDTO> findIntervalsByRoomInBetween(@Param("roomIds") Collection<Integer> roomIds,
+                                                                  @Param("startDate") LocalDate startDate,
+                                                                  @Param("endDate") LocalDate endDate);
+
+    @Query("""
+            SELECT new com.kikisito.salus.api.dto.AppointmentSlotIntervalDTO(slots.doctor.id, slots.room.id, slots.date, slots.startTime, slots.endTime)
+            FROM AppointmentSlotEntity slots
+            WHERE slots.date >= :startDate
+            """)
+    List<AppointmentSlotIntervalDTO> findIntervalsFrom(@Param("startDate") LocalDate startDate);
+
+    @Query("""
+            SELECT new com.kikisito.salus.api.dto.AppointmentSlotAvailabilityDTO(slots.doctor.id, slots.specialty.id, r.medicalCenter.id, slots.date, slots.startTime, slots.endTime,
+                CASE WHEN a.id IS NULL THEN FALSE ELSE TRUE END)
+            FROM AppointmentSlotEntity slots
+            JOIN slots.room r
+            LEFT JOIN slots.appointment a
+            WHERE slots.date >= :startDate
+                AND (:doctorId IS NULL OR slots.doctor.id = :doctorId)
+            """)
+    List<AppointmentSlotAvailabilityDTO> findAvailabilityFrom(@Param("startDate") LocalDate startDate,
+                                                              @Param("doctorId") Integer doctorId);
+
+    @Query("""
+            SELECT CASE WHEN COUNT(slots) > 0 THEN TRUE ELSE FALSE END
+            FROM AppointmentSlotEntity slots
+            WHERE slots.date = :date
+                AND (slots.doctor.id = :doctorId OR slots.room.id = :roomId)
+                AND ((:startTime < slots.endTime AND :endTime > slots.startTime))
+            """)
+    boolean existsOverlappingSlot(@Param("doctorId") Integer doctorId,
+                                  @Param("roomId") Integer roomId,
+                                  @Param("date") LocalDate date,
+                                  @Param("startTime") LocalTime startTime,
+                                  @Param("endTime") LocalTime endTime);
+
+    // Huecos libres que generó un turno a partir de una fecha. Los creados a mano no tienen turno y no se incluyen
+    @Query("""
+            SELECT slots FROM AppointmentSlotEntity slots
+            WHERE slots.schedule.id = :scheduleId
+                AND slots.date >= :startDate
+                AND slots.appointment IS NULL
+            """)
+    List<AppointmentSlotEntity> findFreeGeneratedSlots(@Param("scheduleId") Integer scheduleId,
+                                                       @Param("startDate") LocalDate startDate);
+
+    // Los huecos que siguen existiendo al borrar un turno, como los que tienen cita, dejan de estar asociados a él
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE AppointmentSlotEntity slots SET slots.schedule = NULL WHERE slots.schedule.id = :scheduleId")
+    int unlinkSchedule(@Param("scheduleId") Integer scheduleId);
 
     @Query("""
             SELECT slots FROM AppointmentSlotEntity slots
@@ -30,27 +144,80 @@ public interface AppointmentSlotRepository extends JpaRepository<AppointmentSlot
                                                                                        @Param("specialty") SpecialtyEntity specialty,
                                                                                        @Param("doctor") MedicalProfileEntity doctor);
 
+    // Huecos libres y sin retener de una especialidad ordenados por fecha, hora y médico a partir de la posición dada (paginación
+    // por clave). Recorre el índice idx_appointment_slots_specialty_date en orden, así que no depende de cuántas páginas se hayan leído
     @Query("""
-            SELECT CASE WHEN COUNT(slots) > 0 THEN TRUE ELSE FALSE END
+            SELECT slots FROM AppointmentSlotEntity slots
+            JOIN FETCH slots.doctor
+            JOIN FETCH slots.specialty
+            JOIN FETCH slots.room r
+            JOIN FETCH r.medicalCenter mc
+            WHERE slots.specialty.id = :specialtyId
+                AND (:medicalCenterId IS NULL OR mc.id = :medicalCenterId)
+                AND (:doctorId IS NULL OR slots.doctor.id = :doctorId)
+                AND slots.date <= :endDate
+                AND (slots.date > :afterDate
+                    OR (slots.date = :afterDate AND slots.startTime > :afterTime)
+                    OR (slots.date = :afterDate AND slots.startTime = :afterTime AND slots.doctor.id > :afterDoctorId))
+                AND slots.appointment IS NULL
+                AND NOT EXISTS (SELECT 1 FROM AppointmentSlotHoldEntity holds WHERE holds.slot = slots AND holds.expiresAt > :now)
+            ORDER BY slots.date, slots.startTime, slots.doctor.id
+            """)
+    List<AppointmentSlotEntity> findEarliestAvailable(@Param("specialtyId") Integer specialtyId,
+                                                      @Param("medicalCenterId") Integer medicalCenterId,
+                                                      @Param("doctorId") Integer doctorId,
+                                                      @Param("afterDate") LocalDate afterDate,
+                                                      @Param("afterTime") LocalTime afterTime,
+                                                      @Param("afterDoctorId") Integer afterDoctorId,
+                                                      @Param("endDate") LocalDate endDate,
+                                                      @Param("now") LocalDateTime now,
+                                                      Pageable pageable);
+
+    // Huecos libres de un médico que solapan con el intervalo que va de (startDate, startTime) a (endDate, endTime)
+    @Query("""
+            SELECT new com.kikisito.salus.api.dto.AppointmentSlotIntervalDTO(slots.doctor.id, slots.room.id, slots.date, slots.startTime, slots.endTime)
             FROM AppointmentSlotEntity slots
-            WHERE slots.room = :room
-                AND slots.date = :date
-                AND ((:startTime < slots.endTime AND :endTime > slots.startTime))
+            WHERE slots.doctor.id = :doctorId
+                AND (slots.date > :startDate OR (slots.date = :startDate AND slots.endTime > :startTime))
+                AND (slots.date < :endDate OR (slots.date = :endDate AND slots.startTime < :endTime))
+                AND NOT EXISTS (SELECT 1 FROM AppointmentEntity appointments WHERE appointments.slot = slots)
             """)
-    boolean existsRoomOverlappingSlot(@Param("room") RoomEntity room,
-                                      @Param("date") LocalDate date,
-                                      @Param("startTime") LocalTime startTime,
-                                      @Param("endTime") LocalTime endTime);
+    List<AppointmentSlotIntervalDTO> findFreeIntervalsOverlapping(@Param("doctorId") Integer doctorId,
+                                                                  @Param("startDate") LocalDate startDate,
+                                                                  @Param("startTime") LocalTime startTime,
+                                                                  @Param("endDate") LocalDate endDate,
+                                                                  @Param("endTime") LocalTime endTime);
 
+    // Borra en una sola sentencia los huecos libres de un médico que solapan con el intervalo. Los reservados se mantienen
+    @Modifying
     @Query("""
-            SELECT CASE WHEN COUNT(slots) > 0 THEN TRUE ELSE FALSE END
+            DELETE FROM AppointmentSlotEntity slots
+            WHERE slots.doctor.id = :doctorId
+                AND (slots.date > :startDate OR (slots.date = :startDate AND slots.endTime > :startTime))
+                AND (slots.date < :endDate OR (slots.date = :endDate AND slots.startTime < :endTime))
+                AND NOT EXISTS (SELECT 1 FROM AppointmentEntity appointments WHERE appointments.slot = slots)
+            """)
+    int deleteFreeSlotsOverlapping(@Param("doctorId") Integer doctorId,
+                                   @Param("startDate") LocalDate startDate,
+                                   @Param("startTime") LocalTime startTime,
+                                   @Param("endDate") LocalDate endDate,
+                                   @Param("endTime") LocalTime endTime);
+
+    // Huecos libres de entre los dados. Los que se han reservado mientras tanto se omiten
+    @Query("""
+            SELECT new com.kikisito.salus.api.dto.AppointmentSlotIntervalDTO(slots.doctor.id, slots.room.id, slots.date, slots.startTime, slots.endTime)
             FROM AppointmentSlotEntity slots
-            WHERE slots.doctor = :doctor
-                AND slots.date = :date
-                AND ((:startTime < slots.endTime AND :endTime > slots.startTime))
+            WHERE slots.id IN :ids
+                AND NOT EXISTS (SELECT 1 FROM AppointmentEntity appointments WHERE appointments.slot = slots)
+            """)
+    List<AppointmentSlotIntervalDTO> findFreeIntervalsByIdIn(@Param("ids") Collection<Integer> ids);
+
+    // Borra en una sola sentencia los huecos libres de entre los dados
+    @Modifying
+    @Query("""
+            DELETE FROM AppointmentSlotEntity slots
+            WHERE slots.id IN :ids
+                AND NOT EXISTS (SELECT 1 FROM AppointmentEntity appointments WHERE appointments.slot = slots)
             """)
-    boolean existsDoctorOverlappingSlot(@Param("doctor") MedicalProfileEntity doctor,
-                                        @Param("date") LocalDate date,
-                                        @Param("startTime") LocalTime startTime,
-                                        @Param("endTime") LocalTime endTime);
+    int deleteFreeSlotsByIdIn(@Param("ids") Collection<Integer> ids);
 }
@@ -1,10 +1,11 @@
 package com.kikisito.salus.api.repository;
 
 import com.kikisito.salus.api.entity.AttachmentEntity;
-import com.kikisito.salus.api.entity.MedicalProfileEntity;
 import com.kikisito.salus.api.entity.MedicalTestEntity;
 import com.kikisito.salus.api.entity.UserEntity;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -13,6 +14,13 @@ import java.util.List;
 public interface AttachmentRepository extends JpaRepository<AttachmentEntity, Integer> {
     List<AttachmentEntity> findByMedicalTest(MedicalTestEntity medicalTest);
     boolean existsByIdAndUploadedBy(Integer id, UserEntity uploadedBy);
-    boolean existsByIdAndMedicalTest_Patient(Integer id, UserEntity patient);
-    boolean existsByIdAndMedicalTest_Doctor(Integer id, MedicalProfileEntity doctor);
+
+    // El archivo es de una prueba del paciente o del médico indicados, en una sola consulta
+    @Query("""
+            SELECT CASE WHEN COUNT(at) > 0 THEN true ELSE false END
+            FROM AttachmentEntity at
+            JOIN at.medicalTest mt
+            WHERE at.id = :attachmentId AND (mt.patient.id = :userId OR mt.doctor.id = :doctorId)
+            """)
+    boolean canUserAccessAttachment(@Param("attachmentId") Integer attachmentId, @Param("userId") Integer userId, @Param("doctorId") Integer doctorId);
 }
@@ -1,17 +1,66 @@
 package com.kikisito.salus.api.repository;
 
+import com.kikisito.salus.api.dto.ChatUnreadCountDTO;
 import com.kikisito.salus.api.entity.ChatEntity;
 import com.kikisito.salus.api.entity.ChatMessagesEntity;
 import com.kikisito.salus.api.type.MessageSenderType;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface ChatMessageRepository extends JpaRepository<ChatMessagesEntity, Integer> {
-    List<ChatMessagesEntity> findByChatOrderByCreatedAtAsc(ChatEntity chat);
-    List<ChatMessagesEntity> findByChatAndSenderTypeAndReadIsFalse(ChatEntity chat, MessageSenderType senderType);
+    Optional<ChatMessagesEntity> findByIdAndChat(Integer id, ChatEntity chat);
 
-    int countByChatAndReadFalseAndSenderType(ChatEntity chat, MessageSenderType senderType);
+    // Páginas del historial de un chat (paginación por clave sobre idx_chat_messages_chat_created_at). La primera página y
+    // las anteriores a un mensaje se leen de la más reciente a la más antigua para quedarse con las últimas; las posteriores
+    // a un mensaje, en orden cronológico
+    List<ChatMessagesEntity> findByChatOrderByCreatedAtDescIdDesc(ChatEntity chat, Pageable pageable);
+
+    @Query("""
+            SELECT m FROM ChatMessagesEntity m
+            WHERE m.chat = :chat
+                AND (m.createdAt < :createdAt OR (m.createdAt = :createdAt AND m.id < :id))
+            ORDER BY m.createdAt DESC, m.id DESC
+            """)
+    List<ChatMessagesEntity> findPageBefore(@Param("chat") ChatEntity chat, @Param("createdAt") LocalDateTime createdAt, @Param("id") Integer id, Pageable pageable);
+
+    @Query("""
+            SELECT m FROM ChatMessagesEntity m
+            WHERE m.chat = :chat
+                AND (m.createdAt > :createdAt OR (m.createdAt = :createdAt AND m.id > :id))
+            ORDER BY m.createdAt ASC, m.id ASC
+            """)
+    List<ChatMessagesEntity> findPageAfter(@Param("chat") ChatEntity chat, @Param("createdAt") LocalDateTime createdAt, @Param("id") Integer id, Pageable pageable);
+
+    // Marca como leídos en una sola sentencia los mensajes de un lado del chat. Se vacía el contexto para que los mensajes
+    // que se lean después en la misma transacción ya aparezcan como leídos
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE ChatMessagesEntity m SET m.read = true WHERE m.chat = :chat AND m.senderType = :senderType AND m.read = false")
+    int markAsRead(@Param("chat") ChatEntity chat, @Param("senderType") MessageSenderType senderType);
+
+    // Último mensaje de cada uno de los chats indicados, para completar el resumen de los chats antiguos
+    @Query("""
+            SELECT m FROM ChatMessagesEntity m
+            WHERE m.chat IN :chats
+                AND m.createdAt = (SELECT MAX(m2.createdAt) FROM ChatMessagesEntity m2 WHERE m2.chat = m.chat)
+            """)
+    List<ChatMessagesEntity> findLastMessagesByChatIn(@Param("chats") Collection<ChatEntity> chats);
+
+    // Mensajes no leídos de cada uno de los chats indicados. Los chats sin mensajes no leídos no aparecen
+    @Query("""
+            SELECT new com.kikisito.salus.api.dto.ChatUnreadCountDTO(m.chat.id, COUNT(m))
+            FROM ChatMessagesEntity m
+            WHERE m.chat IN :chats AND m.read = false AND m.senderType = :senderType
+            GROUP BY m.chat.id
+            """)
+    List<ChatUnreadCountDTO> countUnreadByChatIn(@Param("chats") Collection<ChatEntity> chats, @Param("senderType") MessageSenderType senderType);
 }
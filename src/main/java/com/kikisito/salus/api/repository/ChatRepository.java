@@ -3,15 +3,60 @@ package com.kikisito.salus.api.repository;
 import com.kikisito.salus.api.entity.ChatEntity;
 import com.kikisito.salus.api.entity.MedicalProfileEntity;
 import com.kikisito.salus.api.entity.UserEntity;
+import com.kikisito.salus.api.type.MessageSenderType;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface ChatRepository extends JpaRepository<ChatEntity, Integer> {
-    List<ChatEntity> findByPatientOrderByUpdatedAtDesc(UserEntity patient);
-    List<ChatEntity> findByDoctorOrderByUpdatedAtDesc(MedicalProfileEntity doctor);
+    // Bandeja de chats: una sola consulta por el índice de paciente o médico y última actividad, porque el último mensaje y los
+    // no leídos están en la propia fila. En la lista del médico también se cargan los pacientes, junto a su perfil médico si lo tienen
+    @EntityGraph(attributePaths = {"doctor", "doctor.user"})
+    List<ChatEntity> findByPatientOrderByLastActivityAtDescIdDesc(UserEntity patient);
+
+    @EntityGraph(attributePaths = {"patient", "patient.medicalProfile", "doctor", "doctor.user"})
+    List<ChatEntity> findByDoctorOrderByLastActivityAtDescIdDesc(MedicalProfileEntity doctor);
+
     Optional<ChatEntity> findByPatientAndDoctor(UserEntity patient, MedicalProfileEntity doctor);
+
+    // Chats creados antes de que el resumen se guardara en la fila
+    List<ChatEntity> findByLastActivityAtIsNull();
+
+    // Guarda el resumen del mensaje enviado y suma los no leídos del destinatario en la misma sentencia, sobre la fila bloqueada,
+    // así que dos mensajes enviados a la vez no pierden ninguna suma
+    @Modifying(flushAutomatically = true)
+    @Query("""
+            UPDATE ChatEntity c SET
+                c.lastMessageId = :messageId,
+                c.lastMessageSenderType = :senderType,
+                c.lastMessagePreview = :preview,
+                c.lastMessageAt = :sentAt,
+                c.lastActivityAt = :sentAt,
+                c.patientUnreadCount = c.patientUnreadCount + :patientUnreadIncrement,
+                c.doctorUnreadCount = c.doctorUnreadCount + :doctorUnreadIncrement
+            WHERE c.id = :chatId
+            """)
+    int registerMessage(@Param("chatId") Integer chatId,
+                        @Param("messageId") Integer messageId,
+                        @Param("senderType") MessageSenderType senderType,
+                        @Param("preview") String preview,
+                        @Param("sentAt") LocalDateTime sentAt,
+                        @Param("patientUnreadIncrement") int patientUnreadIncrement,
+                        @Param("doctorUnreadIncrement") int doctorUnreadIncrement);
+
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE ChatEntity c SET c.patientUnreadCount = 0 WHERE c.id = :chatId")
+    int resetPatientUnreadCount(@Param("chatId") Integer chatId);
+
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE ChatEntity c SET c.doctorUnreadCount = 0 WHERE c.id = :chatId")
+    int resetDoctorUnreadCount(@Param("chatId") Integer chatId);
 }
@@ -0,0 +1,19 @@
+package com.kikisito.salus.api.repository;
+
+import com.kikisito.salus.api.entity.DoctorAbsenceEntity;
+import com.kikisito.salus.api.entity.MedicalProfileEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface DoctorAbsenceRepository extends JpaRepository<DoctorAbsenceEntity, Integer> {
+    List<DoctorAbsenceEntity> findByEndDateTimeAfter(LocalDateTime dateTime);
+
+    List<DoctorAbsenceEntity> findByDoctorAndEndDateTimeAfterOrderByStartDateTime(MedicalProfileEntity doctor, LocalDateTime dateTime);
+
+    // Indica si alguna ausencia del médico cubre entero el intervalo
+    boolean existsByDoctor_IdAndStartDateTimeLessThanEqualAndEndDateTimeGreaterThanEqual(Integer doctorId, LocalDateTime start, LocalDateTime end);
+}
@@ -1,16 +1,68 @@
 package com.kikisito.salus.api.repository;
 
 import com.kikisito.salus.api.entity.DoctorScheduleEntity;
+import com.kikisito.salus.api.entity.MedicalCenterEntity;
 import com.kikisito.salus.api.entity.MedicalProfileEntity;
+import com.kikisito.salus.api.entity.SpecialtyEntity;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface DoctorScheduleRepository extends JpaRepository<DoctorScheduleEntity, Integer> {
+    // Los turnos se mapean con el médico, la especialidad y la consulta con su centro médico
+    @EntityGraph(attributePaths = {"doctor", "doctor.user", "specialty", "room", "room.medicalCenter"})
     List<DoctorScheduleEntity> findByDoctor(MedicalProfileEntity doctor);
 
     List<DoctorScheduleEntity> findByDoctorAndDayOfWeek(MedicalProfileEntity doctor, DayOfWeek dayOfWeek);
-}
+
+    List<DoctorScheduleEntity> findByDoctorId(Integer doctorId);
+
+    @EntityGraph(attributePaths = {"doctor", "doctor.user", "specialty", "room", "room.medicalCenter"})
+    List<DoctorScheduleEntity> findByDoctorAndSpecialtyAndRoom_MedicalCenter(MedicalProfileEntity doctor, SpecialtyEntity specialty, MedicalCenterEntity medicalCenter);
+
+    @EntityGraph(attributePaths = {"doctor", "doctor.user", "specialty", "room", "room.medicalCenter"})
+    @Query("""
+            SELECT s FROM DoctorScheduleEntity s
+            WHERE s.specialty.id = :specialtyId
+                AND (:medicalCenterId IS NULL OR s.room.medicalCenter.id = :medicalCenterId)
+                AND (:doctorId IS NULL OR s.doctor.id = :doctorId)
+            """)
+    List<DoctorScheduleEntity> findForAvailabilitySearch(@Param("specialtyId") Integer specialtyId,
+                                                         @Param("medicalCenterId") Integer medicalCenterId,
+                                                         @Param("doctorId") Integer doctorId);
+
+    @Query("""
+            SELECT s FROM DoctorScheduleEntity s
+            JOIN FETCH s.room
+            WHERE :doctorId IS NULL OR s.doctor.id = :doctorId
+            """)
+    List<DoctorScheduleEntity> findWithRoom(@Param("doctorId") Integer doctorId);
+
+    // Turnos de cualquiera de los médicos o de cualquiera de las consultas, para validar una importación de una vez
+    @Query("""
+            SELECT s FROM DoctorScheduleEntity s
+            WHERE s.doctor.id IN :doctorIds OR s.room.id IN :roomIds
+            """)
+    List<DoctorScheduleEntity> findByDoctorIdInOrRoomIdIn(@Param("doctorIds") Collection<Integer> doctorIds,
+                                                          @Param("roomIds") Collection<Integer> roomIds);
+
+    // Día hasta el que están generados los huecos de todos los turnos. Los turnos sin generar cuentan como el día indicado
+    @Query("SELECT MIN(COALESCE(s.materializedUntil, :notMaterialized)) FROM DoctorScheduleEntity s")
+    LocalDate findMaterializedUntil(@Param("notMaterialized") LocalDate notMaterialized);
+
+    @Modifying(flushAutomatically = true)
+    @Query("""
+            UPDATE DoctorScheduleEntity s SET s.materializedUntil = :materializedUntil
+            WHERE s.materializedUntil IS NULL OR s.materializedUntil < :materializedUntil
+            """)
+    int advanceMaterializedUntil(@Param("materializedUntil") LocalDate materializedUntil);
+}
\ No newline at end of file
@@ -8,6 +8,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.Optional;
 
 @Repository
@@ -36,4 +37,30 @@ public interface MedicalCenterRepository extends JpaRepository<MedicalCenterEnti
                     "OR (LOWER(mc.locality) LIKE LOWER(CONCAT('%', :search, '%')) OR LOWER(mc.municipality) LIKE LOWER(CONCAT('%', :search, '%')))" +
                 ")")
     Page<MedicalCenterEntity> searchByAvailableSpecialty(@Param("specialtyId") Integer specialtyId, @Param("search") String search, Pageable pageable);
+
+    // Versiones de las anteriores para el calendario de disponibilidad, que ya sabe qué centros tienen huecos libres
+    Page<MedicalCenterEntity> findByIdIn(Collection<Integer> ids, Pageable pageable);
+
+    @Query("SELECT mc FROM MedicalCenterEntity mc " +
+            "WHERE mc.id IN :ids " +
+                "AND (LOWER(mc.name) LIKE LOWER(CONCAT('%', :search, '%')) OR LOWER(mc.addressLine1) LIKE LOWER(CONCAT('%', :search, '%'))" +
+                    "OR (LOWER(mc.locality) LIKE LOWER(CONCAT('%', :search, '%')) OR LOWER(mc.municipality) LIKE LOWER(CONCAT('%', :search, '%')))" +
+                ")")
+    Page<MedicalCenterEntity> searchByIdIn(@Param("ids") Collection<Integer> ids, @Param("search") String search, Pageable pageable);
+
+    // Versiones de las anteriores para el modo de huecos virtuales: basta con que haya un turno de la especialidad
+    @Query("SELECT DISTINCT mc FROM MedicalCenterEntity mc " +
+            "JOIN RoomEntity r ON r.medicalCenter.id = mc.id " +
+            "JOIN DoctorScheduleEntity schedules ON schedules.room.id = r.id " +
+            "WHERE schedules.specialty.id = :specialtyId")
+    Page<MedicalCenterEntity> findBySpecialtyWithSchedule(@Param("specialtyId") Integer specialtyId, Pageable pageable);
+
+    @Query("SELECT DISTINCT mc FROM MedicalCenterEntity mc " +
+            "JOIN RoomEntity r ON r.medicalCenter.id = mc.id " +
+            "JOIN DoctorScheduleEntity schedules ON schedules.room.id = r.id " +
+            "WHERE schedules.specialty.id = :specialtyId " +
+                "AND (LOWER(mc.name) LIKE LOWER(CONCAT('%', :search, '%')) OR LOWER(mc.addressLine1) LIKE LOWER(CONCAT('%', :search, '%'))" +
+                    "OR (LOWER(mc.locality) LIKE LOWER(CONCAT('%', :search, '%')) OR LOWER(mc.municipality) LIKE LOWER(CONCAT('%', :search, '%')))" +
+                ")")
+    Page<MedicalCenterEntity> searchBySpecialtyWithSchedule(@Param("specialtyId") Integer specialtyId, @Param("search") String search, Pageable pageable);
 }
@@ -1,5 +1,6 @@
 package com.kikisito.salus.api.repository;
 
+import com.kikisito.salus.api.dto.DoctorSpecialtyDTO;
 import com.kikisito.salus.api.entity.MedicalCenterEntity;
 import com.kikisito.salus.api.entity.MedicalProfileEntity;
 import com.kikisito.salus.api.entity.SpecialtyEntity;
@@ -12,6 +13,7 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -43,6 +45,9 @@ public interface MedicalProfileRepository extends JpaRepository<MedicalProfileEn
 
     Optional<MedicalProfileEntity> findByUser(UserEntity user);
 
+    @Query("SELECT DISTINCT p FROM MedicalProfileEntity p LEFT JOIN FETCH p.specialties WHERE p.id IN :ids")
+    List<MedicalProfileEntity> findWithSpecialtiesByIdIn(@Param("ids") Collection<Integer> ids);
+
     @Query("SELECT p FROM MedicalProfileEntity p " +
             "JOIN AppointmentSlotEntity slots ON p.id = slots.doctor.id " +
             "JOIN RoomEntity r ON slots.room.id = r.id " +
@@ -55,4 +60,24 @@ public interface MedicalProfileRepository extends JpaRepository<MedicalProfileEn
             @Param("medicalCenter") MedicalCenterEntity medicalCenter,
             @Param("specialty") SpecialtyEntity specialty
     );
+
+    // Versión de la anterior para el modo de huecos virtuales: basta con que el médico tenga un turno de la especialidad
+    @Query("SELECT DISTINCT p FROM MedicalProfileEntity p " +
+            "JOIN DoctorScheduleEntity schedules ON p.id = schedules.doctor.id " +
+            "JOIN RoomEntity r ON schedules.room.id = r.id " +
+            "WHERE r.medicalCenter = :medicalCenter " +
+                "AND schedules.specialty = :specialty")
+    List<MedicalProfileEntity> findByMedicalCenterSpecialtyAndHasSchedule(
+            @Param("medicalCenter") MedicalCenterEntity medicalCenter,
+            @Param("specialty") SpecialtyEntity specialty
+    );
+
+    @Query("""
+            SELECT new com.kikisito.salus.api.dto.DoctorSpecialtyDTO(p.id, s.id, s.name, s.description)
+            FROM MedicalProfileEntity p
+            JOIN p.specialties s
+            WHERE p.id IN :doctorIds
+            ORDER BY p.id, s.id
+            """)
+    List<DoctorSpecialtyDTO> findSpecialtiesByDoctorIdIn(@Param("doctorIds") Collection<Integer> doctorIds);
 }
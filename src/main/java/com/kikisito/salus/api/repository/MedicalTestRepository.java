@@ -1,20 +1,90 @@
 package com.kikisito.salus.api.repository;
 
+import com.kikisito.salus.api.dto.PendingMedicalTestDTO;
+import com.kikisito.salus.api.dto.TimelineDocumentRowDTO;
 import com.kikisito.salus.api.entity.MedicalProfileEntity;
 import com.kikisito.salus.api.entity.MedicalTestEntity;
 import com.kikisito.salus.api.entity.SpecialtyEntity;
 import com.kikisito.salus.api.entity.UserEntity;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface MedicalTestRepository extends JpaRepository<MedicalTestEntity, Integer> {
+    @EntityGraph(attributePaths = {"doctor", "doctor.user", "specialty"})
     @Query("SELECT mt FROM MedicalTestEntity mt WHERE mt.patient = :patient AND (mt.doctor = :doctor OR mt.specialty IN :specialties)")
     List<MedicalTestEntity> findByPatientWithDoctorOrItsSpecialties(UserEntity patient, MedicalProfileEntity doctor, Collection<SpecialtyEntity> specialties);
 
     List<MedicalTestEntity> findByPatient(UserEntity patient);
-}
+
+    // Comprobación de acceso de un profesional con una sola consulta, sin cargar entidades:
+    // la prueba es suya, es de una cita suya o su autor comparte alguna especialidad con él
+    @Query("""
+            SELECT CASE WHEN COUNT(mt) > 0 THEN true ELSE false END
+            FROM MedicalTestEntity mt
+            LEFT JOIN mt.appointment a
+            LEFT JOIN a.slot s
+            WHERE mt.id = :medicalTestId
+                AND (mt.doctor.id = :doctorId
+                    OR s.doctor.id = :doctorId
+                    OR EXISTS (
+                        SELECT rs.id FROM MedicalProfileEntity rd JOIN rd.specialties rs
+                        WHERE rd = mt.doctor
+                            AND rs IN (SELECT ds FROM MedicalProfileEntity d JOIN d.specialties ds WHERE d.id = :doctorId)
+                    ))
+            """)
+    boolean canDoctorAccessMedicalTest(@Param("medicalTestId") Integer medicalTestId, @Param("doctorId") Integer doctorId);
+
+    // Desvincula en una sola sentencia los documentos de las citas que se anulan
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE MedicalTestEntity mt SET mt.appointment = null WHERE mt.appointment.id IN :appointmentIds")
+    int unlinkAppointments(@Param("appointmentIds") Collection<Integer> appointmentIds);
+
+    // Pruebas sin resultado de varios pacientes que el médico puede ver: las suyas y las de sus especialidades
+    @Query("""
+            SELECT new com.kikisito.salus.api.dto.PendingMedicalTestDTO(mt.id, mt.patient.id, mt.name, mt.requestedAt, mt.scheduledAt)
+            FROM MedicalTestEntity mt
+            WHERE mt.patient.id IN :patientIds
+                AND mt.completedAt IS NULL
+                AND (mt.doctor.id = :doctorId
+                    OR mt.specialty IN (SELECT ds FROM MedicalProfileEntity d JOIN d.specialties ds WHERE d.id = :doctorId))
+            ORDER BY mt.requestedAt
+            """)
+    List<PendingMedicalTestDTO> findPendingByPatientIdIn(@Param("patientIds") Collection<Integer> patientIds, @Param("doctorId") Integer doctorId);
+
+    // Pruebas médicas del historial de un paciente, con el mismo filtro por médico y la misma paginación que las citas.
+    // Se ordenan por la fecha en que se crearon, que siempre existe, y no por la de solicitud o realización
+    @Query("""
+            SELECT new com.kikisito.salus.api.dto.TimelineDocumentRowDTO(
+                mt.id, mt.createdAt, mt.name, a.id,
+                d.id, du.nombre, du.apellidos, sp.id, sp.name
+            )
+            FROM MedicalTestEntity mt
+            LEFT JOIN mt.appointment a
+            JOIN mt.doctor d
+            JOIN d.user du
+            JOIN mt.specialty sp
+            WHERE mt.patient.id = :patientId
+                AND (:doctorId IS NULL
+                    OR d.id = :doctorId
+                    OR sp IN (SELECT ds FROM MedicalProfileEntity md JOIN md.specialties ds WHERE md.id = :doctorId))
+                AND (:beforeCreatedAt IS NULL
+                    OR mt.createdAt < :beforeCreatedAt
+                    OR (mt.createdAt = :beforeCreatedAt AND mt.id < :beforeId))
+            ORDER BY mt.createdAt DESC, mt.id DESC
+            """)
+    List<TimelineDocumentRowDTO> findTimelineRows(@Param("patientId") Integer patientId,
+                                                  @Param("doctorId") Integer doctorId,
+                                                  @Param("beforeCreatedAt") LocalDateTime beforeCreatedAt,
+                                                  @Param("beforeId") Integer beforeId,
+                                                  Pageable pageable);
+}
\ No newline at end of file
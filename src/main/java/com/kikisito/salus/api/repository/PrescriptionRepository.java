@@ -1,10 +1,18 @@
 package com.kikisito.salus.api.repository;
 
+import com.kikisito.salus.api.dto.ActiveMedicationDTO;
+import com.kikisito.salus.api.dto.TimelineDocumentRowDTO;
 import com.kikisito.salus.api.entity.*;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.Collection;
 import java.util.List;
 
@@ -14,6 +22,70 @@ public interface PrescriptionRepository extends JpaRepository<PrescriptionEntity
     List<PrescriptionEntity> findAllByDoctor(MedicalProfileEntity medicalProfile);
     List<PrescriptionEntity> findAllByPatient(UserEntity patient);
 
+    @EntityGraph(attributePaths = {"doctor", "doctor.user", "specialty"})
     @Query("SELECT p FROM PrescriptionEntity p WHERE p.patient = :patient AND (p.doctor = :doctor OR p.specialty IN :specialties)")
     List<PrescriptionEntity> findByPatientWithDoctorOrItsSpecialties(UserEntity patient, MedicalProfileEntity doctor, Collection<SpecialtyEntity> specialties);
-}
+
+    // Comprobación de acceso de un profesional con una sola consulta, sin cargar entidades:
+    // la receta es suya, es de una cita suya o su autor comparte alguna especialidad con él
+    @Query("""
+            SELECT CASE WHEN COUNT(p) > 0 THEN true ELSE false END
+            FROM PrescriptionEntity p
+            LEFT JOIN p.appointment a
+            LEFT JOIN a.slot s
+            WHERE p.id = :prescriptionId
+                AND (p.doctor.id = :doctorId
+                    OR s.doctor.id = :doctorId
+                    OR EXISTS (
+                        SELECT rs.id FROM MedicalProfileEntity rd JOIN rd.specialties rs
+                        WHERE rd = p.doctor
+                            AND rs IN (SELECT ds FROM MedicalProfileEntity d JOIN d.specialties ds WHERE d.id = :doctorId)
+                    ))
+            """)
+    boolean canDoctorAccessPrescription(@Param("prescriptionId") Integer prescriptionId, @Param("doctorId") Integer doctorId);
+
+    // Desvincula en una sola sentencia los documentos de las citas que se anulan
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE PrescriptionEntity p SET p.appointment = null WHERE p.appointment.id IN :appointmentIds")
+    int unlinkAppointments(@Param("appointmentIds") Collection<Integer> appointmentIds);
+
+    // Medicamentos que varios pacientes están tomando en la fecha, de las recetas que el médico puede ver:
+    // las suyas y las de sus especialidades
+    @Query("""
+            SELECT new com.kikisito.salus.api.dto.ActiveMedicationDTO(m.id, p.id, p.patient.id, m.name, m.dosage, m.frequency, m.startDate, m.endDate)
+            FROM MedicationEntity m
+            JOIN m.prescription p
+            WHERE p.patient.id IN :patientIds
+                AND m.startDate <= :date AND m.endDate >= :date
+                AND (p.doctor.id = :doctorId
+                    OR p.specialty IN (SELECT ds FROM MedicalProfileEntity d JOIN d.specialties ds WHERE d.id = :doctorId))
+            ORDER BY m.startDate
+            """)
+    List<ActiveMedicationDTO> findActiveMedicationsByPatientIdIn(@Param("patientIds") Collection<Integer> patientIds, @Param("doctorId") Integer doctorId, @Param("date") LocalDate date);
+
+    // Recetas del historial de un paciente, con el mismo filtro por médico y la misma paginación que las citas
+    @Query("""
+            SELECT new com.kikisito.salus.api.dto.TimelineDocumentRowDTO(
+                p.id, p.createdAt, a.id,
+                d.id, du.nombre, du.apellidos, sp.id, sp.name
+            )
+            FROM PrescriptionEntity p
+            LEFT JOIN p.appointment a
+            JOIN p.doctor d
+            JOIN d.user du
+            JOIN p.specialty sp
+            WHERE p.patient.id = :patientId
+                AND (:doctorId IS NULL
+                    OR d.id = :doctorId
+                    OR sp IN (SELECT ds FROM MedicalProfileEntity md JOIN md.specialties ds WHERE md.id = :doctorId))
+                AND (:beforeCreatedAt IS NULL
+                    OR p.createdAt < :beforeCreatedAt
+                    OR (p.createdAt = :beforeCreatedAt AND p.id < :beforeId))
+            ORDER BY p.createdAt DESC, p.id DESC
+            """)
+    List<TimelineDocumentRowDTO> findTimelineRows(@Param("patientId") Integer patientId,
+                                                  @Param("doctorId") Integer doctorId,
+                                                  @Param("beforeCreatedAt") LocalDateTime beforeCreatedAt,
+                                                  @Param("beforeId") Integer beforeId,
+                                                  Pageable pageable);
+}
\ No newline at end of file
@@ -1,10 +1,16 @@
 package com.kikisito.salus.api.repository;
 
+import com.kikisito.salus.api.dto.TimelineDocumentRowDTO;
 import com.kikisito.salus.api.entity.*;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.Collection;
 import java.util.List;
 
@@ -14,6 +20,56 @@ public interface ReportRepository extends JpaRepository<ReportEntity, Integer> {
 
     List<ReportEntity> findByPatient(UserEntity patient);
 
+    @EntityGraph(attributePaths = {"doctor", "doctor.user", "specialty"})
     @Query("SELECT r FROM ReportEntity r WHERE r.patient = :patient AND (r.doctor = :doctor OR r.specialty IN :specialties)")
     List<ReportEntity> findByPatientWithDoctorOrItsSpecialties(UserEntity patient, MedicalProfileEntity doctor, Collection<SpecialtyEntity> specialties);
-}
+
+    // Comprobación de acceso de un profesional con una sola consulta, sin cargar entidades:
+    // el informe es suyo, es de una cita suya o su autor comparte alguna especialidad con él
+    @Query("""
+            SELECT CASE WHEN COUNT(r) > 0 THEN true ELSE false END
+            FROM ReportEntity r
+            LEFT JOIN r.appointment a
+            LEFT JOIN a.slot s
+            WHERE r.id = :reportId
+                AND (r.doctor.id = :doctorId
+                    OR s.doctor.id = :doctorId
+                    OR EXISTS (
+                        SELECT rs.id FROM MedicalProfileEntity rd JOIN rd.specialties rs
+                        WHERE rd = r.doctor
+                            AND rs IN (SELECT ds FROM MedicalProfileEntity d JOIN d.specialties ds WHERE d.id = :doctorId)
+                    ))
+            """)
+    boolean canDoctorAccessReport(@Param("reportId") Integer reportId, @Param("doctorId") Integer doctorId);
+
+    // Desvincula en una sola sentencia los documentos de las citas que se anulan
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE ReportEntity r SET r.appointment = null WHERE r.appointment.id IN :appointmentIds")
+    int unlinkAppointments(@Param("appointmentIds") Collection<Integer> appointmentIds);
+
+    // Informes del historial de un paciente, con el mismo filtro por médico y la misma paginación que las citas
+    @Query("""
+            SELECT new com.kikisito.salus.api.dto.TimelineDocumentRowDTO(
+                r.id, r.createdAt, r.description, a.id,
+                d.id, du.nombre, du.apellidos, sp.id, sp.name
+            )
+            FROM ReportEntity r
+            LEFT JOIN r.appointment a
+            JOIN r.doctor d
+            JOIN d.user du
+            JOIN r.specialty sp
+            WHERE r.patient.id = :patientId
+                AND (:doctorId IS NULL
+                    OR d.id = :doctorId
+                    OR sp IN (SELECT ds FROM MedicalProfileEntity md JOIN md.specialties ds WHERE md.id = :doctorId))
+                AND (:beforeCreatedAt IS NULL
+                    OR r.createdAt < :beforeCreatedAt
+                    OR (r.createdAt = :beforeCreatedAt AND r.id < :beforeId))
+            ORDER BY r.createdAt DESC, r.id DESC
+            """)
+    List<TimelineDocumentRowDTO> findTimelineRows(@Param("patientId") Integer patientId,
+                                                  @Param("doctorId") Integer doctorId,
+                                                  @Param("beforeCreatedAt") LocalDateTime beforeCreatedAt,
+                                                  @Param("beforeId") Integer beforeId,
+                                                  Pageable pageable);
+}
\ No newline at end of file
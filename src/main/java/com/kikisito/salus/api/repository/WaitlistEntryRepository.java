@@ -0,0 +1,68 @@
+package com.kikisito.salus.api.repository;
+
+import com.kikisito.salus.api.entity.UserEntity;
+import com.kikisito.salus.api.entity.WaitlistEntryEntity;
+import com.kikisito.salus.api.type.WaitlistStatusType;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface WaitlistEntryRepository extends JpaRepository<WaitlistEntryEntity, Integer> {
+    List<WaitlistEntryEntity> findByPatientAndStatusIn(UserEntity patient, Collection<WaitlistStatusType> statuses);
+
+    // Pacientes en espera a los que les sirve un hueco, por orden de llegada. El médico del hueco no puede reservarlo.
+    // El paciente se carga con la entrada para poder avisarle después de confirmar la transacción
+    @Query("""
+            SELECT entries FROM WaitlistEntryEntity entries
+            JOIN FETCH entries.patient
+            WHERE entries.status = com.kikisito.salus.api.type.WaitlistStatusType.WAITING
+                AND entries.specialty.id = :specialtyId
+                AND entries.medicalCenter.id = :medicalCenterId
+                AND (entries.doctor IS NULL OR entries.doctor.id = :doctorId)
+                AND entries.startDate <= :date
+                AND entries.endDate >= :date
+                AND entries.patient.id <> :doctorUserId
+            ORDER BY entries.createdAt, entries.id
+            """)
+    List<WaitlistEntryEntity> findWaitingFor(@Param("specialtyId") Integer specialtyId,
+                                             @Param("medicalCenterId") Integer medicalCenterId,
+                                             @Param("doctorId") Integer doctorId,
+                                             @Param("doctorUserId") Integer doctorUserId,
+                                             @Param("date") LocalDate date,
+                                             Pageable pageable);
+
+    // Ofertas cuyo plazo para reservar ha terminado
+    @Query("""
+            SELECT entries FROM WaitlistEntryEntity entries
+            WHERE entries.status = com.kikisito.salus.api.type.WaitlistStatusType.OFFERED
+                AND entries.offerExpiresAt <= :now
+            """)
+    List<WaitlistEntryEntity> findExpiredOffers(@Param("now") LocalDateTime now);
+
+    // Cambia el estado de una oferta solo si sigue pendiente, para que una reserva y la caducidad no se pisen
+    @Modifying
+    @Query("""
+            UPDATE WaitlistEntryEntity entries SET entries.status = :status
+            WHERE entries.id = :id AND entries.status = com.kikisito.salus.api.type.WaitlistStatusType.OFFERED
+            """)
+    int closeOffer(@Param("id") Integer id, @Param("status") WaitlistStatusType status);
+
+    // Al reservar el paciente el hueco que se le ofreció, su entrada queda atendida
+    @Modifying
+    @Query("""
+            UPDATE WaitlistEntryEntity entries SET entries.status = com.kikisito.salus.api.type.WaitlistStatusType.FULFILLED
+            WHERE entries.offeredSlot.id = :slotId
+                AND entries.patient.id = :patientId
+                AND entries.status = com.kikisito.salus.api.type.WaitlistStatusType.OFFERED
+            """)
+    int fulfillOffer(@Param("slotId") Integer slotId, @Param("patientId") Integer patientId);
+}
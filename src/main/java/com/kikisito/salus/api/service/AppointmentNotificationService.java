@@ -0,0 +1,130 @@
+package com.kikisito.salus.api.service;
+
+import com.kikisito.salus.api.background.PendingTaskDispatcher;
+import com.kikisito.salus.api.config.AppointmentSlotsConfiguration;
+import com.kikisito.salus.api.dto.AppointmentCancelledDTO;
+import com.kikisito.salus.api.entity.AppointmentCancellationNoticeEntity;
+import com.kikisito.salus.api.event.AppointmentsCancelledEvent;
+import com.kikisito.salus.api.repository.AppointmentCancellationNoticeRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Avisos a los pacientes de las anulaciones por lotes. Se envían en segundo plano cuando se confirma la anulación,
+// para que la petición no espere a los cientos de correos que puede haber que mandar. Los avisos están guardados, así
+// que los que fallan o no se llegan a enviar antes de detener la aplicación se reintentan en la siguiente revisión
+@Service
+@RequiredArgsConstructor
+public class AppointmentNotificationService {
+    private final static String APPOINTMENT_CANCELLED_SUBJECT = "Tu cita ha sido anulada";
+    private final static DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+    private final static DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("HH:mm");
+    private static final int ERROR_MESSAGE_LENGTH = 1000; // Igual que la columna last_error
+
+    @Value("${application.name}")
+    private String appName;
+
+    @Autowired
+    private final WebSocketService webSocketService;
+
+    @Autowired
+    private final EmailingService emailingService;
+
+    @Autowired
+    private final AppointmentCancellationNoticeRepository appointmentCancellationNoticeRepository;
+
+    @Autowired
+    private final AppointmentSlotsConfiguration appointmentSlotsConfiguration;
+
+    // Los avisos se envían de uno en uno, en el orden en que se han anulado las citas
+    private final ExecutorService notificationExecutor = Executors.newSingleThreadExecutor();
+
+    // Así no se envía dos veces el mismo aviso, y si la cola no admite más tareas el aviso se envía en la siguiente revisión
+    private final PendingTaskDispatcher noticeDispatcher = new PendingTaskDispatcher(notificationExecutor);
+
+    @PreDestroy
+    public void shutdown() {
+        notificationExecutor.shutdown();
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onAppointmentsCancelled(AppointmentsCancelledEvent event) {
+        event.noticeIds().forEach(noticeId -> noticeDispatcher.dispatch(noticeId, this::sendNotice));
+    }
+
+    // Al arrancar se retoman los avisos que quedaron sin enviar, y después se revisan cada cierto tiempo los que fallaron
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(cron = "${application.appointment-slots.cancellation-notice-retry-cron:45 */5 * * * *}")
+    public void resumePendingNotices() {
+        appointmentCancellationNoticeRepository.findPendingIds(appointmentSlotsConfiguration.getCancellationNoticeMaxAttempts())
+                .forEach(noticeId -> noticeDispatcher.dispatch(noticeId, this::sendNotice));
+    }
+
+    // Un aviso que no se puede enviar no impide que lleguen los demás. El fallo se guarda en el aviso y, si es el
+    // del correo, se vuelve a intentar más tarde. El aviso por WebSocket solo tiene sentido en el momento de la
+    // anulación, así que no se repite en los reintentos
+    public void sendNotice(Integer noticeId) {
+        AppointmentCancellationNoticeEntity notice = appointmentCancellationNoticeRepository.findWithPatientById(noticeId).orElse(null);
+        if(notice == null || notice.getSentAt() != null) {
+            return;
+        }
+
+        AppointmentCancelledDTO appointment = this.toAppointmentCancelledDTO(notice);
+
+        if(notice.getAttempts() == 0) {
+            try {
+                webSocketService.sendAppointmentCancelledToUser(notice.getPatient(), appointment);
+            } catch (RuntimeException e) {
+                // El correo se envía igualmente
+                notice.setLastError(PendingTaskDispatcher.errorMessage(e, ERROR_MESSAGE_LENGTH));
+            }
+        }
+
+        try {
+            Map<String, Object> variables = new HashMap<>();
+            variables.put("appName", appName);
+            variables.put("user", notice.getPatient());
+            variables.put("appointment", appointment);
+            variables.put("date", appointment.getDate().format(DATE_FORMATTER));
+            variables.put("time", appointment.getStartTime().format(TIME_FORMATTER));
+
+            emailingService.sendTemplateEmail(
+                    notice.getPatient().getEmail(),
+                    APPOINTMENT_CANCELLED_SUBJECT,
+                    "appointment-cancelled",
+                    variables
+            );
+            notice.setSentAt(LocalDateTime.now());
+        } catch (RuntimeException e) {
+            notice.setAttempts(notice.getAttempts() + 1);
+            notice.setLastError(PendingTaskDispatcher.errorMessage(e, ERROR_MESSAGE_LENGTH));
+        }
+
+        appointmentCancellationNoticeRepository.save(notice);
+    }
+
+    private AppointmentCancelledDTO toAppointmentCancelledDTO(AppointmentCancellationNoticeEntity notice) {
+        return AppointmentCancelledDTO.builder()
+                .appointmentId(notice.getAppointmentId())
+                .date(notice.getDate())
+                .startTime(notice.getStartTime())
+                .endTime(notice.getEndTime())
+                .doctorId(notice.getDoctorId())
+                .doctorName(notice.getDoctorName())
+                .build();
+    }
+}
@@ -0,0 +1,497 @@
+package com.kikisito.salus.api.service;
+
+import com.kikisito.salus.api.cache.DoctorAgendaCache;
+import com.kikisito.salus.api.config.AppointmentSlotsConfiguration;
+import com.kikisito.salus.api.dto.AppointmentRescheduledDTO;
+import com.kikisito.salus.api.dto.AppointmentSlotDTO;
+import com.kikisito.salus.api.dto.AppointmentSlotIntervalDTO;
+import com.kikisito.salus.api.dto.RescheduleJobDTO;
+import com.kikisito.salus.api.entity.AppointmentEntity;
+import com.kikisito.salus.api.entity.AppointmentSlotEntity;
+import com.kikisito.salus.api.entity.DoctorScheduleEntity;
+import com.kikisito.salus.api.entity.UserEntity;
+import com.kikisito.salus.api.event.DoctorScheduleChangedEvent;
+import com.kikisito.salus.api.event.ScheduleSnapshot;
+import com.kikisito.salus.api.exception.DataNotFoundException;
+import com.kikisito.salus.api.mapper.DtoMapper;
+import com.kikisito.salus.api.occupancy.AbsenceIndex;
+import com.kikisito.salus.api.occupancy.AvailabilityCalendar;
+import com.kikisito.salus.api.occupancy.IntervalSet;
+import com.kikisito.salus.api.occupancy.OccupancyIndex;
+import com.kikisito.salus.api.occupancy.ScheduleGrid;
+import com.kikisito.salus.api.occupancy.SlotHoldTable;
+import com.kikisito.salus.api.repository.AppointmentRepository;
+import com.kikisito.salus.api.repository.AppointmentSlotRepository;
+import com.kikisito.salus.api.repository.DoctorScheduleRepository;
+import com.kikisito.salus.api.repository.RoomRepository;
+import com.kikisito.salus.api.repository.SpecialtyRepository;
+import com.kikisito.salus.api.type.AppointmentStatusType;
+import com.kikisito.salus.api.type.RescheduleJobStatusType;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Reubica las citas que quedan fuera de un turno cuando se modifica. Al confirmar el cambio se compara la rejilla
+// anterior con la nueva en los días futuros, se asigna a cada cita afectada el hueco libre más cercano de la nueva,
+// se mueven las citas por lotes, se borran los huecos que quedan vacíos, se generan los de la nueva rejilla que ocupaban
+// y se avisa a cada paciente, también a los que no se ha podido reubicar. El progreso se puede consultar mientras dura
+@Service
+@RequiredArgsConstructor
+public class AppointmentRescheduleService {
+    // Igual que hibernate.jdbc.batch_size, para que cada lote de citas se guarde en una sola sentencia por lotes
+    private static final int MOVE_BATCH_SIZE = 50;
+
+    @Autowired
+    private final AppointmentRepository appointmentRepository;
+
+    @Autowired
+    private final AppointmentSlotRepository appointmentSlotRepository;
+
+    @Autowired
+    private final DoctorScheduleRepository doctorScheduleRepository;
+
+    @Autowired
+    private final SpecialtyRepository specialtyRepository;
+
+    @Autowired
+    private final RoomRepository roomRepository;
+
+    @Autowired
+    private final OccupancyIndex occupancyIndex;
+
+    @Autowired
+    private final AvailabilityCalendar availabilityCalendar;
+
+    @Autowired
+    private final DoctorAgendaCache doctorAgendaCache;
+
+    @Autowired
+    private final AbsenceIndex absenceIndex;
+
+    @Autowired
+    private final SlotHoldTable slotHoldTable;
+
+    @Autowired
+    private final WebSocketService webSocketService;
+
+    @Autowired
+    private final AppointmentSlotGenerationService appointmentSlotGenerationService;
+
+    @Autowired
+    private final PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private final AppointmentSlotsConfiguration appointmentSlotsConfiguration;
+
+    @Autowired
+    private final DtoMapper dtoMapper;
+
+    // Último trabajo de cada turno
+    private final Map<Integer, RescheduleJob> jobs = new ConcurrentHashMap<>();
+
+    // Los trabajos se ejecutan de uno en uno para que dos cambios seguidos del mismo turno no se pisen
+    private final ExecutorService rescheduleExecutor = Executors.newSingleThreadExecutor();
+
+    // Cada lote de citas se mueve en su propia transacción, de forma que el progreso se ve según avanza y un fallo no
+    // deshace los lotes anteriores
+    private TransactionTemplate moveTransaction;
+
+    private TransactionTemplate readTransaction;
+
+    @PostConstruct
+    public void init() {
+        moveTransaction = new TransactionTemplate(transactionManager);
+        moveTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        readTransaction = new TransactionTemplate(transactionManager);
+        readTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        readTransaction.setReadOnly(true);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        rescheduleExecutor.shutdownNow();
+    }
+
+    // Se lanza cuando se confirma el cambio del turno, sin retener la petición que lo ha hecho
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onDoctorScheduleChanged(DoctorScheduleChangedEvent event) {
+        RescheduleJob job = new RescheduleJob(event.scheduleId());
+        jobs.put(event.scheduleId(), job);
+        rescheduleExecutor.submit(() -> this.run(job, event));
+    }
+
+    // Ejecuta la reubicación en el hilo actual
+    public RescheduleJobDTO reschedule(DoctorScheduleChangedEvent event) {
+        RescheduleJob job = new RescheduleJob(event.scheduleId());
+        jobs.put(event.scheduleId(), job);
+        this.run(job, event);
+        return job.toDTO();
+    }
+
+    public RescheduleJobDTO getRescheduleJob(Integer scheduleId) {
+        RescheduleJob job = jobs.get(scheduleId);
+        if(job == null) {
+            throw DataNotFoundException.rescheduleJobNotFound();
+        }
+        return job.toDTO();
+    }
+
+    private void run(RescheduleJob job, DoctorScheduleChangedEvent event) {
+        job.status = RescheduleJobStatusType.RUNNING;
+        try {
+            ReschedulePlan plan = readTransaction.execute(status -> this.plan(event));
+            job.total.set(plan.moves().size() + plan.unassigned().size());
+            plan.unassigned().forEach(move -> this.notifyUnassigned(job, move));
+
+            List<Move> moved = new ArrayList<>();
+            for(int from = 0; from < plan.moves().size(); from += MOVE_BATCH_SIZE) {
+                List<Move> batch = plan.moves().subList(from, Math.min(from + MOVE_BATCH_SIZE, plan.moves().size()));
+                List<AppointmentRescheduledDTO> rescheduled = this.moveBatch(plan.grid(), batch);
+
+                for(int i = 0; i < batch.size(); i++) {
+                    Move move = batch.get(i);
+                    if(rescheduled.get(i) == null) {
+                        this.notifyUnassigned(job, move);
+                        continue;
+                    }
+
+                    moved.add(move);
+                    job.moved.incrementAndGet();
+                    job.processed.incrementAndGet();
+                    webSocketService.sendAppointmentRescheduledToUser(move.patient(), rescheduled.get(i));
+                }
+            }
+
+            job.removedSlots.set(this.removeVacatedSlots(moved.stream().map(Move::previousSlotId).toList()));
+            this.regenerateVacatedDays(plan.grid(), moved);
+            availabilityCalendar.reloadDoctor(plan.grid().doctorId());
+            doctorAgendaCache.invalidateDoctor(plan.grid().doctorId());
+            job.status = RescheduleJobStatusType.COMPLETED;
+        } catch (RuntimeException e) {
+            job.error = e.getClass().getSimpleName() + ": " + e.getMessage();
+            job.status = RescheduleJobStatusType.FAILED;
+        } finally {
+            job.finishedAt = LocalDateTime.now();
+        }
+    }
+
+    // La cita sigue en su hora anterior, fuera del nuevo turno. Se avisa al paciente sin hueco de destino para que pueda
+    // elegir otro
+    private void notifyUnassigned(RescheduleJob job, Move move) {
+        job.unassigned.incrementAndGet();
+        job.processed.incrementAndGet();
+        webSocketService.sendAppointmentRescheduledToUser(move.patient(), AppointmentRescheduledDTO.builder()
+                .appointmentId(move.appointmentId())
+                .previousDate(move.previousDate())
+                .previousStartTime(move.previousStartTime())
+                .build());
+    }
+
+    // Calcula de una vez qué hueco recibe cada cita: con una consulta se leen las citas y con otra los huecos del médico,
+    // y las citas se recorren en orden cogiendo cada una el hueco libre más cercano que quede
+    private ReschedulePlan plan(DoctorScheduleChangedEvent event) {
+        DoctorScheduleEntity schedule = doctorScheduleRepository.findById(event.scheduleId()).orElseThrow(DataNotFoundException::scheduleNotFound);
+        Grid grid = Grid.of(schedule);
+        ScheduleSnapshot previous = event.previous();
+
+        LocalDate today = LocalDate.now();
+        LocalDateTime now = LocalDateTime.now();
+        LocalDate endDate = today.plusWeeks(appointmentSlotsConfiguration.getHorizonWeeks());
+
+        // Citas pendientes que estaban en la rejilla anterior y no encajan en la nueva
+        List<AppointmentEntity> affected = appointmentRepository.findByDoctorOverlapping(previous.doctorId(), today, LocalTime.MIN, endDate, LocalTime.MAX).stream()
+                .filter(appointment -> appointment.getStatus() == AppointmentStatusType.PENDING)
+                .filter(appointment -> LocalDateTime.of(appointment.getSlot().getDate(), appointment.getSlot().getStartTime()).isAfter(now))
+                .filter(appointment -> this.wasInSchedule(previous, appointment.getSlot()))
+                .filter(appointment -> !grid.fits(appointment.getSlot()))
+                .toList();
+
+        if(affected.isEmpty()) {
+            return new ReschedulePlan(grid, List.of(), List.of());
+        }
+
+        NavigableMap<LocalDateTime, Target> targets = this.freeTargets(schedule, grid, today, endDate, now);
+
+        List<Move> moves = new ArrayList<>();
+        List<Move> unassigned = new ArrayList<>();
+        for(AppointmentEntity appointment : affected) {
+            AppointmentSlotEntity slot = appointment.getSlot();
+            LocalDateTime original = LocalDateTime.of(slot.getDate(), slot.getStartTime());
+
+            Map.Entry<LocalDateTime, Target> nearest = this.nearest(targets, original);
+            if(nearest == null) {
+                unassigned.add(new Move(appointment.getId(), slot.getId(), slot.getDate(), slot.getStartTime(), appointment.getPatient(), null));
+                continue;
+            }
+
+            targets.remove(nearest.getKey());
+            moves.add(new Move(appointment.getId(), slot.getId(), slot.getDate(), slot.getStartTime(), appointment.getPatient(), nearest.getValue()));
+        }
+
+        return new ReschedulePlan(grid, moves, unassigned);
+    }
+
+    // Huecos de la nueva rejilla desde ahora hasta el horizonte que se pueden ocupar: los que existen como fila libre y sin
+    // retener, y los que aún no existen porque no se han generado o porque se trabaja en el modo virtual
+    private NavigableMap<LocalDateTime, Target> freeTargets(DoctorScheduleEntity schedule, Grid grid, LocalDate today, LocalDate endDate, LocalDateTime now) {
+        Map<LocalDate, List<AppointmentSlotEntity>> slotsByDate = new HashMap<>();
+        for(AppointmentSlotEntity slot : appointmentSlotRepository.findByDoctorAndDateBetween(schedule.getDoctor(), today, endDate)) {
+            slotsByDate.computeIfAbsent(slot.getDate(), date -> new ArrayList<>()).add(slot);
+        }
+
+        NavigableMap<LocalDateTime, Target> targets = new TreeMap<>();
+        if(grid.duration() <= 0) {
+            return targets;
+        }
+
+        LocalDate date = today.plusDays(Math.floorMod(grid.dayOfWeek().getValue() - today.getDayOfWeek().getValue(), 7));
+        for(; !date.isAfter(endDate); date = date.plusWeeks(1)) {
+            List<AppointmentSlotEntity> daySlots = slotsByDate.getOrDefault(date, List.of());
+            IntervalSet absent = absenceIndex.absentMinutes(grid.doctorId(), date);
+
+            for(int minute = grid.startMinute(); ScheduleGrid.fits(grid.startMinute(), grid.endMinute(), grid.duration(), minute); minute += grid.duration()) {
+                int slotStart = minute;
+                int slotEnd = minute + grid.duration();
+                LocalDateTime start = LocalDateTime.of(date, LocalTime.ofSecondOfDay(slotStart * 60L));
+                if(!start.isAfter(now) || absent.overlaps(slotStart, slotEnd)) {
+                    continue;
+                }
+
+                List<AppointmentSlotEntity> overlapping = daySlots.stream()
+                        .filter(slot -> IntervalSet.minuteOf(slot.getStartTime()) < slotEnd && IntervalSet.minuteOf(slot.getEndTime()) > slotStart)
+                        .toList();
+
+                if(overlapping.isEmpty()) {
+                    targets.put(start, new Target(null, date, start.toLocalTime(), LocalTime.ofSecondOfDay(slotEnd * 60L)));
+                } else if(overlapping.size() == 1 && grid.fits(overlapping.getFirst())
+                        && overlapping.getFirst().getAppointment() == null && !slotHoldTable.isHeld(overlapping.getFirst().getId())) {
+                    AppointmentSlotEntity slot = overlapping.getFirst();
+                    targets.put(start, new Target(slot.getId(), date, slot.getStartTime(), slot.getEndTime()));
+                }
+            }
+        }
+
+        return targets;
+    }
+
+    // Hueco más cercano a la hora original. A igual distancia se prefiere el posterior, para no adelantar la cita
+    private Map.Entry<LocalDateTime, Target> nearest(NavigableMap<LocalDateTime, Target> targets, LocalDateTime original) {
+        Map.Entry<LocalDateTime, Target> before = targets.floorEntry(original);
+        Map.Entry<LocalDateTime, Target> after = targets.ceilingEntry(original);
+        if(before == null || after == null) {
+            return before == null ? after : before;
+        }
+
+        long minutesBefore = Duration.between(before.getKey(), original).toMinutes();
+        long minutesAfter = Duration.between(original, after.getKey()).toMinutes();
+        return minutesAfter <= minutesBefore ? after : before;
+    }
+
+    // Mueve un lote de citas en una transacción: las citas y los huecos de destino se leen con una consulta cada uno, los
+    // huecos nuevos se insertan por lotes y las citas se actualizan por lotes al confirmar. Si otra reserva ha ocupado
+    // alguno de los huecos mientras tanto, el lote se deshace y se repite de cita en cita para no perder las demás.
+    // Devuelve el aviso de cada cita en el mismo orden, o null si la cita se ha quedado donde estaba
+    private List<AppointmentRescheduledDTO> moveBatch(Grid grid, List<Move> batch) {
+        try {
+            return moveTransaction.execute(status -> this.moveAll(grid, batch));
+        } catch (DataIntegrityViolationException e) {
+            return batch.stream().map(move -> this.moveOne(grid, move)).toList();
+        }
+    }
+
+    private AppointmentRescheduledDTO moveOne(Grid grid, Move move) {
+        try {
+            return moveTransaction.execute(status -> this.moveAll(grid, List.of(move)).getFirst());
+        } catch (DataIntegrityViolationException e) {
+            return null;
+        }
+    }
+
+    // Si entre tanto la cita ha cambiado o el hueco ya no está libre, la cita se deja donde estaba
+    private List<AppointmentRescheduledDTO> moveAll(Grid grid, List<Move> batch) {
+        Map<Integer, AppointmentEntity> appointments = new HashMap<>();
+        appointmentRepository.findAllById(batch.stream().map(Move::appointmentId).toList())
+                .forEach(appointment -> appointments.put(appointment.getId(), appointment));
+
+        Map<Integer, AppointmentSlotEntity> existingTargets = new HashMap<>();
+        appointmentSlotRepository.findAllById(batch.stream().map(move -> move.target().slotId()).filter(Objects::nonNull).toList())
+                .forEach(slot -> existingTargets.put(slot.getId(), slot));
+
+        List<AppointmentSlotEntity> targets = new ArrayList<>(batch.size());
+        List<AppointmentSlotEntity> createdTargets = new ArrayList<>();
+        for(Move move : batch) {
+            AppointmentEntity appointment = appointments.get(move.appointmentId());
+            AppointmentSlotEntity target = null;
+
+            if(appointment != null && appointment.getSlot().getId().equals(move.previousSlotId())) {
+                if(move.target().slotId() != null) {
+                    target = existingTargets.get(move.target().slotId());
+                    if(target != null && (target.getAppointment() != null || slotHoldTable.isHeld(target.getId()))) {
+                        target = null;
+                    }
+                } else if(occupancyIndex.tryReserve(new AppointmentSlotIntervalDTO(grid.doctorId(), grid.roomId(), move.target().date(), move.target().startTime(), move.target().endTime()))) {
+                    // El hueco creado pertenece al turno, igual que los generados, para que se regenere con él
+                    target = AppointmentSlotEntity.builder()
+                            .doctor(appointment.getSlot().getDoctor())
+                            .specialty(specialtyRepository.getReferenceById(grid.specialtyId()))
+                            .room(roomRepository.getReferenceById(grid.roomId()))
+                            .schedule(doctorScheduleRepository.getReferenceById(grid.scheduleId()))
+                            .date(move.target().date())
+                            .startTime(move.target().startTime())
+                            .endTime(move.target().endTime())
+                            .build();
+                    createdTargets.add(target);
+                }
+            }
+
+            targets.add(target);
+        }
+
+        appointmentSlotRepository.saveAll(createdTargets);
+
+        List<AppointmentEntity> moved = new ArrayList<>();
+        List<AppointmentRescheduledDTO> rescheduled = new ArrayList<>(batch.size());
+        for(int i = 0; i < batch.size(); i++) {
+            Move move = batch.get(i);
+            AppointmentSlotEntity target = targets.get(i);
+            if(target == null) {
+                rescheduled.add(null);
+                continue;
+            }
+
+            AppointmentEntity appointment = appointments.get(move.appointmentId());
+            appointment.setSlot(target);
+            target.setAppointment(appointment);
+            moved.add(appointment);
+
+            rescheduled.add(AppointmentRescheduledDTO.builder()
+                    .appointmentId(appointment.getId())
+                    .previousDate(move.previousDate())
+                    .previousStartTime(move.previousStartTime())
+                    .slot(dtoMapper.toAppointmentSlotDTO(target))
+                    .build());
+        }
+
+        // Se fuerza la escritura para que un conflicto con otra reserva se detecte aquí y deshaga solo este lote
+        appointmentRepository.saveAllAndFlush(moved);
+        return rescheduled;
+    }
+
+    // Borra en una sola sentencia los huecos que han dejado libres las citas movidas
+    private int removeVacatedSlots(List<Integer> slotIds) {
+        if(slotIds.isEmpty()) {
+            return 0;
+        }
+
+        Integer removed = moveTransaction.execute(status -> {
+            appointmentSlotRepository.findFreeIntervalsByIdIn(slotIds).forEach(occupancyIndex::release);
+            return appointmentSlotRepository.deleteFreeSlotsByIdIn(slotIds);
+        });
+        return removed == null ? 0 : removed;
+    }
+
+    // Al moverse las citas, las posiciones de la nueva rejilla que se solapaban con sus huecos anteriores quedan libres
+    // y sin hueco, porque la generación las saltó mientras estaban ocupadas. Se generan ahora en los días afectados; la
+    // generación omite los huecos que ya existen. En el modo virtual los huecos se calculan sobre la marcha
+    private void regenerateVacatedDays(Grid grid, List<Move> moved) {
+        if(moved.isEmpty() || appointmentSlotsConfiguration.isVirtualMode()) {
+            return;
+        }
+
+        LocalDate firstDate = moved.stream().map(Move::previousDate).min(Comparator.naturalOrder()).orElseThrow();
+        LocalDate lastDate = moved.stream().map(Move::previousDate).max(Comparator.naturalOrder()).orElseThrow();
+        moveTransaction.executeWithoutResult(status -> appointmentSlotGenerationService.generateDoctorAppointmentSlotsBetweenDates(grid.doctorId(), firstDate, lastDate));
+    }
+
+    private boolean wasInSchedule(ScheduleSnapshot previous, AppointmentSlotEntity slot) {
+        return slot.getRoom().getId().equals(previous.roomId())
+                && slot.getDate().getDayOfWeek() == previous.dayOfWeek()
+                && !slot.getStartTime().isBefore(previous.startTime())
+                && !slot.getEndTime().isAfter(previous.endTime());
+    }
+
+    // Rejilla de huecos del turno tal y como ha quedado tras el cambio
+    private record Grid(Integer scheduleId, Integer doctorId, Integer specialtyId, Integer roomId, DayOfWeek dayOfWeek, int startMinute, int endMinute, int duration) {
+        static Grid of(DoctorScheduleEntity schedule) {
+            return new Grid(
+                    schedule.getId(),
+                    schedule.getDoctor().getId(),
+                    schedule.getSpecialty().getId(),
+                    schedule.getRoom().getId(),
+                    schedule.getDayOfWeek(),
+                    IntervalSet.minuteOf(schedule.getStartTime()),
+                    IntervalSet.minuteOf(schedule.getEndTime()),
+                    schedule.getDuration() == null ? 0 : schedule.getDuration()
+            );
+        }
+
+        // Indica si el hueco es uno de los de la rejilla
+        boolean fits(AppointmentSlotEntity slot) {
+            int slotStart = IntervalSet.minuteOf(slot.getStartTime());
+            int slotEnd = IntervalSet.minuteOf(slot.getEndTime());
+            return slot.getRoom().getId().equals(roomId)
+                    && slot.getDate().getDayOfWeek() == dayOfWeek
+                    && ScheduleGrid.fits(startMinute, endMinute, duration, slotStart, slotEnd);
+        }
+    }
+
+    // Hueco de destino. Si slotId es null, el hueco aún no existe y se crea al mover la cita
+    private record Target(Integer slotId, LocalDate date, LocalTime startTime, LocalTime endTime) {}
+
+    // Cita afectada y el hueco que recibe. Las citas que no han encontrado hueco libre tienen target null
+    private record Move(Integer appointmentId, Integer previousSlotId, LocalDate previousDate, LocalTime previousStartTime, UserEntity patient, Target target) {}
+
+    private record ReschedulePlan(Grid grid, List<Move> moves, List<Move> unassigned) {}
+
+    private static class RescheduleJob {
+        private final Integer scheduleId;
+        private final LocalDateTime startedAt = LocalDateTime.now();
+        private final AtomicInteger total = new AtomicInteger();
+        private final AtomicInteger processed = new AtomicInteger();
+        private final AtomicInteger moved = new AtomicInteger();
+        private final AtomicInteger unassigned = new AtomicInteger();
+        private final AtomicInteger removedSlots = new AtomicInteger();
+        private volatile RescheduleJobStatusType status = RescheduleJobStatusType.PENDING;
+        private volatile LocalDateTime finishedAt;
+        private volatile String error;
+
+        private RescheduleJob(Integer scheduleId) {
+            this.scheduleId = scheduleId;
+        }
+
+        private RescheduleJobDTO toDTO() {
+            return RescheduleJobDTO.builder()
+                    .scheduleId(scheduleId)
+                    .status(status)
+                    .total(total.get())
+                    .processed(processed.get())
+                    .moved(moved.get())
+                    .unassigned(unassigned.get())
+                    .removedSlots(removedSlots.get())
+                    .startedAt(startedAt)
+                    .finishedAt(finishedAt)
+                    .error(error)
+                    .build();
+        }
+    }
+}
@@ -1,27 +1,51 @@
 package com.kikisito.salus.api.service;
 
-import com.kikisito.salus.api.dto.AppointmentDTO;
-import com.kikisito.salus.api.dto.ReducedAppointmentDTO;
+import com.kikisito.salus.api.cache.AccessDecisionCache;
+import com.kikisito.salus.api.cache.AccessDecisionCache.AccessCheck;
+import com.kikisito.salus.api.cache.DoctorAgendaCache;
+import com.kikisito.salus.api.dto.*;
 import com.kikisito.salus.api.dto.request.AppointmentRequest;
+import com.kikisito.salus.api.dto.response.AppointmentCancellationResponse;
 import com.kikisito.salus.api.entity.*;
+import com.kikisito.salus.api.event.AppointmentSlotReleasedEvent;
+import com.kikisito.salus.api.event.AppointmentsCancelledEvent;
+import com.kikisito.salus.api.exception.BadRequestException;
 import com.kikisito.salus.api.exception.ConflictException;
 import com.kikisito.salus.api.exception.DataNotFoundException;
+import com.kikisito.salus.api.mapper.DtoMapper;
+import com.kikisito.salus.api.occupancy.AbsenceIndex;
+import com.kikisito.salus.api.occupancy.AvailabilityCalendar;
+import com.kikisito.salus.api.occupancy.OccupancyIndex;
 import com.kikisito.salus.api.repository.*;
 import com.kikisito.salus.api.type.AppointmentStatusType;
+import jakarta.persistence.EntityManager;
 import lombok.RequiredArgsConstructor;
-import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
 public class AppointmentService {
+    // Igual que el tamaño de bloque del cursor en AppointmentRepository.streamByDoctorAndDate
+    private static final int STREAM_BATCH_SIZE = 100;
+    private static final String CANCELLATION_ABSENCE_REASON = "Citas del día anuladas";
+
     @Autowired
     private final AppointmentRepository appointmentRepository;
 
@@ -35,7 +59,7 @@ public class AppointmentService {
     private AppointmentSlotRepository appointmentSlotRepository;
 
     @Autowired
-    private ModelMapper modelMapper;
+    private DtoMapper dtoMapper;
 
     @Autowired
     private ReportRepository reportRepository;
@@ -46,19 +70,75 @@ public class AppointmentService {
     @Autowired
     private MedicalTestRepository medicalTestRepository;
 
+    @Autowired
+    private VirtualAppointmentSlotService virtualAppointmentSlotService;
+
+    @Autowired
+    private AvailabilityCalendar availabilityCalendar;
+
+    @Autowired
+    private OccupancyIndex occupancyIndex;
+
+    @Autowired
+    private AppointmentSlotHoldService appointmentSlotHoldService;
+
+    @Autowired
+    private ApplicationEventPublisher applicationEventPublisher;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private AccessDecisionCache accessDecisionCache;
+
+    @Autowired
+    private DoctorAgendaCache doctorAgendaCache;
+
+    @Autowired
+    private WaitlistEntryRepository waitlistEntryRepository;
+
+    @Autowired
+    private DoctorAbsenceRepository doctorAbsenceRepository;
+
+    @Autowired
+    private AbsenceIndex absenceIndex;
+
+    @Autowired
+    private AppointmentCancellationNoticeRepository appointmentCancellationNoticeRepository;
+
     @Transactional(readOnly = true)
     public List<AppointmentDTO> getAllDoctorAppointmentsByDate(Integer doctorId, LocalDate date) {
         MedicalProfileEntity medico = medicalProfileRepository.findById(doctorId).orElseThrow(DataNotFoundException::doctorNotFound);
         List<AppointmentEntity> citas = appointmentRepository.findBySlot_DoctorAndSlot_Date(medico, date);
         return citas.stream()
-                .map(cita -> modelMapper.map(cita, AppointmentDTO.class))
+                .map(cita -> dtoMapper.toAppointmentDTO(cita))
                 .toList();
     }
 
+    // Variante de la anterior para las respuestas NDJSON: cada cita se entrega al consumidor en cuanto se lee, sin sus
+    // informes, recetas y pruebas
+    @Transactional(readOnly = true)
+    public void streamAllDoctorAppointmentsByDate(Integer doctorId, LocalDate date, Consumer<? super AppointmentDTO> consumer) {
+        MedicalProfileEntity medico = medicalProfileRepository.findById(doctorId).orElseThrow(DataNotFoundException::doctorNotFound);
+
+        try(Stream<AppointmentEntity> citas = appointmentRepository.streamByDoctorAndDate(medico, date)) {
+            Iterator<AppointmentEntity> iterator = citas.iterator();
+            int read = 0;
+            while(iterator.hasNext()) {
+                consumer.accept(dtoMapper.toStreamedAppointmentDTO(iterator.next()));
+
+                // Se vacía el contexto de persistencia con cada bloque leído para que las citas no se acumulen en memoria
+                if(++read % STREAM_BATCH_SIZE == 0) {
+                    entityManager.clear();
+                }
+            }
+        }
+    }
+
     @Transactional(readOnly = true)
     public AppointmentDTO getAppointmentById(Integer appointmentId) {
         AppointmentEntity appointment = appointmentRepository.findById(appointmentId).orElseThrow(DataNotFoundException::appointmentNotFound);
-        return modelMapper.map(appointment, AppointmentDTO.class);
+        return dtoMapper.toAppointmentDTO(appointment);
     }
 
 
@@ -68,7 +148,7 @@ public class AppointmentService {
         List<AppointmentEntity> citas = appointmentRepository.findByPatient(user);
 
         return citas.stream()
-                .map(cita -> modelMapper.map(cita, AppointmentDTO.class))
+                .map(cita -> dtoMapper.toAppointmentDTO(cita))
                 .toList();
     }
 
@@ -80,28 +160,32 @@ public class AppointmentService {
         List<AppointmentEntity> appointments = appointmentRepository.findByPatientWithDoctorOrItsSpecialties(user, doctor, doctor.getSpecialties());
 
         return appointments.stream()
-                .map(appointment -> modelMapper.map(appointment, AppointmentDTO.class))
+                .map(appointment -> dtoMapper.toAppointmentDTO(appointment))
                 .toList();
     }
 
+    // Agenda del día del médico con el contexto de cada paciente, en lugar de pedir los documentos paciente a paciente.
+    // Se monta con una consulta para las citas y otra para cada dato de los pacientes, todas por el conjunto de pacientes
+    // del día, y se guarda hasta que cambia algo de ese día
+    @Transactional(readOnly = true)
+    public DoctorAgendaDTO getDoctorAgenda(Integer doctorId, LocalDate date) {
+        return doctorAgendaCache.get(doctorId, date, () -> this.loadDoctorAgenda(doctorId, date));
+    }
+
+    // Las listas reducidas se leen como filas planas, sin cargar las entidades de cada cita: una consulta para las citas
+    // y otra para las especialidades de sus médicos. El paciente es el mismo en todas las filas y se mapea una sola vez
     @Transactional(readOnly = true)
     public List<ReducedAppointmentDTO> getUserUpcomingAppointmentsReduced(Integer userId) {
         UserEntity user = userRepository.findById(userId).orElseThrow(DataNotFoundException::userNotFound);
-        List<AppointmentEntity> citas = appointmentRepository.findUpcomingAppointmentsByPatient(user);
-
-        return citas.stream()
-                .map(cita -> modelMapper.map(cita, ReducedAppointmentDTO.class))
-                .toList();
+        List<ReducedAppointmentRowDTO> citas = appointmentRepository.findUpcomingReducedAppointmentsByPatient(user);
+        return this.toReducedAppointmentDTOs(citas, user);
     }
 
     @Transactional(readOnly = true)
     public List<ReducedAppointmentDTO> getUserPastAppointmentsReduced(Integer userId) {
         UserEntity user = userRepository.findById(userId).orElseThrow(DataNotFoundException::userNotFound);
-        List<AppointmentEntity> citas = appointmentRepository.findPastAppointmentsByPatient(user);
-
-        return citas.stream()
-                .map(cita -> modelMapper.map(cita, ReducedAppointmentDTO.class))
-                .toList();
+        List<ReducedAppointmentRowDTO> citas = appointmentRepository.findPastReducedAppointmentsByPatient(user);
+        return this.toReducedAppointmentDTOs(citas, user);
     }
 
     @Transactional
@@ -109,8 +193,11 @@ public class AppointmentService {
         // Comprobamos que el usuario existe
         UserEntity patient = userRepository.findById(appointmentRequest.getPatient()).orElseThrow(DataNotFoundException::userNotFound);
 
-        // Comprobamos y obtenemos el slot de la cita que ha solicitado el usuario
-        AppointmentSlotEntity appointmentSlot = appointmentSlotRepository.findById(appointmentRequest.getAppointmentSlot()).orElseThrow(DataNotFoundException::appointmentSlotNotFound);
+        // Comprobamos y obtenemos el slot de la cita que ha solicitado el usuario. Si se ha pedido un hueco
+        // virtual por turno, fecha y hora, se guarda ahora como fila
+        AppointmentSlotEntity appointmentSlot = appointmentRequest.getAppointmentSlot() != null
+                ? appointmentSlotRepository.findById(appointmentRequest.getAppointmentSlot()).orElseThrow(DataNotFoundException::appointmentSlotNotFound)
+                : virtualAppointmentSlotService.materializeSlot(appointmentRequest.getScheduleId(), appointmentRequest.getDate(), appointmentRequest.getStartTime());
 
         // Si el paciente y el médico son el mismo, lanzamos una excepción
         if(appointmentSlot.getDoctor().getUser().getId().equals(patient.getId())) {
@@ -125,21 +212,40 @@ public class AppointmentService {
             throw ConflictException.dateInPast();
         }
 
-        // Comprobamos que no tenga ninguna cita asociada, es decir, que esté disponible
+        // Comprobamos que no tenga ninguna cita asociada, es decir, que esté disponible. Esta comprobación solo
+        // descarta pronto los huecos ya reservados: dos reservas simultáneas pueden pasarla a la vez
         if(appointmentSlot.getAppointment() != null) {
             throw ConflictException.appointmentSlotIsAlreadyTaken();
         }
 
-        // Creamos y guardamos la cita
+        // El hueco no puede estar retenido por otro paciente. Si lo retenía este paciente, la retención se consume
+        appointmentSlotHoldService.consumeHold(appointmentSlot, patient);
+
+        // Creamos y guardamos la cita. La restricción única sobre slot_id hace que solo una de las reservas simultáneas
+        // del mismo hueco se pueda insertar, sin bloquear la fila del hueco. Se fuerza la escritura para que el conflicto
+        // se detecte aquí y no al confirmar la transacción
         AppointmentEntity appointment = AppointmentEntity.builder()
                 .slot(appointmentSlot)
                 .patient(patient)
                 .type(appointmentRequest.getType())
                 .reason(appointmentRequest.getReason())
                 .build();
-        appointment = appointmentRepository.save(appointment);
 
-        return modelMapper.map(appointment, AppointmentDTO.class);
+        try {
+            appointment = appointmentRepository.saveAndFlush(appointment);
+        } catch (DataIntegrityViolationException e) {
+            throw ConflictException.appointmentSlotIsAlreadyTaken();
+        }
+        availabilityCalendar.markBooked(appointmentSlot);
+
+        // Si el hueco se le había ofrecido al paciente desde la lista de espera, su entrada queda atendida
+        waitlistEntryRepository.fulfillOffer(appointmentSlot.getId(), patient.getId());
+
+        // El médico del hueco pasa a tener acceso a la ficha del paciente
+        accessDecisionCache.invalidateResource(AccessCheck.PATIENT_OF_DOCTOR, patient.getId());
+        doctorAgendaCache.invalidateDay(appointmentSlot.getDoctor().getId(), appointmentSlot.getDate());
+
+        return dtoMapper.toAppointmentDTO(appointment);
     }
 
     @Transactional
@@ -147,7 +253,7 @@ public class AppointmentService {
         AppointmentEntity appointment = appointmentRepository.findById(appointmentId).orElseThrow(DataNotFoundException::appointmentNotFound);
         appointment.setDoctorObservations(doctorObservations);
         appointment = appointmentRepository.save(appointment);
-        return modelMapper.map(appointment, AppointmentDTO.class);
+        return dtoMapper.toAppointmentDTO(appointment);
     }
 
     @Transactional
@@ -155,7 +261,10 @@ public class AppointmentService {
         AppointmentEntity appointment = appointmentRepository.findById(appointmentId).orElseThrow(DataNotFoundException::appointmentNotFound);
         appointment.setStatus(status);
         appointment = appointmentRepository.save(appointment);
-        return modelMapper.map(appointment, AppointmentDTO.class);
+
+        // El estado se ve en la agenda de ese día y las visitas atendidas se cuentan en las de los días siguientes
+        doctorAgendaCache.invalidateDoctor(appointment.getSlot().getDoctor().getId());
+        return dtoMapper.toAppointmentDTO(appointment);
     }
 
     @Transactional
@@ -168,35 +277,103 @@ public class AppointmentService {
             throw ConflictException.appointmentCannotBeDeleted();
         }
 
-        // Desvinculamos de la cita todos los posibles ficheros asociados a ella
-        if(appointment.getReports() != null && !appointment.getReports().isEmpty()) {
-            appointment.getReports().forEach(report -> {
-                report.setAppointment(null);
-                reportRepository.save(report);
-            });
-        }
-
-        if(appointment.getPrescriptions() != null && !appointment.getPrescriptions().isEmpty()) {
-            appointment.getPrescriptions().forEach(prescription -> {
-                prescription.setAppointment(null);
-                prescriptionRepository.save(prescription);
-            });
-        }
-
-        if(appointment.getMedicalTests() != null && !appointment.getMedicalTests().isEmpty()) {
-            appointment.getMedicalTests().forEach(medicalTest -> {
-                medicalTest.setAppointment(null);
-                medicalTestRepository.save(medicalTest);
-            });
-        }
+        // Desvinculamos de la cita todos los posibles ficheros asociados a ella, con una sentencia por tabla
+        List<Integer> appointmentIds = List.of(appointmentId);
+        reportRepository.unlinkAppointments(appointmentIds);
+        prescriptionRepository.unlinkAppointments(appointmentIds);
+        medicalTestRepository.unlinkAppointments(appointmentIds);
 
         // Desvinculamos el slot de la cita
         AppointmentSlotEntity appointmentSlot = appointment.getSlot();
         appointmentSlot.setAppointment(null);
-        appointmentSlotRepository.save(appointmentSlot);
+        availabilityCalendar.markFree(appointmentSlot);
+
+        // Al confirmar la anulación, el hueco se ofrece a la lista de espera
+        applicationEventPublisher.publishEvent(new AppointmentSlotReleasedEvent(appointmentSlot.getId()));
 
         // Finalmente, eliminamos la cita
         appointmentRepository.delete(appointment);
+
+        this.invalidateCancelledAppointments(appointmentIds, Set.of(appointment.getPatient().getId()));
+        doctorAgendaCache.invalidateDay(appointmentSlot.getDoctor().getId(), appointmentSlot.getDate());
+    }
+
+    // Anula de una vez las citas pendientes de un médico en un día, por ejemplo por una baja. Las citas se leen con una
+    // consulta y se desvinculan y borran con una sentencia por tabla, sean cuantas sean. El día se registra como ausencia
+    // del médico y se borran todos sus huecos libres, para que no se ofrezcan ni se vuelvan a generar mientras no pasa
+    // consulta. Los avisos se guardan con la anulación y se envían al confirmar
+    @Transactional
+    public AppointmentCancellationResponse cancelDoctorAppointmentsByDate(Integer doctorId, LocalDate date) {
+        if(date.isBefore(LocalDate.now())) {
+            throw BadRequestException.invalidDateOrDateRange();
+        }
+
+        MedicalProfileEntity doctor = medicalProfileRepository.findById(doctorId).orElseThrow(DataNotFoundException::doctorNotFound);
+        String doctorName = doctor.getUser().getNombre() + " " + doctor.getUser().getApellidos();
+
+        // Solo se anulan las citas pendientes que aún no han empezado
+        LocalDateTime now = LocalDateTime.now();
+        List<AppointmentEntity> appointments = appointmentRepository.findByDoctorOverlapping(doctorId, date, LocalTime.MIN, date, LocalTime.MAX).stream()
+                .filter(appointment -> appointment.getStatus() == AppointmentStatusType.PENDING)
+                .filter(appointment -> LocalDateTime.of(appointment.getSlot().getDate(), appointment.getSlot().getStartTime()).isAfter(now))
+                .toList();
+
+        // Todo lo que se necesita de las citas se lee antes de borrarlas
+        List<Integer> appointmentIds = appointments.stream().map(AppointmentEntity::getId).toList();
+        Set<Integer> patientIds = appointments.stream().map(appointment -> appointment.getPatient().getId()).collect(Collectors.toSet());
+        List<AppointmentCancellationNoticeEntity> notices = appointments.stream()
+                .map(appointment -> AppointmentCancellationNoticeEntity.builder()
+                        .patient(appointment.getPatient())
+                        .appointmentId(appointment.getId())
+                        .date(appointment.getSlot().getDate())
+                        .startTime(appointment.getSlot().getStartTime())
+                        .endTime(appointment.getSlot().getEndTime())
+                        .doctorId(doctorId)
+                        .doctorName(doctorName)
+                        .build())
+                .toList();
+
+        if(!appointmentIds.isEmpty()) {
+            reportRepository.unlinkAppointments(appointmentIds);
+            prescriptionRepository.unlinkAppointments(appointmentIds);
+            medicalTestRepository.unlinkAppointments(appointmentIds);
+            appointmentRepository.deleteAppointmentsByIdIn(appointmentIds);
+        }
+
+        // El día entero queda como ausencia del médico, salvo que ya lo cubra otra, para que ni la generación de huecos
+        // ni el modo virtual vuelvan a ofrecerlo
+        LocalDateTime dayStart = date.atStartOfDay();
+        LocalDateTime dayEnd = date.plusDays(1).atStartOfDay();
+        if(!doctorAbsenceRepository.existsByDoctor_IdAndStartDateTimeLessThanEqualAndEndDateTimeGreaterThanEqual(doctorId, dayStart, dayEnd)) {
+            doctorAbsenceRepository.save(DoctorAbsenceEntity.builder()
+                    .doctor(doctor)
+                    .startDateTime(dayStart)
+                    .endDateTime(dayEnd)
+                    .reason(CANCELLATION_ABSENCE_REASON)
+                    .build());
+            absenceIndex.rebuildAfterCommit();
+        }
+
+        // Se borran todos los huecos libres del día, no solo los de las citas anuladas. Los intervalos se leen antes
+        // del borrado para liberarlos del índice de ocupación cuando se confirme
+        List<AppointmentSlotIntervalDTO> freeIntervals = appointmentSlotRepository.findFreeIntervalsOverlapping(doctorId, date, LocalTime.MIN, date, LocalTime.MAX);
+        int removedSlots = appointmentSlotRepository.deleteFreeSlotsOverlapping(doctorId, date, LocalTime.MIN, date, LocalTime.MAX);
+        freeIntervals.forEach(occupancyIndex::release);
+        availabilityCalendar.reloadDoctor(doctorId);
+
+        if(!appointmentIds.isEmpty()) {
+            this.invalidateCancelledAppointments(appointmentIds, patientIds);
+            List<Integer> noticeIds = appointmentCancellationNoticeRepository.saveAll(notices).stream()
+                    .map(AppointmentCancellationNoticeEntity::getId)
+                    .toList();
+            applicationEventPublisher.publishEvent(new AppointmentsCancelledEvent(noticeIds));
+        }
+        doctorAgendaCache.invalidateDay(doctorId, date);
+
+        return AppointmentCancellationResponse.builder()
+                .cancelledAppointments(appointmentIds)
+                .removedSlots(removedSlots)
+                .build();
     }
 
     @Transactional(readOnly = true)
@@ -220,31 +397,161 @@ public class AppointmentService {
         return appointment.getPatient().getId().equals(user.getId());
     }
 
+    // Una sola consulta de existencia, guardada en la caché de decisiones de acceso. Si el médico no tiene acceso,
+    // se comprueba que la cita exista para seguir respondiendo que no se ha encontrado
     @Transactional(readOnly = true)
     public boolean canProfessionalAccessAppointment(Integer appointmentId, Integer doctorId) {
-        MedicalProfileEntity doctor = medicalProfileRepository.findById(doctorId).orElseThrow(DataNotFoundException::doctorNotFound);
-        AppointmentEntity appointment = appointmentRepository.findById(appointmentId).orElseThrow(DataNotFoundException::appointmentNotFound);
-
-        // Comprobamos si el médico ha atendido a este paciente o la cita es de alguna de las especialidades que tiene
-        boolean appointmentIsFromDoctor = appointment.getSlot().getDoctor().equals(doctor);
-
-        List<SpecialtyEntity> specialties = doctor.getSpecialties();
-        boolean appointmentIsFromDoctorSpecialty = specialties.stream()
-                .anyMatch(specialty -> specialty.equals(appointment.getSlot().getSpecialty()));
-
-        return appointmentIsFromDoctor || appointmentIsFromDoctorSpecialty;
+        return accessDecisionCache.get(AccessCheck.APPOINTMENT, appointmentId, doctorId, () -> {
+            if(appointmentRepository.canDoctorAccessAppointment(appointmentId, doctorId)) {
+                return true;
+            }
+
+            if(!appointmentRepository.existsById(appointmentId)) {
+                throw DataNotFoundException.appointmentNotFound();
+            }
+            return false;
+        });
     }
 
     @Transactional(readOnly = true)
     public boolean patientHasAtLeastOneAppointmentWithDoctor(Integer userId, Integer doctorId) {
-        UserEntity user = userRepository.findById(userId).orElseThrow(DataNotFoundException::userNotFound);
-        MedicalProfileEntity doctor = medicalProfileRepository.findById(doctorId).orElseThrow(DataNotFoundException::doctorNotFound);
-
-        return appointmentRepository.existsBySlot_DoctorAndPatient(doctor, user);
+        return accessDecisionCache.get(AccessCheck.PATIENT_OF_DOCTOR, userId, doctorId, () -> {
+            if(appointmentRepository.existsBySlot_Doctor_IdAndPatient_Id(doctorId, userId)) {
+                return true;
+            }
+
+            if(!userRepository.existsById(userId)) {
+                throw DataNotFoundException.userNotFound();
+            }
+            return false;
+        });
     }
 
     @Transactional
     public Integer countAppointmentsByPatient(UserEntity patient) {
         return appointmentRepository.countByPatient(patient);
     }
+
+    private List<ReducedAppointmentDTO> toReducedAppointmentDTOs(List<ReducedAppointmentRowDTO> citas, UserEntity patient) {
+        if(citas.isEmpty()) {
+            return List.of();
+        }
+
+        // Especialidades de todos los médicos de la lista, agrupadas por médico
+        Set<Integer> doctorIds = citas.stream().map(ReducedAppointmentRowDTO::doctorId).collect(Collectors.toSet());
+        Map<Integer, List<SpecialtyDTO>> specialtiesByDoctor = medicalProfileRepository.findSpecialtiesByDoctorIdIn(doctorIds).stream()
+                .collect(Collectors.groupingBy(
+                        DoctorSpecialtyDTO::doctorId,
+                        Collectors.mapping(specialty -> new SpecialtyDTO(specialty.specialtyId(), specialty.name(), specialty.description()), Collectors.toList())
+                ));
+
+        UserDTO patientDTO = dtoMapper.toUserDTO(patient);
+
+        return citas.stream()
+                .map(cita -> ReducedAppointmentDTO.builder()
+                        .id(cita.id())
+                        .slot(AppointmentSlotDTO.builder()
+                                .id(cita.slotId())
+                                .doctor(MedicalProfileDTO.builder()
+                                        .id(cita.doctorId())
+                                        .user(new ReducedUserDTO(cita.doctorUserId(), cita.doctorNombre(), cita.doctorApellidos(), cita.doctorSexo()))
+                                        .license(cita.doctorLicense())
+                                        .workEmail(cita.doctorWorkEmail())
+                                        .workPhone(cita.doctorWorkPhone())
+                                        .specialties(specialtiesByDoctor.getOrDefault(cita.doctorId(), List.of()))
+                                        .build())
+                                .specialty(new SpecialtyDTO(cita.specialtyId(), cita.specialtyName(), cita.specialtyDescription()))
+                                .room(RoomDTO.builder()
+                                        .id(cita.roomId())
+                                        .name(cita.roomName())
+                                        .medicalCenter(MedicalCenterDTO.builder()
+                                                .id(cita.medicalCenterId())
+                                                .name(cita.medicalCenterName())
+                                                .email(cita.medicalCenterEmail())
+                                                .phone(cita.medicalCenterPhone())
+                                                .addressLine1(cita.medicalCenterAddressLine1())
+                                                .addressLine2(cita.medicalCenterAddressLine2())
+                                                .zipCode(cita.medicalCenterZipCode())
+                                                .country(cita.medicalCenterCountry())
+                                                .province(cita.medicalCenterProvince())
+                                                .municipality(cita.medicalCenterMunicipality())
+                                                .locality(cita.medicalCenterLocality())
+                                                .build())
+                                        .build())
+                                .date(cita.date())
+                                .startTime(cita.startTime())
+                                .endTime(cita.endTime())
+                                .appointmentId(cita.id())
+                                .build())
+                        .patient(patientDTO)
+                        .type(cita.type())
+                        .status(cita.status())
+                        .reason(cita.reason())
+                        .build())
+                .toList();
+    }
+
+    private DoctorAgendaDTO loadDoctorAgenda(Integer doctorId, LocalDate date) {
+        List<AgendaAppointmentRowDTO> rows = appointmentRepository.findAgendaRowsByDoctorAndDate(doctorId, date);
+
+        // Si no hay citas, se comprueba que el médico exista para seguir respondiendo que no se ha encontrado
+        if(rows.isEmpty()) {
+            if(!medicalProfileRepository.existsById(doctorId)) {
+                throw DataNotFoundException.doctorNotFound();
+            }
+            return DoctorAgendaDTO.builder()
+                    .doctorId(doctorId)
+                    .date(date)
+                    .appointments(List.of())
+                    .build();
+        }
+
+        Set<Integer> patientIds = rows.stream().map(AgendaAppointmentRowDTO::patientId).collect(Collectors.toSet());
+        Map<Integer, Long> priorVisits = appointmentRepository.countPriorVisitsByPatientIdIn(doctorId, patientIds, date).stream()
+                .collect(Collectors.toMap(PatientVisitCountDTO::patientId, PatientVisitCountDTO::visits));
+        Map<Integer, List<PendingMedicalTestDTO>> pendingMedicalTests = medicalTestRepository.findPendingByPatientIdIn(patientIds, doctorId).stream()
+                .collect(Collectors.groupingBy(PendingMedicalTestDTO::patientId));
+        Map<Integer, List<ActiveMedicationDTO>> activeMedications = prescriptionRepository.findActiveMedicationsByPatientIdIn(patientIds, doctorId, date).stream()
+                .collect(Collectors.groupingBy(ActiveMedicationDTO::patientId));
+
+        List<DoctorAgendaEntryDTO> appointments = rows.stream()
+                .map(row -> DoctorAgendaEntryDTO.builder()
+                        .appointmentId(row.appointmentId())
+                        .type(row.type())
+                        .status(row.status())
+                        .reason(row.reason())
+                        .slotId(row.slotId())
+                        .startTime(row.startTime())
+                        .endTime(row.endTime())
+                        .roomName(row.roomName())
+                        .specialtyName(row.specialtyName())
+                        .patient(ReducedUserDTO.builder()
+                                .id(row.patientId())
+                                .nombre(row.patientNombre())
+                                .apellidos(row.patientApellidos())
+                                .sexo(row.patientSexo())
+                                .build())
+                        .patientFechaNacimiento(row.patientFechaNacimiento())
+                        .priorVisits(priorVisits.getOrDefault(row.patientId(), 0L))
+                        .pendingMedicalTests(pendingMedicalTests.getOrDefault(row.patientId(), List.of()))
+                        .activeMedications(activeMedications.getOrDefault(row.patientId(), List.of()))
+                        .build())
+                .toList();
+
+        return DoctorAgendaDTO.builder()
+                .doctorId(doctorId)
+                .date(date)
+                .appointments(appointments)
+                .build();
+    }
+
+    // El médico de las citas puede dejar de tener acceso a ellas, a sus pacientes y a los documentos desvinculados.
+    // Los documentos se desvinculan sin leerlos, así que se invalidan todas las decisiones de ese tipo
+    private void invalidateCancelledAppointments(Collection<Integer> appointmentIds, Collection<Integer> patientIds) {
+        appointmentIds.forEach(id -> accessDecisionCache.invalidateResource(AccessCheck.APPOINTMENT, id));
+        patientIds.forEach(id -> accessDecisionCache.invalidateResource(AccessCheck.PATIENT_OF_DOCTOR, id));
+        accessDecisionCache.invalidateCheck(AccessCheck.REPORT);
+        accessDecisionCache.invalidateCheck(AccessCheck.PRESCRIPTION);
+        accessDecisionCache.invalidateCheck(AccessCheck.MEDICAL_TEST);
+    }
 }
\ No newline at end of file
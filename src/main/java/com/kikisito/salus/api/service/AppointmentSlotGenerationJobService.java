@@ -0,0 +1,225 @@
+package com.kikisito.salus.api.service;
+
+import com.kikisito.salus.api.background.PendingTaskDispatcher;
+import com.kikisito.salus.api.config.AppointmentSlotsConfiguration;
+import com.kikisito.salus.api.dto.AppointmentSlotGenerationJobDTO;
+import com.kikisito.salus.api.dto.response.AppointmentSlotGenerationResponse;
+import com.kikisito.salus.api.entity.AppointmentSlotGenerationJobEntity;
+import com.kikisito.salus.api.entity.MedicalProfileEntity;
+import com.kikisito.salus.api.entity.UserEntity;
+import com.kikisito.salus.api.exception.ApiRuntimeException;
+import com.kikisito.salus.api.exception.BadRequestException;
+import com.kikisito.salus.api.exception.DataNotFoundException;
+import com.kikisito.salus.api.mapper.DtoMapper;
+import com.kikisito.salus.api.occupancy.AvailabilityCalendar;
+import com.kikisito.salus.api.repository.AppointmentSlotGenerationJobRepository;
+import com.kikisito.salus.api.repository.MedicalProfileRepository;
+import com.kikisito.salus.api.repository.UserRepository;
+import com.kikisito.salus.api.transaction.AfterCommit;
+import com.kikisito.salus.api.type.GenerationJobStatusType;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// Generación de huecos en segundo plano. Al enviar un trabajo se devuelve su identificador en el momento y la generación
+// se hace en un grupo de hilos de tamaño fijo, por bloques de días. Tras cada bloque se guarda el progreso como punto de
+// control y se envía por WebSocket a quien lo pidió. Los trabajos interrumpidos continúan desde el último punto de control.
+// El calendario de disponibilidad se recarga una sola vez al terminar el trabajo y no tras cada bloque
+@Service
+@RequiredArgsConstructor
+public class AppointmentSlotGenerationJobService {
+    private static final String INTERNAL_ERROR = "internal_error";
+    private static final int ERROR_MESSAGE_LENGTH = 1000; // Igual que la columna error_message
+
+    @Autowired
+    private final AppointmentSlotGenerationJobRepository appointmentSlotGenerationJobRepository;
+
+    @Autowired
+    private final AppointmentSlotGenerationService appointmentSlotGenerationService;
+
+    @Autowired
+    private final MedicalProfileRepository medicalProfileRepository;
+
+    @Autowired
+    private final UserRepository userRepository;
+
+    @Autowired
+    private final WebSocketService webSocketService;
+
+    @Autowired
+    private final AvailabilityCalendar availabilityCalendar;
+
+    @Autowired
+    private final AppointmentSlotsConfiguration appointmentSlotsConfiguration;
+
+    @Autowired
+    private final DtoMapper dtoMapper;
+
+    private ThreadPoolExecutor generationExecutor;
+
+    // Así no se lanza dos veces el mismo trabajo, y si la cola está llena el trabajo se lanza en la siguiente revisión
+    private PendingTaskDispatcher jobDispatcher;
+
+    @PostConstruct
+    public void init() {
+        int threads = Math.max(1, appointmentSlotsConfiguration.getGenerationJobThreads());
+        generationExecutor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, appointmentSlotsConfiguration.getGenerationJobQueueCapacity())));
+        jobDispatcher = new PendingTaskDispatcher(generationExecutor);
+    }
+
+    // Los trabajos que se estén ejecutando se quedan a medias y continúan al volver a arrancar
+    @PreDestroy
+    public void shutdown() {
+        generationExecutor.shutdownNow();
+    }
+
+    @Transactional
+    public AppointmentSlotGenerationJobDTO submitGenerationJob(LocalDate startDate, LocalDate endDate, boolean parallel, UserEntity user) {
+        return this.submit(null, startDate, endDate, parallel, user);
+    }
+
+    @Transactional
+    public AppointmentSlotGenerationJobDTO submitDoctorGenerationJob(Integer doctorId, LocalDate startDate, LocalDate endDate, UserEntity user) {
+        MedicalProfileEntity doctor = medicalProfileRepository.findById(doctorId).orElseThrow(DataNotFoundException::doctorNotFound);
+        return this.submit(doctor, startDate, endDate, false, user);
+    }
+
+    @Transactional(readOnly = true)
+    public AppointmentSlotGenerationJobDTO getGenerationJob(Integer jobId) {
+        AppointmentSlotGenerationJobEntity job = appointmentSlotGenerationJobRepository.findWithDoctorAndRequesterById(jobId).orElseThrow(DataNotFoundException::generationJobNotFound);
+        return dtoMapper.toAppointmentSlotGenerationJobDTO(job);
+    }
+
+    // Al arrancar, y después periódicamente, se lanzan los trabajos pendientes: los que no cupieron en la cola
+    // y los que se estaban ejecutando cuando se detuvo la aplicación
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(cron = "${application.appointment-slots.generation-job-resume-cron:30 * * * * *}")
+    public void resumePendingJobs() {
+        appointmentSlotGenerationJobRepository.findIdsByStatusIn(List.of(GenerationJobStatusType.PENDING, GenerationJobStatusType.RUNNING))
+                .forEach(jobId -> jobDispatcher.dispatch(jobId, this::runJob));
+    }
+
+    // Ejecuta el trabajo en el hilo actual desde su último punto de control. Cada bloque se genera en su propia transacción
+    public AppointmentSlotGenerationJobDTO runJob(Integer jobId) {
+        AppointmentSlotGenerationJobEntity job = appointmentSlotGenerationJobRepository.findWithDoctorAndRequesterById(jobId).orElseThrow(DataNotFoundException::generationJobNotFound);
+        if(job.getStatus() == GenerationJobStatusType.COMPLETED || job.getStatus() == GenerationJobStatusType.FAILED) {
+            return dtoMapper.toAppointmentSlotGenerationJobDTO(job);
+        }
+
+        Integer doctorId = job.getDoctor() == null ? null : job.getDoctor().getId();
+        int chunkDays = Math.max(1, appointmentSlotsConfiguration.getGenerationJobChunkDays());
+
+        job.setStatus(GenerationJobStatusType.RUNNING);
+        this.checkpoint(job);
+
+        try {
+            while(!job.getNextDate().isAfter(job.getEndDate())) {
+                // Si el trabajo se reanuda otro día, los días que ya han pasado no se generan
+                LocalDate today = LocalDate.now();
+                LocalDate chunkStart = job.getNextDate().isBefore(today) ? today : job.getNextDate();
+                LocalDate chunkEnd = chunkStart.plusDays(chunkDays - 1L);
+                if(chunkEnd.isAfter(job.getEndDate())) {
+                    chunkEnd = job.getEndDate();
+                }
+
+                // Un bloque repetido tras una caída no duplica huecos: la generación omite los que ya existen
+                if(!chunkStart.isAfter(chunkEnd)) {
+                    AppointmentSlotGenerationResponse counts = this.generate(doctorId, chunkStart, chunkEnd, job.isParallel());
+                    job.setCreated(job.getCreated() + counts.getCreated());
+                    job.setSkipped(job.getSkipped() + counts.getSkipped());
+                    job.setConflicting(job.getConflicting() + counts.getConflicting());
+                    job.setAbsent(job.getAbsent() + counts.getAbsent());
+                }
+
+                job.setNextDate(chunkEnd.plusDays(1));
+                job.setProcessedDays((int) Math.min(job.getTotalDays(), ChronoUnit.DAYS.between(job.getStartDate(), job.getNextDate())));
+                this.checkpoint(job);
+            }
+
+            job.setStatus(GenerationJobStatusType.COMPLETED);
+        } catch (ApiRuntimeException e) {
+            job.setStatus(GenerationJobStatusType.FAILED);
+            job.setErrorCode(e.getCode());
+            job.setErrorMessage(PendingTaskDispatcher.errorMessage(e, ERROR_MESSAGE_LENGTH));
+        } catch (RuntimeException e) {
+            job.setStatus(GenerationJobStatusType.FAILED);
+            job.setErrorCode(INTERNAL_ERROR);
+            job.setErrorMessage(PendingTaskDispatcher.errorMessage(e, ERROR_MESSAGE_LENGTH));
+        }
+
+        // También si ha fallado, porque los bloques anteriores ya se han confirmado
+        this.refreshCalendar(doctorId);
+
+        return this.checkpoint(job);
+    }
+
+    private AppointmentSlotGenerationJobDTO submit(MedicalProfileEntity doctor, LocalDate startDate, LocalDate endDate, boolean parallel, UserEntity user) {
+        // Comprobamos que las fechas introducidas no estén en el pasado y que la fecha de fin no sea anterior a la de inicio
+        if(startDate.isBefore(LocalDate.now()) || endDate.isBefore(startDate)) {
+            throw BadRequestException.invalidDateOrDateRange();
+        }
+
+        AppointmentSlotGenerationJobEntity job = AppointmentSlotGenerationJobEntity.builder()
+                .doctor(doctor)
+                .requestedBy(user == null ? null : userRepository.getReferenceById(user.getId()))
+                .startDate(startDate)
+                .endDate(endDate)
+                .nextDate(startDate)
+                .parallel(parallel)
+                .totalDays((int) ChronoUnit.DAYS.between(startDate, endDate) + 1)
+                .build();
+        job = appointmentSlotGenerationJobRepository.save(job);
+
+        // El trabajo se lanza cuando se ha guardado, para que el hilo que lo ejecuta lo encuentre
+        Integer jobId = job.getId();
+        AfterCommit.run(() -> jobDispatcher.dispatch(jobId, this::runJob));
+
+        return dtoMapper.toAppointmentSlotGenerationJobDTO(job);
+    }
+
+    private AppointmentSlotGenerationResponse generate(Integer doctorId, LocalDate startDate, LocalDate endDate, boolean parallel) {
+        if(doctorId != null) {
+            return appointmentSlotGenerationService.generateDoctorAppointmentSlotsBetweenDates(doctorId, startDate, endDate, false);
+        }
+
+        return parallel
+                ? appointmentSlotGenerationService.generateAppointmentSlotsBetweenDatesInParallel(startDate, endDate, false)
+                : appointmentSlotGenerationService.generateAppointmentSlotsBetweenDates(startDate, endDate, false);
+    }
+
+    // El trabajo se ejecuta fuera de cualquier transacción, así que el calendario se recarga en el momento
+    private void refreshCalendar(Integer doctorId) {
+        if(doctorId != null) {
+            availabilityCalendar.reloadDoctor(doctorId);
+        } else {
+            availabilityCalendar.rebuild();
+        }
+    }
+
+    // Guarda el progreso y lo envía a quien pidió el trabajo. El trabajo no está asociado a ninguna transacción,
+    // así que se sigue usando la misma instancia, que ya tiene cargados el médico y el usuario
+    private AppointmentSlotGenerationJobDTO checkpoint(AppointmentSlotGenerationJobEntity job) {
+        AppointmentSlotGenerationJobEntity saved = appointmentSlotGenerationJobRepository.save(job);
+        job.setUpdatedAt(saved.getUpdatedAt());
+
+        AppointmentSlotGenerationJobDTO jobDTO = dtoMapper.toAppointmentSlotGenerationJobDTO(job);
+        if(job.getRequestedBy() != null) {
+            webSocketService.sendGenerationJobToUser(job.getRequestedBy(), jobDTO);
+        }
+        return jobDTO;
+    }
+}
@@ -0,0 +1,366 @@
+package com.kikisito.salus.api.service;
+
+import com.kikisito.salus.api.config.AppointmentSlotsConfiguration;
+import com.kikisito.salus.api.dto.AppointmentSlotIntervalDTO;
+import com.kikisito.salus.api.dto.response.AppointmentSlotGenerationResponse;
+import com.kikisito.salus.api.entity.AppointmentSlotEntity;
+import com.kikisito.salus.api.entity.DoctorScheduleEntity;
+import com.kikisito.salus.api.exception.BadRequestException;
+import com.kikisito.salus.api.occupancy.AbsenceIndex;
+import com.kikisito.salus.api.occupancy.AvailabilityCalendar;
+import com.kikisito.salus.api.occupancy.OccupancyIndex;
+import com.kikisito.salus.api.occupancy.ScheduleGrid;
+import com.kikisito.salus.api.repository.*;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+
+@Service
+@RequiredArgsConstructor
+public class AppointmentSlotGenerationService {
+    // Número de huecos que se envían juntos a la base de datos. Debe coincidir con hibernate.jdbc.batch_size
+    private static final int BATCH_SIZE = 50;
+
+    @Autowired
+    private final AppointmentSlotRepository appointmentSlotRepository;
+
+    @Autowired
+    private final DoctorScheduleRepository doctorScheduleRepository;
+
+    @Autowired
+    private final MedicalProfileRepository medicalProfileRepository;
+
+    @Autowired
+    private final SpecialtyRepository specialtyRepository;
+
+    @Autowired
+    private final RoomRepository roomRepository;
+
+    @Autowired
+    private final OccupancyIndex occupancyIndex;
+
+    @Autowired
+    private final AvailabilityCalendar availabilityCalendar;
+
+    @Autowired
+    private final AbsenceIndex absenceIndex;
+
+    @Autowired
+    private final EntityManager entityManager;
+
+    @Autowired
+    private final PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private final AppointmentSlotsConfiguration appointmentSlotsConfiguration;
+
+    // Limita las transacciones de generación en paralelo que hay abiertas a la vez, compartido entre peticiones
+    private Semaphore generationPermits;
+
+    // Cada médico se genera en una transacción nueva e independiente de la del hilo que lo lanza
+    private TransactionTemplate partitionTransaction;
+
+    @PostConstruct
+    public void init() {
+        generationPermits = new Semaphore(Math.max(1, appointmentSlotsConfiguration.getGenerationConcurrency()));
+        partitionTransaction = new TransactionTemplate(transactionManager);
+        partitionTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    // Genera los huecos de todos los médicos en un rango de fechas con un número fijo de consultas:
+    // una para los turnos, otra para los huecos ya existentes y las inserciones por lotes
+    @Transactional
+    public AppointmentSlotGenerationResponse generateAppointmentSlotsBetweenDates(LocalDate startDate, LocalDate endDate) {
+        return this.generateAppointmentSlotsBetweenDates(startDate, endDate, true);
+    }
+
+    // Con refreshCalendar a false no se recarga el calendario de disponibilidad. Lo usan los trabajos de generación,
+    // que generan por bloques de días y recargan el calendario una sola vez al terminar
+    @Transactional
+    public AppointmentSlotGenerationResponse generateAppointmentSlotsBetweenDates(LocalDate startDate, LocalDate endDate, boolean refreshCalendar) {
+        this.validateDateRange(startDate, endDate);
+
+        List<ScheduleTemplate> schedules = this.loadSchedules();
+        List<AppointmentSlotIntervalDTO> existingSlots = appointmentSlotRepository.findIntervalsBetween(startDate, endDate);
+        GenerationCounts counts = this.generate(schedules, existingSlots, startDate, endDate);
+
+        // Los huecos nuevos se cargan en el calendario de disponibilidad cuando se confirme la generación
+        if(refreshCalendar) {
+            availabilityCalendar.rebuildAfterCommit();
+        }
+
+        return AppointmentSlotGenerationResponse.builder()
+                .created(counts.created())
+                .skipped(counts.skipped())
+                .conflicting(counts.conflicting())
+                .absent(counts.absent())
+                .build();
+    }
+
+    // Genera los huecos que falten de un único médico en un rango de fechas. Se usa al cambiar sus turnos
+    @Transactional
+    public AppointmentSlotGenerationResponse generateDoctorAppointmentSlotsBetweenDates(Integer doctorId, LocalDate startDate, LocalDate endDate) {
+        return this.generateDoctorAppointmentSlotsBetweenDates(doctorId, startDate, endDate, true);
+    }
+
+    @Transactional
+    public AppointmentSlotGenerationResponse generateDoctorAppointmentSlotsBetweenDates(Integer doctorId, LocalDate startDate, LocalDate endDate, boolean refreshCalendar) {
+        this.validateDateRange(startDate, endDate);
+
+        List<ScheduleTemplate> schedules = doctorScheduleRepository.findByDoctorId(doctorId).stream()
+                .filter(schedule -> schedule.getDuration() != null && schedule.getDuration() > 0)
+                .map(ScheduleTemplate::of)
+                .toList();
+
+        GenerationCounts counts = new GenerationCounts(0, 0, 0, 0);
+        if(!schedules.isEmpty()) {
+            Set<Integer> roomIds = schedules.stream().map(ScheduleTemplate::roomId).collect(Collectors.toSet());
+            List<AppointmentSlotIntervalDTO> existingSlots = appointmentSlotRepository.findIntervalsByDoctorOrRoomsBetween(doctorId, roomIds, startDate, endDate);
+            counts = this.generate(schedules, existingSlots, startDate, endDate);
+        }
+
+        if(refreshCalendar) {
+            availabilityCalendar.reloadDoctor(doctorId);
+        }
+
+        return AppointmentSlotGenerationResponse.builder()
+                .created(counts.created())
+                .skipped(counts.skipped())
+                .conflicting(counts.conflicting())
+                .absent(counts.absent())
+                .build();
+    }
+
+    // Igual que generateAppointmentSlotsBetweenDates, pero reparte el trabajo por médico. Cada médico se genera en su
+    // propia transacción corta en un hilo virtual, y el semáforo limita cuántas hay abiertas a la vez para no agotar el
+    // pool de conexiones. Los conflictos de consulta entre médicos se resuelven con el índice de ocupación, común a todos.
+    // Si falla algún médico, los demás ya se han confirmado y se propaga el primer error con el resto como suprimidos;
+    // al repetir la generación se omiten los huecos que ya existen
+    public AppointmentSlotGenerationResponse generateAppointmentSlotsBetweenDatesInParallel(LocalDate startDate, LocalDate endDate) {
+        return this.generateAppointmentSlotsBetweenDatesInParallel(startDate, endDate, true);
+    }
+
+    public AppointmentSlotGenerationResponse generateAppointmentSlotsBetweenDatesInParallel(LocalDate startDate, LocalDate endDate, boolean refreshCalendar) {
+        this.validateDateRange(startDate, endDate);
+
+        Map<Integer, List<ScheduleTemplate>> schedulesByDoctor = this.loadSchedules().stream()
+                .collect(Collectors.groupingBy(ScheduleTemplate::doctorId));
+
+        List<Future<GenerationCounts>> partitions = new ArrayList<>();
+        try(ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for(Map.Entry<Integer, List<ScheduleTemplate>> entry : schedulesByDoctor.entrySet()) {
+                partitions.add(executor.submit(() -> this.generatePartition(entry.getKey(), entry.getValue(), startDate, endDate)));
+            }
+        }
+
+        // Cada médico se ha confirmado en su propia transacción, así que el calendario se recarga al terminar todos
+        if(refreshCalendar) {
+            availabilityCalendar.rebuild();
+        }
+
+        // Agregamos los resultados de cada médico en un único informe
+        int created = 0;
+        int skipped = 0;
+        int conflicting = 0;
+        int absent = 0;
+        RuntimeException failure = null;
+        for(Future<GenerationCounts> partition : partitions) {
+            try {
+                GenerationCounts counts = partition.get();
+                created += counts.created();
+                skipped += counts.skipped();
+                conflicting += counts.conflicting();
+                absent += counts.absent();
+            } catch (ExecutionException e) {
+                RuntimeException cause = e.getCause() instanceof RuntimeException runtimeException ? runtimeException : new IllegalStateException(e.getCause());
+                if(failure == null) {
+                    failure = cause;
+                } else {
+                    failure.addSuppressed(cause);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+
+        if(failure != null) {
+            throw failure;
+        }
+
+        return AppointmentSlotGenerationResponse.builder()
+                .created(created)
+                .skipped(skipped)
+                .conflicting(conflicting)
+                .absent(absent)
+                .build();
+    }
+
+    private GenerationCounts generatePartition(Integer doctorId, List<ScheduleTemplate> schedules, LocalDate startDate, LocalDate endDate) throws InterruptedException {
+        generationPermits.acquire();
+        try {
+            return partitionTransaction.execute(status -> {
+                // Solo se cargan los huecos del médico y los de las consultas en las que pasa consulta
+                Set<Integer> roomIds = schedules.stream().map(ScheduleTemplate::roomId).collect(Collectors.toSet());
+                List<AppointmentSlotIntervalDTO> existingSlots = appointmentSlotRepository.findIntervalsByDoctorOrRoomsBetween(doctorId, roomIds, startDate, endDate);
+                return this.generate(schedules, existingSlots, startDate, endDate);
+            });
+        } finally {
+            generationPermits.release();
+        }
+    }
+
+    private GenerationCounts generate(List<ScheduleTemplate> schedules, List<AppointmentSlotIntervalDTO> existingSlots, LocalDate startDate, LocalDate endDate) {
+        // Agrupamos los turnos por día de la semana
+        Map<DayOfWeek, List<ScheduleTemplate>> schedulesByDay = new EnumMap<>(DayOfWeek.class);
+        for(ScheduleTemplate schedule : schedules) {
+            schedulesByDay.computeIfAbsent(schedule.dayOfWeek(), day -> new ArrayList<>()).add(schedule);
+        }
+
+        // Indexamos los huecos que ya existen en el rango por médico y por consulta
+        Map<OccupancyKey, List<AppointmentSlotIntervalDTO>> doctorOccupancy = new HashMap<>();
+        Map<OccupancyKey, List<AppointmentSlotIntervalDTO>> roomOccupancy = new HashMap<>();
+        for(AppointmentSlotIntervalDTO interval : existingSlots) {
+            this.occupy(doctorOccupancy, roomOccupancy, interval);
+        }
+
+        int created = 0;
+        int skipped = 0;
+        int conflicting = 0;
+        int absent = 0;
+        List<AppointmentSlotEntity> pendingSlots = new ArrayList<>(BATCH_SIZE);
+
+        for(LocalDate date = startDate; !date.isAfter(endDate); date = date.plusDays(1)) {
+            for(ScheduleTemplate schedule : schedulesByDay.getOrDefault(date.getDayOfWeek(), List.of())) {
+                int startMinute = schedule.startTime().toSecondOfDay() / 60;
+                int endMinute = schedule.endTime().toSecondOfDay() / 60;
+
+                // Se trabaja en minutos para evitar que LocalTime dé la vuelta a medianoche. Solo se crean los huecos que
+                // terminan dentro del turno
+                for(int minute = startMinute; ScheduleGrid.fits(startMinute, endMinute, schedule.duration(), minute); minute += schedule.duration()) {
+                    LocalTime slotStart = LocalTime.ofSecondOfDay(minute * 60L);
+                    LocalTime slotEnd = LocalTime.ofSecondOfDay((minute + schedule.duration()) * 60L);
+                    AppointmentSlotIntervalDTO candidate = new AppointmentSlotIntervalDTO(schedule.doctorId(), schedule.roomId(), date, slotStart, slotEnd);
+
+                    List<AppointmentSlotIntervalDTO> doctorSlots = doctorOccupancy.getOrDefault(new OccupancyKey(schedule.doctorId(), date), List.of());
+                    List<AppointmentSlotIntervalDTO> roomSlots = roomOccupancy.getOrDefault(new OccupancyKey(schedule.roomId(), date), List.of());
+
+                    // Si el hueco ya existe, se ha generado en una ejecución anterior
+                    if(doctorSlots.stream().anyMatch(slot -> slot.startTime().equals(slotStart) && slot.endTime().equals(slotEnd))) {
+                        skipped++;
+                        continue;
+                    }
+
+                    // Nunca se crean huecos durante una ausencia del médico
+                    if(absenceIndex.overlaps(schedule.doctorId(), date, slotStart, slotEnd)) {
+                        absent++;
+                        continue;
+                    }
+
+                    // Comprobamos en memoria que no haya conflictos con otros horarios del médico o de la consulta
+                    if(this.overlaps(doctorSlots, candidate) || this.overlaps(roomSlots, candidate)) {
+                        conflicting++;
+                        continue;
+                    }
+
+                    // El índice de ocupación también recoge los huecos creados por otras peticiones en curso
+                    if(!occupancyIndex.tryReserve(candidate)) {
+                        conflicting++;
+                        continue;
+                    }
+
+                    this.occupy(doctorOccupancy, roomOccupancy, candidate);
+                    pendingSlots.add(AppointmentSlotEntity.builder()
+                            .doctor(medicalProfileRepository.getReferenceById(schedule.doctorId()))
+                            .specialty(specialtyRepository.getReferenceById(schedule.specialtyId()))
+                            .room(roomRepository.getReferenceById(schedule.roomId()))
+                            .schedule(doctorScheduleRepository.getReferenceById(schedule.scheduleId()))
+                            .date(date)
+                            .startTime(slotStart)
+                            .endTime(slotEnd)
+                            .build());
+                    created++;
+
+                    if(pendingSlots.size() >= BATCH_SIZE) {
+                        this.persistBatch(pendingSlots);
+                        pendingSlots = new ArrayList<>(BATCH_SIZE);
+                    }
+                }
+            }
+        }
+
+        this.persistBatch(pendingSlots);
+
+        return new GenerationCounts(created, skipped, conflicting, absent);
+    }
+
+    private void validateDateRange(LocalDate startDate, LocalDate endDate) {
+        // Comprobamos que las fechas introducidas no estén en el pasado y que la fecha de fin no sea anterior a la de inicio
+        if(startDate.isBefore(LocalDate.now()) || endDate.isBefore(startDate)) {
+            throw BadRequestException.invalidDateOrDateRange();
+        }
+    }
+
+    // Carga todos los turnos de una vez, descartando los que no tienen una duración válida
+    private List<ScheduleTemplate> loadSchedules() {
+        return doctorScheduleRepository.findAll().stream()
+                .filter(schedule -> schedule.getDuration() != null && schedule.getDuration() > 0)
+                .map(ScheduleTemplate::of)
+                .toList();
+    }
+
+    private void persistBatch(List<AppointmentSlotEntity> slots) {
+        if(slots.isEmpty()) {
+            return;
+        }
+
+        // Hibernate agrupa las inserciones en sentencias por lotes. Tras cada lote se sacan del contexto de persistencia
+        // los huecos guardados para que la memoria no crezca con el tamaño del rango. No se vacía entero porque la
+        // transacción puede ser la de quien ha cambiado el turno, que sigue usando sus entidades después
+        appointmentSlotRepository.saveAll(slots);
+        entityManager.flush();
+        slots.forEach(entityManager::detach);
+    }
+
+    private void occupy(Map<OccupancyKey, List<AppointmentSlotIntervalDTO>> doctorOccupancy, Map<OccupancyKey, List<AppointmentSlotIntervalDTO>> roomOccupancy, AppointmentSlotIntervalDTO interval) {
+        doctorOccupancy.computeIfAbsent(new OccupancyKey(interval.doctorId(), interval.date()), key -> new ArrayList<>()).add(interval);
+        roomOccupancy.computeIfAbsent(new OccupancyKey(interval.roomId(), interval.date()), key -> new ArrayList<>()).add(interval);
+    }
+
+    private boolean overlaps(List<AppointmentSlotIntervalDTO> slots, AppointmentSlotIntervalDTO candidate) {
+        return slots.stream().anyMatch(slot -> candidate.startTime().isBefore(slot.endTime()) && candidate.endTime().isAfter(slot.startTime()));
+    }
+
+    private record OccupancyKey(Integer id, LocalDate date) {}
+
+    private record GenerationCounts(int created, int skipped, int conflicting, int absent) {}
+
+    // Copia de los datos de un turno que no depende del contexto de persistencia
+    private record ScheduleTemplate(Integer scheduleId, Integer doctorId, Integer specialtyId, Integer roomId, DayOfWeek dayOfWeek, LocalTime startTime, LocalTime endTime, int duration) {
+        static ScheduleTemplate of(DoctorScheduleEntity schedule) {
+            return new ScheduleTemplate(
+                    schedule.getId(),
+                    schedule.getDoctor().getId(),
+                    schedule.getSpecialty().getId(),
+                    schedule.getRoom().getId(),
+                    schedule.getDayOfWeek(),
+                    schedule.getStartTime(),
+                    schedule.getEndTime(),
+                    schedule.getDuration()
+            );
+        }
+    }
+}
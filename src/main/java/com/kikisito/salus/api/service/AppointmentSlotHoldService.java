@@ -0,0 +1,162 @@
+package com.kikisito.salus.api.service;
+
+import com.kikisito.salus.api.config.AppointmentSlotsConfiguration;
+import com.kikisito.salus.api.dto.AppointmentSlotDTO;
+import com.kikisito.salus.api.dto.request.AppointmentSlotHoldRequest;
+import com.kikisito.salus.api.dto.response.AppointmentSlotHoldResponse;
+import com.kikisito.salus.api.entity.AppointmentSlotEntity;
+import com.kikisito.salus.api.entity.AppointmentSlotHoldEntity;
+import com.kikisito.salus.api.entity.UserEntity;
+import com.kikisito.salus.api.exception.ConflictException;
+import com.kikisito.salus.api.exception.DataNotFoundException;
+import com.kikisito.salus.api.mapper.DtoMapper;
+import com.kikisito.salus.api.occupancy.SlotHoldTable;
+import com.kikisito.salus.api.repository.AppointmentSlotHoldRepository;
+import com.kikisito.salus.api.repository.AppointmentSlotRepository;
+import com.kikisito.salus.api.repository.UserRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Optional;
+
+// Retenciones temporales de huecos. Un paciente retiene el hueco al elegirlo y, mientras rellena la cita, el hueco
+// no aparece como disponible para los demás ni lo pueden reservar. La retención se consume al reservar y caduca sola
+@Service
+@RequiredArgsConstructor
+public class AppointmentSlotHoldService {
+    @Autowired
+    private final AppointmentSlotHoldRepository appointmentSlotHoldRepository;
+
+    @Autowired
+    private final AppointmentSlotRepository appointmentSlotRepository;
+
+    @Autowired
+    private final UserRepository userRepository;
+
+    @Autowired
+    private final VirtualAppointmentSlotService virtualAppointmentSlotService;
+
+    @Autowired
+    private final SlotHoldTable slotHoldTable;
+
+    @Autowired
+    private final AppointmentSlotsConfiguration appointmentSlotsConfiguration;
+
+    @Autowired
+    private final DtoMapper dtoMapper;
+
+    @Transactional
+    public AppointmentSlotHoldResponse holdAppointmentSlot(AppointmentSlotHoldRequest request, UserEntity user) {
+        // Si se ha pedido un hueco virtual por turno, fecha y hora, se guarda ahora como fila para poder retenerlo
+        AppointmentSlotEntity appointmentSlot = request.getAppointmentSlot() != null
+                ? appointmentSlotRepository.findById(request.getAppointmentSlot()).orElseThrow(DataNotFoundException::appointmentSlotNotFound)
+                : virtualAppointmentSlotService.materializeSlot(request.getScheduleId(), request.getDate(), request.getStartTime());
+
+        return this.holdAppointmentSlot(appointmentSlot, user);
+    }
+
+    // Retiene un hueco concreto para el usuario. También se usa al ofrecer un hueco liberado a la lista de espera
+    @Transactional
+    public AppointmentSlotHoldResponse holdAppointmentSlot(AppointmentSlotEntity appointmentSlot, UserEntity user) {
+        // Las mismas comprobaciones que al reservar, para no retener huecos que no se van a poder reservar
+        if(appointmentSlot.getDoctor().getUser().getId().equals(user.getId())) {
+            throw ConflictException.appointmentSlotCannotBeBookedByDoctor();
+        }
+
+        if (
+                appointmentSlot.getDate().isBefore(LocalDate.now())
+                || (appointmentSlot.getDate().isEqual(LocalDate.now()) && appointmentSlot.getStartTime().isBefore(LocalTime.now()))
+        ) {
+            throw ConflictException.dateInPast();
+        }
+
+        if(appointmentSlot.getAppointment() != null) {
+            throw ConflictException.appointmentSlotIsAlreadyTaken();
+        }
+
+        // Un paciente no puede retener más huecos a la vez que el máximo configurado. Renovar la retención de un hueco
+        // que ya tiene no cuenta como una nueva
+        long activeHolds = appointmentSlotHoldRepository.countActiveByUserExcludingSlot(user.getId(), appointmentSlot.getId(), LocalDateTime.now());
+        if(activeHolds >= appointmentSlotsConfiguration.getSlotHoldMaxPerUser()) {
+            throw ConflictException.tooManyAppointmentSlotHolds();
+        }
+
+        // La tabla en memoria descarta al momento las retenciones de un hueco ya retenido, sin consultar la base de datos
+        LocalDateTime expiresAt = LocalDateTime.now().plus(appointmentSlotsConfiguration.getSlotHoldTtl());
+        if(!slotHoldTable.tryHold(appointmentSlot.getId(), user.getId(), expiresAt)) {
+            throw ConflictException.appointmentSlotIsHeld();
+        }
+
+        // Se guarda la retención reutilizando la fila caducada del hueco si aún no se ha purgado
+        Optional<AppointmentSlotHoldEntity> existingHold = appointmentSlotHoldRepository.findBySlot_Id(appointmentSlot.getId());
+        if(existingHold.isPresent() && existingHold.get().getExpiresAt().isAfter(LocalDateTime.now())
+                && !existingHold.get().getUser().getId().equals(user.getId())) {
+            throw ConflictException.appointmentSlotIsHeld();
+        }
+
+        AppointmentSlotHoldEntity hold = existingHold.orElseGet(AppointmentSlotHoldEntity::new);
+        hold.setSlot(appointmentSlot);
+        hold.setUser(userRepository.getReferenceById(user.getId()));
+        hold.setExpiresAt(expiresAt);
+
+        // Dos retenciones simultáneas del mismo hueco chocan con la restricción única sobre slot_id
+        try {
+            appointmentSlotHoldRepository.saveAndFlush(hold);
+        } catch (DataIntegrityViolationException e) {
+            throw ConflictException.appointmentSlotIsHeld();
+        }
+
+        return AppointmentSlotHoldResponse.builder()
+                .slot(dtoMapper.toAppointmentSlotDTO(appointmentSlot))
+                .expiresAt(expiresAt)
+                .build();
+    }
+
+    // Libera el hueco retenido por el usuario, por ejemplo si vuelve atrás para elegir otro
+    @Transactional
+    public void releaseAppointmentSlotHold(Integer appointmentSlotId, UserEntity user) {
+        Optional<AppointmentSlotHoldEntity> hold = appointmentSlotHoldRepository.findBySlot_Id(appointmentSlotId);
+        if(hold.isEmpty() || !hold.get().getUser().getId().equals(user.getId())) {
+            return;
+        }
+
+        appointmentSlotHoldRepository.delete(hold.get());
+        slotHoldTable.release(appointmentSlotId, user.getId());
+    }
+
+    // Al reservar, el hueco no puede estar retenido por otro paciente. Si lo retenía el propio paciente, la retención se consume.
+    // La tabla en memoria descarta pronto los huecos retenidos en esta instancia, pero la que decide es la tabla de
+    // retenciones, que también recoge las tomadas en otras instancias o antes de un reinicio
+    @Transactional
+    public void consumeHold(AppointmentSlotEntity appointmentSlot, UserEntity patient) {
+        if(slotHoldTable.isHeldByOther(appointmentSlot.getId(), patient.getId())) {
+            throw ConflictException.appointmentSlotIsHeld();
+        }
+
+        Optional<AppointmentSlotHoldEntity> hold = appointmentSlotHoldRepository.findBySlot_Id(appointmentSlot.getId());
+        if(hold.isPresent() && hold.get().getExpiresAt().isAfter(LocalDateTime.now()) && !hold.get().getUser().getId().equals(patient.getId())) {
+            throw ConflictException.appointmentSlotIsHeld();
+        }
+
+        if(hold.isPresent() || slotHoldTable.isHeld(appointmentSlot.getId())) {
+            appointmentSlotHoldRepository.deleteBySlotId(appointmentSlot.getId());
+            slotHoldTable.release(appointmentSlot.getId(), patient.getId());
+        }
+    }
+
+    // Purga periódica de las retenciones caducadas, en la base de datos y en memoria
+    @Scheduled(cron = "${application.appointment-slots.slot-hold-purge-cron:0 * * * * *}")
+    @Transactional
+    public void purgeExpiredHolds() {
+        LocalDateTime now = LocalDateTime.now();
+        appointmentSlotHoldRepository.deleteExpired(now);
+        slotHoldTable.evictExpired(now);
+    }
+}
@@ -0,0 +1,153 @@
+package com.kikisito.salus.api.service;
+
+import com.kikisito.salus.api.config.AppointmentSlotsConfiguration;
+import com.kikisito.salus.api.dto.AppointmentSlotIntervalDTO;
+import com.kikisito.salus.api.entity.AppointmentSlotEntity;
+import com.kikisito.salus.api.entity.DoctorScheduleEntity;
+import com.kikisito.salus.api.event.ScheduleSnapshot;
+import com.kikisito.salus.api.occupancy.AvailabilityCalendar;
+import com.kikisito.salus.api.occupancy.OccupancyIndex;
+import com.kikisito.salus.api.repository.AppointmentSlotRepository;
+import com.kikisito.salus.api.repository.DoctorScheduleRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+// Mantiene generados los huecos de los próximos días a partir de los turnos de los médicos.
+// Cada noche solo se generan los días que han entrado en el horizonte desde la última ejecución, que se guarda en
+// cada turno para que sobreviva a los reinicios, y al cambiar un turno solo se regeneran los días futuros afectados
+@Service
+@RequiredArgsConstructor
+public class AppointmentSlotMaterializerService {
+    @Autowired
+    private final AppointmentSlotGenerationService appointmentSlotGenerationService;
+
+    @Autowired
+    private final AppointmentSlotRepository appointmentSlotRepository;
+
+    @Autowired
+    private final DoctorScheduleRepository doctorScheduleRepository;
+
+    @Autowired
+    private final OccupancyIndex occupancyIndex;
+
+    @Autowired
+    private final AvailabilityCalendar availabilityCalendar;
+
+    @Autowired
+    private final AppointmentSlotsConfiguration appointmentSlotsConfiguration;
+
+    @Scheduled(cron = "${application.appointment-slots.materializer-cron:0 30 2 * * *}")
+    @Transactional
+    public void materialize() {
+        // En el modo virtual los huecos no se generan por adelantado
+        if(!appointmentSlotsConfiguration.isMaterializerEnabled() || appointmentSlotsConfiguration.isVirtualMode()) {
+            return;
+        }
+
+        this.materializeUntil(this.horizonEnd());
+    }
+
+    // Se empieza por el día siguiente al del turno que va más atrasado. Un turno nuevo que todavía no se ha generado
+    // hace que se recorra todo el horizonte; como la generación omite los huecos que ya existen, repetir días no duplica nada
+    @Transactional
+    public synchronized void materializeUntil(LocalDate endDate) {
+        LocalDate today = LocalDate.now();
+        LocalDate startDate = this.materializedUntil(today).plusDays(1);
+        if(startDate.isAfter(endDate)) {
+            return;
+        }
+
+        appointmentSlotGenerationService.generateAppointmentSlotsBetweenDates(startDate, endDate);
+        doctorScheduleRepository.advanceMaterializedUntil(endDate);
+    }
+
+    // Genera los huecos de un turno nuevo en los días ya cubiertos por el horizonte
+    @Transactional
+    public void onScheduleCreated(DoctorScheduleEntity schedule) {
+        this.onSchedulesCreated(List.of(schedule));
+    }
+
+    // Igual que onScheduleCreated para varios turnos: la generación se lanza una sola vez por médico, porque ya recorre
+    // todos sus turnos
+    @Transactional
+    public void onSchedulesCreated(Collection<DoctorScheduleEntity> schedules) {
+        Set<Integer> doctorIds = schedules.stream().map(schedule -> schedule.getDoctor().getId()).collect(Collectors.toCollection(LinkedHashSet::new));
+
+        // En el modo virtual solo cambia la rejilla de huecos del calendario de disponibilidad
+        if(appointmentSlotsConfiguration.isVirtualMode()) {
+            doctorIds.forEach(availabilityCalendar::reloadDoctor);
+            return;
+        }
+
+        LocalDate coveredUntil = this.coveredUntil();
+        doctorIds.forEach(doctorId -> appointmentSlotGenerationService.generateDoctorAppointmentSlotsBetweenDates(doctorId, LocalDate.now(), coveredUntil));
+        schedules.forEach(schedule -> schedule.setMaterializedUntil(coveredUntil));
+    }
+
+    // Borra los huecos libres que generó la versión anterior del turno y vuelve a generar los del médico.
+    // Los huecos que ya tienen una cita y los creados a mano no se tocan
+    @Transactional
+    public void onScheduleChanged(ScheduleSnapshot previous) {
+        if(appointmentSlotsConfiguration.isVirtualMode()) {
+            availabilityCalendar.reloadDoctor(previous.doctorId());
+            return;
+        }
+
+        LocalDate today = LocalDate.now();
+        this.deleteFreeGeneratedSlots(previous, today);
+        appointmentSlotGenerationService.generateDoctorAppointmentSlotsBetweenDates(previous.doctorId(), today, this.coveredUntil());
+    }
+
+    // Antes de borrar un turno se borran sus huecos libres y los demás dejan de estar asociados a él. Después de
+    // borrarlo hay que llamar a onScheduleChanged para regenerar los huecos del médico
+    @Transactional
+    public void onScheduleDeleting(ScheduleSnapshot previous) {
+        this.deleteFreeGeneratedSlots(previous, LocalDate.now());
+        appointmentSlotRepository.unlinkSchedule(previous.scheduleId());
+    }
+
+    private void deleteFreeGeneratedSlots(ScheduleSnapshot previous, LocalDate from) {
+        List<AppointmentSlotEntity> staleSlots = appointmentSlotRepository.findFreeGeneratedSlots(previous.scheduleId(), from);
+        if(staleSlots.isEmpty()) {
+            return;
+        }
+
+        // Se liberan en el índice en el momento para que la regeneración pueda volver a ocupar los mismos horarios
+        appointmentSlotRepository.deleteAllInBatch(staleSlots);
+        staleSlots.forEach(slot -> occupancyIndex.releaseImmediately(new AppointmentSlotIntervalDTO(
+                previous.doctorId(),
+                previous.roomId(),
+                slot.getDate(),
+                slot.getStartTime(),
+                slot.getEndTime()
+        )));
+    }
+
+    // Último día generado de todos los turnos, o el día anterior a hoy si falta alguno o se ha quedado atrás
+    private LocalDate materializedUntil(LocalDate today) {
+        LocalDate yesterday = today.minusDays(1);
+        LocalDate until = doctorScheduleRepository.findMaterializedUntil(yesterday);
+        return until == null || until.isBefore(yesterday) ? yesterday : until;
+    }
+
+    // Los cambios de turno se aplican hasta donde llegue el horizonte ya generado
+    private LocalDate coveredUntil() {
+        LocalDate today = LocalDate.now();
+        LocalDate until = this.materializedUntil(today);
+        return until.isBefore(today) ? this.horizonEnd() : until;
+    }
+
+    private LocalDate horizonEnd() {
+        return LocalDate.now().plusWeeks(appointmentSlotsConfiguration.getHorizonWeeks());
+    }
+}
@@ -1,14 +1,23 @@
 package com.kikisito.salus.api.service;
 
+import com.kikisito.salus.api.cache.AvailabilityCache;
+import com.kikisito.salus.api.config.AppointmentSlotsConfiguration;
 import com.kikisito.salus.api.dto.AppointmentSlotDTO;
+import com.kikisito.salus.api.dto.AppointmentSlotIntervalDTO;
 import com.kikisito.salus.api.dto.request.AppointmentSlotRequest;
 import com.kikisito.salus.api.entity.*;
 import com.kikisito.salus.api.exception.BadRequestException;
 import com.kikisito.salus.api.exception.ConflictException;
 import com.kikisito.salus.api.exception.DataNotFoundException;
+import com.kikisito.salus.api.mapper.DtoMapper;
+import com.kikisito.salus.api.occupancy.AbsenceIndex;
+import com.kikisito.salus.api.occupancy.AvailabilityCalendar;
+import com.kikisito.salus.api.occupancy.OccupancyIndex;
+import com.kikisito.salus.api.occupancy.ScheduleGrid;
+import com.kikisito.salus.api.occupancy.SlotHoldTable;
 import com.kikisito.salus.api.repository.*;
+import jakarta.persistence.EntityManager;
 import lombok.RequiredArgsConstructor;
-import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -16,11 +25,17 @@ import org.springframework.transaction.annotation.Transactional;
 import java.time.LocalDate;
 import java.time.LocalTime;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
 public class AppointmentSlotService {
+    // Igual que el tamaño de bloque del cursor en AppointmentSlotRepository.streamByDoctorAndDateBetween
+    private static final int STREAM_BATCH_SIZE = 100;
+
     @Autowired
     private final AppointmentSlotRepository appointmentSlotRepository;
 
@@ -40,48 +55,31 @@ public class AppointmentSlotService {
     private RoomRepository roomRepository;
 
     @Autowired
-    private ModelMapper modelMapper;
+    private DtoMapper dtoMapper;
 
-    @Transactional
-    public List<AppointmentSlotDTO> generateAppointmentSlotsBetweenDates(LocalDate startDate, LocalDate endDate) {
-        // Obtenemos todos los doctores registrados para generar los huecos de citas
-        List<MedicalProfileEntity> doctors = medicalProfileRepository.findAll();
-
-        // Generamos las citas
-        List<AppointmentSlotDTO> appointmentSlots = new ArrayList<>();
-        for(MedicalProfileEntity doctor : doctors) {
-            List<AppointmentSlotDTO> dateSlots = this.generateAppointmentSlotsByDoctorBetweenDates(doctor.getId(), startDate, endDate);
-            appointmentSlots.addAll(dateSlots);
-        }
+    @Autowired
+    private EntityManager entityManager;
 
-        return appointmentSlots;
-    }
+    @Autowired
+    private OccupancyIndex occupancyIndex;
 
-    // Genera los huecos de citas para un médico en un rango de fechas
-    @Transactional
-    public List<AppointmentSlotDTO> generateAppointmentSlotsByDoctorBetweenDates(Integer doctorId, LocalDate startDate, LocalDate endDate) {
-        // Comprobamos que las fechas introducidas no estén en el pasado y que la fecha de fin no sea anterior a la de inicio
-        if(startDate.isBefore(LocalDate.now()) || endDate.isBefore(LocalDate.now()) || endDate.isBefore(startDate)) {
-            throw BadRequestException.invalidDateOrDateRange();
-        }
+    @Autowired
+    private AvailabilityCalendar availabilityCalendar;
 
-        // Comprobamos que el médico existe
-        MedicalProfileEntity doctor = medicalProfileRepository.findById(doctorId).orElseThrow(DataNotFoundException::doctorNotFound);
+    @Autowired
+    private AvailabilityCache availabilityCache;
 
-        List<AppointmentSlotDTO> appointmentSlots = new ArrayList<>();
-        for(LocalDate date = startDate; !date.isAfter(endDate); date = date.plusDays(1)) {
-            // Obtiene los turnos del médico para la fecha dada
-            List<DoctorScheduleEntity> schedules = doctorScheduleRepository.findByDoctorAndDayOfWeek(doctor, date.getDayOfWeek());
+    @Autowired
+    private SlotHoldTable slotHoldTable;
 
-            // Genera los huecos de citas para cada turno del día
-            for(DoctorScheduleEntity schedule : schedules) {
-                List<AppointmentSlotDTO> dateSlots = this.generateAppointmentSlotsByScheduleId(schedule.getId(), date);
-                appointmentSlots.addAll(dateSlots);
-            }
-        }
+    @Autowired
+    private AbsenceIndex absenceIndex;
 
-        return appointmentSlots;
-    }
+    @Autowired
+    private VirtualAppointmentSlotService virtualAppointmentSlotService;
+
+    @Autowired
+    private AppointmentSlotsConfiguration appointmentSlotsConfiguration;
 
     // Genera los huecos de citas de un turno específico para una fecha dada
     // El día de la semana de la petición DEBE coincidir con el día de la semana del turno registrado
@@ -100,56 +98,68 @@ public class AppointmentSlotService {
             throw ConflictException.dayMismatch();
         }
 
-        // Datos básicos del turno
-        LocalTime startTime = schedule.getStartTime();
-        LocalTime endTime = schedule.getEndTime();
-        Integer duration = schedule.getDuration();
+        // Datos básicos del turno, en minutos desde medianoche para que LocalTime no dé la vuelta a medianoche
+        int startMinute = schedule.getStartTime().toSecondOfDay() / 60;
+        int endMinute = schedule.getEndTime().toSecondOfDay() / 60;
+        int duration = schedule.getDuration() != null ? schedule.getDuration() : 0;
 
+        // Solo se crean los huecos que terminan dentro del turno, con la misma regla que el resto de la generación
         List<AppointmentSlotEntity> generatedSlots = new ArrayList<>();
-        for(LocalTime time = startTime; time.isBefore(endTime); time = time.plusMinutes(duration)) {
-            // Comprobamos que no solapa con otros horarios en la misma consulta
-            RoomEntity room = schedule.getRoom();
-
-            // Comprobamos que no haya conflictos con otros horarios de la consulta
-            boolean roomConflict = appointmentSlotRepository.existsRoomOverlappingSlot(room, date, startTime, endTime);
-
-            // Comprobamos que no haya conflictos con otros horarios del médico
-            boolean doctorConflict = appointmentSlotRepository.existsDoctorOverlappingSlot(schedule.getDoctor(), date, startTime, endTime);
-
-            if(roomConflict || doctorConflict) {
-                throw ConflictException.scheduleConflict();
+        List<AppointmentSlotIntervalDTO> intervals = new ArrayList<>();
+        for(int minute = startMinute; ScheduleGrid.fits(startMinute, endMinute, duration, minute); minute += duration) {
+            LocalTime slotStart = LocalTime.ofSecondOfDay(minute * 60L);
+            LocalTime slotEnd = LocalTime.ofSecondOfDay((minute + duration) * 60L);
+
+            // Los huecos que caen en una ausencia del médico no se generan
+            if(absenceIndex.overlaps(schedule.getDoctor().getId(), date, slotStart, slotEnd)) {
+                continue;
             }
 
-            // Creamos un nuevo AppointmentSlotEntity
+            // Creamos un nuevo AppointmentSlotEntity. Se asocia al turno para que, si el turno cambia o se borra, sus
+            // huecos libres se traten igual que los generados automáticamente
             AppointmentSlotEntity appointmentSlot = AppointmentSlotEntity.builder()
                     .doctor(schedule.getDoctor())
                     .specialty(schedule.getSpecialty())
                     .room(schedule.getRoom())
+                    .schedule(schedule)
                     .date(date)
-                    .startTime(time)
-                    .endTime(time.plusMinutes(duration))
+                    .startTime(slotStart)
+                    .endTime(slotEnd)
                     .build();
 
             // Añadimos el AppointmentSlotEntity a la lista
             generatedSlots.add(appointmentSlot);
+            intervals.add(this.toInterval(appointmentSlot));
+        }
+
+        // Comprobamos de una vez que ningún hueco solape con otros horarios del médico o de la consulta y los reservamos
+        if(!occupancyIndex.tryReserveAll(intervals)) {
+            throw ConflictException.scheduleConflict();
         }
 
         // Guardamos los AppointmentSlotEntity en la base de datos
         List<AppointmentSlotEntity> savedSlots = appointmentSlotRepository.saveAll(generatedSlots);
+        savedSlots.forEach(availabilityCalendar::addSlot);
 
         // Mapeamos los DTO y devolvemos
         return savedSlots.stream()
-                .map(appointmentSlot -> modelMapper.map(appointmentSlot, AppointmentSlotDTO.class))
+                .map(appointmentSlot -> dtoMapper.toAppointmentSlotDTO(appointmentSlot))
                 .toList();
     }
 
     @Transactional(readOnly = true)
     public List<AppointmentSlotDTO> getAppointmentSlotsByDoctorAndDate(Integer doctorId, LocalDate date) {
         MedicalProfileEntity doctor = medicalProfileRepository.findById(doctorId).orElseThrow(DataNotFoundException::doctorNotFound);
+
+        // En el modo virtual, los huecos libres se calculan a partir de los turnos
+        if(appointmentSlotsConfiguration.isVirtualMode()) {
+            return virtualAppointmentSlotService.getDoctorSlotsBetweenDates(doctor, date, date);
+        }
+
         List<AppointmentSlotEntity> appointmentSlots = appointmentSlotRepository.findByDoctorAndDate(doctor, date);
 
         return appointmentSlots.stream()
-                .map(appointmentSlot -> modelMapper.map(appointmentSlot, AppointmentSlotDTO.class))
+                .map(appointmentSlot -> dtoMapper.toAppointmentSlotDTO(appointmentSlot))
                 .toList();
     }
 
@@ -161,33 +171,64 @@ public class AppointmentSlotService {
         LocalDate startDate = date.minusDays(date.getDayOfWeek().getValue() - 1);
         LocalDate endDate = startDate.plusDays(6);
 
+        // En el modo virtual, los huecos libres se calculan a partir de los turnos
+        if(appointmentSlotsConfiguration.isVirtualMode()) {
+            return virtualAppointmentSlotService.getDoctorSlotsBetweenDates(doctor, startDate, endDate);
+        }
+
         // Recupera los huecos de la semana
         List<AppointmentSlotEntity> appointmentSlots = appointmentSlotRepository.findByDoctorAndDateBetween(doctor, startDate, endDate);
 
         // Mapea los huecos a DTOs
         return appointmentSlots.stream()
-                .map(appointmentSlot -> modelMapper.map(appointmentSlot, AppointmentSlotDTO.class))
+                .map(appointmentSlot -> dtoMapper.toAppointmentSlotDTO(appointmentSlot))
                 .toList();
     }
 
+    // Variantes de las anteriores para las respuestas NDJSON: cada hueco se entrega al consumidor en cuanto se lee
+    @Transactional(readOnly = true)
+    public void streamAppointmentSlotsByDoctorAndDate(Integer doctorId, LocalDate date, Consumer<? super AppointmentSlotDTO> consumer) {
+        this.streamAppointmentSlotsByDoctorBetweenDates(doctorId, date, date, consumer);
+    }
+
+    @Transactional(readOnly = true)
+    public void streamWeeklyAppointmentSlotsByDoctorAndDate(Integer doctorId, LocalDate date, Consumer<? super AppointmentSlotDTO> consumer) {
+        LocalDate startDate = date.minusDays(date.getDayOfWeek().getValue() - 1);
+        this.streamAppointmentSlotsByDoctorBetweenDates(doctorId, startDate, startDate.plusDays(6), consumer);
+    }
+
     @Transactional(readOnly = true)
     public AppointmentSlotDTO getAppointmentSlot(Integer appointmentSlotId) {
         AppointmentSlotEntity appointmentSlot = appointmentSlotRepository.findById(appointmentSlotId).orElseThrow(DataNotFoundException::appointmentSlotNotFound);
-        return modelMapper.map(appointmentSlot, AppointmentSlotDTO.class);
+        return dtoMapper.toAppointmentSlotDTO(appointmentSlot);
     }
 
     @Transactional(readOnly = true)
     public List<AppointmentSlotDTO> getAvailableDatesByDoctorAndMedicalCenterAndSpecialty(Integer medicalCenterId, Integer specialtyId, Integer doctorId) {
+        // La respuesta se guarda en caché hasta que cambie la disponibilidad del médico en el centro para la especialidad.
+        // Las retenciones cambian mucho más a menudo, así que los huecos retenidos se descartan después de la caché
+        return availabilityCache.getAvailableSlots(medicalCenterId, specialtyId, doctorId, () -> this.findAvailableSlots(medicalCenterId, specialtyId, doctorId))
+                .stream()
+                .filter(slot -> !slotHoldTable.isHeld(slot.getId()))
+                .toList();
+    }
+
+    private List<AppointmentSlotDTO> findAvailableSlots(Integer medicalCenterId, Integer specialtyId, Integer doctorId) {
         MedicalProfileEntity doctor = medicalProfileRepository.findById(doctorId).orElseThrow(DataNotFoundException::doctorNotFound);
         SpecialtyEntity specialty = specialtyRepository.findById(specialtyId).orElseThrow(DataNotFoundException::specialtyNotFound);
         MedicalCenterEntity medicalCenter = medicalCenterRepository.findById(medicalCenterId).orElseThrow(DataNotFoundException::medicalCenterNotFound);
 
+        // En el modo virtual, los huecos libres se calculan a partir de los turnos
+        if(appointmentSlotsConfiguration.isVirtualMode()) {
+            return virtualAppointmentSlotService.getAvailableSlots(medicalCenter, specialty, doctor);
+        }
+
         // Recuperamos los huecos de la semana
         List<AppointmentSlotEntity> slots = appointmentSlotRepository.findAvailableDatesByDoctorAndMedicalCenterAndSpecialty(medicalCenter, specialty, doctor);
 
         // Mapeo de los slots a DTOs y devolvemos la lista
         return slots.stream()
-                .map(appointmentSlot -> modelMapper.map(appointmentSlot, AppointmentSlotDTO.class))
+                .map(appointmentSlot -> dtoMapper.toAppointmentSlotDTO(appointmentSlot))
                 .toList();
     }
 
@@ -198,13 +239,6 @@ public class AppointmentSlotService {
         SpecialtyEntity specialty = specialtyRepository.findById(appointmentSlotRequest.getSpecialty()).orElseThrow(DataNotFoundException::specialtyNotFound);
         RoomEntity room = roomRepository.findById(appointmentSlotRequest.getRoom()).orElseThrow(DataNotFoundException::roomNotFound);
 
-        // Comprobamos que no haya conflictos con otros horarios
-        boolean roomConflict = appointmentSlotRepository.existsRoomOverlappingSlot(room, appointmentSlotRequest.getDate(), appointmentSlotRequest.getStartTime(), appointmentSlotRequest.getEndTime());
-        boolean doctorConflict = appointmentSlotRepository.existsDoctorOverlappingSlot(doctor, appointmentSlotRequest.getDate(), appointmentSlotRequest.getStartTime(), appointmentSlotRequest.getEndTime());
-        if(roomConflict || doctorConflict) {
-            throw ConflictException.scheduleConflict();
-        }
-
         // Creamos la CitaSlot
         AppointmentSlotEntity appointmentSlotEntity = AppointmentSlotEntity.builder()
                 .doctor(doctor)
@@ -215,19 +249,65 @@ public class AppointmentSlotService {
                 .endTime(appointmentSlotRequest.getEndTime())
                 .build();
 
+        // El médico no puede tener huecos durante una ausencia
+        if(absenceIndex.overlaps(doctor.getId(), appointmentSlotEntity.getDate(), appointmentSlotEntity.getStartTime(), appointmentSlotEntity.getEndTime())) {
+            throw ConflictException.doctorIsAbsent();
+        }
+
+        // Comprobamos que no haya conflictos con otros horarios y reservamos el intervalo
+        if(!occupancyIndex.tryReserve(this.toInterval(appointmentSlotEntity))) {
+            throw ConflictException.scheduleConflict();
+        }
+
         // Guardamos la CitaSlot en la base de datos
         appointmentSlotEntity = appointmentSlotRepository.save(appointmentSlotEntity);
+        availabilityCalendar.addSlot(appointmentSlotEntity);
 
         // Devolvemos la CitaSlot
-        return modelMapper.map(appointmentSlotEntity, AppointmentSlotDTO.class);
+        return dtoMapper.toAppointmentSlotDTO(appointmentSlotEntity);
     }
 
     @Transactional
     public void deleteAppointmentSlot(Integer id) {
-        if(!appointmentSlotRepository.existsById(id)) {
-            throw DataNotFoundException.appointmentSlotNotFound();
+        AppointmentSlotEntity appointmentSlot = appointmentSlotRepository.findById(id).orElseThrow(DataNotFoundException::appointmentSlotNotFound);
+
+        appointmentSlotRepository.delete(appointmentSlot);
+
+        // El intervalo queda libre cuando se confirme el borrado
+        occupancyIndex.release(this.toInterval(appointmentSlot));
+        availabilityCalendar.removeSlot(appointmentSlot);
+    }
+
+    private AppointmentSlotIntervalDTO toInterval(AppointmentSlotEntity appointmentSlot) {
+        return new AppointmentSlotIntervalDTO(
+                appointmentSlot.getDoctor().getId(),
+                appointmentSlot.getRoom().getId(),
+                appointmentSlot.getDate(),
+                appointmentSlot.getStartTime(),
+                appointmentSlot.getEndTime()
+        );
+    }
+
+    private void streamAppointmentSlotsByDoctorBetweenDates(Integer doctorId, LocalDate startDate, LocalDate endDate, Consumer<? super AppointmentSlotDTO> consumer) {
+        MedicalProfileEntity doctor = medicalProfileRepository.findById(doctorId).orElseThrow(DataNotFoundException::doctorNotFound);
+
+        // En el modo virtual, los huecos libres se calculan a partir de los turnos
+        if(appointmentSlotsConfiguration.isVirtualMode()) {
+            virtualAppointmentSlotService.getDoctorSlotsBetweenDates(doctor, startDate, endDate).forEach(consumer);
+            return;
         }
 
-        appointmentSlotRepository.deleteById(id);
+        try(Stream<AppointmentSlotEntity> appointmentSlots = appointmentSlotRepository.streamByDoctorAndDateBetween(doctor, startDate, endDate)) {
+            Iterator<AppointmentSlotEntity> iterator = appointmentSlots.iterator();
+            int read = 0;
+            while(iterator.hasNext()) {
+                consumer.accept(dtoMapper.toAppointmentSlotDTO(iterator.next()));
+
+                // Se vacía el contexto de persistencia con cada bloque leído para que los huecos no se acumulen en memoria
+                if(++read % STREAM_BATCH_SIZE == 0) {
+                    entityManager.clear();
+                }
+            }
+        }
     }
-}
\ No newline at end of file
+}
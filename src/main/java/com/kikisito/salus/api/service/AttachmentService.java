@@ -1,5 +1,7 @@
 package com.kikisito.salus.api.service;
 
+import com.kikisito.salus.api.cache.AccessDecisionCache;
+import com.kikisito.salus.api.cache.AccessDecisionCache.AccessCheck;
 import com.kikisito.salus.api.entity.AttachmentEntity;
 import com.kikisito.salus.api.entity.UserEntity;
 import com.kikisito.salus.api.exception.DataNotFoundException;
@@ -18,6 +20,9 @@ public class AttachmentService {
     @Autowired
     private FileStorageService fileStorageService;
 
+    @Autowired
+    private AccessDecisionCache accessDecisionCache;
+
     @Transactional
     public AttachmentEntity saveAttachment(MultipartFile file) {
         // Almacenamos el archivo
@@ -49,14 +54,15 @@ public class AttachmentService {
         AttachmentEntity attachment = attachmentRepository.findById(id).orElseThrow(DataNotFoundException::attachmentNotFound);
         fileStorageService.deleteFile(attachment.getFilePath());
         attachmentRepository.delete(attachment);
+        accessDecisionCache.invalidateResource(AccessCheck.ATTACHMENT, id);
     }
 
     @Transactional(readOnly = true)
     public boolean attachmentIdCanBeAccessedByUser(Integer attachmentId, UserEntity user) {
-        // No está puesto si es dueño del archivo porque no contempla un doctor que sube un archivo y luego deja de ser doctor
-        boolean isLinkedToMedicalTestAndUserIsPatient = attachmentRepository.existsByIdAndMedicalTest_Patient(attachmentId, user);
-        boolean isLinkedToMedicalTestAndUserIsDoctor = user.getMedicalProfile() != null && attachmentRepository.existsByIdAndMedicalTest_Doctor(attachmentId, user.getMedicalProfile());
-
-        return isLinkedToMedicalTestAndUserIsPatient || isLinkedToMedicalTestAndUserIsDoctor;
+        // No está puesto si es dueño del archivo porque no contempla un doctor que sube un archivo y luego deja de ser doctor.
+        // El paciente y el médico de la prueba se comprueban en la misma consulta
+        Integer doctorId = user.getMedicalProfile() != null ? user.getMedicalProfile().getId() : null;
+        return accessDecisionCache.get(AccessCheck.ATTACHMENT, attachmentId, user.getId(),
+                () -> attachmentRepository.canUserAccessAttachment(attachmentId, user.getId(), doctorId));
     }
 }
\ No newline at end of file
@@ -0,0 +1,206 @@
+package com.kikisito.salus.api.service;
+
+import com.kikisito.salus.api.config.AppointmentSlotsConfiguration;
+import com.kikisito.salus.api.dto.AppointmentSlotDTO;
+import com.kikisito.salus.api.dto.request.AvailableSlotsSearchRequest;
+import com.kikisito.salus.api.dto.response.AvailableSlotsSearchResponse;
+import com.kikisito.salus.api.entity.AppointmentSlotEntity;
+import com.kikisito.salus.api.entity.DoctorScheduleEntity;
+import com.kikisito.salus.api.entity.MedicalProfileEntity;
+import com.kikisito.salus.api.exception.BadRequestException;
+import com.kikisito.salus.api.mapper.DtoMapper;
+import com.kikisito.salus.api.repository.AppointmentSlotHoldRepository;
+import com.kikisito.salus.api.repository.AppointmentSlotRepository;
+import com.kikisito.salus.api.repository.DoctorScheduleRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.stream.Stream;
+
+// Búsqueda de los primeros huecos libres de una especialidad en cualquier centro y con cualquier médico,
+// con filtros opcionales. Los resultados se ordenan por fecha, hora y médico y se paginan por clave:
+// cada página devuelve un cursor con la posición del último hueco para pedir la siguiente
+@Service
+@RequiredArgsConstructor
+public class AvailabilitySearchService {
+    private static final int DEFAULT_LIMIT = 10;
+
+    // En el modo virtual los huecos se calculan por bloques de días hasta completar la página
+    private static final int VIRTUAL_CHUNK_DAYS = 7;
+
+    private static final Comparator<AppointmentSlotDTO> SEARCH_ORDER = Comparator
+            .comparing(AppointmentSlotDTO::getDate)
+            .thenComparing(AppointmentSlotDTO::getStartTime)
+            .thenComparing(slot -> slot.getDoctor().getId());
+
+    @Autowired
+    private final AppointmentSlotRepository appointmentSlotRepository;
+
+    @Autowired
+    private final DoctorScheduleRepository doctorScheduleRepository;
+
+    @Autowired
+    private final VirtualAppointmentSlotService virtualAppointmentSlotService;
+
+    @Autowired
+    private final AppointmentSlotHoldRepository appointmentSlotHoldRepository;
+
+    @Autowired
+    private final AppointmentSlotsConfiguration appointmentSlotsConfiguration;
+
+    @Autowired
+    private final DtoMapper dtoMapper;
+
+    @Transactional(readOnly = true)
+    public AvailableSlotsSearchResponse searchEarliestAvailableSlots(AvailableSlotsSearchRequest request) {
+        LocalDate today = LocalDate.now();
+        LocalDate startDate = request.getStartDate() == null || request.getStartDate().isBefore(today) ? today : request.getStartDate();
+        LocalDate endDate = request.getEndDate() == null ? startDate.plusWeeks(appointmentSlotsConfiguration.getHorizonWeeks()) : request.getEndDate();
+        if(endDate.isBefore(startDate)) {
+            throw BadRequestException.invalidDateOrDateRange();
+        }
+
+        // En el modo virtual cada bloque de días es una consulta, así que el rango no pasa del horizonte de generación
+        LocalDate horizonEnd = startDate.plusWeeks(appointmentSlotsConfiguration.getHorizonWeeks());
+        if(appointmentSlotsConfiguration.isVirtualMode() && endDate.isAfter(horizonEnd)) {
+            endDate = horizonEnd;
+        }
+
+        int limit = request.getLimit() == null ? DEFAULT_LIMIT : request.getLimit();
+
+        // Sin cursor, se empieza por el principio del rango. Si el rango empieza hoy, solo cuentan los huecos que aún no han empezado
+        SearchCursor after;
+        if(request.getCursor() != null) {
+            after = SearchCursor.decode(request.getCursor());
+        } else if(startDate.isEqual(today)) {
+            after = new SearchCursor(today, LocalTime.now(), Integer.MAX_VALUE);
+        } else {
+            after = new SearchCursor(startDate, LocalTime.MIN, 0);
+        }
+
+        List<AppointmentSlotDTO> slots = appointmentSlotsConfiguration.isVirtualMode()
+                ? this.searchVirtual(request, after, endDate, limit)
+                : this.searchMaterialized(request, after, endDate, limit);
+
+        // Si la página está completa puede haber más resultados a partir del último hueco
+        String nextCursor = slots.size() == limit ? SearchCursor.of(slots.getLast()).encode() : null;
+
+        return AvailableSlotsSearchResponse.builder()
+                .slots(slots)
+                .nextCursor(nextCursor)
+                .build();
+    }
+
+    // Una sola consulta que recorre el índice por especialidad, fecha, hora y médico. Los huecos retenidos se descartan
+    // en la propia consulta, así que la página se pide del tamaño exacto
+    private List<AppointmentSlotDTO> searchMaterialized(AvailableSlotsSearchRequest request, SearchCursor after, LocalDate endDate, int limit) {
+        List<AppointmentSlotEntity> slots = appointmentSlotRepository.findEarliestAvailable(
+                request.getSpecialtyId(),
+                request.getMedicalCenterId(),
+                request.getDoctorId(),
+                after.date(),
+                after.time(),
+                after.doctorId(),
+                endDate,
+                LocalDateTime.now(),
+                PageRequest.of(0, limit)
+        );
+
+        return slots.stream()
+                .map(slot -> dtoMapper.toAppointmentSlotDTO(slot))
+                .toList();
+    }
+
+    // Los turnos se cargan una vez y los huecos se calculan por bloques de días, de forma que la búsqueda
+    // se detiene en cuanto se llena la página en lugar de calcular todo el rango
+    private List<AppointmentSlotDTO> searchVirtual(AvailableSlotsSearchRequest request, SearchCursor after, LocalDate endDate, int limit) {
+        List<DoctorScheduleEntity> schedules = doctorScheduleRepository.findForAvailabilitySearch(request.getSpecialtyId(), request.getMedicalCenterId(), request.getDoctorId());
+        if(schedules.isEmpty()) {
+            return List.of();
+        }
+
+        Map<Integer, MedicalProfileEntity> doctors = new LinkedHashMap<>();
+        schedules.forEach(schedule -> doctors.putIfAbsent(schedule.getDoctor().getId(), schedule.getDoctor()));
+
+        List<AppointmentSlotDTO> result = new ArrayList<>();
+        for(LocalDate chunkStart = after.date(); !chunkStart.isAfter(endDate) && result.size() < limit; chunkStart = chunkStart.plusDays(VIRTUAL_CHUNK_DAYS)) {
+            LocalDate chunkEnd = chunkStart.plusDays(VIRTUAL_CHUNK_DAYS - 1);
+            if(chunkEnd.isAfter(endDate)) {
+                chunkEnd = endDate;
+            }
+
+            List<AppointmentSlotEntity> existingSlots = appointmentSlotRepository.findByDoctorInAndDateBetween(doctors.values(), chunkStart, chunkEnd);
+            Set<Integer> heldSlotIds = this.findHeldSlotIds(existingSlots);
+
+            // Filas libres y sin retener que siguen existiendo, por ejemplo tras anular una cita
+            Stream<AppointmentSlotDTO> freeSlots = existingSlots.stream()
+                    .filter(slot -> slot.getAppointment() == null)
+                    .filter(slot -> !heldSlotIds.contains(slot.getId()))
+                    .filter(slot -> slot.getSpecialty().getId().equals(request.getSpecialtyId()))
+                    .filter(slot -> request.getMedicalCenterId() == null || slot.getRoom().getMedicalCenter().getId().equals(request.getMedicalCenterId()))
+                    .map(slot -> dtoMapper.toAppointmentSlotDTO(slot));
+
+            Stream.concat(freeSlots, virtualAppointmentSlotService.computeFreeSlots(schedules, existingSlots, chunkStart, chunkEnd).stream())
+                    .filter(after::isBefore)
+                    .sorted(SEARCH_ORDER)
+                    .limit(limit - result.size())
+                    .forEach(result::add);
+        }
+
+        return result;
+    }
+
+    // Las retenciones se leen de la tabla de retenciones para tener en cuenta las tomadas en otras instancias
+    private Set<Integer> findHeldSlotIds(List<AppointmentSlotEntity> slots) {
+        List<Integer> freeSlotIds = slots.stream().filter(slot -> slot.getAppointment() == null).map(AppointmentSlotEntity::getId).toList();
+        return freeSlotIds.isEmpty() ? Set.of() : appointmentSlotHoldRepository.findActiveSlotIdsIn(freeSlotIds, LocalDateTime.now());
+    }
+
+    // Posición del último hueco devuelto. Se envía al cliente codificada en base64 como "fecha|hora|médico"
+    private record SearchCursor(LocalDate date, LocalTime time, Integer doctorId) {
+        static SearchCursor of(AppointmentSlotDTO slot) {
+            return new SearchCursor(slot.getDate(), slot.getStartTime(), slot.getDoctor().getId());
+        }
+
+        static SearchCursor decode(String cursor) {
+            try {
+                String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|");
+                if(parts.length != 3) {
+                    throw BadRequestException.invalidCursor();
+                }
+                return new SearchCursor(LocalDate.parse(parts[0]), LocalTime.parse(parts[1]), Integer.parseInt(parts[2]));
+            } catch (IllegalArgumentException | DateTimeParseException e) {
+                throw BadRequestException.invalidCursor();
+            }
+        }
+
+        String encode() {
+            String value = date + "|" + time + "|" + doctorId;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        // Indica si el hueco va después de esta posición en el orden de la búsqueda
+        boolean isBefore(AppointmentSlotDTO slot) {
+            int byDate = slot.getDate().compareTo(date);
+            if(byDate != 0) {
+                return byDate > 0;
+            }
+
+            int byTime = slot.getStartTime().compareTo(time);
+            if(byTime != 0) {
+                return byTime > 0;
+            }
+
+            return slot.getDoctor().getId() > doctorId;
+        }
+    }
+}
@@ -2,32 +2,44 @@ package com.kikisito.salus.api.service;
 
 import com.kikisito.salus.api.dto.ChatDTO;
 import com.kikisito.salus.api.dto.ChatMessageDTO;
+import com.kikisito.salus.api.dto.ChatUnreadCountDTO;
 import com.kikisito.salus.api.dto.request.ChatMessageRequest;
 import com.kikisito.salus.api.entity.ChatEntity;
 import com.kikisito.salus.api.entity.ChatMessagesEntity;
 import com.kikisito.salus.api.entity.MedicalProfileEntity;
 import com.kikisito.salus.api.entity.UserEntity;
+import com.kikisito.salus.api.exception.BadRequestException;
 import com.kikisito.salus.api.exception.ConflictException;
 import com.kikisito.salus.api.exception.DataNotFoundException;
+import com.kikisito.salus.api.mapper.DtoMapper;
 import com.kikisito.salus.api.repository.ChatMessageRepository;
 import com.kikisito.salus.api.repository.ChatRepository;
 import com.kikisito.salus.api.repository.MedicalProfileRepository;
 import com.kikisito.salus.api.repository.UserRepository;
 import com.kikisito.salus.api.type.MessageSenderType;
 import lombok.RequiredArgsConstructor;
-import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.swing.event.ChangeEvent;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 public class ChatService {
+    private static final int DEFAULT_MESSAGES_PAGE_SIZE = 50;
+    private static final int MAX_MESSAGES_PER_PAGE = 100;
+
     @Autowired
     private final ChatRepository chatRepository;
 
@@ -44,13 +56,13 @@ public class ChatService {
     private final WebSocketService webSocketService;
 
     @Autowired
-    private final ModelMapper modelMapper;
+    private final DtoMapper dtoMapper;
 
     @Transactional(readOnly = true)
     public List<ChatDTO> getPatientChats(Integer patientId) {
         UserEntity patient = userRepository.findById(patientId).orElseThrow(DataNotFoundException::userNotFound);
 
-        List<ChatEntity> chats = chatRepository.findByPatientOrderByUpdatedAtDesc(patient);
+        List<ChatEntity> chats = chatRepository.findByPatientOrderByLastActivityAtDescIdDesc(patient);
 
         return chats.stream()
                 .map(chat -> this.convertToFullDTO(chat, MessageSenderType.PATIENT))
@@ -61,7 +73,7 @@ public class ChatService {
     public List<ChatDTO> getDoctorChats(Integer doctorId) {
         MedicalProfileEntity doctor = medicalProfileRepository.findById(doctorId).orElseThrow(DataNotFoundException::doctorNotFound);
 
-        List<ChatEntity> chats = chatRepository.findByDoctorOrderByUpdatedAtDesc(doctor);
+        List<ChatEntity> chats = chatRepository.findByDoctorOrderByLastActivityAtDescIdDesc(doctor);
 
         return chats.stream()
                 .map(chat -> this.convertToFullDTO(chat, MessageSenderType.DOCTOR))
@@ -89,8 +101,16 @@ public class ChatService {
         return this.convertToFullDTO(chat, senderType);
     }
 
+    // Sin cursor se devuelven los últimos mensajes del chat; con before, los anteriores al mensaje indicado, para cargar el historial
+    // al subir en la conversación; y con after, los posteriores, para recuperar los que se perdieron al reconectar. Siempre en orden cronológico
     @Transactional
-    public List<ChatMessageDTO> getChatMessages(Integer doctorId, Integer userId, UserEntity userRequest) {
+    public List<ChatMessageDTO> getChatMessages(Integer doctorId, Integer userId, Optional<Integer> before, Optional<Integer> after, Optional<Integer> optionalLimit, UserEntity userRequest) {
+        if(before.isPresent() && after.isPresent()) {
+            throw BadRequestException.invalidCursor();
+        }
+
+        int limit = Math.max(1, Math.min(optionalLimit.orElse(DEFAULT_MESSAGES_PAGE_SIZE), MAX_MESSAGES_PER_PAGE));
+
         UserEntity patient = userRepository.findById(userId).orElseThrow(DataNotFoundException::userNotFound);
         MedicalProfileEntity doctor = medicalProfileRepository.findById(doctorId).orElseThrow(DataNotFoundException::doctorNotFound);
 
@@ -105,10 +125,22 @@ public class ChatService {
             throw new SecurityException("User does not have access to this chat");
         }
 
-        List<ChatMessagesEntity> messages = chatMessageRepository.findByChatOrderByCreatedAtAsc(chat);
+        List<ChatMessagesEntity> messages;
+        if(after.isPresent()) {
+            ChatMessagesEntity anchor = chatMessageRepository.findByIdAndChat(after.get(), chat).orElseThrow(BadRequestException::invalidCursor);
+            messages = chatMessageRepository.findPageAfter(chat, anchor.getCreatedAt(), anchor.getId(), PageRequest.of(0, limit));
+        } else {
+            if(before.isPresent()) {
+                ChatMessagesEntity anchor = chatMessageRepository.findByIdAndChat(before.get(), chat).orElseThrow(BadRequestException::invalidCursor);
+                messages = chatMessageRepository.findPageBefore(chat, anchor.getCreatedAt(), anchor.getId(), PageRequest.of(0, limit));
+            } else {
+                messages = chatMessageRepository.findByChatOrderByCreatedAtDescIdDesc(chat, PageRequest.of(0, limit));
+            }
+            messages = messages.reversed();
+        }
 
         return messages.stream()
-                .map(message -> modelMapper.map(message, ChatMessageDTO.class))
+                .map(message -> dtoMapper.toChatMessageDTO(message))
                 .toList();
     }
 
@@ -140,7 +172,7 @@ public class ChatService {
         ChatMessagesEntity message = this.createMessage(chat, request.getMessage(), senderType);
 
         // Mapear a DTO
-        ChatMessageDTO messageDTO = modelMapper.map(message, ChatMessageDTO.class);
+        ChatMessageDTO messageDTO = dtoMapper.toChatMessageDTO(message);
 
         // Enviar por WebSocket al destinatario
         UserEntity recipient = senderType == MessageSenderType.DOCTOR ? patient : doctor.getUser();
@@ -149,13 +181,51 @@ public class ChatService {
         return messageDTO;
     }
 
+    // Primero se ponen a cero los no leídos de la fila del chat, que queda bloqueada. Un mensaje que se envíe a la vez
+    // o ya estaba guardado y se marca con los demás, o suma al contador cuando termine esta transacción
     @Transactional
     public void markMessagesAsRead(ChatEntity chat, MessageSenderType senderType) {
-        List<ChatMessagesEntity> messages = chatMessageRepository.findByChatAndSenderTypeAndReadIsFalse(chat, senderType);
+        if(senderType == MessageSenderType.DOCTOR) {
+            chatRepository.resetPatientUnreadCount(chat.getId());
+        } else {
+            chatRepository.resetDoctorUnreadCount(chat.getId());
+        }
+
+        chatMessageRepository.markAsRead(chat, senderType);
+    }
 
-        for (ChatMessagesEntity message : messages) {
-            message.setRead(true);
-            chatMessageRepository.save(message);
+    // Los chats creados antes de guardar el resumen en su propia fila se completan una vez al arrancar, con las consultas por lotes
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void backfillChatSummaries() {
+        List<ChatEntity> chats = chatRepository.findByLastActivityAtIsNull();
+        if(chats.isEmpty()) {
+            return;
+        }
+
+        // Si dos mensajes se enviaron en el mismo instante, se toma el último que se guardó
+        Map<Integer, ChatMessagesEntity> lastMessages = chatMessageRepository.findLastMessagesByChatIn(chats).stream()
+                .collect(Collectors.toMap(message -> message.getChat().getId(), Function.identity(),
+                        (first, second) -> first.getId() > second.getId() ? first : second));
+
+        Map<Integer, Long> unreadFromDoctor = chatMessageRepository.countUnreadByChatIn(chats, MessageSenderType.DOCTOR).stream()
+                .collect(Collectors.toMap(ChatUnreadCountDTO::chatId, ChatUnreadCountDTO::unread));
+
+        Map<Integer, Long> unreadFromPatient = chatMessageRepository.countUnreadByChatIn(chats, MessageSenderType.PATIENT).stream()
+                .collect(Collectors.toMap(ChatUnreadCountDTO::chatId, ChatUnreadCountDTO::unread));
+
+        for(ChatEntity chat : chats) {
+            ChatMessagesEntity lastMessage = lastMessages.get(chat.getId());
+            if(lastMessage != null) {
+                chat.setLastMessageId(lastMessage.getId());
+                chat.setLastMessageSenderType(lastMessage.getSenderType());
+                chat.setLastMessagePreview(this.preview(lastMessage.getContent()));
+                chat.setLastMessageAt(lastMessage.getCreatedAt());
+            }
+
+            chat.setLastActivityAt(lastMessage != null ? lastMessage.getCreatedAt() : chat.getCreatedAt());
+            chat.setPatientUnreadCount(unreadFromDoctor.getOrDefault(chat.getId(), 0L).intValue());
+            chat.setDoctorUnreadCount(unreadFromPatient.getOrDefault(chat.getId(), 0L).intValue());
         }
     }
 
@@ -176,6 +246,7 @@ public class ChatService {
         ChatEntity newChat = ChatEntity.builder()
                 .patient(patient)
                 .doctor(doctor)
+                .lastActivityAt(LocalDateTime.now())
                 .build();
 
         return chatRepository.save(newChat);
@@ -187,24 +258,44 @@ public class ChatService {
                 .content(content)
                 .senderType(senderType)
                 .build();
+        message = chatMessageRepository.save(message);
+
+        // Resumen del chat y un mensaje más sin leer para el destinatario
+        boolean fromDoctor = senderType == MessageSenderType.DOCTOR;
+        chatRepository.registerMessage(chat.getId(), message.getId(), senderType, this.preview(content), message.getCreatedAt(),
+                fromDoctor ? 1 : 0, fromDoctor ? 0 : 1);
 
-        return chatMessageRepository.save(message);
+        return message;
     }
 
-    private ChatDTO convertToFullDTO(ChatEntity chat, MessageSenderType recipientType) {
-        ChatDTO dto = modelMapper.map(chat, ChatDTO.class);
+    private String preview(String content) {
+        return content.length() > ChatEntity.LAST_MESSAGE_PREVIEW_LENGTH ? content.substring(0, ChatEntity.LAST_MESSAGE_PREVIEW_LENGTH) : content;
+    }
 
-        // Último mensaje
-        List<ChatMessagesEntity> messages = chatMessageRepository.findByChatOrderByCreatedAtAsc(chat);
-        if(!messages.isEmpty()) {
-            ChatMessagesEntity lastMessage = messages.getLast();
-            dto.setLastMessage(modelMapper.map(lastMessage, ChatMessageDTO.class));
+    // El último mensaje y los no leídos salen de la propia fila del chat. El contenido del último mensaje es un resumen de
+    // como mucho LAST_MESSAGE_PREVIEW_LENGTH caracteres; el mensaje completo está en el historial
+    private ChatDTO convertToFullDTO(ChatEntity chat, MessageSenderType recipientType) {
+        ChatDTO dto = dtoMapper.toChatDTO(chat);
+
+        if(chat.getLastMessageId() != null) {
+            dto.setLastMessage(ChatMessageDTO.builder()
+                    .id(chat.getLastMessageId())
+                    .chatId(chat.getId())
+                    .senderType(chat.getLastMessageSenderType())
+                    .content(chat.getLastMessagePreview())
+                    .createdAt(chat.getLastMessageAt().toString())
+                    .read(this.unreadSentBy(chat, chat.getLastMessageSenderType()) == 0)
+                    .build());
         }
 
         // Número de mensajes no leídos
-        int unreadCount = chatMessageRepository.countByChatAndReadFalseAndSenderType(chat, recipientType);
-        dto.setUnreadMessages(unreadCount);
+        dto.setUnreadMessages(this.unreadSentBy(chat, recipientType));
 
         return dto;
     }
-}
\ No newline at end of file
+
+    // Mensajes enviados por un lado del chat que el otro aún no ha leído
+    private int unreadSentBy(ChatEntity chat, MessageSenderType senderType) {
+        return senderType == MessageSenderType.DOCTOR ? chat.getPatientUnreadCount() : chat.getDoctorUnreadCount();
+    }
+}
@@ -0,0 +1,116 @@
+package com.kikisito.salus.api.service;
+
+import com.kikisito.salus.api.dto.AppointmentDTO;
+import com.kikisito.salus.api.dto.AppointmentSlotIntervalDTO;
+import com.kikisito.salus.api.dto.DoctorAbsenceDTO;
+import com.kikisito.salus.api.dto.request.DoctorAbsenceRequest;
+import com.kikisito.salus.api.dto.response.DoctorAbsenceResponse;
+import com.kikisito.salus.api.entity.DoctorAbsenceEntity;
+import com.kikisito.salus.api.entity.MedicalProfileEntity;
+import com.kikisito.salus.api.exception.BadRequestException;
+import com.kikisito.salus.api.exception.DataNotFoundException;
+import com.kikisito.salus.api.mapper.DtoMapper;
+import com.kikisito.salus.api.occupancy.AbsenceIndex;
+import com.kikisito.salus.api.occupancy.AvailabilityCalendar;
+import com.kikisito.salus.api.occupancy.OccupancyIndex;
+import com.kikisito.salus.api.repository.AppointmentRepository;
+import com.kikisito.salus.api.repository.AppointmentSlotRepository;
+import com.kikisito.salus.api.repository.DoctorAbsenceRepository;
+import com.kikisito.salus.api.repository.MedicalProfileRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Service
+@RequiredArgsConstructor
+public class DoctorAbsenceService {
+    @Autowired
+    private final DoctorAbsenceRepository doctorAbsenceRepository;
+
+    @Autowired
+    private final MedicalProfileRepository medicalProfileRepository;
+
+    @Autowired
+    private final AppointmentSlotRepository appointmentSlotRepository;
+
+    @Autowired
+    private final AppointmentRepository appointmentRepository;
+
+    @Autowired
+    private final AbsenceIndex absenceIndex;
+
+    @Autowired
+    private final OccupancyIndex occupancyIndex;
+
+    @Autowired
+    private final AvailabilityCalendar availabilityCalendar;
+
+    @Autowired
+    private final DtoMapper dtoMapper;
+
+    @Transactional(readOnly = true)
+    public List<DoctorAbsenceDTO> getDoctorUpcomingAbsences(Integer doctorId) {
+        MedicalProfileEntity doctor = medicalProfileRepository.findById(doctorId).orElseThrow(DataNotFoundException::doctorNotFound);
+        List<DoctorAbsenceEntity> absences = doctorAbsenceRepository.findByDoctorAndEndDateTimeAfterOrderByStartDateTime(doctor, LocalDateTime.now());
+
+        return absences.stream()
+                .map(absence -> dtoMapper.toDoctorAbsenceDTO(absence))
+                .toList();
+    }
+
+    // Registra una ausencia y borra de una vez los huecos libres del médico que caen en ella. Las citas ya reservadas
+    // se mantienen y se devuelven en la respuesta
+    @Transactional
+    public DoctorAbsenceResponse addAbsence(DoctorAbsenceRequest request) {
+        if(!request.getEndDateTime().isAfter(request.getStartDateTime()) || request.getEndDateTime().isBefore(LocalDateTime.now())) {
+            throw BadRequestException.invalidDateOrDateRange();
+        }
+
+        MedicalProfileEntity doctor = medicalProfileRepository.findById(request.getDoctor()).orElseThrow(DataNotFoundException::doctorNotFound);
+
+        DoctorAbsenceEntity absence = DoctorAbsenceEntity.builder()
+                .doctor(doctor)
+                .startDateTime(request.getStartDateTime())
+                .endDateTime(request.getEndDateTime())
+                .reason(request.getReason())
+                .build();
+        absence = doctorAbsenceRepository.save(absence);
+
+        // Los intervalos se leen antes del borrado para liberarlos del índice de ocupación cuando se confirme
+        LocalDateTime start = absence.getStartDateTime();
+        LocalDateTime end = absence.getEndDateTime();
+        List<AppointmentSlotIntervalDTO> freeIntervals = appointmentSlotRepository.findFreeIntervalsOverlapping(doctor.getId(), start.toLocalDate(), start.toLocalTime(), end.toLocalDate(), end.toLocalTime());
+        int removedSlots = appointmentSlotRepository.deleteFreeSlotsOverlapping(doctor.getId(), start.toLocalDate(), start.toLocalTime(), end.toLocalDate(), end.toLocalTime());
+        freeIntervals.forEach(occupancyIndex::release);
+
+        List<AppointmentDTO> affectedAppointments = appointmentRepository.findByDoctorOverlapping(doctor.getId(), start.toLocalDate(), start.toLocalTime(), end.toLocalDate(), end.toLocalTime())
+                .stream()
+                .map(appointment -> dtoMapper.toAppointmentDTO(appointment))
+                .toList();
+
+        // Al confirmar, la ausencia entra en el índice y se recarga la disponibilidad del médico
+        absenceIndex.rebuildAfterCommit();
+        availabilityCalendar.reloadDoctor(doctor.getId());
+
+        return DoctorAbsenceResponse.builder()
+                .absence(dtoMapper.toDoctorAbsenceDTO(absence))
+                .removedSlots(removedSlots)
+                .affectedAppointments(affectedAppointments)
+                .build();
+    }
+
+    // Los huecos borrados no se recuperan aquí: la siguiente generación vuelve a crearlos y en el modo virtual
+    // aparecen de nuevo al calcularlos
+    @Transactional
+    public void deleteAbsence(Integer absenceId) {
+        DoctorAbsenceEntity absence = doctorAbsenceRepository.findById(absenceId).orElseThrow(DataNotFoundException::doctorAbsenceNotFound);
+        doctorAbsenceRepository.delete(absence);
+
+        absenceIndex.rebuildAfterCommit();
+        availabilityCalendar.reloadDoctor(absence.getDoctor().getId());
+    }
+}
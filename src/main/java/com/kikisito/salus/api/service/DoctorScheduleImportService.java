@@ -0,0 +1,340 @@
+package com.kikisito.salus.api.service;
+
+import com.kikisito.salus.api.dto.DoctorScheduleDTO;
+import com.kikisito.salus.api.dto.ScheduleImportIssueDTO;
+import com.kikisito.salus.api.dto.request.DoctorScheduleRequest;
+import com.kikisito.salus.api.dto.response.DoctorScheduleImportResponse;
+import com.kikisito.salus.api.entity.DoctorScheduleEntity;
+import com.kikisito.salus.api.entity.MedicalProfileEntity;
+import com.kikisito.salus.api.entity.RoomEntity;
+import com.kikisito.salus.api.entity.SpecialtyEntity;
+import com.kikisito.salus.api.exception.ApiRuntimeException;
+import com.kikisito.salus.api.exception.BadRequestException;
+import com.kikisito.salus.api.exception.ConflictException;
+import com.kikisito.salus.api.exception.DataNotFoundException;
+import com.kikisito.salus.api.mapper.DtoMapper;
+import com.kikisito.salus.api.occupancy.IntervalSet;
+import com.kikisito.salus.api.repository.DoctorScheduleRepository;
+import com.kikisito.salus.api.repository.MedicalProfileRepository;
+import com.kikisito.salus.api.repository.RoomRepository;
+import com.kikisito.salus.api.repository.SpecialtyRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.DayOfWeek;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// Importación de muchos turnos a la vez, en JSON o en CSV. Todos los turnos se validan juntos: las entidades se cargan
+// con una consulta por tipo y los solapamientos se buscan con un barrido ordenado por (médico, día) y por (consulta, día),
+// en lugar de consultar y comparar cada turno por separado. Si hay algún problema se informa de todos y no se guarda nada
+@Service
+@RequiredArgsConstructor
+public class DoctorScheduleImportService {
+    private static final List<String> CSV_COLUMNS = List.of("doctor", "specialty", "room", "dayOfWeek", "startTime", "endTime", "duration");
+
+    @Autowired
+    private final DoctorScheduleRepository doctorScheduleRepository;
+
+    @Autowired
+    private final MedicalProfileRepository medicalProfileRepository;
+
+    @Autowired
+    private final SpecialtyRepository specialtyRepository;
+
+    @Autowired
+    private final RoomRepository roomRepository;
+
+    @Autowired
+    private final AppointmentSlotMaterializerService appointmentSlotMaterializerService;
+
+    @Autowired
+    private final DtoMapper dtoMapper;
+
+    // La primera línea es la cabecera con los nombres de las columnas, en cualquier orden. Los campos pueden ir entre
+    // comillas dobles, como los exportan las hojas de cálculo; como ningún valor puede tener saltos de línea, cada
+    // línea es una fila
+    @Transactional
+    public DoctorScheduleImportResponse importSchedulesFromCsv(String csv) {
+        List<String> lines = csv == null ? List.of() : csv.lines().filter(line -> !line.isBlank()).toList();
+        if(lines.isEmpty()) {
+            throw BadRequestException.invalidScheduleImport();
+        }
+
+        List<String> header = this.parseCsvFields(lines.getFirst());
+        if(header == null) {
+            throw BadRequestException.invalidScheduleImport();
+        }
+
+        Map<String, Integer> columns = new HashMap<>();
+        for(String column : CSV_COLUMNS) {
+            int index = header.indexOf(column);
+            if(index < 0) {
+                throw BadRequestException.invalidScheduleImport();
+            }
+            columns.put(column, index);
+        }
+
+        // Las filas que no se pueden leer se quedan a null y se informan como turnos no válidos
+        List<DoctorScheduleRequest> requests = lines.stream()
+                .skip(1)
+                .map(line -> this.parseCsvLine(line, columns))
+                .toList();
+
+        return this.importSchedules(requests);
+    }
+
+    @Transactional
+    public DoctorScheduleImportResponse importSchedules(List<DoctorScheduleRequest> requests) {
+        if(requests == null || requests.isEmpty()) {
+            throw BadRequestException.invalidScheduleImport();
+        }
+
+        List<DoctorScheduleRequest> validRequests = requests.stream().filter(this::isValid).toList();
+
+        // Una consulta por tipo de entidad para todas las filas
+        Map<Integer, MedicalProfileEntity> doctors = this.byId(medicalProfileRepository.findWithSpecialtiesByIdIn(this.ids(validRequests, DoctorScheduleRequest::getDoctor)), MedicalProfileEntity::getId);
+        Map<Integer, SpecialtyEntity> specialties = this.byId(specialtyRepository.findAllById(this.ids(validRequests, DoctorScheduleRequest::getSpecialty)), SpecialtyEntity::getId);
+        Map<Integer, RoomEntity> rooms = this.byId(roomRepository.findAllById(this.ids(validRequests, DoctorScheduleRequest::getRoom)), RoomEntity::getId);
+
+        List<ScheduleImportIssueDTO> issues = new ArrayList<>();
+        Map<SweepKey, List<SweepInterval>> byDoctor = new HashMap<>();
+        Map<SweepKey, List<SweepInterval>> byRoom = new HashMap<>();
+
+        for(int i = 0; i < requests.size(); i++) {
+            int row = i + 1;
+            DoctorScheduleRequest request = requests.get(i);
+
+            ApiRuntimeException problem = this.findProblem(request, doctors, specialties, rooms);
+            if(problem != null) {
+                issues.add(this.issue(row, null, null, problem));
+                continue;
+            }
+
+            SweepInterval interval = new SweepInterval(row, null, IntervalSet.minuteOf(request.getStartTime()), IntervalSet.minuteOf(request.getEndTime()));
+            byDoctor.computeIfAbsent(new SweepKey(request.getDoctor(), request.getDayOfWeek()), key -> new ArrayList<>()).add(interval);
+            byRoom.computeIfAbsent(new SweepKey(request.getRoom(), request.getDayOfWeek()), key -> new ArrayList<>()).add(interval);
+        }
+
+        // Los turnos ya guardados de los médicos y consultas de la importación entran en el mismo barrido
+        if(!byDoctor.isEmpty()) {
+            Set<Integer> doctorIds = byDoctor.keySet().stream().map(SweepKey::id).collect(Collectors.toSet());
+            Set<Integer> roomIds = byRoom.keySet().stream().map(SweepKey::id).collect(Collectors.toSet());
+            for(DoctorScheduleEntity schedule : doctorScheduleRepository.findByDoctorIdInOrRoomIdIn(doctorIds, roomIds)) {
+                SweepInterval interval = new SweepInterval(0, schedule.getId(), IntervalSet.minuteOf(schedule.getStartTime()), IntervalSet.minuteOf(schedule.getEndTime()));
+                SweepKey doctorKey = new SweepKey(schedule.getDoctor().getId(), schedule.getDayOfWeek());
+                SweepKey roomKey = new SweepKey(schedule.getRoom().getId(), schedule.getDayOfWeek());
+                if(byDoctor.containsKey(doctorKey)) {
+                    byDoctor.get(doctorKey).add(interval);
+                }
+                if(byRoom.containsKey(roomKey)) {
+                    byRoom.get(roomKey).add(interval);
+                }
+            }
+        }
+
+        this.sweep(byDoctor, ConflictException.scheduleConflict(), issues);
+        this.sweep(byRoom, ConflictException.roomScheduleConflict(), issues);
+
+        if(!issues.isEmpty()) {
+            issues.sort(Comparator.comparingInt(ScheduleImportIssueDTO::getRow));
+            return DoctorScheduleImportResponse.builder()
+                    .schedules(List.of())
+                    .issues(issues)
+                    .build();
+        }
+
+        // Todas las filas son válidas: se insertan por lotes en esta misma transacción
+        List<DoctorScheduleEntity> schedules = requests.stream()
+                .map(request -> DoctorScheduleEntity.builder()
+                        .doctor(doctors.get(request.getDoctor()))
+                        .specialty(specialties.get(request.getSpecialty()))
+                        .room(rooms.get(request.getRoom()))
+                        .dayOfWeek(request.getDayOfWeek())
+                        .startTime(request.getStartTime())
+                        .endTime(request.getEndTime())
+                        .duration(request.getDuration())
+                        .build())
+                .toList();
+        schedules = doctorScheduleRepository.saveAll(schedules);
+
+        // Se generan los huecos una sola vez por médico, que ya recorre todos sus turnos, y se marcan todos los turnos
+        // como generados
+        appointmentSlotMaterializerService.onSchedulesCreated(schedules);
+
+        return DoctorScheduleImportResponse.builder()
+                .schedules(schedules.stream().map(schedule -> dtoMapper.toDoctorScheduleDTO(schedule)).toList())
+                .issues(List.of())
+                .build();
+    }
+
+    // Barrido de cada grupo ordenado por hora de inicio. Se guardan los turnos ya vistos que aún no han acabado, y cada
+    // turno se compara con todos ellos, así que se informa de todas las parejas de turnos que solapan. Cada grupo cuesta
+    // O(n log n) por la ordenación más una comparación por cada pareja que solapa
+    private void sweep(Map<SweepKey, List<SweepInterval>> groups, ApiRuntimeException conflict, List<ScheduleImportIssueDTO> issues) {
+        for(List<SweepInterval> intervals : groups.values()) {
+            intervals.sort(Comparator.comparingInt(SweepInterval::start).thenComparingInt(SweepInterval::end));
+
+            List<SweepInterval> active = new ArrayList<>();
+            for(SweepInterval interval : intervals) {
+                active.removeIf(previous -> previous.end() <= interval.start());
+
+                for(SweepInterval previous : active) {
+                    // Los solapamientos entre turnos ya guardados no son cosa de la importación
+                    if(interval.isImported() || previous.isImported()) {
+                        SweepInterval imported = interval.isImported() ? interval : previous;
+                        SweepInterval other = imported == interval ? previous : interval;
+                        issues.add(this.issue(imported.row(), other.isImported() ? other.row() : null, other.scheduleId(), conflict));
+                    }
+                }
+
+                active.add(interval);
+            }
+        }
+    }
+
+    private ApiRuntimeException findProblem(DoctorScheduleRequest request, Map<Integer, MedicalProfileEntity> doctors, Map<Integer, SpecialtyEntity> specialties, Map<Integer, RoomEntity> rooms) {
+        if(!this.isValid(request)) {
+            return BadRequestException.invalidSchedule();
+        }
+
+        MedicalProfileEntity doctor = doctors.get(request.getDoctor());
+        if(doctor == null) {
+            return DataNotFoundException.doctorNotFound();
+        }
+
+        SpecialtyEntity specialty = specialties.get(request.getSpecialty());
+        if(specialty == null) {
+            return DataNotFoundException.specialtyNotFound();
+        }
+
+        if(!rooms.containsKey(request.getRoom())) {
+            return DataNotFoundException.roomNotFound();
+        }
+
+        if(!doctor.getSpecialties().contains(specialty)) {
+            return ConflictException.doctorDoesNotHaveSpecialty();
+        }
+
+        return null;
+    }
+
+    // Las mismas comprobaciones que las anotaciones de DoctorScheduleRequest, que no se aplican a las filas de una lista
+    private boolean isValid(DoctorScheduleRequest request) {
+        return request != null
+                && request.getDoctor() != null
+                && request.getSpecialty() != null
+                && request.getRoom() != null
+                && request.getDayOfWeek() != null
+                && request.getStartTime() != null
+                && request.getEndTime() != null
+                && request.getDuration() != null
+                && request.getDuration() > 0
+                && request.getEndTime().isAfter(request.getStartTime());
+    }
+
+    private DoctorScheduleRequest parseCsvLine(String line, Map<String, Integer> columns) {
+        List<String> values = this.parseCsvFields(line);
+        if(values == null) {
+            return null;
+        }
+
+        try {
+            return DoctorScheduleRequest.builder()
+                    .doctor(Integer.parseInt(values.get(columns.get("doctor"))))
+                    .specialty(Integer.parseInt(values.get(columns.get("specialty"))))
+                    .room(Integer.parseInt(values.get(columns.get("room"))))
+                    .dayOfWeek(DayOfWeek.valueOf(values.get(columns.get("dayOfWeek")).toUpperCase()))
+                    .startTime(LocalTime.parse(values.get(columns.get("startTime"))))
+                    .endTime(LocalTime.parse(values.get(columns.get("endTime"))))
+                    .duration(Integer.parseInt(values.get(columns.get("duration"))))
+                    .build();
+        } catch (IllegalArgumentException | DateTimeParseException | IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    // Separa los campos de una línea siguiendo RFC 4180: un campo entre comillas puede contener comas y las comillas se
+    // escriben dobles (""). Los espacios alrededor de cada campo se ignoran. Devuelve null si las comillas están mal
+    // cerradas o hay texto después de la comilla de cierre
+    private List<String> parseCsvFields(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        int i = 0;
+        while(true) {
+            while(i < line.length() && line.charAt(i) == ' ') {
+                i++;
+            }
+
+            if(i < line.length() && line.charAt(i) == '"') {
+                i++;
+                while(true) {
+                    if(i >= line.length()) {
+                        return null;
+                    }
+
+                    char c = line.charAt(i++);
+                    if(c != '"') {
+                        field.append(c);
+                    } else if(i < line.length() && line.charAt(i) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        break;
+                    }
+                }
+
+                while(i < line.length() && line.charAt(i) == ' ') {
+                    i++;
+                }
+                if(i < line.length() && line.charAt(i) != ',') {
+                    return null;
+                }
+            } else {
+                while(i < line.length() && line.charAt(i) != ',') {
+                    field.append(line.charAt(i++));
+                }
+            }
+
+            fields.add(field.toString().trim());
+            field.setLength(0);
+
+            if(i >= line.length()) {
+                return fields;
+            }
+            i++;
+        }
+    }
+
+    private ScheduleImportIssueDTO issue(int row, Integer conflictingRow, Integer conflictingScheduleId, ApiRuntimeException problem) {
+        return ScheduleImportIssueDTO.builder()
+                .row(row)
+                .conflictingRow(conflictingRow)
+                .conflictingScheduleId(conflictingScheduleId)
+                .code(problem.getCode())
+                .message(problem.getMessage())
+                .build();
+    }
+
+    private Set<Integer> ids(List<DoctorScheduleRequest> requests, Function<DoctorScheduleRequest, Integer> id) {
+        return requests.stream().map(id).collect(Collectors.toSet());
+    }
+
+    private <T> Map<Integer, T> byId(List<T> entities, Function<T, Integer> id) {
+        return entities.stream().collect(Collectors.toMap(id, Function.identity(), (first, second) -> first));
+    }
+
+    private record SweepKey(Integer id, DayOfWeek dayOfWeek) {}
+
+    // Turno dentro del barrido. Los de la importación tienen fila; los ya guardados, identificador
+    private record SweepInterval(int row, Integer scheduleId, int start, int end) {
+        boolean isImported() {
+            return scheduleId == null;
+        }
+    }
+}
@@ -6,15 +6,20 @@ import com.kikisito.salus.api.entity.DoctorScheduleEntity;
 import com.kikisito.salus.api.entity.RoomEntity;
 import com.kikisito.salus.api.entity.SpecialtyEntity;
 import com.kikisito.salus.api.entity.MedicalProfileEntity;
+import com.kikisito.salus.api.event.DoctorScheduleChangedEvent;
+import com.kikisito.salus.api.event.ScheduleSnapshot;
 import com.kikisito.salus.api.exception.ConflictException;
 import com.kikisito.salus.api.exception.DataNotFoundException;
+import com.kikisito.salus.api.mapper.DtoMapper;
+import com.kikisito.salus.api.mapper.RequestMapper;
+import com.kikisito.salus.api.occupancy.IntervalSet;
 import com.kikisito.salus.api.repository.DoctorScheduleRepository;
 import com.kikisito.salus.api.repository.RoomRepository;
 import com.kikisito.salus.api.repository.SpecialtyRepository;
 import com.kikisito.salus.api.repository.MedicalProfileRepository;
 import lombok.RequiredArgsConstructor;
-import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -38,20 +43,29 @@ public class DoctorScheduleService {
     private final RoomRepository roomRepository;
 
     @Autowired
-    private final ModelMapper modelMapper;
+    private final DtoMapper dtoMapper;
+
+    @Autowired
+    private final RequestMapper requestMapper;
+
+    @Autowired
+    private final AppointmentSlotMaterializerService appointmentSlotMaterializerService;
+
+    @Autowired
+    private final ApplicationEventPublisher applicationEventPublisher;
 
     @Transactional(readOnly = true)
     public List<DoctorScheduleDTO> getDoctorSchedules(Integer doctorId) {
         MedicalProfileEntity doctor = medicalProfileRepository.findById(doctorId).orElseThrow(DataNotFoundException::doctorNotFound);
         List<DoctorScheduleEntity> schedules = doctorScheduleRepository.findByDoctor(doctor);
-        return schedules.stream().map(agenda -> modelMapper.map(agenda, DoctorScheduleDTO.class)).toList();
+        return schedules.stream().map(agenda -> dtoMapper.toDoctorScheduleDTO(agenda)).toList();
     }
 
     @Transactional(readOnly = true)
     public List<DoctorScheduleDTO> getDoctorSchedulesByDayOfWeek(Integer doctorId, DayOfWeek dayOfWeek) {
         MedicalProfileEntity doctor = medicalProfileRepository.findById(doctorId).orElseThrow(DataNotFoundException::doctorNotFound);
         List<DoctorScheduleEntity> schedules = doctorScheduleRepository.findByDoctorAndDayOfWeek(doctor, dayOfWeek);
-        return schedules.stream().map(agenda -> modelMapper.map(agenda, DoctorScheduleDTO.class)).toList();
+        return schedules.stream().map(agenda -> dtoMapper.toDoctorScheduleDTO(agenda)).toList();
     }
 
     @Transactional
@@ -86,14 +100,17 @@ public class DoctorScheduleService {
         }
 
         // Mapeamos la petición a la entidad y guardamos
-        DoctorScheduleEntity doctorScheduleEntity = modelMapper.map(doctorScheduleRequest, DoctorScheduleEntity.class);
+        DoctorScheduleEntity doctorScheduleEntity = requestMapper.toDoctorScheduleEntity(doctorScheduleRequest);
         doctorScheduleEntity.setDoctor(doctor);
         doctorScheduleEntity.setSpecialty(specialty);
         doctorScheduleEntity.setRoom(room);
         doctorScheduleEntity = doctorScheduleRepository.save(doctorScheduleEntity);
 
+        // Generamos los huecos del nuevo turno en los días que ya cubre el horizonte
+        appointmentSlotMaterializerService.onScheduleCreated(doctorScheduleEntity);
+
         // Mapeamos la entidad a DTO y retornamos
-        return modelMapper.map(doctorScheduleEntity, DoctorScheduleDTO.class);
+        return dtoMapper.toDoctorScheduleDTO(doctorScheduleEntity);
     }
 
     @Transactional
@@ -116,7 +133,7 @@ public class DoctorScheduleService {
         RoomEntity consulta = roomRepository.findById(doctorScheduleRequest.getRoom()).orElseThrow(DataNotFoundException::roomNotFound);
 
         // Obtenemos todas las agendas existentes para el médico y el día de la semana
-        List<DoctorScheduleEntity> existingSchedules = doctorScheduleRepository.findByDoctorAndDayOfWeek(schedule.getDoctor(), schedule.getDayOfWeek());
+        List<DoctorScheduleEntity> existingSchedules = doctorScheduleRepository.findByDoctorAndDayOfWeek(schedule.getDoctor(), doctorScheduleRequest.getDayOfWeek());
 
         // Obtenemos los horarios de la nueva
         DayOfWeek dayOfWeek = doctorScheduleRequest.getDayOfWeek();
@@ -130,6 +147,9 @@ public class DoctorScheduleService {
             throw ConflictException.scheduleConflict();
         }
 
+        // Guardamos cómo era el turno antes de cambiarlo para poder regenerar sus huecos
+        ScheduleSnapshot previous = ScheduleSnapshot.of(schedule);
+
         // Mapeamos la petición a la entidad y guardamos
         schedule.setSpecialty(specialty);
         schedule.setRoom(consulta);
@@ -139,16 +159,27 @@ public class DoctorScheduleService {
         schedule.setDuration(doctorScheduleRequest.getDuration());
         schedule = doctorScheduleRepository.save(schedule);
 
+        // Regeneramos los huecos libres de los días futuros afectados por el cambio
+        appointmentSlotMaterializerService.onScheduleChanged(previous);
+
+        // Al confirmar el cambio, las citas que han quedado fuera del turno se reubican en segundo plano
+        applicationEventPublisher.publishEvent(new DoctorScheduleChangedEvent(schedule.getId(), previous));
+
         // Mapeamos la entidad a DTO y retornamos
-        return modelMapper.map(schedule, DoctorScheduleDTO.class);
+        return dtoMapper.toDoctorScheduleDTO(schedule);
     }
 
     @Transactional
     public void deleteSchedule(Integer scheduleId) {
-        if (!doctorScheduleRepository.existsById(scheduleId)) {
-            throw DataNotFoundException.scheduleNotFound();
-        }
-        doctorScheduleRepository.deleteById(scheduleId);
+        DoctorScheduleEntity schedule = doctorScheduleRepository.findById(scheduleId).orElseThrow(DataNotFoundException::scheduleNotFound);
+        ScheduleSnapshot previous = ScheduleSnapshot.of(schedule);
+
+        // Borramos los huecos libres que había generado el turno y desvinculamos los que tienen cita
+        appointmentSlotMaterializerService.onScheduleDeleting(previous);
+        doctorScheduleRepository.delete(schedule);
+
+        // Sin el turno, se regeneran los huecos del resto de turnos del médico
+        appointmentSlotMaterializerService.onScheduleChanged(previous);
     }
 
     private boolean agendaOverlap(DayOfWeek dayOfWeek, LocalTime start1, LocalTime end1, List<DoctorScheduleEntity> schedules) {
@@ -156,34 +187,13 @@ public class DoctorScheduleService {
     }
 
     private boolean agendaOverlap(Integer skipEntry, DayOfWeek dayOfWeek, LocalTime start1, LocalTime end1, List<DoctorScheduleEntity> schedules) {
-        return schedules.stream().anyMatch(
-                agenda -> {
-                    if (agenda.getDayOfWeek() != dayOfWeek) {
-                        return false;
-                    }
-
-                    // Si la agenda es la misma que la que se está actualizando, no se verifica
-                    if (agenda.getId().equals(skipEntry)) {
-                        return false;
-                    }
-
-                    LocalTime start2 = agenda.getStartTime();
-                    LocalTime end2 = agenda.getEndTime();
-                    return timesOverlap(start1, end1, start2, end2);
-                }
-        );
-
-    }
-
-    private boolean timesOverlap(LocalTime start1, LocalTime end1, LocalTime start2, LocalTime end2) {
-        // Casos de colisión:
-        // 1. start1 está dentro del rango [start2, end2)
-        // 2. end1 está dentro del rango (start2, end2]
-        // 3. inicio2 está dentro del rango [inicio1, fin1)
-        // 4. fin2 está dentro del rango (inicio1, fin1]
-        return  (start1.equals(start2) || start1.isAfter(start2) && start1.isBefore(end2)) ||
-                (end1.isAfter(start2) && end1.isBefore(end2) || end1.equals(end2)) ||
-                (start2.isAfter(start1) && start2.isBefore(end1)) ||
-                (end2.isAfter(start1) && end2.isBefore(end1));
+        // Reunimos los horarios del día, salvo el de la agenda que se está actualizando, y buscamos el solapamiento
+        int[][] intervals = schedules.stream()
+                .filter(agenda -> agenda.getDayOfWeek() == dayOfWeek)
+                .filter(agenda -> !agenda.getId().equals(skipEntry))
+                .map(agenda -> new int[] { IntervalSet.minuteOf(agenda.getStartTime()), IntervalSet.minuteOf(agenda.getEndTime()) })
+                .toArray(int[][]::new);
+
+        return IntervalSet.of(intervals).overlaps(IntervalSet.minuteOf(start1), IntervalSet.minuteOf(end1));
     }
-}
\ No newline at end of file
+}
@@ -1,13 +1,16 @@
 package com.kikisito.salus.api.service;
 
+import com.kikisito.salus.api.config.AppointmentSlotsConfiguration;
 import com.kikisito.salus.api.dto.MedicalCenterDTO;
 import com.kikisito.salus.api.dto.request.NewMedicalCenterRequest;
 import com.kikisito.salus.api.dto.response.MedicalCentersListResponse;
 import com.kikisito.salus.api.entity.MedicalCenterEntity;
 import com.kikisito.salus.api.exception.DataNotFoundException;
+import com.kikisito.salus.api.mapper.DtoMapper;
+import com.kikisito.salus.api.mapper.RequestMapper;
+import com.kikisito.salus.api.occupancy.AvailabilityCalendar;
 import com.kikisito.salus.api.repository.MedicalCenterRepository;
 import lombok.RequiredArgsConstructor;
-import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
@@ -16,6 +19,7 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Service
@@ -25,7 +29,16 @@ public class MedicalCenterService {
     private final MedicalCenterRepository medicalCenterRepository;
 
     @Autowired
-    private ModelMapper modelMapper;
+    private DtoMapper dtoMapper;
+
+    @Autowired
+    private RequestMapper requestMapper;
+
+    @Autowired
+    private AppointmentSlotsConfiguration appointmentSlotsConfiguration;
+
+    @Autowired
+    private AvailabilityCalendar availabilityCalendar;
 
     private static final int DEFAULT_PAGE = 0;
     private static final int MAX_ROWS_PER_PAGE = 100;
@@ -43,7 +56,7 @@ public class MedicalCenterService {
 
         // Convertimos los centros médicos a DTOs
         List<MedicalCenterDTO> medicalCenterDTOS = medicalCenters.getContent().stream()
-                .map(c -> modelMapper.map(c, MedicalCenterDTO.class))
+                .map(c -> dtoMapper.toMedicalCenterDTO(c))
                 .toList();
 
         return MedicalCentersListResponse.builder()
@@ -64,7 +77,7 @@ public class MedicalCenterService {
 
         // Convertimos los centros médicos a DTOs
         List<MedicalCenterDTO> medicalCenterDTOS = medicalCenters.getContent().stream()
-                .map(c -> modelMapper.map(c, MedicalCenterDTO.class))
+                .map(c -> dtoMapper.toMedicalCenterDTO(c))
                 .collect(Collectors.toList());
 
         return MedicalCentersListResponse.builder()
@@ -81,12 +94,22 @@ public class MedicalCenterService {
         Integer page = Math.max(optionalPage.orElse(DEFAULT_PAGE), DEFAULT_PAGE);
         Integer limit = Math.min(optionalLimit.orElse(DEFAULT_PAGE_SIZE), MAX_ROWS_PER_PAGE);
 
-        // Obtenemos los centros médicos de la base de datos
-        Page<MedicalCenterEntity> medicalCenters = medicalCenterRepository.findByAvailableSpecialty(specialtyId, PageRequest.of(page, limit));
+        // Obtenemos los centros médicos de la base de datos. Si el calendario de disponibilidad está activo, ya sabemos
+        // qué centros tienen huecos libres. Si no, en el modo virtual no hay filas de huecos libres, así que se buscan
+        // los centros con turnos de la especialidad
+        Page<MedicalCenterEntity> medicalCenters;
+        if(appointmentSlotsConfiguration.isAvailabilityCalendarEnabled()) {
+            Set<Integer> medicalCenterIds = availabilityCalendar.findAvailableMedicalCenterIds(specialtyId);
+            medicalCenters = medicalCenterIds.isEmpty() ? Page.empty() : medicalCenterRepository.findByIdIn(medicalCenterIds, PageRequest.of(page, limit));
+        } else if(appointmentSlotsConfiguration.isVirtualMode()) {
+            medicalCenters = medicalCenterRepository.findBySpecialtyWithSchedule(specialtyId, PageRequest.of(page, limit));
+        } else {
+            medicalCenters = medicalCenterRepository.findByAvailableSpecialty(specialtyId, PageRequest.of(page, limit));
+        }
 
         // Convertimos los centros médicos a DTOs
         List<MedicalCenterDTO> medicalCenterDTOS = medicalCenters.getContent().stream()
-                .map(c -> modelMapper.map(c, MedicalCenterDTO.class))
+                .map(c -> dtoMapper.toMedicalCenterDTO(c))
                 .collect(Collectors.toList());
 
         return MedicalCentersListResponse.builder()
@@ -102,12 +125,20 @@ public class MedicalCenterService {
         Integer page = Math.max(optionalPage.orElse(DEFAULT_PAGE), DEFAULT_PAGE);
         Integer limit = Math.min(optionalLimit.orElse(DEFAULT_PAGE_SIZE), MAX_ROWS_PER_PAGE);
 
-        // Obtenemos los centros médicos de la base de datos
-        Page<MedicalCenterEntity> medicalCenters = medicalCenterRepository.searchByAvailableSpecialty(specialtyId, search, PageRequest.of(page, limit));
+        // Obtenemos los centros médicos de la base de datos, igual que en getMedicalCentersByAvailableSpecialty
+        Page<MedicalCenterEntity> medicalCenters;
+        if(appointmentSlotsConfiguration.isAvailabilityCalendarEnabled()) {
+            Set<Integer> medicalCenterIds = availabilityCalendar.findAvailableMedicalCenterIds(specialtyId);
+            medicalCenters = medicalCenterIds.isEmpty() ? Page.empty() : medicalCenterRepository.searchByIdIn(medicalCenterIds, search, PageRequest.of(page, limit));
+        } else if(appointmentSlotsConfiguration.isVirtualMode()) {
+            medicalCenters = medicalCenterRepository.searchBySpecialtyWithSchedule(specialtyId, search, PageRequest.of(page, limit));
+        } else {
+            medicalCenters = medicalCenterRepository.searchByAvailableSpecialty(specialtyId, search, PageRequest.of(page, limit));
+        }
 
         // Convertimos los centros médicos a DTOs
         List<MedicalCenterDTO> medicalCenterDTOS = medicalCenters.getContent().stream()
-                .map(c -> modelMapper.map(c, MedicalCenterDTO.class))
+                .map(c -> dtoMapper.toMedicalCenterDTO(c))
                 .collect(Collectors.toList());
 
         return MedicalCentersListResponse.builder()
@@ -119,22 +150,22 @@ public class MedicalCenterService {
     @Transactional(readOnly = true)
     public MedicalCenterDTO getMedicalCenterById(Integer id) {
         MedicalCenterEntity medicalCenter = medicalCenterRepository.findById(id).orElseThrow(DataNotFoundException::medicalCenterNotFound);
-        return modelMapper.map(medicalCenter, MedicalCenterDTO.class);
+        return dtoMapper.toMedicalCenterDTO(medicalCenter);
     }
 
     @Transactional
     public MedicalCenterDTO addMedicalCenter(NewMedicalCenterRequest centroMedicoDTO) {
-        MedicalCenterEntity medicalCenter = modelMapper.map(centroMedicoDTO, MedicalCenterEntity.class);
+        MedicalCenterEntity medicalCenter = requestMapper.toMedicalCenterEntity(centroMedicoDTO);
         medicalCenter = medicalCenterRepository.save(medicalCenter);
-        return modelMapper.map(medicalCenter, MedicalCenterDTO.class);
+        return dtoMapper.toMedicalCenterDTO(medicalCenter);
     }
 
     @Transactional
     public MedicalCenterDTO updateMedicalCenter(Integer id, NewMedicalCenterRequest centroMedicoDTO) {
         MedicalCenterEntity medicalCenter = medicalCenterRepository.findById(id).orElseThrow(DataNotFoundException::medicalCenterNotFound);
-        modelMapper.map(centroMedicoDTO, medicalCenter);
+        requestMapper.updateMedicalCenterEntity(centroMedicoDTO, medicalCenter);
         medicalCenter = medicalCenterRepository.save(medicalCenter);
-        return modelMapper.map(medicalCenter, MedicalCenterDTO.class);
+        return dtoMapper.toMedicalCenterDTO(medicalCenter);
     }
 
     @Transactional
@@ -1,5 +1,9 @@
 package com.kikisito.salus.api.service;
 
+import com.kikisito.salus.api.cache.AccessDecisionCache;
+import com.kikisito.salus.api.cache.AvailabilityCache;
+import com.kikisito.salus.api.cache.DoctorAgendaCache;
+import com.kikisito.salus.api.config.AppointmentSlotsConfiguration;
 import com.kikisito.salus.api.dto.ReducedUserDTO;
 import com.kikisito.salus.api.dto.SpecialtyDTO;
 import com.kikisito.salus.api.dto.MedicalProfileDTO;
@@ -12,10 +16,11 @@ import com.kikisito.salus.api.entity.MedicalProfileEntity;
 import com.kikisito.salus.api.entity.UserEntity;
 import com.kikisito.salus.api.exception.ConflictException;
 import com.kikisito.salus.api.exception.DataNotFoundException;
+import com.kikisito.salus.api.mapper.DtoMapper;
+import com.kikisito.salus.api.occupancy.AvailabilityCalendar;
 import com.kikisito.salus.api.repository.*;
 import com.kikisito.salus.api.type.RoleType;
 import lombok.RequiredArgsConstructor;
-import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
@@ -43,14 +48,29 @@ public class MedicalProfileService {
     private final AppointmentRepository appointmentRepository;
 
     @Autowired
-    private ModelMapper modelMapper;
+    private DtoMapper dtoMapper;
+
+    @Autowired
+    private AppointmentSlotsConfiguration appointmentSlotsConfiguration;
+
+    @Autowired
+    private AvailabilityCalendar availabilityCalendar;
+
+    @Autowired
+    private AvailabilityCache availabilityCache;
+
+    @Autowired
+    private AccessDecisionCache accessDecisionCache;
+
+    @Autowired
+    private DoctorAgendaCache doctorAgendaCache;
 
     @Transactional(readOnly = true)
     public DoctorsListResponse getMedicalProfiles(Integer page, Integer limit) {
         Page<MedicalProfileEntity> medicalProfiles = medicalProfileRepository.findAll(PageRequest.of(page, limit));
 
         List<MedicalProfileDTO> doctorsDTO = medicalProfiles.stream()
-                .map(perfilMedicoEntity -> modelMapper.map(perfilMedicoEntity, MedicalProfileDTO.class))
+                .map(perfilMedicoEntity -> dtoMapper.toMedicalProfileDTO(perfilMedicoEntity))
                 .toList();
 
         return DoctorsListResponse.builder()
@@ -64,7 +84,7 @@ public class MedicalProfileService {
         Page<MedicalProfileEntity> medicalProfiles = medicalProfileRepository.search(search, PageRequest.of(page, limit));
 
         List<MedicalProfileDTO> doctorsDTO = medicalProfiles.stream()
-                .map(perfilMedicoEntity -> modelMapper.map(perfilMedicoEntity, MedicalProfileDTO.class))
+                .map(perfilMedicoEntity -> dtoMapper.toMedicalProfileDTO(perfilMedicoEntity))
                 .toList();
 
         return DoctorsListResponse.builder()
@@ -78,32 +98,43 @@ public class MedicalProfileService {
             Integer medicalCenterId,
             Integer specialtyId
     ) {
+        // La respuesta se guarda en caché hasta que cambie la disponibilidad de algún médico del centro y la especialidad
+        return availabilityCache.getAvailableDoctors(medicalCenterId, specialtyId, () -> this.findMedicalProfilesWithAvailability(medicalCenterId, specialtyId));
+    }
+
+    private List<MedicalProfileDTO> findMedicalProfilesWithAvailability(Integer medicalCenterId, Integer specialtyId) {
         // Obtenemos el centro médico y la especialidad
         MedicalCenterEntity medicalCenter = medicalCenterRepository.findById(medicalCenterId).orElseThrow(DataNotFoundException::medicalCenterNotFound);
         SpecialtyEntity specialty = specialtyRepository.findById(specialtyId).orElseThrow(DataNotFoundException::specialtyNotFound);
 
-        // Buscamos los perfiles médicos que cumplen con los criterios
-        List<MedicalProfileEntity> medicalProfiles = medicalProfileRepository.findByMedicalCenterSpecialtyAndHasAvailability(
-                medicalCenter,
-                specialty
-        );
+        // Buscamos los perfiles médicos que cumplen con los criterios. Si el calendario de disponibilidad está activo,
+        // ya sabemos qué médicos tienen huecos libres. Si no, en el modo virtual no hay filas de huecos libres,
+        // así que se buscan los médicos con turnos de la especialidad en el centro
+        List<MedicalProfileEntity> medicalProfiles;
+        if(appointmentSlotsConfiguration.isAvailabilityCalendarEnabled()) {
+            medicalProfiles = medicalProfileRepository.findAllById(availabilityCalendar.findAvailableDoctorIds(medicalCenter.getId(), specialty.getId()));
+        } else if(appointmentSlotsConfiguration.isVirtualMode()) {
+            medicalProfiles = medicalProfileRepository.findByMedicalCenterSpecialtyAndHasSchedule(medicalCenter, specialty);
+        } else {
+            medicalProfiles = medicalProfileRepository.findByMedicalCenterSpecialtyAndHasAvailability(medicalCenter, specialty);
+        }
 
         // Devolvemos la lista de perfiles médicos mapeados a DTO
         return medicalProfiles.stream()
-                .map(medicalProfileEntity -> modelMapper.map(medicalProfileEntity, MedicalProfileDTO.class))
+                .map(medicalProfileEntity -> dtoMapper.toMedicalProfileDTO(medicalProfileEntity))
                 .toList();
     }
 
     @Transactional(readOnly = true)
     public MedicalProfileDTO getMedicalProfileFromUserEntity(UserEntity userEntity) {
         MedicalProfileEntity medicalProfileEntity = medicalProfileRepository.findByUser(userEntity).orElseThrow(DataNotFoundException::doctorNotFound);
-        return modelMapper.map(medicalProfileEntity, MedicalProfileDTO.class);
+        return dtoMapper.toMedicalProfileDTO(medicalProfileEntity);
     }
 
     @Transactional(readOnly = true)
     public MedicalProfileDTO getMedicalProfile(Integer id) {
         MedicalProfileEntity medicalProfileEntity = medicalProfileRepository.findById(id).orElseThrow(DataNotFoundException::doctorNotFound);
-        return modelMapper.map(medicalProfileEntity, MedicalProfileDTO.class);
+        return dtoMapper.toMedicalProfileDTO(medicalProfileEntity);
     }
 
     @Transactional
@@ -132,8 +163,8 @@ public class MedicalProfileService {
         }
 
         // Devolvemos el perfil médico tras mapearlo a DTO con el usuario DTO
-        MedicalProfileDTO medicalProfileDTO = modelMapper.map(medicalProfileEntity, MedicalProfileDTO.class);
-        medicalProfileDTO.setUser(modelMapper.map(userEntity, ReducedUserDTO.class));
+        MedicalProfileDTO medicalProfileDTO = dtoMapper.toMedicalProfileDTO(medicalProfileEntity);
+        medicalProfileDTO.setUser(dtoMapper.toReducedUserDTO(userEntity));
         return medicalProfileDTO;
     }
 
@@ -151,7 +182,7 @@ public class MedicalProfileService {
         medicalProfileEntity.setLicense(license);
         medicalProfileEntity = medicalProfileRepository.save(medicalProfileEntity);
 
-        return modelMapper.map(medicalProfileEntity, MedicalProfileDTO.class);
+        return dtoMapper.toMedicalProfileDTO(medicalProfileEntity);
     }
 
     @Transactional(readOnly = true)
@@ -159,7 +190,7 @@ public class MedicalProfileService {
         MedicalProfileEntity medicalProfileEntity = medicalProfileRepository.findById(medicoId).orElseThrow(DataNotFoundException::doctorNotFound);
 
         return medicalProfileEntity.getSpecialties().stream()
-                .map(especialidad -> modelMapper.map(especialidad, SpecialtyDTO.class))
+                .map(especialidad -> dtoMapper.toSpecialtyDTO(especialidad))
                 .toList();
     }
 
@@ -177,7 +208,11 @@ public class MedicalProfileService {
         medicalProfileEntity.getSpecialties().add(specialtyEntity);
         medicalProfileRepository.save(medicalProfileEntity);
 
-        return modelMapper.map(medicalProfileEntity, MedicalProfileDTO.class);
+        // Las especialidades del médico deciden a qué citas y documentos de otros médicos tiene acceso
+        accessDecisionCache.invalidateAll();
+        doctorAgendaCache.invalidateDoctor(doctorId);
+
+        return dtoMapper.toMedicalProfileDTO(medicalProfileEntity);
     }
 
     @Transactional
@@ -188,7 +223,11 @@ public class MedicalProfileService {
         medicalProfileEntity.getSpecialties().remove(specialtyEntity);
         medicalProfileRepository.save(medicalProfileEntity);
 
-        return modelMapper.map(medicalProfileEntity, MedicalProfileDTO.class);
+        // Las especialidades del médico deciden a qué citas y documentos de otros médicos tiene acceso
+        accessDecisionCache.invalidateAll();
+        doctorAgendaCache.invalidateDoctor(medicoId);
+
+        return dtoMapper.toMedicalProfileDTO(medicalProfileEntity);
     }
 
     @Transactional
@@ -201,12 +240,12 @@ public class MedicalProfileService {
         }
 
         medicalProfileRepository.delete(medicalProfile);
+        accessDecisionCache.invalidateAll();
         return true;
     }
 
-    @Transactional
-    public UserEntity getAsUser(Integer doctorId) {
-        MedicalProfileEntity medicalProfileEntity = medicalProfileRepository.findById(doctorId).orElseThrow(DataNotFoundException::doctorNotFound);
-        return medicalProfileEntity.getUser();
+    // El perfil médico es el del usuario que hace la petición. El usuario ya trae cargado su perfil, así que no hace falta consultar
+    public boolean isMedicalProfileOfUser(Integer doctorId, UserEntity user) {
+        return user.getMedicalProfile() != null && user.getMedicalProfile().getId().equals(doctorId);
     }
 }
\ No newline at end of file
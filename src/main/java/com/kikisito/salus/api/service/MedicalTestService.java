@@ -1,13 +1,17 @@
 package com.kikisito.salus.api.service;
 
+import com.kikisito.salus.api.cache.AccessDecisionCache;
+import com.kikisito.salus.api.cache.AccessDecisionCache.AccessCheck;
+import com.kikisito.salus.api.cache.DoctorAgendaCache;
 import com.kikisito.salus.api.dto.MedicalTestDTO;
 import com.kikisito.salus.api.dto.request.MedicalTestRequest;
 import com.kikisito.salus.api.entity.*;
 import com.kikisito.salus.api.exception.DataNotFoundException;
+import com.kikisito.salus.api.mapper.DtoMapper;
+import com.kikisito.salus.api.mapper.RequestMapper;
 import com.kikisito.salus.api.repository.*;
 import com.openhtmltopdf.pdfboxout.PdfRendererBuilder;
 import lombok.RequiredArgsConstructor;
-import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.stereotype.Service;
@@ -53,7 +57,16 @@ public class MedicalTestService {
     private final MedicalCenterRepository medicalCenterRepository;
 
     @Autowired
-    private ModelMapper modelMapper;
+    private DtoMapper dtoMapper;
+
+    @Autowired
+    private RequestMapper requestMapper;
+
+    @Autowired
+    private AccessDecisionCache accessDecisionCache;
+
+    @Autowired
+    private DoctorAgendaCache doctorAgendaCache;
 
     @Transactional(readOnly = true)
     public List<MedicalTestDTO> getPatientMedicalTests(Integer patientId) {
@@ -61,7 +74,7 @@ public class MedicalTestService {
         List<MedicalTestEntity> medicalTests = medicalTestRepository.findByPatient(user);
 
         return medicalTests.stream()
-                .map(medicalTest -> modelMapper.map(medicalTest, MedicalTestDTO.class))
+                .map(medicalTest -> dtoMapper.toMedicalTestDTO(medicalTest))
                 .toList();
     }
 
@@ -73,7 +86,7 @@ public class MedicalTestService {
         List<MedicalTestEntity> medicalTests = medicalTestRepository.findByPatientWithDoctorOrItsSpecialties(user, doctor, doctor.getSpecialties());
 
         return medicalTests.stream()
-                .map(medicalTest -> modelMapper.map(medicalTest, MedicalTestDTO.class))
+                .map(medicalTest -> dtoMapper.toMedicalTestDTO(medicalTest))
                 .toList();
     }
 
@@ -99,7 +112,7 @@ public class MedicalTestService {
         Optional<AppointmentEntity> appointmentOptional = request.getAppointment() != null ? appointmentRepository.findById(request.getAppointment()) : Optional.empty();
 
         // Guardamos la prueba médica
-        MedicalTestEntity medicalTestEntity = modelMapper.map(request, MedicalTestEntity.class);
+        MedicalTestEntity medicalTestEntity = requestMapper.toMedicalTestEntity(request);
         medicalTestEntity.setDoctor(doctor);
         medicalTestEntity.setPatient(patient);
         medicalTestEntity.setSpecialty(specialty);
@@ -120,9 +133,12 @@ public class MedicalTestService {
             attachmentRepository.save(attachment);
         }
 
+        // La prueba pendiente aparece en las agendas en las que el paciente tiene cita
+        doctorAgendaCache.invalidatePatient(patient.getId());
+
         // Mapeamos la entidad a DTO y la devolvemos
         medicalTestEntity.setAttachments(attachments); // Asignamos los archivos adjuntos a la prueba médica para que se mapeen
-        return modelMapper.map(medicalTestEntity, MedicalTestDTO.class);
+        return dtoMapper.toMedicalTestDTO(medicalTestEntity);
     }
 
     @Transactional
@@ -139,20 +155,24 @@ public class MedicalTestService {
         }
         // Eliminamos la prueba médica
         medicalTestRepository.delete(medicalTestEntity);
+        accessDecisionCache.invalidateResource(AccessCheck.MEDICAL_TEST, id);
+        doctorAgendaCache.invalidatePatient(medicalTestEntity.getPatient().getId());
     }
 
+    // Una sola consulta de existencia, guardada en la caché de decisiones de acceso. Si el médico no tiene acceso,
+    // se comprueba que la prueba exista para seguir respondiendo que no se ha encontrado
     @Transactional(readOnly = true)
     public boolean isDoctorResponsibleOfMedicalTest(Integer medicalTestId, Integer doctorId) {
-        MedicalTestEntity medicalTestEntity = medicalTestRepository.findById(medicalTestId).orElseThrow(DataNotFoundException::medicalTestNotFound);
-        MedicalProfileEntity doctor = medicalProfileRepository.findById(doctorId).orElseThrow(DataNotFoundException::doctorNotFound);
-
-        // Comprobamos si el informe está asociado al médico, a una cita cuyo doctor es el médico o a una especialidad del médico
-        boolean isMedicalTestAssociatedToDoctor = medicalTestEntity.getDoctor().equals(doctor);
-        boolean isMedicalTestAppointmentAssociatedToDoctor = medicalTestEntity.getAppointment() != null && medicalTestEntity.getAppointment().getSlot().getDoctor().equals(doctor);
-        boolean isMedicalTestSpecialtyAssociatedToDoctorSpecialties = medicalTestEntity.getDoctor().getSpecialties().stream()
-                .anyMatch(specialty -> doctor.getSpecialties().contains(specialty));
-
-        return isMedicalTestAssociatedToDoctor || isMedicalTestAppointmentAssociatedToDoctor || isMedicalTestSpecialtyAssociatedToDoctorSpecialties;
+        return accessDecisionCache.get(AccessCheck.MEDICAL_TEST, medicalTestId, doctorId, () -> {
+            if(medicalTestRepository.canDoctorAccessMedicalTest(medicalTestId, doctorId)) {
+                return true;
+            }
+
+            if(!medicalTestRepository.existsById(medicalTestId)) {
+                throw DataNotFoundException.medicalTestNotFound();
+            }
+            return false;
+        });
     }
 
     @Transactional(readOnly = true)
@@ -0,0 +1,259 @@
+package com.kikisito.salus.api.service;
+
+import com.kikisito.salus.api.dto.PatientTimelineEntryDTO;
+import com.kikisito.salus.api.dto.TimelineAppointmentRowDTO;
+import com.kikisito.salus.api.dto.TimelineDocumentRowDTO;
+import com.kikisito.salus.api.dto.request.PatientTimelineRequest;
+import com.kikisito.salus.api.dto.response.PatientTimelineResponse;
+import com.kikisito.salus.api.exception.BadRequestException;
+import com.kikisito.salus.api.exception.DataNotFoundException;
+import com.kikisito.salus.api.repository.*;
+import com.kikisito.salus.api.type.TimelineEntryType;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+// Historial de un paciente: citas, informes, recetas y pruebas médicas en una sola lista, de lo más reciente a lo más antiguo.
+// Cada tipo se lee con su propia consulta paginada por clave y las cuatro se lanzan a la vez en hilos virtuales, cada una en
+// su propia transacción de solo lectura. Las listas se mezclan por fecha y la página devuelve un cursor con la posición de la última entrada
+@Service
+@RequiredArgsConstructor
+public class PatientTimelineService {
+    private static final int DEFAULT_LIMIT = 20;
+
+    // Lo más reciente primero. Con la misma fecha se ordena por tipo y después por identificador, de mayor a menor, como en las consultas
+    private static final Comparator<PatientTimelineEntryDTO> TIMELINE_ORDER = Comparator
+            .comparing(PatientTimelineEntryDTO::getDate, Comparator.reverseOrder())
+            .thenComparing(PatientTimelineEntryDTO::getType)
+            .thenComparing(PatientTimelineEntryDTO::getId, Comparator.reverseOrder());
+
+    @Autowired
+    private final AppointmentRepository appointmentRepository;
+
+    @Autowired
+    private final ReportRepository reportRepository;
+
+    @Autowired
+    private final PrescriptionRepository prescriptionRepository;
+
+    @Autowired
+    private final MedicalTestRepository medicalTestRepository;
+
+    @Autowired
+    private final UserRepository userRepository;
+
+    @Autowired
+    private final MedicalProfileRepository medicalProfileRepository;
+
+    @Autowired
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${application.patient-timeline.fan-out-concurrency:6}")
+    private int fanOutConcurrency;
+
+    // Limita las consultas del historial que hay en hilos virtuales a la vez, compartido entre peticiones. Cuando no quedan
+    // permisos la consulta se hace en el hilo de la petición, así que con mucha carga no se usan más conexiones que sin reparto
+    private Semaphore fanOutPermits;
+
+    private TransactionTemplate readTransaction;
+
+    @PostConstruct
+    public void init() {
+        fanOutPermits = new Semaphore(Math.max(1, fanOutConcurrency));
+        readTransaction = new TransactionTemplate(transactionManager);
+        readTransaction.setReadOnly(true);
+    }
+
+    // No es @Transactional para que el hilo de la petición no retenga una conexión mientras espera a las consultas.
+    // Sin médico se devuelve el historial completo; con médico, lo suyo y lo de sus especialidades
+    public PatientTimelineResponse getPatientTimeline(Integer patientId, Integer doctorId, PatientTimelineRequest request) {
+        if(!userRepository.existsById(patientId)) {
+            throw DataNotFoundException.userNotFound();
+        }
+
+        if(doctorId != null && !medicalProfileRepository.existsById(doctorId)) {
+            throw DataNotFoundException.doctorNotFound();
+        }
+
+        int limit = request.getLimit() == null ? DEFAULT_LIMIT : request.getLimit();
+        TimelineCursor after = request.getCursor() == null ? null : TimelineCursor.decode(request.getCursor());
+
+        // Se pide una entrada más de cada tipo para saber si hay otra página sin tener que contar
+        Pageable page = PageRequest.of(0, limit + 1);
+
+        List<Supplier<List<PatientTimelineEntryDTO>>> sources = List.of(
+                () -> this.appointmentEntries(patientId, doctorId, after, page),
+                () -> this.documentEntries(TimelineEntryType.REPORT, after,
+                        (createdAt, id) -> reportRepository.findTimelineRows(patientId, doctorId, createdAt, id, page)),
+                () -> this.documentEntries(TimelineEntryType.PRESCRIPTION, after,
+                        (createdAt, id) -> prescriptionRepository.findTimelineRows(patientId, doctorId, createdAt, id, page)),
+                () -> this.documentEntries(TimelineEntryType.MEDICAL_TEST, after,
+                        (createdAt, id) -> medicalTestRepository.findTimelineRows(patientId, doctorId, createdAt, id, page))
+        );
+
+        List<PatientTimelineEntryDTO> entries = this.merge(this.fetchAll(sources), limit + 1);
+
+        // Si sobra una entrada hay más resultados a partir de la última que se devuelve
+        String nextCursor = null;
+        if(entries.size() > limit) {
+            entries = entries.subList(0, limit);
+            nextCursor = TimelineCursor.of(entries.getLast()).encode();
+        }
+
+        return PatientTimelineResponse.builder()
+                .entries(entries)
+                .nextCursor(nextCursor)
+                .build();
+    }
+
+    private List<PatientTimelineEntryDTO> appointmentEntries(Integer patientId, Integer doctorId, TimelineCursor after, Pageable page) {
+        List<TimelineAppointmentRowDTO> rows = after == null
+                ? appointmentRepository.findTimelineRows(patientId, doctorId, null, null, null, page)
+                : appointmentRepository.findTimelineRows(patientId, doctorId, after.date().toLocalDate(), after.date().toLocalTime(), after.beforeIdFor(TimelineEntryType.APPOINTMENT), page);
+
+        return rows.stream()
+                .map(row -> PatientTimelineEntryDTO.builder()
+                        .type(TimelineEntryType.APPOINTMENT)
+                        .id(row.id())
+                        .date(LocalDateTime.of(row.date(), row.startTime()))
+                        .summary(row.reason())
+                        .appointmentId(row.id())
+                        .appointmentType(row.type())
+                        .appointmentStatus(row.status())
+                        .doctorId(row.doctorId())
+                        .doctorName(row.doctorNombre() + " " + row.doctorApellidos())
+                        .specialtyId(row.specialtyId())
+                        .specialtyName(row.specialtyName())
+                        .build())
+                .toList();
+    }
+
+    private List<PatientTimelineEntryDTO> documentEntries(TimelineEntryType type, TimelineCursor after, BiFunction<LocalDateTime, Integer, List<TimelineDocumentRowDTO>> query) {
+        List<TimelineDocumentRowDTO> rows = after == null
+                ? query.apply(null, null)
+                : query.apply(after.date(), after.beforeIdFor(type));
+
+        return rows.stream()
+                .map(row -> PatientTimelineEntryDTO.builder()
+                        .type(type)
+                        .id(row.id())
+                        .date(row.createdAt())
+                        .summary(row.summary())
+                        .appointmentId(row.appointmentId())
+                        .doctorId(row.doctorId())
+                        .doctorName(row.doctorNombre() + " " + row.doctorApellidos())
+                        .specialtyId(row.specialtyId())
+                        .specialtyName(row.specialtyName())
+                        .build())
+                .toList();
+    }
+
+    // Lanza cada consulta en un hilo virtual si quedan permisos y en el hilo de la petición si no, y espera a todas
+    private List<List<PatientTimelineEntryDTO>> fetchAll(List<Supplier<List<PatientTimelineEntryDTO>>> sources) {
+        List<Future<List<PatientTimelineEntryDTO>>> results = new ArrayList<>();
+        try(ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for(Supplier<List<PatientTimelineEntryDTO>> source : sources) {
+                if(fanOutPermits.tryAcquire()) {
+                    results.add(executor.submit(() -> {
+                        try {
+                            return readTransaction.execute(status -> source.get());
+                        } finally {
+                            fanOutPermits.release();
+                        }
+                    }));
+                } else {
+                    results.add(CompletableFuture.completedFuture(readTransaction.execute(status -> source.get())));
+                }
+            }
+        }
+
+        List<List<PatientTimelineEntryDTO>> lists = new ArrayList<>();
+        for(Future<List<PatientTimelineEntryDTO>> result : results) {
+            try {
+                lists.add(result.get());
+            } catch (ExecutionException e) {
+                // Se propaga el error de la consulta tal cual, por ejemplo para que un DataNotFoundException siga siendo un 404
+                if(e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw new IllegalStateException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+        return lists;
+    }
+
+    // Mezcla de k listas ya ordenadas: se toma siempre la primera entrada pendiente de la lista que va antes
+    private List<PatientTimelineEntryDTO> merge(List<List<PatientTimelineEntryDTO>> sources, int limit) {
+        PriorityQueue<SourceHead> heads = new PriorityQueue<>(Comparator.comparing(SourceHead::entry, TIMELINE_ORDER));
+        sources.stream()
+                .filter(source -> !source.isEmpty())
+                .forEach(source -> heads.add(new SourceHead(source, 0)));
+
+        List<PatientTimelineEntryDTO> merged = new ArrayList<>(limit);
+        while(merged.size() < limit && !heads.isEmpty()) {
+            SourceHead head = heads.poll();
+            merged.add(head.entry());
+            if(head.index() + 1 < head.source().size()) {
+                heads.add(new SourceHead(head.source(), head.index() + 1));
+            }
+        }
+        return merged;
+    }
+
+    private record SourceHead(List<PatientTimelineEntryDTO> source, int index) {
+        PatientTimelineEntryDTO entry() {
+            return source.get(index);
+        }
+    }
+
+    // Posición de la última entrada devuelta. Se envía al cliente codificada en base64 como "fecha|tipo|identificador"
+    private record TimelineCursor(LocalDateTime date, TimelineEntryType type, Integer id) {
+        static TimelineCursor of(PatientTimelineEntryDTO entry) {
+            return new TimelineCursor(entry.getDate(), entry.getType(), entry.getId());
+        }
+
+        static TimelineCursor decode(String cursor) {
+            try {
+                String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|");
+                if(parts.length != 3) {
+                    throw BadRequestException.invalidCursor();
+                }
+                return new TimelineCursor(LocalDateTime.parse(parts[0]), TimelineEntryType.valueOf(parts[1]), Integer.parseInt(parts[2]));
+            } catch (IllegalArgumentException | DateTimeParseException e) {
+                throw BadRequestException.invalidCursor();
+            }
+        }
+
+        String encode() {
+            String value = date + "|" + type + "|" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        // Límite de identificador para las entradas de un tipo con la misma fecha que esta posición: las de los tipos que van
+        // antes ya se han devuelto, las del mismo tipo siguen a partir del identificador y las de los que van después aún no
+        Integer beforeIdFor(TimelineEntryType entryType) {
+            int byType = entryType.compareTo(type);
+            if(byType < 0) {
+                return Integer.MIN_VALUE;
+            }
+            return byType == 0 ? id : Integer.MAX_VALUE;
+        }
+    }
+}
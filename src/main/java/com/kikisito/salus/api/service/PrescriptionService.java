@@ -1,14 +1,17 @@
 package com.kikisito.salus.api.service;
 
+import com.kikisito.salus.api.cache.AccessDecisionCache;
+import com.kikisito.salus.api.cache.AccessDecisionCache.AccessCheck;
+import com.kikisito.salus.api.cache.DoctorAgendaCache;
 import com.kikisito.salus.api.dto.PrescriptionDTO;
 import com.kikisito.salus.api.dto.request.MedicationRequest;
 import com.kikisito.salus.api.dto.request.PrescriptionRequest;
 import com.kikisito.salus.api.entity.*;
 import com.kikisito.salus.api.exception.DataNotFoundException;
+import com.kikisito.salus.api.mapper.DtoMapper;
 import com.kikisito.salus.api.repository.*;
 import com.openhtmltopdf.pdfboxout.PdfRendererBuilder;
 import lombok.RequiredArgsConstructor;
-import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.stereotype.Service;
@@ -50,7 +53,13 @@ public class PrescriptionService {
     private final MedicalCenterRepository medicalCenterRepository;
 
     @Autowired
-    private final ModelMapper modelMapper;
+    private final DtoMapper dtoMapper;
+
+    @Autowired
+    private final AccessDecisionCache accessDecisionCache;
+
+    @Autowired
+    private final DoctorAgendaCache doctorAgendaCache;
 
     @Transactional(readOnly = true)
     public List<PrescriptionDTO> getAppointmentPrescriptions(Integer appointmentId) {
@@ -59,7 +68,7 @@ public class PrescriptionService {
         List<PrescriptionEntity> prescriptions = prescriptionRepository.findAllByAppointment(appointmentEntity);
 
         return prescriptions.stream()
-                .map(prescription -> modelMapper.map(prescription, PrescriptionDTO.class))
+                .map(prescription -> dtoMapper.toPrescriptionDTO(prescription))
                 .toList();
     }
 
@@ -68,7 +77,7 @@ public class PrescriptionService {
         MedicalProfileEntity medicalProfile = medicalProfileRepository.findById(doctorId).orElseThrow(DataNotFoundException::doctorNotFound);
         List<PrescriptionEntity> prescriptions = prescriptionRepository.findAllByDoctor(medicalProfile);
         return prescriptions.stream()
-                .map(prescription -> modelMapper.map(prescription, PrescriptionDTO.class))
+                .map(prescription -> dtoMapper.toPrescriptionDTO(prescription))
                 .toList();
     }
 
@@ -77,7 +86,7 @@ public class PrescriptionService {
         UserEntity patient = userRepository.findById(userId).orElseThrow(DataNotFoundException::userNotFound);
         List<PrescriptionEntity> prescriptions = prescriptionRepository.findAllByPatient(patient);
         return prescriptions.stream()
-                .map(prescription -> modelMapper.map(prescription, PrescriptionDTO.class))
+                .map(prescription -> dtoMapper.toPrescriptionDTO(prescription))
                 .toList();
     }
 
@@ -89,7 +98,7 @@ public class PrescriptionService {
         List<PrescriptionEntity> prescriptions = prescriptionRepository.findByPatientWithDoctorOrItsSpecialties(user, doctor, doctor.getSpecialties());
 
         return prescriptions.stream()
-                .map(prescription -> modelMapper.map(prescription, PrescriptionDTO.class))
+                .map(prescription -> dtoMapper.toPrescriptionDTO(prescription))
                 .toList();
     }
 
@@ -150,8 +159,11 @@ public class PrescriptionService {
         // Guardamos la receta con la lista de medicaciones
         PrescriptionEntity prescription = prescriptionRepository.save(savedPrescription);
 
+        // Los medicamentos aparecen en las agendas en las que el paciente tiene cita
+        doctorAgendaCache.invalidatePatient(patient.getId());
+
         // Convertimos la receta a DTO para devolverla
-        return modelMapper.map(prescription, PrescriptionDTO.class);
+        return dtoMapper.toPrescriptionDTO(prescription);
     }
 
     @Transactional
@@ -195,29 +207,34 @@ public class PrescriptionService {
 
         // Guardamos la receta con la lista de medicinas nueva
         prescriptionRepository.save(prescription);
+        doctorAgendaCache.invalidatePatient(prescription.getPatient().getId());
 
         // Devolvemos la receta actualizada
-        return modelMapper.map(prescription, PrescriptionDTO.class);
+        return dtoMapper.toPrescriptionDTO(prescription);
     }
 
     @Transactional
     public void deletePrescription(Integer prescriptionId) {
         PrescriptionEntity prescription = prescriptionRepository.findById(prescriptionId).orElseThrow(DataNotFoundException::prescriptionNotFound);
         prescriptionRepository.delete(prescription);
+        accessDecisionCache.invalidateResource(AccessCheck.PRESCRIPTION, prescriptionId);
+        doctorAgendaCache.invalidatePatient(prescription.getPatient().getId());
     }
 
+    // Una sola consulta de existencia, guardada en la caché de decisiones de acceso. Si el médico no tiene acceso,
+    // se comprueba que la receta exista para seguir respondiendo que no se ha encontrado
     @Transactional(readOnly = true)
     public boolean canProfessionalAccessPrescription(Integer prescriptionId, Integer professionalId) {
-        PrescriptionEntity prescription = prescriptionRepository.findById(prescriptionId).orElseThrow(DataNotFoundException::prescriptionNotFound);
-        MedicalProfileEntity doctor = medicalProfileRepository.findById(professionalId).orElseThrow(DataNotFoundException::doctorNotFound);
-
-        // Comprobamos si la receta está asociado al médico, a una cita cuyo doctor es el médico o a una especialidad del médico
-        boolean isPrescriptionAssociatedToDoctor = prescription.getDoctor().equals(doctor);
-        boolean isPrescriptionAppointmentAssociatedToDoctor = prescription.getAppointment() != null && prescription.getAppointment().getSlot().getDoctor().equals(doctor);
-        boolean isPrescriptionSpecialtyAssociatedToDoctorSpecialties = prescription.getDoctor().getSpecialties().stream()
-                .anyMatch(specialty -> doctor.getSpecialties().contains(specialty));
-
-        return isPrescriptionAssociatedToDoctor || isPrescriptionAppointmentAssociatedToDoctor || isPrescriptionSpecialtyAssociatedToDoctorSpecialties;
+        return accessDecisionCache.get(AccessCheck.PRESCRIPTION, prescriptionId, professionalId, () -> {
+            if(prescriptionRepository.canDoctorAccessPrescription(prescriptionId, professionalId)) {
+                return true;
+            }
+
+            if(!prescriptionRepository.existsById(prescriptionId)) {
+                throw DataNotFoundException.prescriptionNotFound();
+            }
+            return false;
+        });
     }
 
     @Transactional(readOnly = true)
@@ -1,14 +1,17 @@
 package com.kikisito.salus.api.service;
 
+import com.kikisito.salus.api.cache.AccessDecisionCache;
+import com.kikisito.salus.api.cache.AccessDecisionCache.AccessCheck;
 import com.kikisito.salus.api.dto.ReportDTO;
 import com.kikisito.salus.api.dto.request.ReportRequest;
 import com.kikisito.salus.api.entity.*;
 import com.kikisito.salus.api.exception.DataNotFoundException;
+import com.kikisito.salus.api.mapper.DtoMapper;
+import com.kikisito.salus.api.mapper.RequestMapper;
 import com.kikisito.salus.api.repository.*;
 import com.kikisito.salus.api.type.ReportType;
 import com.openhtmltopdf.pdfboxout.PdfRendererBuilder;
 import lombok.RequiredArgsConstructor;
-import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.stereotype.Service;
@@ -46,7 +49,13 @@ public class ReportService {
     private SpecialtyRepository specialtyRepository;
 
     @Autowired
-    private ModelMapper modelMapper;
+    private DtoMapper dtoMapper;
+
+    @Autowired
+    private RequestMapper requestMapper;
+
+    @Autowired
+    private AccessDecisionCache accessDecisionCache;
 
     @Transactional(readOnly = true)
     public List<ReportDTO> getUserReports(Integer userId) {
@@ -58,7 +67,7 @@ public class ReportService {
 
         // Devolvemos la lista de informes
         return reports.stream()
-                .map(report -> modelMapper.map(report, ReportDTO.class))
+                .map(report -> dtoMapper.toReportDTO(report))
                 .toList();
     }
 
@@ -72,7 +81,7 @@ public class ReportService {
 
         // Devolvemos la lista de informes
         return reports.stream()
-                .map(report -> modelMapper.map(report, ReportDTO.class))
+                .map(report -> dtoMapper.toReportDTO(report))
                 .toList();
     }
 
@@ -84,7 +93,7 @@ public class ReportService {
         List<ReportEntity> reports = reportRepository.findByPatientWithDoctorOrItsSpecialties(user, doctor, doctor.getSpecialties());
 
         return reports.stream()
-                .map(report -> modelMapper.map(report, ReportDTO.class))
+                .map(report -> dtoMapper.toReportDTO(report))
                 .toList();
     }
 
@@ -111,13 +120,13 @@ public class ReportService {
                 .build();
 
         // Mapeamos el resto de datos del informe
-        modelMapper.map(reportRequest, report);
+        requestMapper.updateReportEntity(reportRequest, report);
 
         // Guardamos el informe
         report = reportRepository.save(report);
 
         // Devolvemos el informe guardado
-        return modelMapper.map(report, ReportDTO.class);
+        return dtoMapper.toReportDTO(report);
     }
 
     @Transactional(readOnly = true)
@@ -126,7 +135,7 @@ public class ReportService {
         ReportEntity report = reportRepository.findById(reportId).orElseThrow(DataNotFoundException::reportNotFound);
 
         // Devolvemos el informe
-        return modelMapper.map(report, ReportDTO.class);
+        return dtoMapper.toReportDTO(report);
     }
 
     @Transactional(readOnly = true)
@@ -142,18 +151,20 @@ public class ReportService {
         return pdf;
     }
 
+    // Una sola consulta de existencia, guardada en la caché de decisiones de acceso. Si el médico no tiene acceso,
+    // se comprueba que el informe exista para seguir respondiendo que no se ha encontrado
     @Transactional(readOnly = true)
     public boolean canProfessionalAccessReport(Integer reportId, Integer doctorId) {
-        ReportEntity report = reportRepository.findById(reportId).orElseThrow(DataNotFoundException::reportNotFound);
-        MedicalProfileEntity doctor = medicalProfileRepository.findById(doctorId).orElseThrow(DataNotFoundException::doctorNotFound);
-
-        // Comprobamos si el informe está asociado al médico, a una cita cuyo doctor es el médico o a una especialidad del médico
-        boolean isReportAssociatedToDoctor = report.getDoctor().equals(doctor);
-        boolean isReportAppointmentAssociatedToDoctor = report.getAppointment() != null && report.getAppointment().getSlot().getDoctor().equals(doctor);
-        boolean isReportSpecialtyAssociatedToDoctorSpecialties = report.getDoctor().getSpecialties().stream()
-                .anyMatch(specialty -> doctor.getSpecialties().contains(specialty));
-
-        return isReportAssociatedToDoctor || isReportAppointmentAssociatedToDoctor || isReportSpecialtyAssociatedToDoctorSpecialties;
+        return accessDecisionCache.get(AccessCheck.REPORT, reportId, doctorId, () -> {
+            if(reportRepository.canDoctorAccessReport(reportId, doctorId)) {
+                return true;
+            }
+
+            if(!reportRepository.existsById(reportId)) {
+                throw DataNotFoundException.reportNotFound();
+            }
+            return false;
+        });
     }
 
     @Transactional
@@ -170,7 +181,7 @@ public class ReportService {
         report = reportRepository.save(report);
 
         // Devolvemos el informe guardado
-        return modelMapper.map(report, ReportDTO.class);
+        return dtoMapper.toReportDTO(report);
     }
 
     @Transactional
@@ -180,6 +191,7 @@ public class ReportService {
 
         // Eliminamos el informe
         reportRepository.delete(report);
+        accessDecisionCache.invalidateResource(AccessCheck.REPORT, reportId);
     }
 
     @Transactional(readOnly = true)
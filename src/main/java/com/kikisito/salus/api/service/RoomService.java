@@ -6,10 +6,11 @@ import com.kikisito.salus.api.dto.response.RoomsListResponse;
 import com.kikisito.salus.api.entity.MedicalCenterEntity;
 import com.kikisito.salus.api.entity.RoomEntity;
 import com.kikisito.salus.api.exception.DataNotFoundException;
+import com.kikisito.salus.api.mapper.DtoMapper;
+import com.kikisito.salus.api.mapper.RequestMapper;
 import com.kikisito.salus.api.repository.MedicalCenterRepository;
 import com.kikisito.salus.api.repository.RoomRepository;
 import lombok.RequiredArgsConstructor;
-import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
@@ -29,7 +30,10 @@ public class RoomService {
     private final RoomRepository roomRepository;
 
     @Autowired
-    private ModelMapper modelMapper;
+    private DtoMapper dtoMapper;
+
+    @Autowired
+    private RequestMapper requestMapper;
 
     private static final int DEFAULT_PAGE = 0;
     private static final int MAX_ROWS_PER_PAGE = 100;
@@ -46,7 +50,7 @@ public class RoomService {
 
         // Convertimos los centros médicos a DTOs
         List<RoomDTO> roomDTOS = rooms.getContent().stream()
-                .map(c -> modelMapper.map(c, RoomDTO.class))
+                .map(c -> dtoMapper.toRoomDTO(c))
                 .toList();
 
         return RoomsListResponse.builder()
@@ -64,7 +68,7 @@ public class RoomService {
 
         // Convertimos los centros médicos a DTOs
         List<RoomDTO> roomDTOS = rooms.getContent().stream()
-                .map(c -> modelMapper.map(c, RoomDTO.class))
+                .map(c -> dtoMapper.toRoomDTO(c))
                 .toList();
 
         return RoomsListResponse.builder()
@@ -76,7 +80,7 @@ public class RoomService {
     @Transactional(readOnly = true)
     public RoomDTO getRoom(Integer id) {
         RoomEntity consulta = roomRepository.findById(id).orElseThrow(DataNotFoundException::roomNotFound);
-        return modelMapper.map(consulta, RoomDTO.class);
+        return dtoMapper.toRoomDTO(consulta);
     }
 
     @Transactional
@@ -85,14 +89,14 @@ public class RoomService {
         MedicalCenterEntity centroMedico = medicalCenterRepository.findById(roomRequest.getMedicalCenter()).orElseThrow(DataNotFoundException::medicalCenterNotFound);
 
         // Mapeo de la entidad consulta y asignación del centro medico
-        RoomEntity room = modelMapper.map(roomRequest, RoomEntity.class);
+        RoomEntity room = requestMapper.toRoomEntity(roomRequest);
         room.setMedicalCenter(centroMedico);
 
         // Guardado en la base de datos
         room = roomRepository.save(room);
 
         // Devolvemos el DTO de la consulta
-        return modelMapper.map(room, RoomDTO.class);
+        return dtoMapper.toRoomDTO(room);
     }
 
     @Transactional
@@ -100,12 +104,12 @@ public class RoomService {
         MedicalCenterEntity medicalCenter = medicalCenterRepository.findById(roomRequest.getMedicalCenter()).orElseThrow(DataNotFoundException::medicalCenterNotFound);
         RoomEntity room = roomRepository.findById(id).orElseThrow(DataNotFoundException::roomNotFound);
 
-        modelMapper.map(roomRequest, room);
+        requestMapper.updateRoomEntity(roomRequest, room);
         room.setMedicalCenter(medicalCenter);
 
         room = roomRepository.save(room);
 
-        return modelMapper.map(room, RoomDTO.class);
+        return dtoMapper.toRoomDTO(room);
     }
 
     @Transactional
@@ -5,9 +5,10 @@ import com.kikisito.salus.api.dto.request.AddSpecialtyRequest;
 import com.kikisito.salus.api.dto.response.SpecialtiesListResponse;
 import com.kikisito.salus.api.entity.SpecialtyEntity;
 import com.kikisito.salus.api.exception.DataNotFoundException;
+import com.kikisito.salus.api.mapper.DtoMapper;
+import com.kikisito.salus.api.mapper.RequestMapper;
 import com.kikisito.salus.api.repository.SpecialtyRepository;
 import lombok.RequiredArgsConstructor;
-import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
@@ -24,7 +25,10 @@ public class SpecialtyService {
     private final SpecialtyRepository specialtyRepository;
 
     @Autowired
-    private ModelMapper modelMapper;
+    private DtoMapper dtoMapper;
+
+    @Autowired
+    private RequestMapper requestMapper;
 
     private static final int DEFAULT_PAGE = 0;
     private static final int MAX_ROWS_PER_PAGE = 100;
@@ -42,7 +46,7 @@ public class SpecialtyService {
 
         // Convertimos las especialidades a DTOs
         List<SpecialtyDTO> specialtyDTOS = specialties.stream()
-                .map(e -> modelMapper.map(e, SpecialtyDTO.class))
+                .map(e -> dtoMapper.toSpecialtyDTO(e))
                 .toList();
 
         return SpecialtiesListResponse.builder()
@@ -59,7 +63,7 @@ public class SpecialtyService {
         List<SpecialtyEntity> specialties = specialtyRepository.findByNameContainingIgnoreCase(search, PageRequest.of(page, limit)).getContent();
 
         List<SpecialtyDTO> specialtyDTOS = specialties.stream()
-                .map(e -> modelMapper.map(e, SpecialtyDTO.class))
+                .map(e -> dtoMapper.toSpecialtyDTO(e))
                 .toList();
 
         return SpecialtiesListResponse.builder()
@@ -70,23 +74,23 @@ public class SpecialtyService {
 
     @Transactional
     public SpecialtyDTO addSpecialty(AddSpecialtyRequest request) {
-        SpecialtyEntity specialtyEntity = modelMapper.map(request, SpecialtyEntity.class);
+        SpecialtyEntity specialtyEntity = requestMapper.toSpecialtyEntity(request);
         specialtyEntity = specialtyRepository.save(specialtyEntity);
-        return modelMapper.map(specialtyEntity, SpecialtyDTO.class);
+        return dtoMapper.toSpecialtyDTO(specialtyEntity);
     }
 
     @Transactional(readOnly = true)
     public SpecialtyDTO getSpecialty(Integer id) {
         SpecialtyEntity specialtyEntity = specialtyRepository.findById(id).orElseThrow(DataNotFoundException::specialtyNotFound);
-        return modelMapper.map(specialtyEntity, SpecialtyDTO.class);
+        return dtoMapper.toSpecialtyDTO(specialtyEntity);
     }
 
     @Transactional
     public SpecialtyDTO updateSpecialty(Integer id, AddSpecialtyRequest request) {
         SpecialtyEntity specialtyEntity = specialtyRepository.findById(id).orElseThrow(DataNotFoundException::specialtyNotFound);
-        modelMapper.map(request, specialtyEntity);
+        requestMapper.updateSpecialtyEntity(request, specialtyEntity);
         specialtyEntity = specialtyRepository.save(specialtyEntity);
-        return modelMapper.map(specialtyEntity, SpecialtyDTO.class);
+        return dtoMapper.toSpecialtyDTO(specialtyEntity);
     }
 
     @Transactional
@@ -11,12 +11,13 @@ import com.kikisito.salus.api.entity.MedicalProfileEntity;
 import com.kikisito.salus.api.entity.UserEntity;
 import com.kikisito.salus.api.exception.ConflictException;
 import com.kikisito.salus.api.exception.DataNotFoundException;
+import com.kikisito.salus.api.mapper.DtoMapper;
+import com.kikisito.salus.api.mapper.RequestMapper;
 import com.kikisito.salus.api.repository.MedicalProfileRepository;
 import com.kikisito.salus.api.repository.UserRepository;
 import com.kikisito.salus.api.type.AccountStatusType;
 import com.kikisito.salus.api.type.RoleType;
 import lombok.RequiredArgsConstructor;
-import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
@@ -53,7 +54,10 @@ public class UserService {
     private PasswordEncoder passwordEncoder;
 
     @Autowired
-    private ModelMapper modelMapper;
+    private DtoMapper dtoMapper;
+
+    @Autowired
+    private RequestMapper requestMapper;
 
     private final static String WELCOME_EMAIL_NO_PASSWORD_TEXT_SUBJECT = "Te damos la bienvenida";
 
@@ -61,7 +65,7 @@ public class UserService {
     public UsersListResponse getAllUsers(Integer page, Integer limit) {
         Page<UserEntity> userEntities = userRepository.findAll(PageRequest.of(page, limit));
         List<UserDTO> usersDTO = userEntities.stream()
-                .map(userEntity -> modelMapper.map(userEntity, UserDTO.class))
+                .map(userEntity -> dtoMapper.toUserDTO(userEntity))
                 .toList();
 
         return UsersListResponse.builder()
@@ -76,7 +80,7 @@ public class UserService {
 
         Page<UserEntity> userEntities = userRepository.findDoctorPatients(doctor, PageRequest.of(page, limit));
         List<UserDTO> usersDTO = userEntities.stream()
-                .map(userEntity -> modelMapper.map(userEntity, UserDTO.class))
+                .map(userEntity -> dtoMapper.toUserDTO(userEntity))
                 .toList();
 
         return UsersListResponse.builder()
@@ -91,7 +95,7 @@ public class UserService {
 
         Page<UserEntity> userEntities = userRepository.searchDoctorPatients(doctor, search, PageRequest.of(page, limit));
         List<UserDTO> usersDTO = userEntities.stream()
-                .map(userEntity -> modelMapper.map(userEntity, UserDTO.class))
+                .map(userEntity -> dtoMapper.toUserDTO(userEntity))
                 .toList();
 
         return UsersListResponse.builder()
@@ -104,7 +108,7 @@ public class UserService {
     public UsersListResponse searchUsers(String search, Integer page, Integer limit) {
         Page<UserEntity> userEntities = userRepository.searchUsers(search, PageRequest.of(page, limit));
         List<UserDTO> usersDTO = userEntities.stream()
-                .map(userEntity -> modelMapper.map(userEntity, UserDTO.class))
+                .map(userEntity -> dtoMapper.toUserDTO(userEntity))
                 .toList();
 
         return UsersListResponse.builder()
@@ -123,11 +127,11 @@ public class UserService {
     public UserDTO getUserProfile(UserEntity userEntity) {
         // Se mapea la dirección a un DTO, si existe
         DireccionDTO direccionDTO = (userEntity.getDireccion() != null)
-                ? modelMapper.map(userEntity.getDireccion(), DireccionDTO.class)
+                ? dtoMapper.toDireccionDTO(userEntity.getDireccion())
                 : null;
 
         // Se mapea el usuario a un DTO y se le asigna la dirección para devolverlo como respuesta
-        UserDTO userDTO = modelMapper.map(userEntity, UserDTO.class);
+        UserDTO userDTO = dtoMapper.toUserDTO(userEntity);
         userDTO.setDireccion(direccionDTO);
         return userDTO;
     }
@@ -168,7 +172,7 @@ public class UserService {
         userEntity = userRepository.save(userEntity);
 
         // Se mapea el usuario actualizado a un DTO y se devuelve
-        return modelMapper.map(userEntity, UserDTO.class);
+        return dtoMapper.toUserDTO(userEntity);
     }
 
     @Transactional
@@ -181,12 +185,12 @@ public class UserService {
     @Transactional
     public UserDTO updateAddress(UserEntity userEntity, DireccionDTO direccionDTO) {
         // Se mapea la dirección a un objeto "embeddable", se actualiza el usuario y se guarda
-        DireccionEmbeddable direccionEmbeddable = modelMapper.map(direccionDTO, DireccionEmbeddable.class);
+        DireccionEmbeddable direccionEmbeddable = requestMapper.toDireccionEmbeddable(direccionDTO);
         userEntity.setDireccion(direccionEmbeddable);
         userEntity = userRepository.save(userEntity);
 
         // Se mapea el usuario actualizado a un DTO y se le asigna la dirección para devolverlo como respuesta
-        UserDTO userDTOUpdated = modelMapper.map(userEntity, UserDTO.class);
+        UserDTO userDTOUpdated = dtoMapper.toUserDTO(userEntity);
         userDTOUpdated.setDireccion(direccionDTO);
         return userDTOUpdated;
     }
@@ -200,7 +204,7 @@ public class UserService {
         userEntity.setRestricted(request.isRestrict());
         userEntity = userRepository.save(userEntity);
 
-        return modelMapper.map(userEntity, UserDTO.class);
+        return dtoMapper.toUserDTO(userEntity);
     }
 
     @Transactional
@@ -261,7 +265,7 @@ public class UserService {
                 variables
         );
 
-        return modelMapper.map(savedUser, UserDTO.class);
+        return dtoMapper.toUserDTO(savedUser);
     }
 
     private String generateRandomPassword(int length) {
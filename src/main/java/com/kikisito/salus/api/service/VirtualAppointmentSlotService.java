@@ -0,0 +1,240 @@
+package com.kikisito.salus.api.service;
+
+import com.kikisito.salus.api.config.AppointmentSlotsConfiguration;
+import com.kikisito.salus.api.dto.*;
+import com.kikisito.salus.api.entity.*;
+import com.kikisito.salus.api.exception.ConflictException;
+import com.kikisito.salus.api.exception.DataNotFoundException;
+import com.kikisito.salus.api.mapper.DtoMapper;
+import com.kikisito.salus.api.occupancy.AbsenceIndex;
+import com.kikisito.salus.api.occupancy.AvailabilityCalendar;
+import com.kikisito.salus.api.occupancy.IntervalSet;
+import com.kikisito.salus.api.occupancy.OccupancyIndex;
+import com.kikisito.salus.api.occupancy.ScheduleGrid;
+import com.kikisito.salus.api.repository.AppointmentSlotRepository;
+import com.kikisito.salus.api.repository.DoctorScheduleRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.*;
+import java.util.stream.Stream;
+
+// Huecos virtuales: los huecos libres se calculan al leerlos a partir de los turnos de los médicos, descontando
+// los huecos que ya existen como fila. Una fila solo se crea cuando un paciente reserva el hueco
+@Service
+@RequiredArgsConstructor
+public class VirtualAppointmentSlotService {
+    private static final Comparator<AppointmentSlotDTO> SLOT_ORDER = Comparator
+            .comparing(AppointmentSlotDTO::getDate)
+            .thenComparing(AppointmentSlotDTO::getStartTime);
+
+    @Autowired
+    private final DoctorScheduleRepository doctorScheduleRepository;
+
+    @Autowired
+    private final AppointmentSlotRepository appointmentSlotRepository;
+
+    @Autowired
+    private final OccupancyIndex occupancyIndex;
+
+    @Autowired
+    private final AvailabilityCalendar availabilityCalendar;
+
+    @Autowired
+    private final AbsenceIndex absenceIndex;
+
+    @Autowired
+    private final AppointmentSlotsConfiguration appointmentSlotsConfiguration;
+
+    @Autowired
+    private final DtoMapper dtoMapper;
+
+    // Agenda de un médico entre dos fechas: los huecos guardados más los calculados a partir de sus turnos
+    @Transactional(readOnly = true)
+    public List<AppointmentSlotDTO> getDoctorSlotsBetweenDates(MedicalProfileEntity doctor, LocalDate startDate, LocalDate endDate) {
+        List<DoctorScheduleEntity> schedules = doctorScheduleRepository.findByDoctor(doctor);
+        List<AppointmentSlotEntity> existingSlots = appointmentSlotRepository.findByDoctorAndDateBetween(doctor, startDate, endDate);
+
+        return Stream.concat(
+                        existingSlots.stream().map(slot -> dtoMapper.toAppointmentSlotDTO(slot)),
+                        this.computeSlots(schedules, existingSlots, this.roomOccupancy(schedules, startDate, endDate), startDate, endDate).stream()
+                )
+                .sorted(SLOT_ORDER)
+                .toList();
+    }
+
+    // Huecos libres de un médico para una especialidad en un centro médico, desde ahora hasta el horizonte configurado
+    @Transactional(readOnly = true)
+    public List<AppointmentSlotDTO> getAvailableSlots(MedicalCenterEntity medicalCenter, SpecialtyEntity specialty, MedicalProfileEntity doctor) {
+        LocalDate startDate = LocalDate.now();
+        LocalDate endDate = startDate.plusWeeks(appointmentSlotsConfiguration.getHorizonWeeks());
+
+        List<DoctorScheduleEntity> schedules = doctorScheduleRepository.findByDoctorAndSpecialtyAndRoom_MedicalCenter(doctor, specialty, medicalCenter);
+        List<AppointmentSlotEntity> existingSlots = appointmentSlotRepository.findByDoctorAndDateBetween(doctor, startDate, endDate);
+
+        // Filas libres que siguen existiendo, por ejemplo tras anular una cita
+        Stream<AppointmentSlotDTO> freeSlots = existingSlots.stream()
+                .filter(slot -> slot.getAppointment() == null)
+                .filter(slot -> slot.getSpecialty().getId().equals(specialty.getId()))
+                .filter(slot -> slot.getRoom().getMedicalCenter().getId().equals(medicalCenter.getId()))
+                .map(slot -> dtoMapper.toAppointmentSlotDTO(slot));
+
+        return Stream.concat(freeSlots, this.computeSlots(schedules, existingSlots, this.roomOccupancy(schedules, startDate, endDate), startDate, endDate).stream())
+                .filter(this::isUpcoming)
+                .sorted(SLOT_ORDER)
+                .toList();
+    }
+
+    // Guarda como fila el hueco de un turno en una fecha y hora concretas para poder reservarlo. Si ya existe, se devuelve.
+    // Dos reservas simultáneas del mismo hueco chocan con la restricción única (doctor_id, date, start_time, end_time)
+    @Transactional
+    public AppointmentSlotEntity materializeSlot(Integer scheduleId, LocalDate date, LocalTime startTime) {
+        DoctorScheduleEntity schedule = doctorScheduleRepository.findById(scheduleId).orElseThrow(DataNotFoundException::scheduleNotFound);
+
+        // Comprobamos que el día de la semana coincida con el del turno
+        if(!schedule.getDayOfWeek().equals(date.getDayOfWeek())) {
+            throw ConflictException.dayMismatch();
+        }
+
+        // La hora de inicio debe caer en uno de los huecos del turno
+        int scheduleStart = IntervalSet.minuteOf(schedule.getStartTime());
+        int scheduleEnd = IntervalSet.minuteOf(schedule.getEndTime());
+        if(schedule.getDuration() == null || !ScheduleGrid.fits(scheduleStart, scheduleEnd, schedule.getDuration(), IntervalSet.minuteOf(startTime))) {
+            throw DataNotFoundException.appointmentSlotNotFound();
+        }
+
+        LocalTime endTime = startTime.plusMinutes(schedule.getDuration());
+        if(absenceIndex.overlaps(schedule.getDoctor().getId(), date, startTime, endTime)) {
+            throw ConflictException.doctorIsAbsent();
+        }
+
+        Optional<AppointmentSlotEntity> existingSlot = appointmentSlotRepository.findByDoctorAndDateAndStartTimeAndEndTime(schedule.getDoctor(), date, startTime, endTime);
+        if(existingSlot.isPresent()) {
+            return existingSlot.get();
+        }
+
+        // Si otro hueco del médico o de la consulta ocupa ese horario, el hueco no está disponible
+        AppointmentSlotIntervalDTO interval = new AppointmentSlotIntervalDTO(schedule.getDoctor().getId(), schedule.getRoom().getId(), date, startTime, endTime);
+        if(!occupancyIndex.tryReserve(interval)) {
+            throw ConflictException.appointmentSlotIsAlreadyTaken();
+        }
+
+        AppointmentSlotEntity appointmentSlot = AppointmentSlotEntity.builder()
+                .doctor(schedule.getDoctor())
+                .specialty(schedule.getSpecialty())
+                .room(schedule.getRoom())
+                .schedule(schedule)
+                .date(date)
+                .startTime(startTime)
+                .endTime(endTime)
+                .build();
+
+        try {
+            appointmentSlot = appointmentSlotRepository.saveAndFlush(appointmentSlot);
+        } catch (DataIntegrityViolationException e) {
+            throw ConflictException.appointmentSlotIsAlreadyTaken();
+        }
+
+        availabilityCalendar.addSlot(appointmentSlot);
+        return appointmentSlot;
+    }
+
+    // Huecos calculados de los turnos de varios médicos en un rango de fechas, descontando los huecos guardados de cada uno
+    public List<AppointmentSlotDTO> computeFreeSlots(List<DoctorScheduleEntity> schedules, List<AppointmentSlotEntity> existingSlots, LocalDate startDate, LocalDate endDate) {
+        Map<Integer, List<AppointmentSlotEntity>> slotsByDoctor = new HashMap<>();
+        existingSlots.forEach(slot -> slotsByDoctor.computeIfAbsent(slot.getDoctor().getId(), id -> new ArrayList<>()).add(slot));
+
+        Map<Integer, List<DoctorScheduleEntity>> schedulesByDoctor = new HashMap<>();
+        schedules.forEach(schedule -> schedulesByDoctor.computeIfAbsent(schedule.getDoctor().getId(), id -> new ArrayList<>()).add(schedule));
+
+        Map<RoomDay, IntervalSet> roomOccupancy = this.roomOccupancy(schedules, startDate, endDate);
+
+        List<AppointmentSlotDTO> slots = new ArrayList<>();
+        schedulesByDoctor.forEach((doctorId, doctorSchedules) ->
+                slots.addAll(this.computeSlots(doctorSchedules, slotsByDoctor.getOrDefault(doctorId, List.of()), roomOccupancy, startDate, endDate)));
+        return slots;
+    }
+
+    // Horarios ocupados por cualquier hueco guardado en las consultas de los turnos, sea del médico que sea.
+    // Se leen todos con una consulta
+    private Map<RoomDay, IntervalSet> roomOccupancy(List<DoctorScheduleEntity> schedules, LocalDate startDate, LocalDate endDate) {
+        Set<Integer> roomIds = new HashSet<>();
+        schedules.forEach(schedule -> roomIds.add(schedule.getRoom().getId()));
+        if(roomIds.isEmpty()) {
+            return Map.of();
+        }
+
+        Map<RoomDay, IntervalSet> occupiedByRoomDay = new HashMap<>();
+        for(AppointmentSlotIntervalDTO interval : appointmentSlotRepository.findIntervalsByRoomInBetween(roomIds, startDate, endDate)) {
+            int slotStart = IntervalSet.minuteOf(interval.startTime());
+            int slotEnd = IntervalSet.minuteOf(interval.endTime());
+            occupiedByRoomDay.compute(new RoomDay(interval.roomId(), interval.date()), (key, occupied) -> (occupied == null ? IntervalSet.EMPTY : occupied).with(slotStart, slotEnd));
+        }
+        return occupiedByRoomDay;
+    }
+
+    // Calcula los huecos de los turnos en el rango de fechas que no solapan con ningún hueco guardado del médico o de la
+    // consulta ni con ninguna ausencia del médico
+    private List<AppointmentSlotDTO> computeSlots(List<DoctorScheduleEntity> schedules, List<AppointmentSlotEntity> existingSlots, Map<RoomDay, IntervalSet> roomOccupancy, LocalDate startDate, LocalDate endDate) {
+        Map<LocalDate, IntervalSet> occupiedByDate = new HashMap<>();
+        for(AppointmentSlotEntity slot : existingSlots) {
+            int slotStart = IntervalSet.minuteOf(slot.getStartTime());
+            int slotEnd = IntervalSet.minuteOf(slot.getEndTime());
+            occupiedByDate.compute(slot.getDate(), (date, occupied) -> (occupied == null ? IntervalSet.EMPTY : occupied).with(slotStart, slotEnd));
+        }
+
+        List<AppointmentSlotDTO> slots = new ArrayList<>();
+        for(DoctorScheduleEntity schedule : schedules) {
+            if(schedule.getDuration() == null || schedule.getDuration() <= 0) {
+                continue;
+            }
+
+            // Los datos del médico, la especialidad y la consulta son los mismos para todos los huecos del turno
+            MedicalProfileDTO doctor = dtoMapper.toMedicalProfileDTO(schedule.getDoctor());
+            SpecialtyDTO specialty = dtoMapper.toSpecialtyDTO(schedule.getSpecialty());
+            RoomDTO room = dtoMapper.toRoomDTO(schedule.getRoom());
+
+            int startMinute = IntervalSet.minuteOf(schedule.getStartTime());
+            int endMinute = IntervalSet.minuteOf(schedule.getEndTime());
+
+            // Primer día del rango que coincide con el día de la semana del turno
+            LocalDate date = startDate.plusDays(Math.floorMod(schedule.getDayOfWeek().getValue() - startDate.getDayOfWeek().getValue(), 7));
+            for(; !date.isAfter(endDate); date = date.plusWeeks(1)) {
+                IntervalSet occupied = occupiedByDate.getOrDefault(date, IntervalSet.EMPTY);
+                IntervalSet roomOccupied = roomOccupancy.getOrDefault(new RoomDay(schedule.getRoom().getId(), date), IntervalSet.EMPTY);
+                IntervalSet absent = absenceIndex.absentMinutes(schedule.getDoctor().getId(), date);
+
+                for(int minute = startMinute; ScheduleGrid.fits(startMinute, endMinute, schedule.getDuration(), minute); minute += schedule.getDuration()) {
+                    int slotEnd = minute + schedule.getDuration();
+                    if(occupied.overlaps(minute, slotEnd) || roomOccupied.overlaps(minute, slotEnd) || absent.overlaps(minute, slotEnd)) {
+                        continue;
+                    }
+
+                    slots.add(AppointmentSlotDTO.builder()
+                            .doctor(doctor)
+                            .specialty(specialty)
+                            .room(room)
+                            .date(date)
+                            .startTime(LocalTime.ofSecondOfDay(minute * 60L))
+                            .endTime(LocalTime.ofSecondOfDay(slotEnd * 60L))
+                            .scheduleId(schedule.getId())
+                            .build());
+                }
+            }
+        }
+
+        return slots;
+    }
+
+    private boolean isUpcoming(AppointmentSlotDTO slot) {
+        LocalDate today = LocalDate.now();
+        return slot.getDate().isAfter(today) || (slot.getDate().isEqual(today) && slot.getStartTime().isAfter(LocalTime.now()));
+    }
+
+    private record RoomDay(Integer roomId, LocalDate date) {}
+}
@@ -0,0 +1,234 @@
+package com.kikisito.salus.api.service;
+
+import com.kikisito.salus.api.dto.WaitlistEntryDTO;
+import com.kikisito.salus.api.dto.WaitlistOfferDTO;
+import com.kikisito.salus.api.dto.request.WaitlistRequest;
+import com.kikisito.salus.api.dto.response.AppointmentSlotHoldResponse;
+import com.kikisito.salus.api.entity.*;
+import com.kikisito.salus.api.event.AppointmentSlotReleasedEvent;
+import com.kikisito.salus.api.exception.BadRequestException;
+import com.kikisito.salus.api.exception.ConflictException;
+import com.kikisito.salus.api.exception.DataNotFoundException;
+import com.kikisito.salus.api.mapper.DtoMapper;
+import com.kikisito.salus.api.occupancy.SlotHoldTable;
+import com.kikisito.salus.api.repository.*;
+import com.kikisito.salus.api.transaction.AfterCommit;
+import com.kikisito.salus.api.type.WaitlistStatusType;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+// Lista de espera de huecos. Cuando se libera un hueco, se retiene para el primer paciente en espera al que le sirve
+// y se le avisa por WebSocket, de forma que no tenga que consultar la disponibilidad una y otra vez. Si no lo reserva
+// antes de que caduque la retención, la oferta caduca y el hueco pasa al siguiente paciente en espera
+@Service
+@RequiredArgsConstructor
+public class WaitlistService {
+    @Autowired
+    private final WaitlistEntryRepository waitlistEntryRepository;
+
+    @Autowired
+    private final AppointmentSlotRepository appointmentSlotRepository;
+
+    @Autowired
+    private final UserRepository userRepository;
+
+    @Autowired
+    private final SpecialtyRepository specialtyRepository;
+
+    @Autowired
+    private final MedicalCenterRepository medicalCenterRepository;
+
+    @Autowired
+    private final MedicalProfileRepository medicalProfileRepository;
+
+    @Autowired
+    private final AppointmentSlotHoldService appointmentSlotHoldService;
+
+    @Autowired
+    private final SlotHoldTable slotHoldTable;
+
+    @Autowired
+    private final WebSocketService webSocketService;
+
+    @Autowired
+    private final DtoMapper dtoMapper;
+
+    @Autowired
+    private final ApplicationEventPublisher applicationEventPublisher;
+
+    @Autowired
+    private final PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate offerTransaction;
+
+    @PostConstruct
+    public void init() {
+        offerTransaction = new TransactionTemplate(transactionManager);
+        offerTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    @Transactional
+    public WaitlistEntryDTO addToWaitlist(WaitlistRequest request, UserEntity patient) {
+        if(request.getEndDate().isBefore(request.getStartDate()) || request.getEndDate().isBefore(LocalDate.now())) {
+            throw BadRequestException.invalidDateOrDateRange();
+        }
+
+        SpecialtyEntity specialty = specialtyRepository.findById(request.getSpecialty()).orElseThrow(DataNotFoundException::specialtyNotFound);
+        MedicalCenterEntity medicalCenter = medicalCenterRepository.findById(request.getMedicalCenter()).orElseThrow(DataNotFoundException::medicalCenterNotFound);
+        MedicalProfileEntity doctor = request.getDoctor() != null
+                ? medicalProfileRepository.findById(request.getDoctor()).orElseThrow(DataNotFoundException::doctorNotFound)
+                : null;
+
+        WaitlistEntryEntity entry = WaitlistEntryEntity.builder()
+                .patient(userRepository.getReferenceById(patient.getId()))
+                .specialty(specialty)
+                .medicalCenter(medicalCenter)
+                .doctor(doctor)
+                .startDate(request.getStartDate())
+                .endDate(request.getEndDate())
+                .build();
+        entry = waitlistEntryRepository.save(entry);
+
+        return dtoMapper.toWaitlistEntryDTO(entry);
+    }
+
+    @Transactional(readOnly = true)
+    public List<WaitlistEntryDTO> getUserWaitlistEntries(UserEntity patient) {
+        List<WaitlistEntryEntity> entries = waitlistEntryRepository.findByPatientAndStatusIn(patient, List.of(WaitlistStatusType.WAITING, WaitlistStatusType.OFFERED));
+        return entries.stream()
+                .map(entry -> dtoMapper.toWaitlistEntryDTO(entry))
+                .toList();
+    }
+
+    // Si la entrada tenía un hueco ofrecido, se libera su retención y el hueco pasa al siguiente paciente en espera
+    @Transactional
+    public void cancelWaitlistEntry(Integer waitlistEntryId) {
+        WaitlistEntryEntity entry = waitlistEntryRepository.findById(waitlistEntryId).orElseThrow(DataNotFoundException::waitlistEntryNotFound);
+
+        // Solo se pueden anular las entradas que siguen esperando o que tienen una oferta pendiente
+        if(entry.getStatus() != WaitlistStatusType.WAITING && entry.getStatus() != WaitlistStatusType.OFFERED) {
+            throw ConflictException.waitlistEntryIsClosed();
+        }
+
+        boolean offered = entry.getStatus() == WaitlistStatusType.OFFERED && entry.getOfferedSlot() != null;
+
+        entry.setStatus(WaitlistStatusType.CANCELLED);
+        waitlistEntryRepository.save(entry);
+
+        if(offered) {
+            Integer offeredSlotId = entry.getOfferedSlot().getId();
+            appointmentSlotHoldService.releaseAppointmentSlotHold(offeredSlotId, entry.getPatient());
+            applicationEventPublisher.publishEvent(new AppointmentSlotReleasedEvent(offeredSlotId));
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public boolean canUserAccessWaitlistEntry(Integer waitlistEntryId, UserEntity user) {
+        WaitlistEntryEntity entry = waitlistEntryRepository.findById(waitlistEntryId).orElseThrow(DataNotFoundException::waitlistEntryNotFound);
+        return entry.getPatient().getId().equals(user.getId());
+    }
+
+    // Se ejecuta cuando se confirma la anulación, fuera de su transacción para no retrasar ni revertir la anulación
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onAppointmentSlotReleased(AppointmentSlotReleasedEvent event) {
+        this.offerSlot(event.appointmentSlotId());
+    }
+
+    // Caducidad periódica de las ofertas no reservadas a tiempo. Cada hueco se ofrece al siguiente paciente en espera
+    @Scheduled(cron = "${application.appointment-slots.waitlist-offer-expiry-cron:15 * * * * *}")
+    public void expireOffers() {
+        List<WaitlistEntryEntity> expiredOffers = waitlistEntryRepository.findExpiredOffers(LocalDateTime.now());
+        for(WaitlistEntryEntity entry : expiredOffers) {
+            // Si el paciente ha reservado o cancelado mientras tanto, la oferta ya no está pendiente y no se toca
+            Integer closed = offerTransaction.execute(status -> waitlistEntryRepository.closeOffer(entry.getId(), WaitlistStatusType.EXPIRED));
+            if(closed != null && closed > 0 && entry.getOfferedSlot() != null) {
+                this.offerSlot(entry.getOfferedSlot().getId());
+            }
+        }
+    }
+
+    // Ofrece el hueco al primer paciente en espera al que le sirve. Cada intento va en su propia transacción: si la
+    // retención choca para un paciente (por ejemplo, porque es el médico del hueco), se revierte solo ese intento y
+    // se pasa al siguiente
+    private void offerSlot(Integer appointmentSlotId) {
+        Set<Integer> skipped = new HashSet<>();
+        while(true) {
+            try {
+                Boolean done = offerTransaction.execute(status -> this.tryOffer(appointmentSlotId, skipped));
+                if(done == null || done) {
+                    return;
+                }
+            } catch (ConflictException e) {
+                // El paciente ya está en skipped, así que el siguiente intento lo salta
+            }
+        }
+    }
+
+    // Devuelve true cuando ya no hay nada más que hacer: el hueco se ha ofrecido, ya no se puede ofrecer o no queda
+    // nadie esperando
+    private boolean tryOffer(Integer appointmentSlotId, Set<Integer> skipped) {
+        Optional<AppointmentSlotEntity> releasedSlot = appointmentSlotRepository.findById(appointmentSlotId);
+        if(releasedSlot.isEmpty()) {
+            return true;
+        }
+
+        // El hueco tiene que seguir libre, sin retener y no haber empezado
+        AppointmentSlotEntity appointmentSlot = releasedSlot.get();
+        if(appointmentSlot.getAppointment() != null || slotHoldTable.isHeld(appointmentSlot.getId())
+                || appointmentSlot.getDate().isBefore(LocalDate.now())
+                || (appointmentSlot.getDate().isEqual(LocalDate.now()) && appointmentSlot.getStartTime().isBefore(LocalTime.now()))) {
+            return true;
+        }
+
+        // Se piden tantas entradas como las ya descartadas más una, para llegar a la siguiente sin cargar toda la lista
+        Optional<WaitlistEntryEntity> next = waitlistEntryRepository.findWaitingFor(
+                appointmentSlot.getSpecialty().getId(),
+                appointmentSlot.getRoom().getMedicalCenter().getId(),
+                appointmentSlot.getDoctor().getId(),
+                appointmentSlot.getDoctor().getUser().getId(),
+                appointmentSlot.getDate(),
+                PageRequest.of(0, skipped.size() + 1)
+        ).stream().filter(entry -> !skipped.contains(entry.getId())).findFirst();
+        if(next.isEmpty()) {
+            return true;
+        }
+
+        // El hueco se retiene para el paciente, que tiene hasta que caduque la retención para reservarlo
+        WaitlistEntryEntity entry = next.get();
+        skipped.add(entry.getId());
+        AppointmentSlotHoldResponse hold = appointmentSlotHoldService.holdAppointmentSlot(appointmentSlot, entry.getPatient());
+
+        entry.setStatus(WaitlistStatusType.OFFERED);
+        entry.setOfferedSlot(appointmentSlot);
+        entry.setOfferExpiresAt(hold.getExpiresAt());
+        waitlistEntryRepository.save(entry);
+
+        WaitlistOfferDTO offer = WaitlistOfferDTO.builder()
+                .waitlistEntryId(entry.getId())
+                .slot(hold.getSlot())
+                .expiresAt(hold.getExpiresAt())
+                .build();
+        UserEntity patient = entry.getPatient();
+        AfterCommit.run(() -> webSocketService.sendWaitlistOfferToUser(patient, offer));
+        return true;
+    }
+}
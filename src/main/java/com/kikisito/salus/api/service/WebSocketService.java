@@ -1,6 +1,10 @@
 package com.kikisito.salus.api.service;
 
+import com.kikisito.salus.api.dto.AppointmentCancelledDTO;
+import com.kikisito.salus.api.dto.AppointmentRescheduledDTO;
+import com.kikisito.salus.api.dto.AppointmentSlotGenerationJobDTO;
 import com.kikisito.salus.api.dto.ChatMessageDTO;
+import com.kikisito.salus.api.dto.WaitlistOfferDTO;
 import com.kikisito.salus.api.entity.UserEntity;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -16,4 +20,20 @@ public class WebSocketService {
     public void sendMessageToUser(UserEntity user, ChatMessageDTO message) {
         messagingTemplate.convertAndSendToUser(user.getUsername(), "/queue/messages", message);
     }
-}
\ No newline at end of file
+
+    public void sendWaitlistOfferToUser(UserEntity user, WaitlistOfferDTO offer) {
+        messagingTemplate.convertAndSendToUser(user.getUsername(), "/queue/waitlist", offer);
+    }
+
+    public void sendAppointmentRescheduledToUser(UserEntity user, AppointmentRescheduledDTO rescheduled) {
+        messagingTemplate.convertAndSendToUser(user.getUsername(), "/queue/appointments", rescheduled);
+    }
+
+    public void sendAppointmentCancelledToUser(UserEntity user, AppointmentCancelledDTO cancelled) {
+        messagingTemplate.convertAndSendToUser(user.getUsername(), "/queue/appointments", cancelled);
+    }
+
+    public void sendGenerationJobToUser(UserEntity user, AppointmentSlotGenerationJobDTO job) {
+        messagingTemplate.convertAndSendToUser(user.getUsername(), "/queue/generation-jobs", job);
+    }
+}
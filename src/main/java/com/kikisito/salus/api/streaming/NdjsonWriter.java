@@ -0,0 +1,49 @@
+package com.kikisito.salus.api.streaming;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.MediaType;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+
+// Escribe una respuesta NDJSON: un objeto JSON por línea. Cada objeto se serializa y se escribe en cuanto llega,
+// y el búfer se vacía cada cierto número de líneas para que el cliente vaya recibiendo las filas
+public class NdjsonWriter implements Consumer<Object> {
+    private static final int FLUSH_EVERY = 100;
+
+    private final ObjectMapper objectMapper;
+    private final OutputStream outputStream;
+    private int pendingLines;
+
+    private NdjsonWriter(ObjectMapper objectMapper, OutputStream outputStream) {
+        this.objectMapper = objectMapper;
+        this.outputStream = outputStream;
+    }
+
+    public static NdjsonWriter of(HttpServletResponse response, ObjectMapper objectMapper) throws IOException {
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        return new NdjsonWriter(objectMapper, response.getOutputStream());
+    }
+
+    @Override
+    public void accept(Object value) {
+        try {
+            outputStream.write(objectMapper.writeValueAsBytes(value));
+            outputStream.write('\n');
+
+            if(++pendingLines >= FLUSH_EVERY) {
+                this.flush();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void flush() throws IOException {
+        outputStream.flush();
+        pendingLines = 0;
+    }
+}
@@ -0,0 +1,51 @@
+package com.kikisito.salus.api.transaction;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+// Acciones que dependen del resultado de la transacción actual, como actualizar los índices en memoria o avisar a
+// los usuarios. Fuera de una transacción no hay nada que esperar, así que se ejecutan en el momento
+public final class AfterCommit {
+    private AfterCommit() {}
+
+    // Ejecuta la acción cuando se confirma la transacción actual, o inmediatamente si no hay ninguna
+    public static void run(Runnable action) {
+        if(!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    // Ejecuta la acción en el momento y otra vez al confirmar la transacción actual, si la hay. Sirve para invalidar
+    // cachés: una lectura hecha antes de confirmar todavía ve los datos anteriores y volvería a guardar el valor antiguo
+    public static void runNowAndAfterCommit(Runnable action) {
+        action.run();
+
+        if(TransactionSynchronizationManager.isSynchronizationActive()) {
+            AfterCommit.run(action);
+        }
+    }
+
+    // Ejecuta la acción si la transacción actual se revierte. Fuera de una transacción no hay nada que deshacer
+    public static void onRollback(Runnable action) {
+        if(!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if(status != STATUS_COMMITTED) {
+                    action.run();
+                }
+            }
+        });
+    }
+}
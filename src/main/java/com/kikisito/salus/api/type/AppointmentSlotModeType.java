@@ -0,0 +1,6 @@
+package com.kikisito.salus.api.type;
+
+public enum AppointmentSlotModeType {
+    MATERIALIZED, // Los huecos se generan como filas por adelantado
+    VIRTUAL // Los huecos libres se calculan a partir de los turnos y solo se guardan al reservarlos
+}
@@ -0,0 +1,8 @@
+package com.kikisito.salus.api.type;
+
+public enum GenerationJobStatusType {
+    PENDING,
+    RUNNING,
+    COMPLETED,
+    FAILED
+}
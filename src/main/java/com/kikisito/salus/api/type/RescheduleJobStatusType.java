@@ -0,0 +1,8 @@
+package com.kikisito.salus.api.type;
+
+public enum RescheduleJobStatusType {
+    PENDING,
+    RUNNING,
+    COMPLETED,
+    FAILED
+}
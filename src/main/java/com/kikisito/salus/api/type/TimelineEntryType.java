@@ -0,0 +1,9 @@
+package com.kikisito.salus.api.type;
+
+// El orden de los valores es también el orden del historial para las entradas con la misma fecha
+public enum TimelineEntryType {
+    APPOINTMENT,
+    REPORT,
+    PRESCRIPTION,
+    MEDICAL_TEST
+}
@@ -0,0 +1,9 @@
+package com.kikisito.salus.api.type;
+
+public enum WaitlistStatusType {
+    WAITING,
+    OFFERED,
+    FULFILLED, // El paciente reservó el hueco ofrecido
+    EXPIRED, // La oferta caducó sin que el paciente reservara el hueco
+    CANCELLED
+}
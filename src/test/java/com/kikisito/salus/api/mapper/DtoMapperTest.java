@@ -0,0 +1,320 @@
+package com.kikisito.salus.api.mapper;
+
+import com.kikisito.salus.api.dto.*;
+import com.kikisito.salus.api.embeddable.DireccionEmbeddable;
+import com.kikisito.salus.api.entity.*;
+import com.kikisito.salus.api.type.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.modelmapper.ModelMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Comprueba que los DTO generados por DtoMapper son iguales a los que generaba ModelMapper para las mismas entidades
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class DtoMapperTest {
+
+    @Autowired
+    private DtoMapper dtoMapper;
+
+    private final ModelMapper modelMapper = new ModelMapper();
+
+    private UserEntity testPatient;
+    private MedicalProfileEntity testDoctor;
+    private SpecialtyEntity testSpecialty;
+    private MedicalCenterEntity testMedicalCenter;
+    private RoomEntity testRoom;
+    private AppointmentSlotEntity testAppointmentSlot;
+    private AppointmentEntity testAppointment;
+    private LocalDateTime testDateTime;
+
+    @BeforeEach
+    void setUp() {
+        testDateTime = LocalDateTime.of(2025, 3, 10, 9, 30);
+
+        testPatient = UserEntity.builder()
+                .id(1)
+                .nombre("Juan")
+                .apellidos("Pérez")
+                .sexo("M")
+                .nif("12345678A")
+                .email("juanp@salus.com")
+                .telefono("612345678")
+                .fechaNacimiento(LocalDate.of(1990, 5, 20))
+                .lastPasswordChange(testDateTime)
+                .direccion(DireccionEmbeddable.builder()
+                        .lineaDireccion1("Calle Mayor 1")
+                        .codigoPostal("03001")
+                        .pais("España")
+                        .provincia("Alicante")
+                        .municipio("Alicante")
+                        .localidad("Alicante")
+                        .build())
+                .rolesList(new ArrayList<>(List.of(RoleType.USER)))
+                .restricted(false)
+                .accountStatusType(AccountStatusType.VERIFIED)
+                .build();
+
+        testSpecialty = SpecialtyEntity.builder()
+                .id(1)
+                .name("Cardiología")
+                .description("Especialidad del corazón")
+                .build();
+
+        testDoctor = MedicalProfileEntity.builder()
+                .id(1)
+                .user(UserEntity.builder()
+                        .id(2)
+                        .nombre("María")
+                        .apellidos("Guerrero")
+                        .sexo("F")
+                        .email("mariag@salus.com")
+                        .rolesList(new ArrayList<>(List.of(RoleType.USER, RoleType.PROFESSIONAL)))
+                        .build())
+                .license("COLEG-TEST-1")
+                .workEmail("consulta@salus.com")
+                .workPhone("965000000")
+                .specialties(new ArrayList<>(List.of(testSpecialty)))
+                .build();
+
+        testMedicalCenter = MedicalCenterEntity.builder()
+                .id(1)
+                .name("Hospital de Pruebas")
+                .email("test@salus.com")
+                .phone("632498123")
+                .addressLine1("Calle de Pruebas 3")
+                .zipCode("03001")
+                .country("España")
+                .province("Alicante")
+                .municipality("Alicante")
+                .locality("Alicante")
+                .build();
+
+        testRoom = RoomEntity.builder()
+                .id(1)
+                .name("Consulta 1")
+                .medicalCenter(testMedicalCenter)
+                .build();
+
+        testAppointmentSlot = AppointmentSlotEntity.builder()
+                .id(1)
+                .doctor(testDoctor)
+                .specialty(testSpecialty)
+                .room(testRoom)
+                .date(LocalDate.of(2025, 3, 17))
+                .startTime(LocalTime.of(10, 0))
+                .endTime(LocalTime.of(10, 30))
+                .build();
+
+        testAppointment = AppointmentEntity.builder()
+                .id(1)
+                .slot(testAppointmentSlot)
+                .patient(testPatient)
+                .type(AppointmentType.IN_PERSON)
+                .status(AppointmentStatusType.COMPLETED)
+                .reason("Consulta de rutina")
+                .doctorObservations("Sin incidencias")
+                .createdAt(testDateTime)
+                .updatedAt(testDateTime)
+                .build();
+        testAppointmentSlot.setAppointment(testAppointment);
+    }
+
+    @Test
+    void C1_toAppointmentDTO_should_match_model_mapper_output() {
+        // Arrange: la cita tiene un informe, una receta y una prueba médica
+        ReportEntity report = ReportEntity.builder()
+                .id(1)
+                .type(ReportType.GENERAL)
+                .appointment(testAppointment)
+                .specialty(testSpecialty)
+                .doctor(testDoctor)
+                .patient(testPatient)
+                .description("Revisión")
+                .diagnosis("Sano")
+                .treatment("Ninguno")
+                .createdAt(testDateTime)
+                .updatedAt(testDateTime)
+                .build();
+
+        PrescriptionEntity prescription = PrescriptionEntity.builder()
+                .id(1)
+                .appointment(testAppointment)
+                .specialty(testSpecialty)
+                .doctor(testDoctor)
+                .patient(testPatient)
+                .createdAt(testDateTime)
+                .updatedAt(testDateTime)
+                .build();
+        prescription.setMedications(new ArrayList<>(List.of(MedicationEntity.builder()
+                .id(1)
+                .name("Ibuprofeno")
+                .dosage("600 mg")
+                .frequency(new BigDecimal("8"))
+                .startDate(LocalDate.of(2025, 3, 17))
+                .endDate(LocalDate.of(2025, 3, 24))
+                .instructions("Después de comer")
+                .prescription(prescription)
+                .build())));
+
+        MedicalTestEntity medicalTest = MedicalTestEntity.builder()
+                .id(1)
+                .appointment(testAppointment)
+                .specialty(testSpecialty)
+                .doctor(testDoctor)
+                .patient(testPatient)
+                .name("Electrocardiograma")
+                .requestedAt(LocalDate.of(2025, 3, 17))
+                .createdAt(testDateTime)
+                .updatedAt(testDateTime)
+                .build();
+        medicalTest.setAttachments(new ArrayList<>(List.of(AttachmentEntity.builder()
+                .id(1)
+                .name("ecg.pdf")
+                .contentType("application/pdf")
+                .size(1024L)
+                .filePath("attachments/ecg.pdf")
+                .uploadedBy(testPatient)
+                .medicalTest(medicalTest)
+                .createdAt(testDateTime)
+                .updatedAt(testDateTime)
+                .build())));
+
+        testAppointment.setReports(new ArrayList<>(List.of(report)));
+        testAppointment.setPrescriptions(new ArrayList<>(List.of(prescription)));
+        testAppointment.setMedicalTests(new ArrayList<>(List.of(medicalTest)));
+
+        // Act
+        AppointmentDTO result = assertDoesNotThrow(() -> dtoMapper.toAppointmentDTO(testAppointment));
+
+        // Assert
+        assertAll(() -> {
+            assertEquals(modelMapper.map(testAppointment, AppointmentDTO.class), result);
+            assertEquals(modelMapper.map(testAppointment, ReducedAppointmentDTO.class), dtoMapper.toReducedAppointmentDTO(testAppointment));
+            assertEquals(modelMapper.map(testAppointmentSlot, AppointmentSlotDTO.class), dtoMapper.toAppointmentSlotDTO(testAppointmentSlot));
+            assertEquals(1, result.getSlot().getAppointmentId());
+            assertEquals(1, result.getPrescriptions().getFirst().getMedications().getFirst().getPrescriptionId());
+        });
+    }
+
+    @Test
+    void C2_toUserDTO_and_catalog_mappings_should_match_model_mapper_output() {
+        // Arrange
+        DoctorScheduleEntity schedule = DoctorScheduleEntity.builder()
+                .id(1)
+                .doctor(testDoctor)
+                .specialty(testSpecialty)
+                .room(testRoom)
+                .dayOfWeek(DayOfWeek.MONDAY)
+                .startTime(LocalTime.of(9, 0))
+                .endTime(LocalTime.of(14, 0))
+                .duration(30)
+                .build();
+
+        // Act
+        UserDTO result = assertDoesNotThrow(() -> dtoMapper.toUserDTO(testPatient));
+
+        // Assert
+        assertAll(() -> {
+            assertEquals(modelMapper.map(testPatient, UserDTO.class), result);
+            assertEquals(modelMapper.map(testPatient, ReducedUserDTO.class), dtoMapper.toReducedUserDTO(testPatient));
+            assertEquals(modelMapper.map(testPatient.getDireccion(), DireccionDTO.class), dtoMapper.toDireccionDTO(testPatient.getDireccion()));
+            assertEquals(modelMapper.map(testDoctor, MedicalProfileDTO.class), dtoMapper.toMedicalProfileDTO(testDoctor));
+            assertEquals(modelMapper.map(testSpecialty, SpecialtyDTO.class), dtoMapper.toSpecialtyDTO(testSpecialty));
+            assertEquals(modelMapper.map(testMedicalCenter, MedicalCenterDTO.class), dtoMapper.toMedicalCenterDTO(testMedicalCenter));
+            assertEquals(modelMapper.map(testRoom, RoomDTO.class), dtoMapper.toRoomDTO(testRoom));
+            assertEquals(modelMapper.map(schedule, DoctorScheduleDTO.class), dtoMapper.toDoctorScheduleDTO(schedule));
+        });
+    }
+
+    @Test
+    void C3_toChatDTO_should_match_model_mapper_output() {
+        // Arrange
+        ChatEntity chat = ChatEntity.builder()
+                .id(1)
+                .patient(testPatient)
+                .doctor(testDoctor)
+                .createdAt(testDateTime)
+                .updatedAt(testDateTime)
+                .build();
+
+        ChatMessagesEntity message = ChatMessagesEntity.builder()
+                .id(1)
+                .chat(chat)
+                .senderType(MessageSenderType.PATIENT)
+                .content("Hola")
+                .read(true)
+                .createdAt(testDateTime)
+                .updatedAt(testDateTime)
+                .build();
+
+        // Act
+        ChatMessageDTO result = assertDoesNotThrow(() -> dtoMapper.toChatMessageDTO(message));
+
+        // Assert
+        assertAll(() -> {
+            assertEquals(modelMapper.map(message, ChatMessageDTO.class), result);
+            assertEquals(modelMapper.map(chat, ChatDTO.class), dtoMapper.toChatDTO(chat));
+            assertEquals(1, result.getChatId());
+            assertEquals(testDateTime.toString(), result.getCreatedAt());
+        });
+    }
+
+    @Test
+    void C4_agenda_mappings_should_match_model_mapper_output() {
+        // Arrange
+        DoctorAbsenceEntity absence = DoctorAbsenceEntity.builder()
+                .id(1)
+                .doctor(testDoctor)
+                .startDateTime(testDateTime)
+                .endDateTime(testDateTime.plusDays(2))
+                .reason("Congreso")
+                .build();
+
+        WaitlistEntryEntity entry = WaitlistEntryEntity.builder()
+                .id(1)
+                .patient(testPatient)
+                .specialty(testSpecialty)
+                .medicalCenter(testMedicalCenter)
+                .doctor(testDoctor)
+                .startDate(LocalDate.of(2025, 3, 17))
+                .endDate(LocalDate.of(2025, 3, 31))
+                .offeredSlot(testAppointmentSlot)
+                .build();
+
+        AppointmentSlotGenerationJobEntity job = AppointmentSlotGenerationJobEntity.builder()
+                .id(1)
+                .doctor(testDoctor)
+                .requestedBy(testPatient)
+                .startDate(LocalDate.of(2025, 3, 17))
+                .endDate(LocalDate.of(2025, 3, 31))
+                .nextDate(LocalDate.of(2025, 3, 24))
+                .totalDays(15)
+                .processedDays(7)
+                .created(20)
+                .createdAt(testDateTime)
+                .updatedAt(testDateTime)
+                .build();
+
+        // Act
+        AppointmentSlotGenerationJobDTO result = assertDoesNotThrow(() -> dtoMapper.toAppointmentSlotGenerationJobDTO(job));
+
+        // Assert
+        assertAll(() -> {
+            assertEquals(modelMapper.map(job, AppointmentSlotGenerationJobDTO.class), result);
+            assertEquals(modelMapper.map(absence, DoctorAbsenceDTO.class), dtoMapper.toDoctorAbsenceDTO(absence));
+            assertEquals(modelMapper.map(entry, WaitlistEntryDTO.class), dtoMapper.toWaitlistEntryDTO(entry));
+            assertEquals(1, result.getDoctorId());
+        });
+    }
+}
@@ -0,0 +1,164 @@
+package com.kikisito.salus.api.service;
+
+import com.kikisito.salus.api.dto.request.AppointmentRequest;
+import com.kikisito.salus.api.entity.*;
+import com.kikisito.salus.api.exception.ConflictException;
+import com.kikisito.salus.api.repository.*;
+import com.kikisito.salus.api.type.AppointmentType;
+import com.kikisito.salus.api.type.RoleType;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Reserva el mismo hueco desde muchos hilos contra la base de datos de pruebas, de forma que cada reserva se ejecuta en
+// su propia transacción y la restricción única sobre slot_id es la que decide cuál de ellas se queda con el hueco
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "application.appointment-slots.materializer-cron=-",
+        "application.appointment-slots.availability-calendar-reconcile-cron=-",
+        "application.appointment-slots.slot-hold-purge-cron=-",
+        "application.appointment-slots.generation-job-resume-cron=-",
+        "application.appointment-slots.waitlist-offer-expiry-cron=-",
+        "application.appointment-slots.cancellation-notice-retry-cron=-"
+})
+public class AppointmentConcurrentBookingTest {
+    private static final int BOOKERS = 32;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private SpecialtyRepository specialtyRepository;
+
+    @Autowired
+    private MedicalCenterRepository medicalCenterRepository;
+
+    @Autowired
+    private RoomRepository roomRepository;
+
+    @Autowired
+    private MedicalProfileRepository medicalProfileRepository;
+
+    @Autowired
+    private AppointmentSlotRepository appointmentSlotRepository;
+
+    @Autowired
+    private AppointmentRepository appointmentRepository;
+
+    @Autowired
+    private AppointmentService appointmentService;
+
+    @Test
+    void C1_createAppointment_should_book_slot_only_once_when_many_patients_book_it_concurrently() throws InterruptedException {
+        // Arrange: un hueco libre y un paciente distinto por cada reserva
+        SpecialtyEntity specialty = specialtyRepository.save(SpecialtyEntity.builder().name("Especialidad concurrencia").description("Especialidad de pruebas").build());
+        MedicalProfileEntity doctor = this.doctor(specialty);
+        AppointmentSlotEntity slot = appointmentSlotRepository.save(AppointmentSlotEntity.builder()
+                .doctor(doctor)
+                .specialty(specialty)
+                .room(this.room())
+                .date(LocalDate.now().plusDays(7))
+                .startTime(LocalTime.of(9, 0))
+                .endTime(LocalTime.of(9, 30))
+                .build());
+
+        List<UserEntity> patients = new ArrayList<>();
+        for(int i = 0; i < BOOKERS; i++) {
+            patients.add(userRepository.save(this.user("pacienteconcurrente" + i, RoleType.USER)));
+        }
+
+        AtomicInteger booked = new AtomicInteger();
+        AtomicInteger conflicts = new AtomicInteger();
+        List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(BOOKERS);
+
+        // Act: todas las reservas se lanzan a la vez
+        for(UserEntity patient : patients) {
+            AppointmentRequest request = AppointmentRequest.builder()
+                    .appointmentSlot(slot.getId())
+                    .patient(patient.getId())
+                    .type(AppointmentType.IN_PERSON)
+                    .reason("Revisión")
+                    .build();
+
+            executor.submit(() -> {
+                try {
+                    start.await();
+                    appointmentService.createAppointment(request);
+                    booked.incrementAndGet();
+                } catch (ConflictException e) {
+                    conflicts.incrementAndGet();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (RuntimeException e) {
+                    failures.add(e);
+                }
+                return null;
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+
+        // Assert
+        assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+        assertAll(() -> {
+            assertEquals(List.of(), failures);
+            assertEquals(1, booked.get());
+            assertEquals(BOOKERS - 1, conflicts.get());
+            assertEquals(1, appointmentRepository.findAll().stream().filter(appointment -> appointment.getSlot().getId().equals(slot.getId())).count());
+        });
+    }
+
+    private UserEntity user(String name, RoleType... roles) {
+        return UserEntity.builder()
+                .nombre(name)
+                .apellidos("Pruebas")
+                .email(name + "@salus.test")
+                .nif(name.toUpperCase())
+                .password("password")
+                .rolesList(new ArrayList<>(List.of(roles)))
+                .build();
+    }
+
+    private MedicalProfileEntity doctor(SpecialtyEntity specialty) {
+        UserEntity user = userRepository.save(this.user("medicoconcurrente", RoleType.USER, RoleType.PROFESSIONAL));
+
+        return medicalProfileRepository.save(MedicalProfileEntity.builder()
+                .user(user)
+                .license("COLEG-CONCURRENTE")
+                .specialties(new ArrayList<>(List.of(specialty)))
+                .build());
+    }
+
+    private RoomEntity room() {
+        MedicalCenterEntity medicalCenter = medicalCenterRepository.save(MedicalCenterEntity.builder()
+                .name("Hospital concurrencia")
+                .email("hospitalconcurrencia@salus.test")
+                .phone("600000000")
+                .addressLine1("Calle de Pruebas 1")
+                .zipCode("03001")
+                .country("España")
+                .province("Alicante")
+                .municipality("Alicante")
+                .locality("Alicante")
+                .build());
+
+        return roomRepository.save(RoomEntity.builder()
+                .name("Consulta concurrencia")
+                .medicalCenter(medicalCenter)
+                .build());
+    }
+}
@@ -0,0 +1,155 @@
+package com.kikisito.salus.api.service;
+
+import com.kikisito.salus.api.dto.AppointmentCancelledDTO;
+import com.kikisito.salus.api.entity.AppointmentCancellationNoticeEntity;
+import com.kikisito.salus.api.entity.UserEntity;
+import com.kikisito.salus.api.repository.AppointmentCancellationNoticeRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mail.MailSendException;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "application.appointment-slots.cancellation-notice-retry-cron=-"
+})
+public class AppointmentNotificationServiceTest {
+
+    @MockitoBean
+    private AppointmentCancellationNoticeRepository appointmentCancellationNoticeRepository;
+
+    @MockitoBean
+    private WebSocketService webSocketService;
+
+    @MockitoBean
+    private EmailingService emailingService;
+
+    @Autowired
+    private AppointmentNotificationService appointmentNotificationService;
+
+    private UserEntity testPatient;
+
+    @BeforeEach
+    void setUp() {
+        testPatient = UserEntity.builder()
+                .id(1)
+                .nombre("Juan")
+                .apellidos("García")
+                .email("juang@salus.com")
+                .build();
+
+        when(appointmentCancellationNoticeRepository.save(any(AppointmentCancellationNoticeEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
+    }
+
+    @Test
+    void C1_sendNotice_should_mark_notice_as_sent_when_email_is_sent() {
+        // Arrange
+        AppointmentCancellationNoticeEntity notice = this.notice(0);
+        when(appointmentCancellationNoticeRepository.findWithPatientById(1)).thenReturn(Optional.of(notice));
+
+        // Act
+        assertDoesNotThrow(() -> appointmentNotificationService.sendNotice(1));
+
+        // Assert
+        assertAll(() -> {
+            assertNotNull(notice.getSentAt());
+            assertEquals(0, notice.getAttempts());
+            assertNull(notice.getLastError());
+        });
+
+        verify(webSocketService).sendAppointmentCancelledToUser(eq(testPatient), any(AppointmentCancelledDTO.class));
+        verify(emailingService).sendTemplateEmail(eq("juang@salus.com"), anyString(), eq("appointment-cancelled"), anyMap());
+        verify(appointmentCancellationNoticeRepository).save(notice);
+    }
+
+    @Test
+    void C2_sendNotice_should_record_the_failure_and_keep_notice_pending_when_email_fails() {
+        // Arrange
+        AppointmentCancellationNoticeEntity notice = this.notice(0);
+        when(appointmentCancellationNoticeRepository.findWithPatientById(1)).thenReturn(Optional.of(notice));
+        doThrow(new MailSendException("Servidor no disponible")).when(emailingService).sendTemplateEmail(anyString(), anyString(), anyString(), anyMap());
+
+        // Act
+        assertDoesNotThrow(() -> appointmentNotificationService.sendNotice(1));
+
+        // Assert
+        assertAll(() -> {
+            assertNull(notice.getSentAt());
+            assertEquals(1, notice.getAttempts());
+            assertEquals("MailSendException: Servidor no disponible", notice.getLastError());
+        });
+        verify(appointmentCancellationNoticeRepository).save(notice);
+    }
+
+    @Test
+    void C3_sendNotice_should_record_websocket_failure_and_still_send_email() {
+        // Arrange
+        AppointmentCancellationNoticeEntity notice = this.notice(0);
+        when(appointmentCancellationNoticeRepository.findWithPatientById(1)).thenReturn(Optional.of(notice));
+        doThrow(new IllegalStateException("Sesión cerrada")).when(webSocketService).sendAppointmentCancelledToUser(any(), any());
+
+        // Act
+        assertDoesNotThrow(() -> appointmentNotificationService.sendNotice(1));
+
+        // Assert
+        assertAll(() -> {
+            assertNotNull(notice.getSentAt());
+            assertEquals("IllegalStateException: Sesión cerrada", notice.getLastError());
+        });
+        verify(emailingService).sendTemplateEmail(anyString(), anyString(), anyString(), anyMap());
+    }
+
+    @Test
+    void C4_sendNotice_should_only_retry_the_email_after_a_failed_attempt() {
+        // Arrange
+        AppointmentCancellationNoticeEntity notice = this.notice(2);
+        when(appointmentCancellationNoticeRepository.findWithPatientById(1)).thenReturn(Optional.of(notice));
+
+        // Act
+        assertDoesNotThrow(() -> appointmentNotificationService.sendNotice(1));
+
+        // Assert
+        assertNotNull(notice.getSentAt());
+        verify(webSocketService, never()).sendAppointmentCancelledToUser(any(), any());
+        verify(emailingService).sendTemplateEmail(anyString(), anyString(), anyString(), anyMap());
+    }
+
+    @Test
+    void C5_resumePendingNotices_should_send_notices_left_pending() {
+        // Arrange
+        AppointmentCancellationNoticeEntity notice = this.notice(1);
+        when(appointmentCancellationNoticeRepository.findPendingIds(5)).thenReturn(List.of(1));
+        when(appointmentCancellationNoticeRepository.findWithPatientById(1)).thenReturn(Optional.of(notice));
+
+        // Act
+        appointmentNotificationService.resumePendingNotices();
+
+        // Assert: el envío se hace en segundo plano
+        verify(emailingService, timeout(5000)).sendTemplateEmail(anyString(), anyString(), anyString(), anyMap());
+        verify(appointmentCancellationNoticeRepository, timeout(5000)).save(notice);
+    }
+
+    private AppointmentCancellationNoticeEntity notice(int attempts) {
+        return AppointmentCancellationNoticeEntity.builder()
+                .id(1)
+                .patient(testPatient)
+                .appointmentId(10)
+                .date(LocalDate.now().plusDays(2))
+                .startTime(LocalTime.of(9, 0))
+                .endTime(LocalTime.of(9, 30))
+                .doctorId(1)
+                .doctorName("María Guerrero")
+                .attempts(attempts)
+                .build();
+    }
+}
@@ -0,0 +1,272 @@
+package com.kikisito.salus.api.service;
+
+import com.kikisito.salus.api.dto.AppointmentRescheduledDTO;
+import com.kikisito.salus.api.dto.RescheduleJobDTO;
+import com.kikisito.salus.api.entity.*;
+import com.kikisito.salus.api.event.DoctorScheduleChangedEvent;
+import com.kikisito.salus.api.event.ScheduleSnapshot;
+import com.kikisito.salus.api.exception.DataNotFoundException;
+import com.kikisito.salus.api.repository.*;
+import com.kikisito.salus.api.type.RescheduleJobStatusType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class AppointmentRescheduleServiceTest {
+
+    @MockitoBean
+    private DoctorScheduleRepository doctorScheduleRepository;
+
+    @MockitoBean
+    private AppointmentRepository appointmentRepository;
+
+    @MockitoBean
+    private AppointmentSlotRepository appointmentSlotRepository;
+
+    @MockitoBean
+    private SpecialtyRepository specialtyRepository;
+
+    @MockitoBean
+    private RoomRepository roomRepository;
+
+    @MockitoBean
+    private WebSocketService webSocketService;
+
+    @Autowired
+    private AppointmentRescheduleService appointmentRescheduleService;
+
+    private MedicalProfileEntity testDoctor;
+    private SpecialtyEntity testSpecialty;
+    private RoomEntity testRoom;
+    private UserEntity testPatient;
+    private LocalDate nextMonday;
+    private ScheduleSnapshot previousSchedule;
+
+    @BeforeEach
+    void setUp() {
+        testSpecialty = SpecialtyEntity.builder()
+                .id(1)
+                .name("Cardiología")
+                .build();
+
+        testDoctor = MedicalProfileEntity.builder()
+                .id(1)
+                .license("COLEG-TEST-1")
+                .specialties(new ArrayList<>(List.of(testSpecialty)))
+                .build();
+
+        MedicalCenterEntity testMedicalCenter = MedicalCenterEntity.builder()
+                .id(1)
+                .name("Hospital de Pruebas")
+                .build();
+
+        testRoom = RoomEntity.builder()
+                .id(1)
+                .name("Consulta 1")
+                .medicalCenter(testMedicalCenter)
+                .build();
+
+        testPatient = UserEntity.builder()
+                .id(2)
+                .email("paciente@salus.test")
+                .build();
+
+        nextMonday = LocalDate.now().plusDays(1);
+        while (nextMonday.getDayOfWeek() != DayOfWeek.MONDAY) {
+            nextMonday = nextMonday.plusDays(1);
+        }
+
+        // Antes del cambio, el turno iba de 9:00 a 11:00 los lunes
+        previousSchedule = new ScheduleSnapshot(1, 1, 1, DayOfWeek.MONDAY, LocalTime.of(9, 0), LocalTime.of(11, 0));
+
+        when(specialtyRepository.getReferenceById(1)).thenReturn(testSpecialty);
+        when(roomRepository.getReferenceById(1)).thenReturn(testRoom);
+        when(appointmentSlotRepository.findAvailabilityFrom(any(), any())).thenReturn(List.of());
+    }
+
+    @Test
+    void C1_reschedule_should_move_appointments_out_of_the_new_schedule_to_the_nearest_free_slot() {
+        // Arrange: el turno pasa a ser de 10:00 a 12:00 y la cita de las 9:00 queda fuera
+        DoctorScheduleEntity updatedSchedule = this.schedule(LocalTime.of(10, 0), LocalTime.of(12, 0));
+
+        AppointmentSlotEntity bookedSlot = this.slot(1, LocalTime.of(9, 0), LocalTime.of(9, 30));
+        AppointmentEntity appointment = AppointmentEntity.builder()
+                .id(1)
+                .slot(bookedSlot)
+                .patient(testPatient)
+                .build();
+        bookedSlot.setAppointment(appointment);
+
+        when(doctorScheduleRepository.findById(1)).thenReturn(Optional.of(updatedSchedule));
+        when(doctorScheduleRepository.getReferenceById(1)).thenReturn(updatedSchedule);
+        when(appointmentRepository.findByDoctorOverlapping(any(), any(), any(), any(), any())).thenReturn(List.of(appointment));
+        when(appointmentRepository.findAllById(List.of(1))).thenReturn(List.of(appointment));
+        when(appointmentSlotRepository.findByDoctorAndDateBetween(any(), any(), any())).thenReturn(List.of(bookedSlot));
+        when(appointmentSlotRepository.saveAll(anyList())).thenAnswer(invocation -> {
+            List<AppointmentSlotEntity> slots = invocation.getArgument(0);
+            slots.forEach(slot -> slot.setId(2));
+            return slots;
+        });
+        when(appointmentSlotRepository.findFreeIntervalsByIdIn(any())).thenReturn(List.of());
+        when(appointmentSlotRepository.deleteFreeSlotsByIdIn(any())).thenReturn(1);
+
+        // Act
+        RescheduleJobDTO result = assertDoesNotThrow(() -> appointmentRescheduleService.reschedule(new DoctorScheduleChangedEvent(1, previousSchedule)));
+
+        // Assert
+        assertAll(() -> {
+            assertEquals(RescheduleJobStatusType.COMPLETED, result.getStatus());
+            assertEquals(1, result.getTotal());
+            assertEquals(1, result.getProcessed());
+            assertEquals(1, result.getMoved());
+            assertEquals(0, result.getUnassigned());
+            assertEquals(1, result.getRemovedSlots());
+            assertEquals(2, appointment.getSlot().getId());
+            assertEquals(nextMonday, appointment.getSlot().getDate());
+            assertEquals(LocalTime.of(10, 0), appointment.getSlot().getStartTime());
+            assertEquals(updatedSchedule, appointment.getSlot().getSchedule());
+            assertEquals(result, appointmentRescheduleService.getRescheduleJob(1));
+        });
+
+        verify(appointmentRepository).saveAllAndFlush(List.of(appointment));
+        verify(appointmentSlotRepository).deleteFreeSlotsByIdIn(List.of(1));
+        verify(webSocketService).sendAppointmentRescheduledToUser(eq(testPatient), any(AppointmentRescheduledDTO.class));
+    }
+
+    @Test
+    void C2_reschedule_should_not_move_appointments_that_still_fit_the_new_schedule() {
+        // Arrange: el turno se alarga hasta las 12:00 y la cita de las 10:00 sigue dentro
+        DoctorScheduleEntity updatedSchedule = this.schedule(LocalTime.of(9, 0), LocalTime.of(12, 0));
+
+        AppointmentSlotEntity bookedSlot = this.slot(1, LocalTime.of(10, 0), LocalTime.of(10, 30));
+        AppointmentEntity appointment = AppointmentEntity.builder()
+                .id(1)
+                .slot(bookedSlot)
+                .patient(testPatient)
+                .build();
+
+        when(doctorScheduleRepository.findById(1)).thenReturn(Optional.of(updatedSchedule));
+        when(appointmentRepository.findByDoctorOverlapping(any(), any(), any(), any(), any())).thenReturn(List.of(appointment));
+
+        // Act
+        RescheduleJobDTO result = assertDoesNotThrow(() -> appointmentRescheduleService.reschedule(new DoctorScheduleChangedEvent(1, previousSchedule)));
+
+        // Assert
+        assertAll(() -> {
+            assertEquals(RescheduleJobStatusType.COMPLETED, result.getStatus());
+            assertEquals(0, result.getTotal());
+            assertEquals(0, result.getMoved());
+            assertEquals(1, appointment.getSlot().getId());
+        });
+
+        verify(appointmentRepository, never()).saveAllAndFlush(any());
+        verify(appointmentSlotRepository, never()).deleteFreeSlotsByIdIn(any());
+        verify(webSocketService, never()).sendAppointmentRescheduledToUser(any(), any());
+    }
+
+    @Test
+    void C3_reschedule_should_notify_patients_whose_appointment_could_not_be_moved() {
+        // Arrange: el turno se acorta a 10:00-10:30 y su único hueco ya tiene otra cita
+        DoctorScheduleEntity updatedSchedule = this.schedule(LocalTime.of(10, 0), LocalTime.of(10, 30));
+
+        AppointmentSlotEntity bookedSlot = this.slot(1, LocalTime.of(9, 0), LocalTime.of(9, 30));
+        AppointmentEntity appointment = AppointmentEntity.builder()
+                .id(1)
+                .slot(bookedSlot)
+                .patient(testPatient)
+                .build();
+        bookedSlot.setAppointment(appointment);
+
+        AppointmentSlotEntity takenSlot = this.slot(2, LocalTime.of(10, 0), LocalTime.of(10, 30));
+        takenSlot.setAppointment(AppointmentEntity.builder().id(2).slot(takenSlot).build());
+
+        when(doctorScheduleRepository.findById(1)).thenReturn(Optional.of(updatedSchedule));
+        when(appointmentRepository.findByDoctorOverlapping(any(), any(), any(), any(), any())).thenReturn(List.of(appointment));
+        when(appointmentSlotRepository.findByDoctorAndDateBetween(any(), any(), any())).thenReturn(List.of(bookedSlot, takenSlot));
+
+        // Act
+        RescheduleJobDTO result = assertDoesNotThrow(() -> appointmentRescheduleService.reschedule(new DoctorScheduleChangedEvent(1, previousSchedule)));
+
+        // Assert: la cita sigue donde estaba y el paciente recibe un aviso sin hueco de destino
+        assertAll(() -> {
+            assertEquals(RescheduleJobStatusType.COMPLETED, result.getStatus());
+            assertEquals(1, result.getUnassigned());
+            assertEquals(1, result.getProcessed());
+            assertEquals(1, appointment.getSlot().getId());
+        });
+
+        ArgumentCaptor<AppointmentRescheduledDTO> notice = ArgumentCaptor.forClass(AppointmentRescheduledDTO.class);
+        verify(webSocketService).sendAppointmentRescheduledToUser(eq(testPatient), notice.capture());
+        assertAll(() -> {
+            assertEquals(1, notice.getValue().getAppointmentId());
+            assertNull(notice.getValue().getSlot());
+        });
+    }
+
+    @Test
+    void C4_reschedule_should_keep_the_cause_when_the_job_fails() {
+        // Arrange
+        when(doctorScheduleRepository.findById(1)).thenReturn(Optional.empty());
+
+        // Act
+        RescheduleJobDTO result = assertDoesNotThrow(() -> appointmentRescheduleService.reschedule(new DoctorScheduleChangedEvent(1, previousSchedule)));
+
+        // Assert
+        assertAll(() -> {
+            assertEquals(RescheduleJobStatusType.FAILED, result.getStatus());
+            assertNotNull(result.getError());
+            assertTrue(result.getError().startsWith(DataNotFoundException.class.getSimpleName()));
+        });
+    }
+
+    @Test
+    void C5_getRescheduleJob_should_throw_exception_when_schedule_has_no_job() {
+        // Act
+        DataNotFoundException exception = assertThrows(DataNotFoundException.class, () -> appointmentRescheduleService.getRescheduleJob(999));
+
+        // Assert
+        assertEquals("data_not_found.reschedule_job", exception.getCode());
+    }
+
+    private DoctorScheduleEntity schedule(LocalTime startTime, LocalTime endTime) {
+        return DoctorScheduleEntity.builder()
+                .id(1)
+                .doctor(testDoctor)
+                .specialty(testSpecialty)
+                .room(testRoom)
+                .dayOfWeek(DayOfWeek.MONDAY)
+                .startTime(startTime)
+                .endTime(endTime)
+                .duration(30)
+                .build();
+    }
+
+    private AppointmentSlotEntity slot(Integer id, LocalTime startTime, LocalTime endTime) {
+        return AppointmentSlotEntity.builder()
+                .id(id)
+                .doctor(testDoctor)
+                .specialty(testSpecialty)
+                .room(testRoom)
+                .date(nextMonday)
+                .startTime(startTime)
+                .endTime(endTime)
+                .build();
+    }
+}
@@ -1,20 +1,24 @@
 package com.kikisito.salus.api.service;
 
-import com.kikisito.salus.api.dto.AppointmentDTO;
-import com.kikisito.salus.api.dto.ReducedAppointmentDTO;
+import com.kikisito.salus.api.cache.AccessDecisionCache;
+import com.kikisito.salus.api.cache.DoctorAgendaCache;
+import com.kikisito.salus.api.dto.*;
 import com.kikisito.salus.api.dto.request.AppointmentRequest;
+import com.kikisito.salus.api.dto.response.AppointmentCancellationResponse;
 import com.kikisito.salus.api.entity.*;
+import com.kikisito.salus.api.exception.BadRequestException;
 import com.kikisito.salus.api.exception.ConflictException;
 import com.kikisito.salus.api.exception.DataNotFoundException;
+import com.kikisito.salus.api.mapper.DtoMapper;
 import com.kikisito.salus.api.repository.*;
 import com.kikisito.salus.api.type.AppointmentStatusType;
 import com.kikisito.salus.api.type.AppointmentType;
 import com.kikisito.salus.api.type.RoleType;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 
 import java.time.LocalDate;
@@ -23,9 +27,11 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.Mockito.*;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
@@ -52,12 +58,30 @@ public class AppointmentServiceTest {
     @MockitoBean
     private MedicalTestRepository medicalTestRepository;
 
+    @MockitoBean
+    private AppointmentNotificationService appointmentNotificationService;
+
+    @MockitoBean
+    private WaitlistEntryRepository waitlistEntryRepository;
+
+    @MockitoBean
+    private DoctorAbsenceRepository doctorAbsenceRepository;
+
+    @MockitoBean
+    private AppointmentCancellationNoticeRepository appointmentCancellationNoticeRepository;
+
     @Autowired
-    private ModelMapper modelMapper;
+    private DtoMapper dtoMapper;
 
     @Autowired
     private AppointmentService appointmentService;
 
+    @Autowired
+    private AccessDecisionCache accessDecisionCache;
+
+    @Autowired
+    private DoctorAgendaCache doctorAgendaCache;
+
     private UserEntity testPatient;
     private MedicalProfileEntity testDoctor;
     private AppointmentSlotEntity testAppointmentSlot;
@@ -72,6 +96,10 @@ public class AppointmentServiceTest {
 
     @BeforeEach
     void setUp() {
+        // Las decisiones de acceso y las agendas se guardan entre pruebas porque el contexto es el mismo
+        accessDecisionCache.invalidateAll();
+        doctorAgendaCache.invalidateAll();
+
         // Paciente de prueba
         testPatient = UserEntity.builder()
                 .id(1)
@@ -151,8 +179,8 @@ public class AppointmentServiceTest {
         // Relación slot-cita
         testAppointmentSlot.setAppointment(testAppointment);
 
-        testAppointmentDTO = modelMapper.map(testAppointment, AppointmentDTO.class);
-        testReducedAppointmentDTO = modelMapper.map(testAppointment, ReducedAppointmentDTO.class);
+        testAppointmentDTO = dtoMapper.toAppointmentDTO(testAppointment);
+        testReducedAppointmentDTO = dtoMapper.toReducedAppointmentDTO(testAppointment);
 
         // AppointmentRequest de prueba
         testAppointmentRequest = AppointmentRequest.builder()
@@ -300,7 +328,8 @@ public class AppointmentServiceTest {
     void C6_getUserUpcomingAppointmentsReduced_should_return_list_of_reduced_appointments() {
         // Arrange
         when(userRepository.findById(1)).thenReturn(Optional.of(testPatient));
-        when(appointmentRepository.findUpcomingAppointmentsByPatient(testPatient)).thenReturn(testAppointments);
+        when(appointmentRepository.findUpcomingReducedAppointmentsByPatient(testPatient)).thenReturn(List.of(this.reducedRow(testAppointment)));
+        when(medicalProfileRepository.findSpecialtiesByDoctorIdIn(any())).thenReturn(List.of(new DoctorSpecialtyDTO(1, 1, "Medicina General", "Especialidad de medicina general")));
 
         // Act
         List<ReducedAppointmentDTO> result = assertDoesNotThrow(() -> appointmentService.getUserUpcomingAppointmentsReduced(1));
@@ -310,17 +339,24 @@ public class AppointmentServiceTest {
             assertNotNull(result);
             assertEquals(1, result.size());
             assertEquals(testReducedAppointmentDTO.getId(), result.getFirst().getId());
+            assertEquals(testReducedAppointmentDTO.getSlot().getId(), result.getFirst().getSlot().getId());
+            assertEquals(testReducedAppointmentDTO.getSlot().getAppointmentId(), result.getFirst().getSlot().getAppointmentId());
+            assertEquals(testReducedAppointmentDTO.getSlot().getDoctor().getSpecialties(), result.getFirst().getSlot().getDoctor().getSpecialties());
+            assertEquals(testReducedAppointmentDTO.getSlot().getRoom(), result.getFirst().getSlot().getRoom());
+            assertEquals(testReducedAppointmentDTO.getPatient().getId(), result.getFirst().getPatient().getId());
         });
 
         verify(userRepository).findById(1);
-        verify(appointmentRepository).findUpcomingAppointmentsByPatient(testPatient);
+        verify(appointmentRepository).findUpcomingReducedAppointmentsByPatient(testPatient);
+        verify(medicalProfileRepository, times(1)).findSpecialtiesByDoctorIdIn(any());
     }
 
     @Test
     void C7_getUserPastAppointmentsReduced_should_return_list_of_reduced_appointments() {
         // Arrange
         when(userRepository.findById(1)).thenReturn(Optional.of(testPatient));
-        when(appointmentRepository.findPastAppointmentsByPatient(testPatient)).thenReturn(testAppointments);
+        when(appointmentRepository.findPastReducedAppointmentsByPatient(testPatient)).thenReturn(List.of(this.reducedRow(testAppointment)));
+        when(medicalProfileRepository.findSpecialtiesByDoctorIdIn(any())).thenReturn(List.of(new DoctorSpecialtyDTO(1, 1, "Medicina General", "Especialidad de medicina general")));
 
         // Act
         List<ReducedAppointmentDTO> result = assertDoesNotThrow(() -> appointmentService.getUserPastAppointmentsReduced(1));
@@ -333,7 +369,7 @@ public class AppointmentServiceTest {
         });
 
         verify(userRepository).findById(1);
-        verify(appointmentRepository).findPastAppointmentsByPatient(testPatient);
+        verify(appointmentRepository).findPastReducedAppointmentsByPatient(testPatient);
     }
 
     @Test
@@ -341,7 +377,7 @@ public class AppointmentServiceTest {
         // Arrange
         when(userRepository.findById(1)).thenReturn(Optional.of(testPatient));
         when(appointmentSlotRepository.findById(1)).thenReturn(Optional.of(testAppointmentSlot));
-        when(appointmentRepository.save(any(AppointmentEntity.class))).thenReturn(testAppointment);
+        when(appointmentRepository.saveAndFlush(any(AppointmentEntity.class))).thenReturn(testAppointment);
 
         // Ensure slot doesn't have appointment
         testAppointmentSlot.setAppointment(null);
@@ -361,7 +397,8 @@ public class AppointmentServiceTest {
 
         verify(userRepository).findById(1);
         verify(appointmentSlotRepository).findById(1);
-        verify(appointmentRepository).save(any(AppointmentEntity.class));
+        verify(appointmentRepository).saveAndFlush(any(AppointmentEntity.class));
+        verify(waitlistEntryRepository).fulfillOffer(testAppointmentSlot.getId(), testPatient.getId());
     }
 
     @Test
@@ -378,7 +415,7 @@ public class AppointmentServiceTest {
 
         verify(userRepository).findById(1);
         verify(appointmentSlotRepository).findById(1);
-        verify(appointmentRepository, never()).save(any(AppointmentEntity.class));
+        verify(appointmentRepository, never()).saveAndFlush(any(AppointmentEntity.class));
     }
 
     @Test
@@ -453,10 +490,12 @@ public class AppointmentServiceTest {
 
         // Assert
         verify(appointmentRepository).findById(1);
-        verify(reportRepository).save(any(ReportEntity.class));
-        verify(prescriptionRepository).save(any(PrescriptionEntity.class));
-        verify(medicalTestRepository).save(any(MedicalTestEntity.class));
-        verify(appointmentSlotRepository).save(any(AppointmentSlotEntity.class));
+        verify(reportRepository).unlinkAppointments(List.of(1));
+        verify(prescriptionRepository).unlinkAppointments(List.of(1));
+        verify(medicalTestRepository).unlinkAppointments(List.of(1));
+        verify(reportRepository, never()).save(any(ReportEntity.class));
+        verify(prescriptionRepository, never()).save(any(PrescriptionEntity.class));
+        verify(medicalTestRepository, never()).save(any(MedicalTestEntity.class));
         verify(appointmentRepository).delete(testAppointment);
     }
 
@@ -504,33 +543,30 @@ public class AppointmentServiceTest {
     @Test
     void C16_canProfessionalAccessAppointment_should_return_true_when_doctor_is_responsible() {
         // Arrange
-        when(medicalProfileRepository.findById(1)).thenReturn(Optional.of(testDoctor));
-        when(appointmentRepository.findById(1)).thenReturn(Optional.of(testAppointment));
+        when(appointmentRepository.canDoctorAccessAppointment(1, 1)).thenReturn(true);
 
         // Act
         boolean result = assertDoesNotThrow(() -> appointmentService.canProfessionalAccessAppointment(1, 1));
 
         // Assert
         assertTrue(result);
-        verify(medicalProfileRepository).findById(1);
-        verify(appointmentRepository).findById(1);
+        verify(appointmentRepository).canDoctorAccessAppointment(1, 1);
+        verify(appointmentRepository, never()).findById(any());
     }
 
     @Test
     void C17_patientHasAtLeastOneAppointmentWithDoctor_should_return_true_when_relationship_exists() {
         // Arrange
-        when(userRepository.findById(1)).thenReturn(Optional.of(testPatient));
-        when(medicalProfileRepository.findById(1)).thenReturn(Optional.of(testDoctor));
-        when(appointmentRepository.existsBySlot_DoctorAndPatient(testDoctor, testPatient)).thenReturn(true);
+        when(appointmentRepository.existsBySlot_Doctor_IdAndPatient_Id(1, 1)).thenReturn(true);
 
         // Act
         boolean result = assertDoesNotThrow(() -> appointmentService.patientHasAtLeastOneAppointmentWithDoctor(1, 1));
 
         // Assert
         assertTrue(result);
-        verify(userRepository).findById(1);
-        verify(medicalProfileRepository).findById(1);
-        verify(appointmentRepository).existsBySlot_DoctorAndPatient(testDoctor, testPatient);
+        verify(appointmentRepository).existsBySlot_Doctor_IdAndPatient_Id(1, 1);
+        verify(userRepository, never()).findById(any());
+        verify(medicalProfileRepository, never()).findById(any());
     }
 
     @Test
@@ -545,4 +581,201 @@ public class AppointmentServiceTest {
         assertEquals(1, result);
         verify(appointmentRepository).countByPatient(testPatient);
     }
-}
\ No newline at end of file
+
+    @Test
+    void C19_createAppointment_should_throw_exception_when_slot_is_claimed_by_concurrent_booking() {
+        // Arrange: otra reserva ha insertado la cita del hueco después de comprobar que estaba libre
+        when(userRepository.findById(1)).thenReturn(Optional.of(testPatient));
+        when(appointmentSlotRepository.findById(1)).thenReturn(Optional.of(testAppointmentSlot));
+        when(appointmentRepository.saveAndFlush(any(AppointmentEntity.class))).thenThrow(new DataIntegrityViolationException("uk_appointments_slot_id"));
+
+        testAppointmentSlot.setAppointment(null);
+
+        // Act
+        ConflictException exception = assertThrows(ConflictException.class, () -> appointmentService.createAppointment(testAppointmentRequest));
+
+        // Assert
+        assertEquals("conflict.appointment_slot_is_already_taken", exception.getCode());
+        verify(appointmentRepository).saveAndFlush(any(AppointmentEntity.class));
+    }
+
+    @Test
+    void C20_streamAllDoctorAppointmentsByDate_should_deliver_every_appointment_to_the_consumer() {
+        // Arrange
+        LocalDate testDate = LocalDate.now().plusDays(7);
+        when(medicalProfileRepository.findById(1)).thenReturn(Optional.of(testDoctor));
+        when(appointmentRepository.streamByDoctorAndDate(testDoctor, testDate)).thenReturn(testAppointments.stream());
+        List<AppointmentDTO> result = new ArrayList<>();
+
+        // Act
+        assertDoesNotThrow(() -> appointmentService.streamAllDoctorAppointmentsByDate(1, testDate, result::add));
+
+        // Assert
+        assertAll(() -> {
+            assertEquals(1, result.size());
+            assertEquals(testAppointmentDTO.getId(), result.getFirst().getId());
+            assertEquals(testAppointmentDTO.getSlot().getId(), result.getFirst().getSlot().getId());
+            assertNull(result.getFirst().getReports());
+        });
+
+        verify(appointmentRepository).streamByDoctorAndDate(testDoctor, testDate);
+    }
+
+    private ReducedAppointmentRowDTO reducedRow(AppointmentEntity appointment) {
+        AppointmentSlotEntity slot = appointment.getSlot();
+        MedicalProfileEntity doctor = slot.getDoctor();
+        MedicalCenterEntity medicalCenter = slot.getRoom().getMedicalCenter();
+        return new ReducedAppointmentRowDTO(
+                appointment.getId(), appointment.getType(), appointment.getStatus(), appointment.getReason(),
+                slot.getId(), slot.getDate(), slot.getStartTime(), slot.getEndTime(),
+                doctor.getId(), doctor.getLicense(), doctor.getWorkEmail(), doctor.getWorkPhone(),
+                doctor.getUser().getId(), doctor.getUser().getNombre(), doctor.getUser().getApellidos(), doctor.getUser().getSexo(),
+                slot.getSpecialty().getId(), slot.getSpecialty().getName(), slot.getSpecialty().getDescription(),
+                slot.getRoom().getId(), slot.getRoom().getName(),
+                medicalCenter.getId(), medicalCenter.getName(), medicalCenter.getEmail(), medicalCenter.getPhone(),
+                medicalCenter.getAddressLine1(), medicalCenter.getAddressLine2(), medicalCenter.getZipCode(),
+                medicalCenter.getCountry(), medicalCenter.getProvince(), medicalCenter.getMunicipality(), medicalCenter.getLocality()
+        );
+    }
+
+    @Test
+    void C22_cancelDoctorAppointmentsByDate_should_cancel_pending_appointments_in_a_fixed_number_of_statements() {
+        // Arrange: tres citas pendientes del médico en el mismo día, una de ellas ya atendida
+        LocalDate date = testAppointmentSlot.getDate();
+        List<AppointmentEntity> appointments = new ArrayList<>();
+        for(int i = 0; i < 3; i++) {
+            AppointmentSlotEntity slot = AppointmentSlotEntity.builder()
+                    .id(10 + i)
+                    .doctor(testDoctor)
+                    .date(date)
+                    .startTime(LocalTime.of(9 + i, 0))
+                    .endTime(LocalTime.of(9 + i, 30))
+                    .build();
+            appointments.add(AppointmentEntity.builder()
+                    .id(10 + i)
+                    .patient(testPatient)
+                    .slot(slot)
+                    .status(i == 2 ? AppointmentStatusType.COMPLETED : AppointmentStatusType.PENDING)
+                    .build());
+        }
+
+        when(medicalProfileRepository.findById(1)).thenReturn(Optional.of(testDoctor));
+        when(appointmentRepository.findByDoctorOverlapping(1, date, LocalTime.MIN, date, LocalTime.MAX)).thenReturn(appointments);
+        when(appointmentRepository.deleteAppointmentsByIdIn(List.of(10, 11))).thenReturn(2);
+        when(appointmentSlotRepository.findFreeIntervalsOverlapping(1, date, LocalTime.MIN, date, LocalTime.MAX)).thenReturn(List.of());
+        // Los dos huecos de las citas anuladas y otro que ya estaba libre
+        when(appointmentSlotRepository.deleteFreeSlotsOverlapping(1, date, LocalTime.MIN, date, LocalTime.MAX)).thenReturn(3);
+        when(appointmentCancellationNoticeRepository.saveAll(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Act
+        AppointmentCancellationResponse result = assertDoesNotThrow(() -> appointmentService.cancelDoctorAppointmentsByDate(1, date));
+
+        // Assert
+        assertAll(() -> {
+            assertEquals(List.of(10, 11), result.getCancelledAppointments());
+            assertEquals(3, result.getRemovedSlots());
+        });
+
+        verify(reportRepository).unlinkAppointments(List.of(10, 11));
+        verify(prescriptionRepository).unlinkAppointments(List.of(10, 11));
+        verify(medicalTestRepository).unlinkAppointments(List.of(10, 11));
+        verify(appointmentRepository).deleteAppointmentsByIdIn(List.of(10, 11));
+        verify(appointmentRepository, never()).delete(any(AppointmentEntity.class));
+        verify(doctorAbsenceRepository).save(argThat(absence -> absence.getStartDateTime().equals(date.atStartOfDay()) && absence.getEndDateTime().equals(date.plusDays(1).atStartOfDay())));
+        verify(appointmentCancellationNoticeRepository).saveAll(argThat((List<AppointmentCancellationNoticeEntity> notices) -> notices.size() == 2));
+        verify(appointmentNotificationService).onAppointmentsCancelled(argThat(event -> event.noticeIds().size() == 2));
+    }
+
+    @Test
+    void C23_cancelDoctorAppointmentsByDate_should_throw_exception_when_date_is_in_the_past() {
+        // Act
+        BadRequestException exception = assertThrows(BadRequestException.class, () -> appointmentService.cancelDoctorAppointmentsByDate(1, LocalDate.now().minusDays(1)));
+
+        // Assert
+        assertEquals("bad_request.invalid_date_or_date_range", exception.getCode());
+        verify(appointmentRepository, never()).deleteAppointmentsByIdIn(any());
+    }
+
+    @Test
+    void C24_getDoctorAgenda_should_assemble_the_day_from_bulk_queries_by_patient() {
+        // Arrange
+        LocalDate date = testAppointmentSlot.getDate();
+        AgendaAppointmentRowDTO row = new AgendaAppointmentRowDTO(1, AppointmentType.IN_PERSON, AppointmentStatusType.PENDING, "Consulta de rutina",
+                1, LocalTime.of(10, 0), LocalTime.of(10, 30), "Consulta 1", "Medicina General",
+                1, "Juan", "García", null, LocalDate.of(1992, 1, 7));
+
+        when(appointmentRepository.findAgendaRowsByDoctorAndDate(1, date)).thenReturn(List.of(row));
+        when(appointmentRepository.countPriorVisitsByPatientIdIn(1, Set.of(1), date)).thenReturn(List.of(new PatientVisitCountDTO(1, 2L)));
+        when(medicalTestRepository.findPendingByPatientIdIn(Set.of(1), 1)).thenReturn(List.of(new PendingMedicalTestDTO(5, 1, "Analítica", LocalDate.now(), null)));
+        when(prescriptionRepository.findActiveMedicationsByPatientIdIn(Set.of(1), 1, date)).thenReturn(List.of());
+
+        // Act
+        DoctorAgendaDTO result = assertDoesNotThrow(() -> appointmentService.getDoctorAgenda(1, date));
+
+        // Assert
+        assertAll(() -> {
+            assertEquals(1, result.getAppointments().size());
+            assertEquals("Juan", result.getAppointments().getFirst().getPatient().getNombre());
+            assertEquals(2, result.getAppointments().getFirst().getPriorVisits());
+            assertEquals(1, result.getAppointments().getFirst().getPendingMedicalTests().size());
+            assertTrue(result.getAppointments().getFirst().getActiveMedications().isEmpty());
+        });
+        verify(appointmentRepository, never()).findBySlot_DoctorAndSlot_Date(any(), any());
+    }
+
+    @Test
+    void C25_getDoctorAgenda_should_be_served_from_cache_until_the_day_changes() {
+        // Arrange
+        LocalDate date = testAppointmentSlot.getDate();
+        when(appointmentRepository.findAgendaRowsByDoctorAndDate(1, date)).thenReturn(List.of());
+        when(medicalProfileRepository.existsById(1)).thenReturn(true);
+
+        // Act
+        appointmentService.getDoctorAgenda(1, date);
+        appointmentService.getDoctorAgenda(1, date);
+        doctorAgendaCache.invalidateDay(1, date);
+        DoctorAgendaDTO result = appointmentService.getDoctorAgenda(1, date);
+
+        // Assert
+        assertTrue(result.getAppointments().isEmpty());
+        verify(appointmentRepository, times(2)).findAgendaRowsByDoctorAndDate(1, date);
+    }
+
+    @Test
+    void C26_getDoctorAgenda_should_throw_exception_when_doctor_does_not_exist() {
+        // Arrange
+        LocalDate date = LocalDate.now();
+        when(appointmentRepository.findAgendaRowsByDoctorAndDate(9, date)).thenReturn(List.of());
+        when(medicalProfileRepository.existsById(9)).thenReturn(false);
+
+        // Act
+        DataNotFoundException exception = assertThrows(DataNotFoundException.class, () -> appointmentService.getDoctorAgenda(9, date));
+
+        // Assert
+        assertEquals("data_not_found.doctor", exception.getCode());
+    }
+
+    @Test
+    void C27_cancelDoctorAppointmentsByDate_should_remove_free_slots_without_registering_an_absence_twice() {
+        // Arrange: el médico no tiene citas ese día y ya tiene una ausencia que lo cubre
+        LocalDate date = LocalDate.now().plusDays(3);
+        when(medicalProfileRepository.findById(1)).thenReturn(Optional.of(testDoctor));
+        when(appointmentRepository.findByDoctorOverlapping(1, date, LocalTime.MIN, date, LocalTime.MAX)).thenReturn(List.of());
+        when(doctorAbsenceRepository.existsByDoctor_IdAndStartDateTimeLessThanEqualAndEndDateTimeGreaterThanEqual(1, date.atStartOfDay(), date.plusDays(1).atStartOfDay())).thenReturn(true);
+        when(appointmentSlotRepository.findFreeIntervalsOverlapping(1, date, LocalTime.MIN, date, LocalTime.MAX)).thenReturn(List.of());
+        when(appointmentSlotRepository.deleteFreeSlotsOverlapping(1, date, LocalTime.MIN, date, LocalTime.MAX)).thenReturn(4);
+
+        // Act
+        AppointmentCancellationResponse result = assertDoesNotThrow(() -> appointmentService.cancelDoctorAppointmentsByDate(1, date));
+
+        // Assert
+        assertAll(() -> {
+            assertTrue(result.getCancelledAppointments().isEmpty());
+            assertEquals(4, result.getRemovedSlots());
+        });
+
+        verify(doctorAbsenceRepository, never()).save(any(DoctorAbsenceEntity.class));
+        verify(appointmentRepository, never()).deleteAppointmentsByIdIn(any());
+        verify(appointmentNotificationService, never()).onAppointmentsCancelled(any());
+    }
+}
@@ -0,0 +1,170 @@
+package com.kikisito.salus.api.service;
+
+import com.kikisito.salus.api.dto.AppointmentSlotGenerationJobDTO;
+import com.kikisito.salus.api.dto.response.AppointmentSlotGenerationResponse;
+import com.kikisito.salus.api.entity.AppointmentSlotGenerationJobEntity;
+import com.kikisito.salus.api.entity.UserEntity;
+import com.kikisito.salus.api.exception.BadRequestException;
+import com.kikisito.salus.api.occupancy.AvailabilityCalendar;
+import com.kikisito.salus.api.repository.AppointmentSlotGenerationJobRepository;
+import com.kikisito.salus.api.type.GenerationJobStatusType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class AppointmentSlotGenerationJobServiceTest {
+
+    @MockitoBean
+    private AppointmentSlotGenerationJobRepository appointmentSlotGenerationJobRepository;
+
+    @MockitoBean
+    private AppointmentSlotGenerationService appointmentSlotGenerationService;
+
+    @MockitoBean
+    private WebSocketService webSocketService;
+
+    @MockitoBean
+    private AvailabilityCalendar availabilityCalendar;
+
+    @Autowired
+    private AppointmentSlotGenerationJobService appointmentSlotGenerationJobService;
+
+    private UserEntity testAdmin;
+    private LocalDate today;
+
+    @BeforeEach
+    void setUp() {
+        testAdmin = UserEntity.builder()
+                .id(1)
+                .email("admin@salus.test")
+                .build();
+
+        today = LocalDate.now();
+
+        when(appointmentSlotGenerationJobRepository.findIdsByStatusIn(any())).thenReturn(List.of());
+        when(appointmentSlotGenerationJobRepository.save(any(AppointmentSlotGenerationJobEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(appointmentSlotGenerationService.generateAppointmentSlotsBetweenDates(any(), any(), eq(false)))
+                .thenReturn(AppointmentSlotGenerationResponse.builder().created(10).skipped(2).build());
+    }
+
+    @Test
+    void C1_runJob_should_generate_by_chunks_and_save_a_checkpoint_after_each_one() {
+        // Arrange: 10 días en bloques de 7 son dos bloques
+        AppointmentSlotGenerationJobEntity job = this.job(today, today.plusDays(9), today);
+        when(appointmentSlotGenerationJobRepository.findWithDoctorAndRequesterById(1)).thenReturn(Optional.of(job));
+
+        // Act
+        AppointmentSlotGenerationJobDTO result = assertDoesNotThrow(() -> appointmentSlotGenerationJobService.runJob(1));
+
+        // Assert
+        assertAll(() -> {
+            assertEquals(GenerationJobStatusType.COMPLETED, result.getStatus());
+            assertEquals(10, result.getProcessedDays());
+            assertEquals(20, result.getCreated());
+            assertEquals(4, result.getSkipped());
+            assertEquals(today.plusDays(10), result.getNextDate());
+        });
+
+        verify(appointmentSlotGenerationService).generateAppointmentSlotsBetweenDates(today, today.plusDays(6), false);
+        verify(appointmentSlotGenerationService).generateAppointmentSlotsBetweenDates(today.plusDays(7), today.plusDays(9), false);
+        // Al empezar, tras cada bloque y al terminar
+        verify(appointmentSlotGenerationJobRepository, times(4)).save(job);
+        verify(webSocketService, times(4)).sendGenerationJobToUser(eq(testAdmin), any(AppointmentSlotGenerationJobDTO.class));
+        // El calendario se recarga una vez al terminar, no tras cada bloque
+        verify(availabilityCalendar, times(1)).rebuild();
+        verify(availabilityCalendar, never()).rebuildAfterCommit();
+    }
+
+    @Test
+    void C2_runJob_should_resume_from_the_last_checkpoint() {
+        // Arrange: el primer bloque ya se había generado antes de que se detuviera la aplicación
+        AppointmentSlotGenerationJobEntity job = this.job(today, today.plusDays(9), today.plusDays(7));
+        job.setStatus(GenerationJobStatusType.RUNNING);
+        job.setProcessedDays(7);
+        job.setCreated(10);
+        when(appointmentSlotGenerationJobRepository.findWithDoctorAndRequesterById(1)).thenReturn(Optional.of(job));
+
+        // Act
+        AppointmentSlotGenerationJobDTO result = assertDoesNotThrow(() -> appointmentSlotGenerationJobService.runJob(1));
+
+        // Assert
+        assertAll(() -> {
+            assertEquals(GenerationJobStatusType.COMPLETED, result.getStatus());
+            assertEquals(10, result.getProcessedDays());
+            assertEquals(20, result.getCreated());
+        });
+
+        verify(appointmentSlotGenerationService, times(1)).generateAppointmentSlotsBetweenDates(any(), any(), eq(false));
+        verify(appointmentSlotGenerationService).generateAppointmentSlotsBetweenDates(today.plusDays(7), today.plusDays(9), false);
+    }
+
+    @Test
+    void C3_runJob_should_mark_job_as_failed_when_generation_fails() {
+        // Arrange
+        AppointmentSlotGenerationJobEntity job = this.job(today, today.plusDays(3), today);
+        when(appointmentSlotGenerationJobRepository.findWithDoctorAndRequesterById(1)).thenReturn(Optional.of(job));
+        when(appointmentSlotGenerationService.generateAppointmentSlotsBetweenDates(any(), any(), eq(false))).thenThrow(BadRequestException.invalidDateOrDateRange());
+
+        // Act
+        AppointmentSlotGenerationJobDTO result = assertDoesNotThrow(() -> appointmentSlotGenerationJobService.runJob(1));
+
+        // Assert
+        assertAll(() -> {
+            assertEquals(GenerationJobStatusType.FAILED, result.getStatus());
+            assertEquals("bad_request.invalid_date_or_date_range", result.getErrorCode());
+            assertTrue(result.getErrorMessage().startsWith(BadRequestException.class.getSimpleName()));
+            assertEquals(0, result.getProcessedDays());
+        });
+    }
+
+    @Test
+    void C4_runJob_should_keep_the_message_of_an_unexpected_error() {
+        // Arrange
+        AppointmentSlotGenerationJobEntity job = this.job(today, today.plusDays(3), today);
+        when(appointmentSlotGenerationJobRepository.findWithDoctorAndRequesterById(1)).thenReturn(Optional.of(job));
+        when(appointmentSlotGenerationService.generateAppointmentSlotsBetweenDates(any(), any(), eq(false))).thenThrow(new IllegalStateException("Conexión cerrada"));
+
+        // Act
+        AppointmentSlotGenerationJobDTO result = assertDoesNotThrow(() -> appointmentSlotGenerationJobService.runJob(1));
+
+        // Assert
+        assertAll(() -> {
+            assertEquals(GenerationJobStatusType.FAILED, result.getStatus());
+            assertEquals("internal_error", result.getErrorCode());
+            assertEquals("IllegalStateException: Conexión cerrada", result.getErrorMessage());
+        });
+    }
+
+    @Test
+    void C5_submitGenerationJob_should_throw_exception_when_start_date_is_in_the_past() {
+        // Act
+        BadRequestException exception = assertThrows(BadRequestException.class, () -> appointmentSlotGenerationJobService.submitGenerationJob(today.minusDays(1), today.plusDays(5), false, testAdmin));
+
+        // Assert
+        assertEquals("bad_request.invalid_date_or_date_range", exception.getCode());
+        verify(appointmentSlotGenerationJobRepository, never()).save(any(AppointmentSlotGenerationJobEntity.class));
+    }
+
+    private AppointmentSlotGenerationJobEntity job(LocalDate startDate, LocalDate endDate, LocalDate nextDate) {
+        return AppointmentSlotGenerationJobEntity.builder()
+                .id(1)
+                .requestedBy(testAdmin)
+                .startDate(startDate)
+                .endDate(endDate)
+                .nextDate(nextDate)
+                .totalDays((int) (endDate.toEpochDay() - startDate.toEpochDay()) + 1)
+                .build();
+    }
+}
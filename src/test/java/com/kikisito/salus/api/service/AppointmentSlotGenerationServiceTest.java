@@ -0,0 +1,240 @@
+package com.kikisito.salus.api.service;
+
+import com.kikisito.salus.api.dto.AppointmentSlotIntervalDTO;
+import com.kikisito.salus.api.dto.response.AppointmentSlotGenerationResponse;
+import com.kikisito.salus.api.entity.*;
+import com.kikisito.salus.api.exception.BadRequestException;
+import com.kikisito.salus.api.occupancy.OccupancyIndex;
+import com.kikisito.salus.api.repository.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class AppointmentSlotGenerationServiceTest {
+
+    @MockitoBean
+    private AppointmentSlotRepository appointmentSlotRepository;
+
+    @MockitoBean
+    private DoctorScheduleRepository doctorScheduleRepository;
+
+    @MockitoBean
+    private MedicalProfileRepository medicalProfileRepository;
+
+    @MockitoBean
+    private SpecialtyRepository specialtyRepository;
+
+    @MockitoBean
+    private RoomRepository roomRepository;
+
+    @Autowired
+    private AppointmentSlotGenerationService appointmentSlotGenerationService;
+
+    @Autowired
+    private OccupancyIndex occupancyIndex;
+
+    private MedicalProfileEntity testDoctor;
+    private SpecialtyEntity testSpecialty;
+    private RoomEntity testRoom;
+    private DoctorScheduleEntity testSchedule;
+    private LocalDate nextMonday;
+
+    @BeforeEach
+    void setUp() {
+        // El índice de ocupación se comparte entre pruebas, así que se vacía antes de cada una
+        occupancyIndex.rebuild();
+
+        testSpecialty = SpecialtyEntity.builder()
+                .id(1)
+                .name("Medicina General")
+                .build();
+
+        testDoctor = MedicalProfileEntity.builder()
+                .id(1)
+                .license("COLEG-TEST-1")
+                .specialties(new ArrayList<>(List.of(testSpecialty)))
+                .build();
+
+        testRoom = RoomEntity.builder()
+                .id(1)
+                .name("Consulta 1")
+                .build();
+
+        // Turno de prueba: lunes de 9:00 a 11:00 en huecos de 30 minutos
+        testSchedule = DoctorScheduleEntity.builder()
+                .id(1)
+                .doctor(testDoctor)
+                .specialty(testSpecialty)
+                .room(testRoom)
+                .dayOfWeek(DayOfWeek.MONDAY)
+                .startTime(LocalTime.of(9, 0))
+                .endTime(LocalTime.of(11, 0))
+                .duration(30)
+                .build();
+
+        nextMonday = LocalDate.now().plusDays(1);
+        while (nextMonday.getDayOfWeek() != DayOfWeek.MONDAY) {
+            nextMonday = nextMonday.plusDays(1);
+        }
+
+        when(medicalProfileRepository.getReferenceById(1)).thenReturn(testDoctor);
+        when(specialtyRepository.getReferenceById(1)).thenReturn(testSpecialty);
+        when(roomRepository.getReferenceById(1)).thenReturn(testRoom);
+    }
+
+    @Test
+    void C1_generateAppointmentSlotsBetweenDates_should_create_slots_for_every_matching_day() {
+        // Arrange
+        when(doctorScheduleRepository.findAll()).thenReturn(List.of(testSchedule));
+        when(appointmentSlotRepository.findIntervalsBetween(any(), any())).thenReturn(List.of());
+
+        // Act: dos semanas completas, es decir, dos lunes
+        AppointmentSlotGenerationResponse result = assertDoesNotThrow(() -> appointmentSlotGenerationService.generateAppointmentSlotsBetweenDates(nextMonday, nextMonday.plusDays(13)));
+
+        // Assert
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<AppointmentSlotEntity>> captor = ArgumentCaptor.forClass(List.class);
+        verify(appointmentSlotRepository).saveAll(captor.capture());
+
+        assertAll(() -> {
+            assertEquals(8, result.getCreated());
+            assertEquals(0, result.getSkipped());
+            assertEquals(0, result.getConflicting());
+
+            List<AppointmentSlotEntity> saved = captor.getValue();
+            assertEquals(8, saved.size());
+            assertEquals(nextMonday, saved.getFirst().getDate());
+            assertEquals(LocalTime.of(9, 0), saved.getFirst().getStartTime());
+            assertEquals(LocalTime.of(9, 30), saved.getFirst().getEndTime());
+            assertEquals(nextMonday.plusDays(7), saved.getLast().getDate());
+            assertEquals(LocalTime.of(10, 30), saved.getLast().getStartTime());
+        });
+
+        // Solo se consulta una vez la base de datos, independientemente del número de días y huecos
+        verify(doctorScheduleRepository).findAll();
+        verify(appointmentSlotRepository).findIntervalsBetween(nextMonday, nextMonday.plusDays(13));
+        verify(appointmentSlotRepository, never()).existsOverlappingSlot(any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void C2_generateAppointmentSlotsBetweenDates_should_skip_existing_slots_and_count_conflicts() {
+        // Arrange: el primer hueco ya existe y otro médico ocupa la consulta de 10:00 a 10:45
+        when(doctorScheduleRepository.findAll()).thenReturn(List.of(testSchedule));
+        when(appointmentSlotRepository.findIntervalsBetween(any(), any())).thenReturn(List.of(
+                new AppointmentSlotIntervalDTO(1, 1, nextMonday, LocalTime.of(9, 0), LocalTime.of(9, 30)),
+                new AppointmentSlotIntervalDTO(2, 1, nextMonday, LocalTime.of(10, 0), LocalTime.of(10, 45))
+        ));
+
+        // Act
+        AppointmentSlotGenerationResponse result = assertDoesNotThrow(() -> appointmentSlotGenerationService.generateAppointmentSlotsBetweenDates(nextMonday, nextMonday));
+
+        // Assert
+        assertAll(() -> {
+            assertEquals(1, result.getCreated());
+            assertEquals(1, result.getSkipped());
+            assertEquals(2, result.getConflicting());
+        });
+
+        verify(appointmentSlotRepository).saveAll(any());
+    }
+
+    @Test
+    void C3_generateAppointmentSlotsBetweenDates_should_throw_exception_when_date_range_is_invalid() {
+        // Act
+        BadRequestException exception = assertThrows(BadRequestException.class, () -> appointmentSlotGenerationService.generateAppointmentSlotsBetweenDates(nextMonday, nextMonday.minusDays(1)));
+
+        // Assert
+        assertEquals("bad_request.invalid_date_or_date_range", exception.getCode());
+        verify(doctorScheduleRepository, never()).findAll();
+        verify(appointmentSlotRepository, never()).saveAll(any());
+        verify(medicalProfileRepository, never()).getReferenceById(anyInt());
+    }
+
+    @Test
+    void C4_generateAppointmentSlotsBetweenDatesInParallel_should_aggregate_results_of_every_doctor() {
+        // Arrange: otro médico pasa consulta en la misma sala de 10:00 a 12:00, solapando una hora con el primero
+        MedicalProfileEntity otherDoctor = MedicalProfileEntity.builder()
+                .id(2)
+                .license("COLEG-TEST-2")
+                .specialties(new ArrayList<>(List.of(testSpecialty)))
+                .build();
+
+        DoctorScheduleEntity otherSchedule = DoctorScheduleEntity.builder()
+                .id(2)
+                .doctor(otherDoctor)
+                .specialty(testSpecialty)
+                .room(testRoom)
+                .dayOfWeek(DayOfWeek.MONDAY)
+                .startTime(LocalTime.of(10, 0))
+                .endTime(LocalTime.of(12, 0))
+                .duration(30)
+                .build();
+
+        when(medicalProfileRepository.getReferenceById(2)).thenReturn(otherDoctor);
+        when(doctorScheduleRepository.findAll()).thenReturn(List.of(testSchedule, otherSchedule));
+        when(appointmentSlotRepository.findIntervalsByDoctorOrRoomsBetween(any(), any(), any(), any())).thenReturn(List.of());
+
+        // Act
+        AppointmentSlotGenerationResponse result = assertDoesNotThrow(() -> appointmentSlotGenerationService.generateAppointmentSlotsBetweenDatesInParallel(nextMonday, nextMonday));
+
+        // Assert: de los dos huecos que coinciden en la sala solo se crea uno, sea del médico que sea
+        assertAll(() -> {
+            assertEquals(6, result.getCreated());
+            assertEquals(0, result.getSkipped());
+            assertEquals(2, result.getConflicting());
+        });
+
+        verify(doctorScheduleRepository).findAll();
+        verify(appointmentSlotRepository, times(2)).findIntervalsByDoctorOrRoomsBetween(any(), any(), any(), any());
+        verify(appointmentSlotRepository, never()).findIntervalsBetween(any(), any());
+        verify(appointmentSlotRepository, times(2)).saveAll(any());
+    }
+
+    @Test
+    void C5_generateAppointmentSlotsBetweenDatesInParallel_should_propagate_the_cause_of_a_failed_doctor() {
+        // Arrange: la consulta de los huecos del segundo médico falla
+        MedicalProfileEntity otherDoctor = MedicalProfileEntity.builder()
+                .id(2)
+                .license("COLEG-TEST-2")
+                .specialties(new ArrayList<>(List.of(testSpecialty)))
+                .build();
+
+        DoctorScheduleEntity otherSchedule = DoctorScheduleEntity.builder()
+                .id(2)
+                .doctor(otherDoctor)
+                .specialty(testSpecialty)
+                .room(testRoom)
+                .dayOfWeek(DayOfWeek.TUESDAY)
+                .startTime(LocalTime.of(9, 0))
+                .endTime(LocalTime.of(10, 0))
+                .duration(30)
+                .build();
+
+        when(doctorScheduleRepository.findAll()).thenReturn(List.of(testSchedule, otherSchedule));
+        when(appointmentSlotRepository.findIntervalsByDoctorOrRoomsBetween(eq(1), any(), any(), any())).thenReturn(List.of());
+        when(appointmentSlotRepository.findIntervalsByDoctorOrRoomsBetween(eq(2), any(), any(), any())).thenThrow(new IllegalStateException("connection reset"));
+
+        // Act
+        IllegalStateException exception = assertThrows(IllegalStateException.class, () -> appointmentSlotGenerationService.generateAppointmentSlotsBetweenDatesInParallel(nextMonday, nextMonday.plusDays(1)));
+
+        // Assert: el otro médico se ha generado igualmente en su propia transacción
+        assertEquals("connection reset", exception.getMessage());
+        verify(appointmentSlotRepository).saveAll(any());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,205 @@
+package com.kikisito.salus.api.service;
+
+import com.kikisito.salus.api.dto.request.AppointmentSlotHoldRequest;
+import com.kikisito.salus.api.dto.response.AppointmentSlotHoldResponse;
+import com.kikisito.salus.api.entity.*;
+import com.kikisito.salus.api.exception.ConflictException;
+import com.kikisito.salus.api.occupancy.SlotHoldTable;
+import com.kikisito.salus.api.repository.AppointmentSlotHoldRepository;
+import com.kikisito.salus.api.repository.AppointmentSlotRepository;
+import com.kikisito.salus.api.repository.UserRepository;
+import com.kikisito.salus.api.type.RoleType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class AppointmentSlotHoldServiceTest {
+
+    @MockitoBean
+    private AppointmentSlotHoldRepository appointmentSlotHoldRepository;
+
+    @MockitoBean
+    private AppointmentSlotRepository appointmentSlotRepository;
+
+    @MockitoBean
+    private UserRepository userRepository;
+
+    @Autowired
+    private AppointmentSlotHoldService appointmentSlotHoldService;
+
+    @Autowired
+    private SlotHoldTable slotHoldTable;
+
+    private UserEntity testPatient;
+    private UserEntity otherPatient;
+    private AppointmentSlotEntity testAppointmentSlot;
+    private AppointmentSlotHoldRequest testHoldRequest;
+
+    @BeforeEach
+    void setUp() {
+        // Se descartan las retenciones de otras pruebas
+        slotHoldTable.evictExpired(LocalDateTime.MAX);
+
+        testPatient = UserEntity.builder()
+                .id(1)
+                .nombre("Juan")
+                .apellidos("García")
+                .email("juang@salus.com")
+                .rolesList(new ArrayList<>(List.of(RoleType.USER)))
+                .build();
+
+        otherPatient = UserEntity.builder()
+                .id(3)
+                .nombre("Lucía")
+                .apellidos("Martínez")
+                .email("luciam@salus.com")
+                .rolesList(new ArrayList<>(List.of(RoleType.USER)))
+                .build();
+
+        MedicalProfileEntity testDoctor = MedicalProfileEntity.builder()
+                .id(1)
+                .user(UserEntity.builder().id(2).build())
+                .license("COLEG-TEST-1")
+                .build();
+
+        SpecialtyEntity testSpecialty = SpecialtyEntity.builder()
+                .id(1)
+                .name("Medicina General")
+                .build();
+
+        RoomEntity testRoom = RoomEntity.builder()
+                .id(1)
+                .name("Consulta 1")
+                .medicalCenter(MedicalCenterEntity.builder().id(1).name("Hospital de Pruebas").build())
+                .build();
+
+        testAppointmentSlot = AppointmentSlotEntity.builder()
+                .id(1)
+                .doctor(testDoctor)
+                .specialty(testSpecialty)
+                .room(testRoom)
+                .date(LocalDate.now().plusDays(7))
+                .startTime(LocalTime.of(10, 0))
+                .endTime(LocalTime.of(10, 30))
+                .build();
+
+        testHoldRequest = AppointmentSlotHoldRequest.builder()
+                .appointmentSlot(1)
+                .build();
+
+        when(appointmentSlotRepository.findById(1)).thenReturn(Optional.of(testAppointmentSlot));
+        when(appointmentSlotHoldRepository.findBySlot_Id(1)).thenReturn(Optional.empty());
+        when(userRepository.getReferenceById(any())).thenAnswer(invocation -> invocation.getArgument(0).equals(1) ? testPatient : otherPatient);
+    }
+
+    @Test
+    void C1_holdAppointmentSlot_should_hold_slot_until_expiration() {
+        // Act
+        AppointmentSlotHoldResponse result = assertDoesNotThrow(() -> appointmentSlotHoldService.holdAppointmentSlot(testHoldRequest, testPatient));
+
+        // Assert
+        assertAll(() -> {
+            assertEquals(1, result.getSlot().getId());
+            assertTrue(result.getExpiresAt().isAfter(LocalDateTime.now()));
+            assertTrue(slotHoldTable.isHeld(1));
+            assertTrue(slotHoldTable.isHeldByOther(1, otherPatient.getId()));
+            assertFalse(slotHoldTable.isHeldByOther(1, testPatient.getId()));
+        });
+
+        verify(appointmentSlotHoldRepository).saveAndFlush(any(AppointmentSlotHoldEntity.class));
+    }
+
+    @Test
+    void C2_holdAppointmentSlot_should_throw_exception_when_slot_is_held_by_another_patient() {
+        // Arrange
+        appointmentSlotHoldService.holdAppointmentSlot(testHoldRequest, testPatient);
+
+        // Act
+        ConflictException exception = assertThrows(ConflictException.class, () -> appointmentSlotHoldService.holdAppointmentSlot(testHoldRequest, otherPatient));
+
+        // Assert: la segunda retención se descarta en memoria, sin llegar a la base de datos
+        assertEquals("conflict.appointment_slot_is_held", exception.getCode());
+        verify(appointmentSlotHoldRepository, times(1)).saveAndFlush(any(AppointmentSlotHoldEntity.class));
+    }
+
+    @Test
+    void C3_consumeHold_should_throw_exception_for_other_patients_and_release_hold_for_holder() {
+        // Arrange
+        appointmentSlotHoldService.holdAppointmentSlot(testHoldRequest, testPatient);
+
+        // Act
+        ConflictException exception = assertThrows(ConflictException.class, () -> appointmentSlotHoldService.consumeHold(testAppointmentSlot, otherPatient));
+        assertDoesNotThrow(() -> appointmentSlotHoldService.consumeHold(testAppointmentSlot, testPatient));
+
+        // Assert
+        assertEquals("conflict.appointment_slot_is_held", exception.getCode());
+        assertFalse(slotHoldTable.isHeld(1));
+        verify(appointmentSlotHoldRepository).deleteBySlotId(1);
+    }
+
+    @Test
+    void C4_purgeExpiredHolds_should_release_expired_holds() {
+        // Arrange
+        slotHoldTable.tryHold(1, testPatient.getId(), LocalDateTime.now().minusSeconds(1));
+        slotHoldTable.tryHold(2, testPatient.getId(), LocalDateTime.now().plusMinutes(5));
+
+        // Act
+        assertDoesNotThrow(() -> appointmentSlotHoldService.purgeExpiredHolds());
+
+        // Assert
+        assertAll(() -> {
+            assertFalse(slotHoldTable.isHeld(1));
+            assertTrue(slotHoldTable.isHeld(2));
+            assertEquals(1, slotHoldTable.size());
+        });
+        verify(appointmentSlotHoldRepository).deleteExpired(any());
+    }
+
+    @Test
+    void C5_consumeHold_should_throw_exception_when_the_hold_table_has_a_hold_of_another_patient() {
+        // Arrange: la retención se tomó en otra instancia, así que no está en la tabla en memoria
+        AppointmentSlotHoldEntity hold = AppointmentSlotHoldEntity.builder()
+                .slot(testAppointmentSlot)
+                .user(otherPatient)
+                .expiresAt(LocalDateTime.now().plusMinutes(5))
+                .build();
+        when(appointmentSlotHoldRepository.findBySlot_Id(1)).thenReturn(Optional.of(hold));
+
+        // Act
+        ConflictException exception = assertThrows(ConflictException.class, () -> appointmentSlotHoldService.consumeHold(testAppointmentSlot, testPatient));
+
+        // Assert
+        assertEquals("conflict.appointment_slot_is_held", exception.getCode());
+        assertFalse(slotHoldTable.isHeld(1));
+        verify(appointmentSlotHoldRepository, never()).deleteBySlotId(any());
+    }
+
+    @Test
+    void C6_holdAppointmentSlot_should_throw_exception_when_patient_has_too_many_active_holds() {
+        // Arrange
+        when(appointmentSlotHoldRepository.countActiveByUserExcludingSlot(eq(1), eq(1), any())).thenReturn(3L);
+
+        // Act
+        ConflictException exception = assertThrows(ConflictException.class, () -> appointmentSlotHoldService.holdAppointmentSlot(testHoldRequest, testPatient));
+
+        // Assert
+        assertEquals("conflict.too_many_appointment_slot_holds", exception.getCode());
+        assertFalse(slotHoldTable.isHeld(1));
+        verify(appointmentSlotHoldRepository, never()).saveAndFlush(any(AppointmentSlotHoldEntity.class));
+    }
+}
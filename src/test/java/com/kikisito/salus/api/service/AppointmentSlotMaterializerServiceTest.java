@@ -0,0 +1,84 @@
+package com.kikisito.salus.api.service;
+
+import com.kikisito.salus.api.entity.AppointmentSlotEntity;
+import com.kikisito.salus.api.event.ScheduleSnapshot;
+import com.kikisito.salus.api.repository.AppointmentSlotRepository;
+import com.kikisito.salus.api.repository.DoctorScheduleRepository;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class AppointmentSlotMaterializerServiceTest {
+
+    @MockitoBean
+    private AppointmentSlotGenerationService appointmentSlotGenerationService;
+
+    @MockitoBean
+    private AppointmentSlotRepository appointmentSlotRepository;
+
+    @MockitoBean
+    private DoctorScheduleRepository doctorScheduleRepository;
+
+    @Autowired
+    private AppointmentSlotMaterializerService appointmentSlotMaterializerService;
+
+    @Test
+    void C1_materializeUntil_should_only_generate_the_newly_uncovered_days() {
+        // Arrange: los turnos están generados hasta el horizonte, y tras la primera ejecución hasta dos días después
+        LocalDate horizon = LocalDate.now().plusDays(400);
+        when(doctorScheduleRepository.findMaterializedUntil(any())).thenReturn(horizon, horizon.plusDays(2));
+
+        // Act: el horizonte avanza dos días y después se vuelve a ejecutar sin cambios
+        appointmentSlotMaterializerService.materializeUntil(horizon.plusDays(2));
+        appointmentSlotMaterializerService.materializeUntil(horizon.plusDays(2));
+
+        // Assert
+        verify(appointmentSlotGenerationService, times(1)).generateAppointmentSlotsBetweenDates(any(), any());
+        verify(appointmentSlotGenerationService).generateAppointmentSlotsBetweenDates(horizon.plusDays(1), horizon.plusDays(2));
+        verify(doctorScheduleRepository, times(1)).advanceMaterializedUntil(horizon.plusDays(2));
+    }
+
+    @Test
+    void C2_onScheduleChanged_should_delete_free_generated_slots_of_the_previous_schedule_and_regenerate() {
+        // Arrange: el turno anterior generó un hueco libre en lunes
+        LocalDate nextMonday = LocalDate.now().plusDays(1);
+        while (nextMonday.getDayOfWeek() != DayOfWeek.MONDAY) {
+            nextMonday = nextMonday.plusDays(1);
+        }
+
+        AppointmentSlotEntity mondaySlot = AppointmentSlotEntity.builder()
+                .id(1)
+                .date(nextMonday)
+                .startTime(LocalTime.of(9, 0))
+                .endTime(LocalTime.of(9, 30))
+                .build();
+
+        when(appointmentSlotRepository.findFreeGeneratedSlots(1, LocalDate.now())).thenReturn(List.of(mondaySlot));
+
+        ScheduleSnapshot previous = new ScheduleSnapshot(1, 1, 1, DayOfWeek.MONDAY, LocalTime.of(9, 0), LocalTime.of(11, 0));
+
+        // Act
+        assertDoesNotThrow(() -> appointmentSlotMaterializerService.onScheduleChanged(previous));
+
+        // Assert
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<AppointmentSlotEntity>> captor = ArgumentCaptor.forClass(List.class);
+        verify(appointmentSlotRepository).deleteAllInBatch(captor.capture());
+        assertEquals(List.of(mondaySlot), captor.getValue());
+
+        verify(appointmentSlotGenerationService).generateDoctorAppointmentSlotsBetweenDates(eq(1), eq(LocalDate.now()), any());
+    }
+}
@@ -1,18 +1,28 @@
 package com.kikisito.salus.api.service;
 
+import com.kikisito.salus.api.cache.AvailabilityCache;
+import com.kikisito.salus.api.cache.CacheStats;
+import com.kikisito.salus.api.config.AppointmentSlotsConfiguration;
 import com.kikisito.salus.api.dto.AppointmentSlotDTO;
+import com.kikisito.salus.api.dto.AppointmentSlotIntervalDTO;
 import com.kikisito.salus.api.dto.request.AppointmentSlotRequest;
 import com.kikisito.salus.api.entity.*;
 import com.kikisito.salus.api.exception.ConflictException;
 import com.kikisito.salus.api.exception.DataNotFoundException;
+import com.kikisito.salus.api.mapper.DtoMapper;
+import com.kikisito.salus.api.occupancy.AvailabilityCalendar;
+import com.kikisito.salus.api.occupancy.OccupancyIndex;
 import com.kikisito.salus.api.repository.*;
+import com.kikisito.salus.api.type.AppointmentSlotModeType;
 import com.kikisito.salus.api.type.RoleType;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.DayOfWeek;
 import java.time.LocalDate;
@@ -21,10 +31,11 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
@@ -49,11 +60,29 @@ public class AppointmentSlotServiceTest {
     private RoomRepository roomRepository;
 
     @Autowired
-    private ModelMapper modelMapper;
+    private DtoMapper dtoMapper;
 
     @Autowired
     private AppointmentSlotService appointmentSlotService;
 
+    @Autowired
+    private OccupancyIndex occupancyIndex;
+
+    @Autowired
+    private VirtualAppointmentSlotService virtualAppointmentSlotService;
+
+    @Autowired
+    private AppointmentSlotsConfiguration appointmentSlotsConfiguration;
+
+    @Autowired
+    private AvailabilityCalendar availabilityCalendar;
+
+    @Autowired
+    private AvailabilityCache availabilityCache;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
     private MedicalProfileEntity testDoctor;
     private SpecialtyEntity testSpecialty;
     private MedicalCenterEntity testMedicalCenter;
@@ -66,6 +95,10 @@ public class AppointmentSlotServiceTest {
 
     @BeforeEach
     void setUp() {
+        // El índice de ocupación se comparte entre pruebas, así que se vacía antes de cada una
+        occupancyIndex.rebuild();
+        availabilityCache.invalidateAll();
+
         // Usuario de prueba
         UserEntity testUser = UserEntity.builder()
                 .id(1)
@@ -135,7 +168,7 @@ public class AppointmentSlotServiceTest {
                 .endTime(LocalTime.of(9, 30))
                 .build();
 
-        testAppointmentSlotDTO = modelMapper.map(testAppointmentSlot, AppointmentSlotDTO.class);
+        testAppointmentSlotDTO = dtoMapper.toAppointmentSlotDTO(testAppointmentSlot);
 
         // Lista de slots de cita
         testAppointmentSlots = new ArrayList<>(List.of(testAppointmentSlot));
@@ -244,8 +277,6 @@ public class AppointmentSlotServiceTest {
         when(medicalProfileRepository.findById(1)).thenReturn(Optional.of(testDoctor));
         when(specialtyRepository.findById(1)).thenReturn(Optional.of(testSpecialty));
         when(roomRepository.findById(1)).thenReturn(Optional.of(testRoom));
-        when(appointmentSlotRepository.existsRoomOverlappingSlot(any(), any(), any(), any())).thenReturn(false);
-        when(appointmentSlotRepository.existsDoctorOverlappingSlot(any(), any(), any(), any())).thenReturn(false);
         when(appointmentSlotRepository.save(any(AppointmentSlotEntity.class))).thenReturn(testAppointmentSlot);
 
         // Act
@@ -266,8 +297,7 @@ public class AppointmentSlotServiceTest {
         verify(medicalProfileRepository).findById(1);
         verify(specialtyRepository).findById(1);
         verify(roomRepository).findById(1);
-        verify(appointmentSlotRepository).existsRoomOverlappingSlot(any(), any(), any(), any());
-        verify(appointmentSlotRepository).existsDoctorOverlappingSlot(any(), any(), any(), any());
+        verify(appointmentSlotRepository, never()).existsOverlappingSlot(any(), any(), any(), any(), any());
         verify(appointmentSlotRepository).save(any(AppointmentSlotEntity.class));
     }
 
@@ -277,7 +307,9 @@ public class AppointmentSlotServiceTest {
         when(medicalProfileRepository.findById(1)).thenReturn(Optional.of(testDoctor));
         when(specialtyRepository.findById(1)).thenReturn(Optional.of(testSpecialty));
         when(roomRepository.findById(1)).thenReturn(Optional.of(testRoom));
-        when(appointmentSlotRepository.existsRoomOverlappingSlot(any(), any(), any(), any())).thenReturn(true);
+
+        // Otro médico ocupa la consulta de 9:15 a 9:45
+        occupancyIndex.tryReserve(new AppointmentSlotIntervalDTO(2, 1, testAppointmentSlotRequest.getDate(), LocalTime.of(9, 15), LocalTime.of(9, 45)));
 
         // Act & Assert
         assertThrows(ConflictException.class, () -> appointmentSlotService.createAppointmentSlot(testAppointmentSlotRequest));
@@ -285,28 +317,29 @@ public class AppointmentSlotServiceTest {
         verify(medicalProfileRepository).findById(1);
         verify(specialtyRepository).findById(1);
         verify(roomRepository).findById(1);
-        verify(appointmentSlotRepository).existsRoomOverlappingSlot(any(), any(), any(), any());
         verify(appointmentSlotRepository, never()).save(any(AppointmentSlotEntity.class));
     }
 
     @Test
     void C7_deleteAppointmentSlot_should_delete_appointment_slot_when_it_exists() {
         // Arrange
-        when(appointmentSlotRepository.existsById(1)).thenReturn(true);
-        doNothing().when(appointmentSlotRepository).deleteById(1);
+        when(appointmentSlotRepository.findById(1)).thenReturn(Optional.of(testAppointmentSlot));
+        doNothing().when(appointmentSlotRepository).delete(testAppointmentSlot);
+        occupancyIndex.tryReserve(new AppointmentSlotIntervalDTO(1, 1, testAppointmentSlot.getDate(), LocalTime.of(9, 0), LocalTime.of(9, 30)));
 
         // Act
         assertDoesNotThrow(() -> appointmentSlotService.deleteAppointmentSlot(1));
 
-        // Assert
-        verify(appointmentSlotRepository).existsById(1);
-        verify(appointmentSlotRepository).deleteById(1);
+        // Assert: el intervalo vuelve a estar libre en el índice
+        assertFalse(occupancyIndex.isOccupied(new AppointmentSlotIntervalDTO(1, 1, testAppointmentSlot.getDate(), LocalTime.of(9, 0), LocalTime.of(9, 30))));
+        verify(appointmentSlotRepository).findById(1);
+        verify(appointmentSlotRepository).delete(testAppointmentSlot);
     }
 
     @Test
     void C8_deleteAppointmentSlot_should_throw_exception_when_appointment_slot_does_not_exist() {
         // Arrange
-        when(appointmentSlotRepository.existsById(1)).thenReturn(false);
+        when(appointmentSlotRepository.findById(1)).thenReturn(Optional.empty());
 
         // Act
         DataNotFoundException exception = assertThrows(DataNotFoundException.class, () -> appointmentSlotService.deleteAppointmentSlot(1));
@@ -317,8 +350,8 @@ public class AppointmentSlotServiceTest {
             assertEquals("data_not_found.appointment_slot", exception.getCode());
         });
 
-        verify(appointmentSlotRepository).existsById(1);
-        verify(appointmentSlotRepository, never()).deleteById(anyInt());
+        verify(appointmentSlotRepository).findById(1);
+        verify(appointmentSlotRepository, never()).delete(any(AppointmentSlotEntity.class));
     }
 
     @Test
@@ -330,8 +363,6 @@ public class AppointmentSlotServiceTest {
         }
 
         when(doctorScheduleRepository.findById(1)).thenReturn(Optional.of(testSchedule));
-        when(appointmentSlotRepository.existsRoomOverlappingSlot(any(), any(), any(), any())).thenReturn(false);
-        when(appointmentSlotRepository.existsDoctorOverlappingSlot(any(), any(), any(), any())).thenReturn(false);
         when(appointmentSlotRepository.saveAll(any())).thenAnswer(invocation -> invocation.getArgument(0));
 
         // Act
@@ -357,11 +388,35 @@ public class AppointmentSlotServiceTest {
         });
 
         verify(doctorScheduleRepository).findById(1);
-        verify(appointmentSlotRepository, times((14 - 9) * 2)).existsRoomOverlappingSlot(any(), any(), any(), any());
-        verify(appointmentSlotRepository, times((14 - 9) * 2)).existsDoctorOverlappingSlot(any(), any(), any(), any());
+        verify(appointmentSlotRepository, never()).existsOverlappingSlot(any(), any(), any(), any(), any());
         verify(appointmentSlotRepository).saveAll(any());
     }
 
+    @Test
+    void C11_generateAppointmentSlotsByScheduleId_should_throw_exception_when_a_single_slot_conflicts() {
+        // Arrange
+        LocalDate testDate = LocalDate.now().plusDays(7);
+        while (testDate.getDayOfWeek() != DayOfWeek.MONDAY) {
+            testDate = testDate.plusDays(1);
+        }
+
+        // El médico ya tiene un hueco de 13:45 a 14:15 en otra consulta, que solo choca con el último hueco del turno
+        when(doctorScheduleRepository.findById(1)).thenReturn(Optional.of(testSchedule));
+        occupancyIndex.tryReserve(new AppointmentSlotIntervalDTO(1, 2, testDate, LocalTime.of(13, 45), LocalTime.of(14, 15)));
+
+        // Act
+        LocalDate finalTestDate = testDate;
+        ConflictException exception = assertThrows(ConflictException.class, () -> appointmentSlotService.generateAppointmentSlotsByScheduleId(1, finalTestDate));
+
+        // Assert: no se reserva ninguno de los huecos del turno
+        assertAll(() -> {
+            assertEquals("conflict.schedule_conflict", exception.getCode());
+            assertFalse(occupancyIndex.isOccupied(new AppointmentSlotIntervalDTO(1, 1, finalTestDate, LocalTime.of(9, 0), LocalTime.of(9, 30))));
+        });
+
+        verify(appointmentSlotRepository, never()).saveAll(any());
+    }
+
     @Test
     void C10_getAvailableDatesByDoctorAndMedicalCenterAndSpecialty_should_return_list_of_available_slots() {
         // Arrange
@@ -386,4 +441,245 @@ public class AppointmentSlotServiceTest {
         verify(appointmentSlotRepository).findAvailableDatesByDoctorAndMedicalCenterAndSpecialty(
                 testMedicalCenter, testSpecialty, testDoctor);
     }
-}
\ No newline at end of file
+
+    @Test
+    void C12_getAvailableDatesByDoctorAndMedicalCenterAndSpecialty_should_compute_slots_from_schedules_in_virtual_mode() {
+        // Arrange: el hueco de las 9:00 del próximo lunes ya está reservado
+        LocalDate nextMonday = LocalDate.now().plusDays(1);
+        while (nextMonday.getDayOfWeek() != DayOfWeek.MONDAY) {
+            nextMonday = nextMonday.plusDays(1);
+        }
+
+        AppointmentSlotEntity bookedSlot = AppointmentSlotEntity.builder()
+                .id(5)
+                .doctor(testDoctor)
+                .specialty(testSpecialty)
+                .room(testRoom)
+                .date(nextMonday)
+                .startTime(LocalTime.of(9, 0))
+                .endTime(LocalTime.of(9, 30))
+                .appointment(AppointmentEntity.builder().id(1).build())
+                .build();
+
+        when(medicalProfileRepository.findById(1)).thenReturn(Optional.of(testDoctor));
+        when(specialtyRepository.findById(1)).thenReturn(Optional.of(testSpecialty));
+        when(medicalCenterRepository.findById(1)).thenReturn(Optional.of(testMedicalCenter));
+        when(doctorScheduleRepository.findByDoctorAndSpecialtyAndRoom_MedicalCenter(testDoctor, testSpecialty, testMedicalCenter)).thenReturn(List.of(testSchedule));
+        when(appointmentSlotRepository.findByDoctorAndDateBetween(eq(testDoctor), any(), any())).thenReturn(List.of(bookedSlot));
+
+        appointmentSlotsConfiguration.setMode(AppointmentSlotModeType.VIRTUAL);
+        try {
+            // Act
+            List<AppointmentSlotDTO> result = assertDoesNotThrow(() -> appointmentSlotService.getAvailableDatesByDoctorAndMedicalCenterAndSpecialty(1, 1, 1));
+
+            // Assert
+            LocalDate finalNextMonday = nextMonday;
+            List<AppointmentSlotDTO> mondaySlots = result.stream().filter(slot -> slot.getDate().equals(finalNextMonday)).toList();
+            assertAll(() -> {
+                assertEquals((14 - 9) * 2 - 1, mondaySlots.size());
+                assertEquals(LocalTime.of(9, 30), mondaySlots.getFirst().getStartTime());
+                assertNull(mondaySlots.getFirst().getId());
+                assertEquals(testSchedule.getId(), mondaySlots.getFirst().getScheduleId());
+                assertTrue(result.stream().allMatch(slot -> slot.getDate().getDayOfWeek() == DayOfWeek.MONDAY));
+            });
+
+            verify(appointmentSlotRepository, never()).findAvailableDatesByDoctorAndMedicalCenterAndSpecialty(any(), any(), any());
+        } finally {
+            appointmentSlotsConfiguration.setMode(AppointmentSlotModeType.MATERIALIZED);
+        }
+    }
+
+    @Test
+    void C13_materializeSlot_should_save_the_slot_of_the_schedule() {
+        // Arrange
+        LocalDate nextMonday = LocalDate.now().plusDays(1);
+        while (nextMonday.getDayOfWeek() != DayOfWeek.MONDAY) {
+            nextMonday = nextMonday.plusDays(1);
+        }
+
+        when(doctorScheduleRepository.findById(1)).thenReturn(Optional.of(testSchedule));
+        when(appointmentSlotRepository.findByDoctorAndDateAndStartTimeAndEndTime(any(), any(), any(), any())).thenReturn(Optional.empty());
+        when(appointmentSlotRepository.saveAndFlush(any(AppointmentSlotEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Act
+        LocalDate finalNextMonday = nextMonday;
+        AppointmentSlotEntity result = assertDoesNotThrow(() -> virtualAppointmentSlotService.materializeSlot(1, finalNextMonday, LocalTime.of(10, 30)));
+
+        // Assert
+        assertAll(() -> {
+            assertEquals(finalNextMonday, result.getDate());
+            assertEquals(LocalTime.of(10, 30), result.getStartTime());
+            assertEquals(LocalTime.of(11, 0), result.getEndTime());
+            assertEquals(testRoom.getId(), result.getRoom().getId());
+        });
+
+        verify(appointmentSlotRepository).saveAndFlush(any(AppointmentSlotEntity.class));
+    }
+
+    @Test
+    void C14_materializeSlot_should_throw_exception_when_slot_is_not_on_the_schedule_grid_or_already_taken() {
+        // Arrange
+        LocalDate nextMonday = LocalDate.now().plusDays(1);
+        while (nextMonday.getDayOfWeek() != DayOfWeek.MONDAY) {
+            nextMonday = nextMonday.plusDays(1);
+        }
+
+        when(doctorScheduleRepository.findById(1)).thenReturn(Optional.of(testSchedule));
+        when(appointmentSlotRepository.findByDoctorAndDateAndStartTimeAndEndTime(any(), any(), any(), any())).thenReturn(Optional.empty());
+        when(appointmentSlotRepository.saveAndFlush(any(AppointmentSlotEntity.class))).thenThrow(new DataIntegrityViolationException("duplicate key"));
+
+        // Act
+        LocalDate finalNextMonday = nextMonday;
+        DataNotFoundException notOnGrid = assertThrows(DataNotFoundException.class, () -> virtualAppointmentSlotService.materializeSlot(1, finalNextMonday, LocalTime.of(10, 15)));
+        ConflictException taken = assertThrows(ConflictException.class, () -> virtualAppointmentSlotService.materializeSlot(1, finalNextMonday, LocalTime.of(10, 0)));
+
+        // Assert
+        assertAll(() -> {
+            assertEquals("data_not_found.appointment_slot", notOnGrid.getCode());
+            assertEquals("conflict.appointment_slot_is_already_taken", taken.getCode());
+        });
+    }
+
+    @Test
+    void C15_getAvailableDatesByDoctorAndMedicalCenterAndSpecialty_should_be_served_from_cache_until_a_slot_is_booked() {
+        // Arrange
+        when(medicalProfileRepository.findById(1)).thenReturn(Optional.of(testDoctor));
+        when(specialtyRepository.findById(1)).thenReturn(Optional.of(testSpecialty));
+        when(medicalCenterRepository.findById(1)).thenReturn(Optional.of(testMedicalCenter));
+        when(appointmentSlotRepository.findAvailableDatesByDoctorAndMedicalCenterAndSpecialty(testMedicalCenter, testSpecialty, testDoctor)).thenReturn(testAppointmentSlots);
+        long previousHits = availabilityCache.getStats().get("availableSlots").hits();
+
+        // Act: la segunda consulta se sirve desde la caché y la reserva del hueco la invalida
+        List<AppointmentSlotDTO> first = assertDoesNotThrow(() -> appointmentSlotService.getAvailableDatesByDoctorAndMedicalCenterAndSpecialty(1, 1, 1));
+        List<AppointmentSlotDTO> cached = assertDoesNotThrow(() -> appointmentSlotService.getAvailableDatesByDoctorAndMedicalCenterAndSpecialty(1, 1, 1));
+        verify(appointmentSlotRepository, times(1)).findAvailableDatesByDoctorAndMedicalCenterAndSpecialty(testMedicalCenter, testSpecialty, testDoctor);
+
+        availabilityCalendar.markBooked(testAppointmentSlot);
+        assertDoesNotThrow(() -> appointmentSlotService.getAvailableDatesByDoctorAndMedicalCenterAndSpecialty(1, 1, 1));
+
+        // Assert
+        CacheStats stats = availabilityCache.getStats().get("availableSlots");
+        assertAll(() -> {
+            assertSame(first, cached);
+            assertEquals(previousHits + 1, stats.hits());
+            assertTrue(stats.invalidations() > 0);
+        });
+
+        verify(appointmentSlotRepository, times(2)).findAvailableDatesByDoctorAndMedicalCenterAndSpecialty(testMedicalCenter, testSpecialty, testDoctor);
+        verify(medicalProfileRepository, times(2)).findById(1);
+    }
+
+    @Test
+    void C16_streamWeeklyAppointmentSlotsByDoctorAndDate_should_deliver_every_slot_to_the_consumer() {
+        // Arrange
+        LocalDate testDate = LocalDate.now().plusDays(2);
+        LocalDate startDate = testDate.minusDays(testDate.getDayOfWeek().getValue() - 1);
+        LocalDate endDate = startDate.plusDays(6);
+
+        when(medicalProfileRepository.findById(1)).thenReturn(Optional.of(testDoctor));
+        when(appointmentSlotRepository.streamByDoctorAndDateBetween(testDoctor, startDate, endDate)).thenReturn(testAppointmentSlots.stream());
+        List<AppointmentSlotDTO> result = new ArrayList<>();
+
+        // Act
+        assertDoesNotThrow(() -> appointmentSlotService.streamWeeklyAppointmentSlotsByDoctorAndDate(1, testDate, result::add));
+
+        // Assert
+        assertAll(() -> {
+            assertEquals(1, result.size());
+            assertEquals(testAppointmentSlotDTO.getId(), result.getFirst().getId());
+        });
+
+        verify(appointmentSlotRepository).streamByDoctorAndDateBetween(testDoctor, startDate, endDate);
+        verify(appointmentSlotRepository, never()).findByDoctorAndDateBetween(any(), any(), any());
+    }
+
+    @Test
+    void C17_rebuild_should_keep_reservations_of_open_transactions() {
+        // Arrange: la tabla de huecos todavía no tiene las reservas de las transacciones abiertas
+        LocalDate testDate = LocalDate.now().plusDays(2);
+        AppointmentSlotIntervalDTO committed = new AppointmentSlotIntervalDTO(1, 1, testDate, LocalTime.of(9, 0), LocalTime.of(9, 30));
+        AppointmentSlotIntervalDTO rolledBack = new AppointmentSlotIntervalDTO(1, 1, testDate, LocalTime.of(10, 0), LocalTime.of(10, 30));
+        when(appointmentSlotRepository.findIntervalsFrom(any())).thenReturn(List.of());
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+
+        // Act
+        transactionTemplate.executeWithoutResult(status -> {
+            assertTrue(occupancyIndex.tryReserve(committed));
+            occupancyIndex.rebuild();
+            assertTrue(occupancyIndex.isOccupied(committed));
+        });
+        when(appointmentSlotRepository.findIntervalsFrom(any())).thenReturn(List.of(committed));
+        transactionTemplate.executeWithoutResult(status -> {
+            assertTrue(occupancyIndex.tryReserve(rolledBack));
+            occupancyIndex.rebuild();
+            status.setRollbackOnly();
+        });
+
+        // Assert: la reserva confirmada se mantiene y la revertida se libera una sola vez
+        assertAll(() -> {
+            assertTrue(occupancyIndex.isOccupied(committed));
+            assertFalse(occupancyIndex.isOccupied(rolledBack));
+        });
+    }
+
+    @Test
+    void C18_virtual_slots_should_end_within_the_schedule_and_skip_occupied_rooms() {
+        // Arrange: el turno acaba a las 10:45, así que el hueco de las 10:30 no cabe, y otro médico tiene la consulta de 9:30 a 10:00
+        LocalDate nextMonday = LocalDate.now().plusDays(1);
+        while (nextMonday.getDayOfWeek() != DayOfWeek.MONDAY) {
+            nextMonday = nextMonday.plusDays(1);
+        }
+
+        testSchedule.setEndTime(LocalTime.of(10, 45));
+        when(medicalProfileRepository.findById(1)).thenReturn(Optional.of(testDoctor));
+        when(specialtyRepository.findById(1)).thenReturn(Optional.of(testSpecialty));
+        when(medicalCenterRepository.findById(1)).thenReturn(Optional.of(testMedicalCenter));
+        when(doctorScheduleRepository.findByDoctorAndSpecialtyAndRoom_MedicalCenter(testDoctor, testSpecialty, testMedicalCenter)).thenReturn(List.of(testSchedule));
+        when(doctorScheduleRepository.findById(1)).thenReturn(Optional.of(testSchedule));
+        when(appointmentSlotRepository.findIntervalsByRoomInBetween(any(), any(), any()))
+                .thenReturn(List.of(new AppointmentSlotIntervalDTO(2, testRoom.getId(), nextMonday, LocalTime.of(9, 30), LocalTime.of(10, 0))));
+
+        appointmentSlotsConfiguration.setMode(AppointmentSlotModeType.VIRTUAL);
+        try {
+            // Act
+            List<AppointmentSlotDTO> result = assertDoesNotThrow(() -> appointmentSlotService.getAvailableDatesByDoctorAndMedicalCenterAndSpecialty(1, 1, 1));
+
+            // Assert
+            LocalDate finalNextMonday = nextMonday;
+            List<LocalTime> mondayStarts = result.stream().filter(slot -> slot.getDate().equals(finalNextMonday)).map(AppointmentSlotDTO::getStartTime).toList();
+            assertAll(() -> {
+                assertEquals(List.of(LocalTime.of(9, 0), LocalTime.of(10, 0)), mondayStarts);
+                assertTrue(result.stream().noneMatch(slot -> slot.getEndTime().isAfter(LocalTime.of(10, 45))));
+            });
+
+            assertThrows(DataNotFoundException.class, () -> virtualAppointmentSlotService.materializeSlot(1, finalNextMonday, LocalTime.of(10, 30)));
+        } finally {
+            appointmentSlotsConfiguration.setMode(AppointmentSlotModeType.MATERIALIZED);
+        }
+    }
+
+    @Test
+    void C19_generateAppointmentSlotsByScheduleId_should_only_create_slots_that_end_within_the_schedule() {
+        // Arrange: un turno de 22:00 a 23:50 con huecos de 45 minutos. El tercer hueco terminaría a las 0:15
+        LocalDate testDate = LocalDate.now().plusDays(7);
+        while (testDate.getDayOfWeek() != DayOfWeek.MONDAY) {
+            testDate = testDate.plusDays(1);
+        }
+
+        testSchedule.setStartTime(LocalTime.of(22, 0));
+        testSchedule.setEndTime(LocalTime.of(23, 50));
+        testSchedule.setDuration(45);
+        when(doctorScheduleRepository.findById(1)).thenReturn(Optional.of(testSchedule));
+        when(appointmentSlotRepository.saveAll(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Act
+        LocalDate finalTestDate = testDate;
+        List<AppointmentSlotDTO> result = assertDoesNotThrow(() -> appointmentSlotService.generateAppointmentSlotsByScheduleId(1, finalTestDate));
+
+        // Assert: no se crea ningún hueco que pase de medianoche ni se vuelve a empezar desde las 0:00
+        assertAll(() -> {
+            assertEquals(List.of(LocalTime.of(22, 0), LocalTime.of(22, 45)), result.stream().map(AppointmentSlotDTO::getStartTime).toList());
+            assertEquals(LocalTime.of(23, 30), result.getLast().getEndTime());
+        });
+    }
+}
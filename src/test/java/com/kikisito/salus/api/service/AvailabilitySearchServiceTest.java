@@ -0,0 +1,258 @@
+package com.kikisito.salus.api.service;
+
+import com.kikisito.salus.api.config.AppointmentSlotsConfiguration;
+import com.kikisito.salus.api.dto.AppointmentSlotDTO;
+import com.kikisito.salus.api.dto.request.AvailableSlotsSearchRequest;
+import com.kikisito.salus.api.dto.response.AvailableSlotsSearchResponse;
+import com.kikisito.salus.api.entity.*;
+import com.kikisito.salus.api.exception.BadRequestException;
+import com.kikisito.salus.api.repository.AppointmentSlotRepository;
+import com.kikisito.salus.api.repository.DoctorScheduleRepository;
+import com.kikisito.salus.api.type.AppointmentSlotModeType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class AvailabilitySearchServiceTest {
+
+    @MockitoBean
+    private AppointmentSlotRepository appointmentSlotRepository;
+
+    @MockitoBean
+    private DoctorScheduleRepository doctorScheduleRepository;
+
+    @Autowired
+    private AvailabilitySearchService availabilitySearchService;
+
+    @Autowired
+    private AppointmentSlotsConfiguration appointmentSlotsConfiguration;
+
+    private MedicalProfileEntity testDoctor;
+    private MedicalProfileEntity otherDoctor;
+    private SpecialtyEntity testSpecialty;
+    private RoomEntity testRoom;
+    private LocalDate nextMonday;
+
+    @BeforeEach
+    void setUp() {
+        testSpecialty = SpecialtyEntity.builder()
+                .id(1)
+                .name("Cardiología")
+                .build();
+
+        testDoctor = MedicalProfileEntity.builder()
+                .id(1)
+                .license("COLEG-TEST-1")
+                .specialties(new ArrayList<>(List.of(testSpecialty)))
+                .build();
+
+        otherDoctor = MedicalProfileEntity.builder()
+                .id(2)
+                .license("COLEG-TEST-2")
+                .specialties(new ArrayList<>(List.of(testSpecialty)))
+                .build();
+
+        MedicalCenterEntity testMedicalCenter = MedicalCenterEntity.builder()
+                .id(1)
+                .name("Hospital de Pruebas")
+                .build();
+
+        testRoom = RoomEntity.builder()
+                .id(1)
+                .name("Consulta 1")
+                .medicalCenter(testMedicalCenter)
+                .build();
+
+        nextMonday = LocalDate.now().plusDays(1);
+        while (nextMonday.getDayOfWeek() != DayOfWeek.MONDAY) {
+            nextMonday = nextMonday.plusDays(1);
+        }
+    }
+
+    @Test
+    void C1_searchEarliestAvailableSlots_should_return_next_cursor_when_page_is_full() {
+        // Arrange
+        AppointmentSlotEntity slot = AppointmentSlotEntity.builder()
+                .id(1)
+                .doctor(testDoctor)
+                .specialty(testSpecialty)
+                .room(testRoom)
+                .date(nextMonday)
+                .startTime(LocalTime.of(9, 0))
+                .endTime(LocalTime.of(9, 30))
+                .build();
+
+        when(appointmentSlotRepository.findEarliestAvailable(any(), any(), any(), any(), any(), any(), any(), any(), any())).thenReturn(List.of(slot));
+
+        AvailableSlotsSearchRequest request = AvailableSlotsSearchRequest.builder()
+                .specialtyId(1)
+                .startDate(nextMonday)
+                .limit(1)
+                .build();
+
+        // Act
+        AvailableSlotsSearchResponse firstPage = assertDoesNotThrow(() -> availabilitySearchService.searchEarliestAvailableSlots(request));
+
+        request.setCursor(firstPage.getNextCursor());
+        assertDoesNotThrow(() -> availabilitySearchService.searchEarliestAvailableSlots(request));
+
+        // Assert: la segunda página continúa justo después del último hueco de la primera
+        assertAll(() -> {
+            assertEquals(1, firstPage.getSlots().size());
+            assertEquals(1, firstPage.getSlots().getFirst().getId());
+            assertNotNull(firstPage.getNextCursor());
+        });
+
+        LocalDate endDate = nextMonday.plusWeeks(appointmentSlotsConfiguration.getHorizonWeeks());
+        verify(appointmentSlotRepository).findEarliestAvailable(eq(1), isNull(), isNull(), eq(nextMonday), eq(LocalTime.MIN), eq(0), eq(endDate), any(), eq(PageRequest.of(0, 1)));
+        verify(appointmentSlotRepository).findEarliestAvailable(eq(1), isNull(), isNull(), eq(nextMonday), eq(LocalTime.of(9, 0)), eq(1), eq(endDate), any(), eq(PageRequest.of(0, 1)));
+        verify(doctorScheduleRepository, never()).findForAvailabilitySearch(any(), any(), any());
+    }
+
+    @Test
+    void C2_searchEarliestAvailableSlots_should_compute_earliest_slots_of_every_doctor_in_virtual_mode() {
+        // Arrange: los dos médicos pasan consulta los lunes a partir de las 9:00 y el primero ya tiene reservado su primer hueco
+        DoctorScheduleEntity testSchedule = DoctorScheduleEntity.builder()
+                .id(1)
+                .doctor(testDoctor)
+                .specialty(testSpecialty)
+                .room(testRoom)
+                .dayOfWeek(DayOfWeek.MONDAY)
+                .startTime(LocalTime.of(9, 0))
+                .endTime(LocalTime.of(11, 0))
+                .duration(30)
+                .build();
+
+        DoctorScheduleEntity otherSchedule = DoctorScheduleEntity.builder()
+                .id(2)
+                .doctor(otherDoctor)
+                .specialty(testSpecialty)
+                .room(testRoom)
+                .dayOfWeek(DayOfWeek.MONDAY)
+                .startTime(LocalTime.of(9, 0))
+                .endTime(LocalTime.of(11, 0))
+                .duration(30)
+                .build();
+
+        AppointmentSlotEntity bookedSlot = AppointmentSlotEntity.builder()
+                .id(1)
+                .doctor(testDoctor)
+                .specialty(testSpecialty)
+                .room(testRoom)
+                .date(nextMonday)
+                .startTime(LocalTime.of(9, 0))
+                .endTime(LocalTime.of(9, 30))
+                .appointment(AppointmentEntity.builder().id(1).build())
+                .build();
+
+        when(doctorScheduleRepository.findForAvailabilitySearch(1, null, null)).thenReturn(List.of(testSchedule, otherSchedule));
+        when(appointmentSlotRepository.findByDoctorInAndDateBetween(any(), any(), any())).thenReturn(List.of());
+        when(appointmentSlotRepository.findByDoctorInAndDateBetween(any(), eq(nextMonday), any())).thenReturn(List.of(bookedSlot));
+
+        AvailableSlotsSearchRequest request = AvailableSlotsSearchRequest.builder()
+                .specialtyId(1)
+                .startDate(nextMonday)
+                .limit(3)
+                .build();
+
+        appointmentSlotsConfiguration.setMode(AppointmentSlotModeType.VIRTUAL);
+        try {
+            // Act
+            AvailableSlotsSearchResponse firstPage = assertDoesNotThrow(() -> availabilitySearchService.searchEarliestAvailableSlots(request));
+
+            request.setCursor(firstPage.getNextCursor());
+            AvailableSlotsSearchResponse secondPage = assertDoesNotThrow(() -> availabilitySearchService.searchEarliestAvailableSlots(request));
+
+            // Assert
+            List<AppointmentSlotDTO> first = firstPage.getSlots();
+            List<AppointmentSlotDTO> second = secondPage.getSlots();
+            assertAll(() -> {
+                assertEquals(3, first.size());
+                assertEquals(LocalTime.of(9, 0), first.get(0).getStartTime());
+                assertEquals(2, first.get(0).getDoctor().getId());
+                assertEquals(LocalTime.of(9, 30), first.get(1).getStartTime());
+                assertEquals(1, first.get(1).getDoctor().getId());
+                assertEquals(LocalTime.of(9, 30), first.get(2).getStartTime());
+                assertEquals(2, first.get(2).getDoctor().getId());
+
+                assertEquals(3, second.size());
+                assertEquals(LocalTime.of(10, 0), second.get(0).getStartTime());
+                assertEquals(1, second.get(0).getDoctor().getId());
+                assertTrue(second.stream().allMatch(slot -> slot.getDate().equals(nextMonday)));
+            });
+
+            verify(appointmentSlotRepository, never()).findEarliestAvailable(any(), any(), any(), any(), any(), any(), any(), any(), any());
+        } finally {
+            appointmentSlotsConfiguration.setMode(AppointmentSlotModeType.MATERIALIZED);
+        }
+    }
+
+    @Test
+    void C3_searchEarliestAvailableSlots_should_throw_exception_when_cursor_is_not_valid() {
+        // Arrange
+        AvailableSlotsSearchRequest request = AvailableSlotsSearchRequest.builder()
+                .specialtyId(1)
+                .cursor("no-es-un-cursor")
+                .build();
+
+        // Act
+        BadRequestException exception = assertThrows(BadRequestException.class, () -> availabilitySearchService.searchEarliestAvailableSlots(request));
+
+        // Assert
+        assertEquals("bad_request.invalid_cursor", exception.getCode());
+        verify(appointmentSlotRepository, never()).findEarliestAvailable(any(), any(), any(), any(), any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void C4_searchEarliestAvailableSlots_should_not_search_beyond_the_horizon_in_virtual_mode() {
+        // Arrange: un turno en el que no cabe ningún hueco y un rango de diez años
+        DoctorScheduleEntity testSchedule = DoctorScheduleEntity.builder()
+                .id(1)
+                .doctor(testDoctor)
+                .specialty(testSpecialty)
+                .room(testRoom)
+                .dayOfWeek(DayOfWeek.MONDAY)
+                .startTime(LocalTime.of(9, 0))
+                .endTime(LocalTime.of(9, 20))
+                .duration(30)
+                .build();
+
+        when(doctorScheduleRepository.findForAvailabilitySearch(1, null, null)).thenReturn(List.of(testSchedule));
+        when(appointmentSlotRepository.findByDoctorInAndDateBetween(any(), any(), any())).thenReturn(List.of());
+
+        AvailableSlotsSearchRequest request = AvailableSlotsSearchRequest.builder()
+                .specialtyId(1)
+                .startDate(nextMonday)
+                .endDate(nextMonday.plusYears(10))
+                .build();
+        LocalDate horizonEnd = nextMonday.plusWeeks(appointmentSlotsConfiguration.getHorizonWeeks());
+
+        appointmentSlotsConfiguration.setMode(AppointmentSlotModeType.VIRTUAL);
+        try {
+            // Act
+            AvailableSlotsSearchResponse result = assertDoesNotThrow(() -> availabilitySearchService.searchEarliestAvailableSlots(request));
+
+            // Assert: un bloque de días por semana del horizonte, como mucho
+            assertTrue(result.getSlots().isEmpty());
+            verify(appointmentSlotRepository, atMost(appointmentSlotsConfiguration.getHorizonWeeks() + 1)).findByDoctorInAndDateBetween(any(), any(), any());
+            verify(appointmentSlotRepository, never()).findByDoctorInAndDateBetween(any(), any(), argThat(date -> date.isAfter(horizonEnd)));
+        } finally {
+            appointmentSlotsConfiguration.setMode(AppointmentSlotModeType.MATERIALIZED);
+        }
+    }
+}
@@ -2,12 +2,15 @@ package com.kikisito.salus.api.service;
 
 import com.kikisito.salus.api.dto.ChatDTO;
 import com.kikisito.salus.api.dto.ChatMessageDTO;
+import com.kikisito.salus.api.dto.ChatUnreadCountDTO;
 import com.kikisito.salus.api.dto.request.ChatMessageRequest;
 import com.kikisito.salus.api.entity.ChatEntity;
 import com.kikisito.salus.api.entity.ChatMessagesEntity;
 import com.kikisito.salus.api.entity.MedicalProfileEntity;
 import com.kikisito.salus.api.entity.UserEntity;
+import com.kikisito.salus.api.exception.BadRequestException;
 import com.kikisito.salus.api.exception.DataNotFoundException;
+import com.kikisito.salus.api.mapper.DtoMapper;
 import com.kikisito.salus.api.repository.ChatMessageRepository;
 import com.kikisito.salus.api.repository.ChatRepository;
 import com.kikisito.salus.api.repository.MedicalProfileRepository;
@@ -16,9 +19,9 @@ import com.kikisito.salus.api.type.MessageSenderType;
 import com.kikisito.salus.api.type.RoleType;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 
@@ -51,7 +54,7 @@ public class ChatServiceTest {
     private WebSocketService webSocketService;
 
     @Autowired
-    private ModelMapper modelMapper;
+    private DtoMapper dtoMapper;
 
     @Autowired
     private ChatService chatService;
@@ -116,8 +119,17 @@ public class ChatServiceTest {
                 .updatedAt(LocalDateTime.now())
                 .build();
 
-        testChatMessageDTO = modelMapper.map(testChatMessage, ChatMessageDTO.class);
-        testChatDTO = modelMapper.map(testChat, ChatDTO.class);
+        // Resumen del último mensaje guardado en la fila del chat, con un mensaje sin leer de cada lado
+        testChat.setLastMessageId(testChatMessage.getId());
+        testChat.setLastMessageSenderType(testChatMessage.getSenderType());
+        testChat.setLastMessagePreview(testChatMessage.getContent());
+        testChat.setLastMessageAt(testChatMessage.getCreatedAt());
+        testChat.setLastActivityAt(testChatMessage.getCreatedAt());
+        testChat.setPatientUnreadCount(1);
+        testChat.setDoctorUnreadCount(1);
+
+        testChatMessageDTO = dtoMapper.toChatMessageDTO(testChatMessage);
+        testChatDTO = dtoMapper.toChatDTO(testChat);
         testChatDTO.setLastMessage(testChatMessageDTO);
         testChatDTO.setUnreadMessages(1);
         testChats = new ArrayList<>(Collections.singletonList(testChat));
@@ -128,9 +140,7 @@ public class ChatServiceTest {
     void C1_getPatientChats_should_return_one_chat() {
         // Arrange
         when(userRepository.findById(1)).thenReturn(Optional.of(testPatient));
-        when(chatRepository.findByPatientOrderByUpdatedAtDesc(testPatient)).thenReturn(testChats);
-        when(chatMessageRepository.findByChatOrderByCreatedAtAsc(testChat)).thenReturn(testMessages);
-        when(chatMessageRepository.countByChatAndReadFalseAndSenderType(any(), any())).thenReturn(1);
+        when(chatRepository.findByPatientOrderByLastActivityAtDescIdDesc(testPatient)).thenReturn(testChats);
 
         // Act
         List<ChatDTO> result = assertDoesNotThrow(() -> chatService.getPatientChats(1));
@@ -147,18 +157,16 @@ public class ChatServiceTest {
         });
 
         verify(userRepository).findById(1);
-        verify(chatRepository).findByPatientOrderByUpdatedAtDesc(testPatient);
-        verify(chatMessageRepository).findByChatOrderByCreatedAtAsc(testChat);
-        verify(chatMessageRepository).countByChatAndReadFalseAndSenderType(any(), any());
+        verify(chatRepository).findByPatientOrderByLastActivityAtDescIdDesc(testPatient);
+        verify(chatMessageRepository, never()).findLastMessagesByChatIn(any());
+        verify(chatMessageRepository, never()).countUnreadByChatIn(any(), any());
     }
 
     @Test
     void C2_getDoctorChats_should_return_one_chat() {
         // Arrange
         when(medicalProfileRepository.findById(1)).thenReturn(Optional.of(testDoctor));
-        when(chatRepository.findByDoctorOrderByUpdatedAtDesc(testDoctor)).thenReturn(testChats);
-        when(chatMessageRepository.findByChatOrderByCreatedAtAsc(testChat)).thenReturn(testMessages);
-        when(chatMessageRepository.countByChatAndReadFalseAndSenderType(any(), any())).thenReturn(1);
+        when(chatRepository.findByDoctorOrderByLastActivityAtDescIdDesc(testDoctor)).thenReturn(testChats);
 
         // Act
         List<ChatDTO> result = assertDoesNotThrow(() -> chatService.getDoctorChats(1));
@@ -175,9 +183,9 @@ public class ChatServiceTest {
         });
 
         verify(medicalProfileRepository).findById(1);
-        verify(chatRepository).findByDoctorOrderByUpdatedAtDesc(testDoctor);
-        verify(chatMessageRepository).findByChatOrderByCreatedAtAsc(testChat);
-        verify(chatMessageRepository).countByChatAndReadFalseAndSenderType(any(), any());
+        verify(chatRepository).findByDoctorOrderByLastActivityAtDescIdDesc(testDoctor);
+        verify(chatMessageRepository, never()).findLastMessagesByChatIn(any());
+        verify(chatMessageRepository, never()).countUnreadByChatIn(any(), any());
     }
 
     @Test
@@ -186,8 +194,6 @@ public class ChatServiceTest {
         when(userRepository.findById(1)).thenReturn(Optional.of(testPatient));
         when(medicalProfileRepository.findById(1)).thenReturn(Optional.of(testDoctor));
         when(chatRepository.findByPatientAndDoctor(testPatient, testDoctor)).thenReturn(Optional.of(testChat));
-        when(chatMessageRepository.findByChatOrderByCreatedAtAsc(testChat)).thenReturn(testMessages);
-        when(chatMessageRepository.countByChatAndReadFalseAndSenderType(any(), any())).thenReturn(1);
 
         // Act
         ChatDTO result = assertDoesNotThrow(() -> chatService.getChatInfo(1, 1, testPatient));
@@ -205,8 +211,7 @@ public class ChatServiceTest {
         verify(userRepository).findById(1);
         verify(medicalProfileRepository).findById(1);
         verify(chatRepository).findByPatientAndDoctor(testPatient, testDoctor);
-        verify(chatMessageRepository).findByChatOrderByCreatedAtAsc(testChat);
-        verify(chatMessageRepository).countByChatAndReadFalseAndSenderType(any(), any());
+        verifyNoInteractions(chatMessageRepository);
     }
 
     @Test
@@ -215,9 +220,11 @@ public class ChatServiceTest {
         when(userRepository.findById(1)).thenReturn(Optional.of(testPatient));
         when(medicalProfileRepository.findById(1)).thenReturn(Optional.of(testDoctor));
         when(chatRepository.findByPatientAndDoctor(testPatient, testDoctor)).thenReturn(Optional.empty());
-        when(chatRepository.save(any(ChatEntity.class))).thenReturn(testChat);
-        when(chatMessageRepository.findByChatOrderByCreatedAtAsc(testChat)).thenReturn(Collections.emptyList());
-        when(chatMessageRepository.countByChatAndReadFalseAndSenderType(any(), any())).thenReturn(0);
+        when(chatRepository.save(any(ChatEntity.class))).thenAnswer(invocation -> {
+            ChatEntity newChat = invocation.getArgument(0);
+            newChat.setId(1);
+            return newChat;
+        });
 
         // Act
         ChatDTO result = assertDoesNotThrow(() -> chatService.getChatInfo(1, 1, testDoctorUser));
@@ -235,9 +242,8 @@ public class ChatServiceTest {
         verify(userRepository).findById(1);
         verify(medicalProfileRepository).findById(1);
         verify(chatRepository).findByPatientAndDoctor(testPatient, testDoctor);
-        verify(chatRepository).save(any(ChatEntity.class));
-        verify(chatMessageRepository).findByChatOrderByCreatedAtAsc(testChat);
-        verify(chatMessageRepository).countByChatAndReadFalseAndSenderType(any(), any());
+        verify(chatRepository).save(argThat(chat -> chat.getLastActivityAt() != null && chat.getPatientUnreadCount() == 0 && chat.getDoctorUnreadCount() == 0));
+        verifyNoInteractions(chatMessageRepository);
     }
 
     @Test
@@ -246,17 +252,16 @@ public class ChatServiceTest {
         when(userRepository.findById(1)).thenReturn(Optional.of(testPatient));
         when(medicalProfileRepository.findById(1)).thenReturn(Optional.of(testDoctor));
         when(chatRepository.findByPatientAndDoctor(testPatient, testDoctor)).thenReturn(Optional.of(testChat));
-        when(chatMessageRepository.findByChatOrderByCreatedAtAsc(testChat)).thenReturn(testMessages);
-        when(chatMessageRepository.findByChatAndSenderTypeAndReadIsFalse(testChat, MessageSenderType.DOCTOR)).thenAnswer(
+        when(chatMessageRepository.findByChatOrderByCreatedAtDescIdDesc(testChat, PageRequest.of(0, 50))).thenReturn(testMessages);
+        when(chatMessageRepository.markAsRead(testChat, MessageSenderType.DOCTOR)).thenAnswer(
                 invocation -> {
-                    List<ChatMessagesEntity> unreadMessages = new ArrayList<>(Collections.singletonList(testChatMessage));
-                    unreadMessages.forEach(message -> message.setRead(true));
-                    return unreadMessages;
+                    testChatMessage.setRead(true);
+                    return 1;
                 }
         );
 
         // Act
-        List<ChatMessageDTO> result = assertDoesNotThrow(() -> chatService.getChatMessages(1, 1, testPatient));
+        List<ChatMessageDTO> result = assertDoesNotThrow(() -> chatService.getChatMessages(1, 1, Optional.empty(), Optional.empty(), Optional.empty(), testPatient));
 
         // Assert
         assertAll(() -> {
@@ -271,9 +276,9 @@ public class ChatServiceTest {
         verify(userRepository).findById(1);
         verify(medicalProfileRepository).findById(1);
         verify(chatRepository).findByPatientAndDoctor(testPatient, testDoctor);
-        verify(chatMessageRepository).findByChatOrderByCreatedAtAsc(testChat);
-        verify(chatMessageRepository).findByChatAndSenderTypeAndReadIsFalse(testChat, MessageSenderType.DOCTOR);
-        verify(chatMessageRepository).save(any(ChatMessagesEntity.class));
+        verify(chatMessageRepository).findByChatOrderByCreatedAtDescIdDesc(testChat, PageRequest.of(0, 50));
+        verify(chatRepository).resetPatientUnreadCount(1);
+        verify(chatMessageRepository).markAsRead(testChat, MessageSenderType.DOCTOR);
     }
 
     @Test
@@ -284,7 +289,7 @@ public class ChatServiceTest {
         when(chatRepository.findByPatientAndDoctor(testPatient, testDoctor)).thenReturn(Optional.empty());
 
         // Act
-        DataNotFoundException exception = assertThrows(DataNotFoundException.class, () -> chatService.getChatMessages(1, 1, testPatient));
+        DataNotFoundException exception = assertThrows(DataNotFoundException.class, () -> chatService.getChatMessages(1, 1, Optional.empty(), Optional.empty(), Optional.empty(), testPatient));
 
         // Assert
         assertEquals("data_not_found.chat", exception.getCode());
@@ -292,7 +297,7 @@ public class ChatServiceTest {
         verify(userRepository).findById(1);
         verify(medicalProfileRepository).findById(1);
         verify(chatRepository).findByPatientAndDoctor(testPatient, testDoctor);
-        verify(chatMessageRepository, never()).findByChatOrderByCreatedAtAsc(any());
+        verify(chatMessageRepository, never()).findByChatOrderByCreatedAtDescIdDesc(any(), any());
     }
 
     @Test
@@ -323,6 +328,7 @@ public class ChatServiceTest {
         verify(userRepository).findById(1);
         verify(chatRepository).findByPatientAndDoctor(testPatient, testDoctor);
         verify(chatMessageRepository).save(any(ChatMessagesEntity.class));
+        verify(chatRepository).registerMessage(1, 1, MessageSenderType.DOCTOR, "Hola, ¿cómo te encuentras?", testChatMessage.getCreatedAt(), 1, 0);
         verify(webSocketService).sendMessageToUser(eq(testPatient), any(ChatMessageDTO.class));
     }
 
@@ -356,6 +362,7 @@ public class ChatServiceTest {
         verify(chatRepository).findByPatientAndDoctor(testPatient, testDoctor);
         verify(chatRepository).save(any(ChatEntity.class));
         verify(chatMessageRepository).save(any(ChatMessagesEntity.class));
+        verify(chatRepository).registerMessage(1, 1, MessageSenderType.DOCTOR, "Hola, ¿cómo te encuentras?", testChatMessage.getCreatedAt(), 1, 0);
         verify(webSocketService).sendMessageToUser(eq(testPatient), any(ChatMessageDTO.class));
     }
 
@@ -366,7 +373,7 @@ public class ChatServiceTest {
                 .message("Hola, ¿cuándo tendré disponible mi informe médico?")
                 .build();
         testChatMessage.setSenderType(MessageSenderType.PATIENT);
-        testChatMessageDTO = modelMapper.map(testChatMessage, ChatMessageDTO.class);
+        testChatMessageDTO = dtoMapper.toChatMessageDTO(testChatMessage);
 
         when(medicalProfileRepository.findById(2)).thenReturn(Optional.of(testDoctor));
         when(userRepository.findById(1)).thenReturn(Optional.of(testPatient));
@@ -389,6 +396,7 @@ public class ChatServiceTest {
         verify(userRepository).findById(1);
         verify(chatRepository).findByPatientAndDoctor(testPatient, testDoctor);
         verify(chatMessageRepository).save(any(ChatMessagesEntity.class));
+        verify(chatRepository).registerMessage(1, 1, MessageSenderType.PATIENT, "Hola, ¿cuándo tendré disponible mi informe médico?", testChatMessage.getCreatedAt(), 0, 1);
         verify(webSocketService).sendMessageToUser(eq(testDoctorUser), any(ChatMessageDTO.class));
     }
 
@@ -413,6 +421,7 @@ public class ChatServiceTest {
         verify(userRepository).findById(1);
         verify(chatRepository).findByPatientAndDoctor(testPatient, testDoctor);
         verify(chatMessageRepository, never()).save(any(ChatMessagesEntity.class));
+        verify(chatRepository, never()).registerMessage(any(), any(), any(), any(), any(), anyInt(), anyInt());
         verify(webSocketService, never()).sendMessageToUser(any(), any());
     }
 
@@ -452,16 +461,14 @@ public class ChatServiceTest {
 
     @Test
     void C12_markMessagesAsRead_should_update_messages() {
-        // Arrange
-        List<ChatMessagesEntity> unreadMessages = new ArrayList<>(Collections.singletonList(testChatMessage));
-        when(chatMessageRepository.findByChatAndSenderTypeAndReadIsFalse(testChat, MessageSenderType.DOCTOR)).thenReturn(unreadMessages);
-
         // Act
         chatService.markMessagesAsRead(testChat, MessageSenderType.DOCTOR);
 
-        // Assert
-        verify(chatMessageRepository).findByChatAndSenderTypeAndReadIsFalse(testChat, MessageSenderType.DOCTOR);
-        verify(chatMessageRepository).save(argThat(ChatMessagesEntity::getRead));
+        // Assert: el paciente lee los mensajes del médico, así que se ponen a cero sus no leídos
+        verify(chatRepository).resetPatientUnreadCount(1);
+        verify(chatRepository, never()).resetDoctorUnreadCount(any());
+        verify(chatMessageRepository).markAsRead(testChat, MessageSenderType.DOCTOR);
+        verify(chatMessageRepository, never()).save(any(ChatMessagesEntity.class));
     }
 
     @Test
@@ -481,7 +488,7 @@ public class ChatServiceTest {
         when(chatRepository.findByPatientAndDoctor(testPatient, testDoctor)).thenReturn(Optional.of(testChat));
 
         // Act
-        SecurityException exception = assertThrows(SecurityException.class, () -> chatService.getChatMessages(1, 1, otherUser));
+        SecurityException exception = assertThrows(SecurityException.class, () -> chatService.getChatMessages(1, 1, Optional.empty(), Optional.empty(), Optional.empty(), otherUser));
 
         // Assert
         assertEquals("User does not have access to this chat", exception.getMessage());
@@ -490,8 +497,8 @@ public class ChatServiceTest {
         verify(userRepository).findById(1);
         verify(medicalProfileRepository).findById(1);
         verify(chatRepository).findByPatientAndDoctor(testPatient, testDoctor);
-        verify(chatMessageRepository, never()).findByChatOrderByCreatedAtAsc(any());
-        verify(chatMessageRepository, never()).findByChatAndSenderTypeAndReadIsFalse(any(), any());
+        verify(chatMessageRepository, never()).findByChatOrderByCreatedAtDescIdDesc(any(), any());
+        verify(chatMessageRepository, never()).markAsRead(any(), any());
     }
 
     @Test
@@ -536,7 +543,78 @@ public class ChatServiceTest {
         verify(medicalProfileRepository).findById(12);
         verify(chatRepository, never()).findByPatientAndDoctor(testPatient, testDoctor);
         verify(chatRepository, never()).save(any(ChatEntity.class));
-        verify(chatMessageRepository, never()).findByChatOrderByCreatedAtAsc(any());
-        verify(chatMessageRepository, never()).countByChatAndReadFalseAndSenderType(any(), any());
+        verifyNoInteractions(chatMessageRepository);
+    }
+
+    @Test
+    void C15_getChatMessages_should_return_older_page_in_chronological_order() {
+        // Arrange: el repositorio devuelve los mensajes anteriores al 10 del más reciente al más antiguo
+        ChatMessagesEntity anchor = ChatMessagesEntity.builder().id(10).chat(testChat).createdAt(LocalDateTime.of(2025, 3, 10, 12, 0)).build();
+        ChatMessagesEntity newer = ChatMessagesEntity.builder().id(9).chat(testChat).content("Segundo").senderType(MessageSenderType.PATIENT).read(true).createdAt(LocalDateTime.of(2025, 3, 10, 11, 0)).build();
+        ChatMessagesEntity older = ChatMessagesEntity.builder().id(8).chat(testChat).content("Primero").senderType(MessageSenderType.DOCTOR).read(true).createdAt(LocalDateTime.of(2025, 3, 10, 10, 0)).build();
+
+        when(userRepository.findById(1)).thenReturn(Optional.of(testPatient));
+        when(medicalProfileRepository.findById(1)).thenReturn(Optional.of(testDoctor));
+        when(chatRepository.findByPatientAndDoctor(testPatient, testDoctor)).thenReturn(Optional.of(testChat));
+        when(chatMessageRepository.findByIdAndChat(10, testChat)).thenReturn(Optional.of(anchor));
+        when(chatMessageRepository.findPageBefore(testChat, anchor.getCreatedAt(), 10, PageRequest.of(0, 2))).thenReturn(List.of(newer, older));
+
+        // Act
+        List<ChatMessageDTO> result = assertDoesNotThrow(() -> chatService.getChatMessages(1, 1, Optional.of(10), Optional.empty(), Optional.of(2), testPatient));
+
+        // Assert
+        assertAll(() -> {
+            assertEquals(2, result.size());
+            assertEquals(8, result.get(0).getId());
+            assertEquals(9, result.get(1).getId());
+        });
+
+        verify(chatMessageRepository, never()).findByChatOrderByCreatedAtDescIdDesc(any(), any());
+    }
+
+    @Test
+    void C16_getChatMessages_should_throw_exception_when_cursor_message_is_not_in_chat() {
+        // Arrange
+        when(userRepository.findById(1)).thenReturn(Optional.of(testPatient));
+        when(medicalProfileRepository.findById(1)).thenReturn(Optional.of(testDoctor));
+        when(chatRepository.findByPatientAndDoctor(testPatient, testDoctor)).thenReturn(Optional.of(testChat));
+        when(chatMessageRepository.findByIdAndChat(50, testChat)).thenReturn(Optional.empty());
+
+        // Act
+        BadRequestException exception = assertThrows(BadRequestException.class, () -> chatService.getChatMessages(1, 1, Optional.empty(), Optional.of(50), Optional.empty(), testPatient));
+
+        // Assert
+        assertEquals("bad_request.invalid_cursor", exception.getCode());
+        verify(chatMessageRepository, never()).findPageAfter(any(), any(), any(), any());
+    }
+
+    @Test
+    void C17_backfillChatSummaries_should_fill_last_message_and_unread_counters() {
+        // Arrange: chat anterior al resumen en la fila, con dos mensajes del médico y uno del paciente sin leer
+        ChatEntity oldChat = ChatEntity.builder()
+                .id(5)
+                .doctor(testDoctor)
+                .patient(testPatient)
+                .createdAt(LocalDateTime.of(2025, 3, 1, 9, 0))
+                .build();
+        ChatMessagesEntity lastMessage = ChatMessagesEntity.builder().id(20).chat(oldChat).content("x".repeat(300)).senderType(MessageSenderType.PATIENT).read(false).createdAt(LocalDateTime.of(2025, 3, 2, 10, 0)).build();
+
+        when(chatRepository.findByLastActivityAtIsNull()).thenReturn(List.of(oldChat));
+        when(chatMessageRepository.findLastMessagesByChatIn(List.of(oldChat))).thenReturn(List.of(lastMessage));
+        when(chatMessageRepository.countUnreadByChatIn(List.of(oldChat), MessageSenderType.DOCTOR)).thenReturn(List.of(new ChatUnreadCountDTO(5, 2L)));
+        when(chatMessageRepository.countUnreadByChatIn(List.of(oldChat), MessageSenderType.PATIENT)).thenReturn(List.of(new ChatUnreadCountDTO(5, 1L)));
+
+        // Act
+        assertDoesNotThrow(() -> chatService.backfillChatSummaries());
+
+        // Assert
+        assertAll(() -> {
+            assertEquals(20, oldChat.getLastMessageId());
+            assertEquals(MessageSenderType.PATIENT, oldChat.getLastMessageSenderType());
+            assertEquals(ChatEntity.LAST_MESSAGE_PREVIEW_LENGTH, oldChat.getLastMessagePreview().length());
+            assertEquals(lastMessage.getCreatedAt(), oldChat.getLastActivityAt());
+            assertEquals(2, oldChat.getPatientUnreadCount());
+            assertEquals(1, oldChat.getDoctorUnreadCount());
+        });
     }
 }
\ No newline at end of file
@@ -0,0 +1,170 @@
+package com.kikisito.salus.api.service;
+
+import com.kikisito.salus.api.dto.request.DoctorAbsenceRequest;
+import com.kikisito.salus.api.dto.response.DoctorAbsenceResponse;
+import com.kikisito.salus.api.entity.*;
+import com.kikisito.salus.api.exception.BadRequestException;
+import com.kikisito.salus.api.occupancy.AbsenceIndex;
+import com.kikisito.salus.api.occupancy.IntervalSet;
+import com.kikisito.salus.api.repository.AppointmentRepository;
+import com.kikisito.salus.api.repository.AppointmentSlotRepository;
+import com.kikisito.salus.api.repository.DoctorAbsenceRepository;
+import com.kikisito.salus.api.repository.MedicalProfileRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class DoctorAbsenceServiceTest {
+
+    @MockitoBean
+    private DoctorAbsenceRepository doctorAbsenceRepository;
+
+    @MockitoBean
+    private MedicalProfileRepository medicalProfileRepository;
+
+    @MockitoBean
+    private AppointmentSlotRepository appointmentSlotRepository;
+
+    @MockitoBean
+    private AppointmentRepository appointmentRepository;
+
+    @Autowired
+    private DoctorAbsenceService doctorAbsenceService;
+
+    @Autowired
+    private AbsenceIndex absenceIndex;
+
+    private MedicalProfileEntity testDoctor;
+    private LocalDate absenceDate;
+    private DoctorAbsenceEntity testAbsence;
+    private AppointmentEntity testAppointment;
+
+    @BeforeEach
+    void setUp() {
+        testDoctor = MedicalProfileEntity.builder()
+                .id(1)
+                .license("COLEG-TEST-1")
+                .build();
+
+        // Ausencia desde las 12:00 de un día hasta las 10:00 del siguiente
+        absenceDate = LocalDate.now().plusDays(7);
+        testAbsence = DoctorAbsenceEntity.builder()
+                .id(1)
+                .doctor(testDoctor)
+                .startDateTime(absenceDate.atTime(12, 0))
+                .endDateTime(absenceDate.plusDays(1).atTime(10, 0))
+                .reason("Congreso")
+                .build();
+
+        AppointmentSlotEntity bookedSlot = AppointmentSlotEntity.builder()
+                .id(1)
+                .doctor(testDoctor)
+                .date(absenceDate)
+                .startTime(LocalTime.of(12, 30))
+                .endTime(LocalTime.of(13, 0))
+                .build();
+
+        testAppointment = AppointmentEntity.builder()
+                .id(1)
+                .slot(bookedSlot)
+                .patient(UserEntity.builder().id(2).build())
+                .build();
+
+        when(medicalProfileRepository.findById(1)).thenReturn(Optional.of(testDoctor));
+        when(doctorAbsenceRepository.findByEndDateTimeAfter(any())).thenReturn(new ArrayList<>());
+        absenceIndex.rebuild();
+    }
+
+    @Test
+    void C1_addAbsence_should_remove_free_slots_in_one_statement_and_report_booked_appointments() {
+        // Arrange
+        when(doctorAbsenceRepository.save(any(DoctorAbsenceEntity.class))).thenReturn(testAbsence);
+        when(doctorAbsenceRepository.findByEndDateTimeAfter(any())).thenReturn(new ArrayList<>(List.of(testAbsence)));
+        when(appointmentSlotRepository.findFreeIntervalsOverlapping(any(), any(), any(), any(), any())).thenReturn(List.of());
+        when(appointmentSlotRepository.deleteFreeSlotsOverlapping(any(), any(), any(), any(), any())).thenReturn(5);
+        when(appointmentRepository.findByDoctorOverlapping(any(), any(), any(), any(), any())).thenReturn(List.of(testAppointment));
+
+        DoctorAbsenceRequest request = DoctorAbsenceRequest.builder()
+                .doctor(1)
+                .startDateTime(testAbsence.getStartDateTime())
+                .endDateTime(testAbsence.getEndDateTime())
+                .reason("Congreso")
+                .build();
+
+        // Act
+        DoctorAbsenceResponse result = assertDoesNotThrow(() -> doctorAbsenceService.addAbsence(request));
+
+        // Assert: tras confirmar, la ausencia está en el índice que consultan las generaciones de huecos
+        assertAll(() -> {
+            assertEquals(1, result.getAbsence().getId());
+            assertEquals(5, result.getRemovedSlots());
+            assertEquals(1, result.getAffectedAppointments().size());
+            assertEquals(1, result.getAffectedAppointments().getFirst().getId());
+            assertTrue(absenceIndex.overlaps(1, absenceDate, LocalTime.of(11, 45), LocalTime.of(12, 15)));
+            assertFalse(absenceIndex.overlaps(1, absenceDate, LocalTime.of(11, 30), LocalTime.of(12, 0)));
+            assertFalse(absenceIndex.overlaps(2, absenceDate, LocalTime.of(12, 0), LocalTime.of(12, 30)));
+        });
+
+        verify(appointmentSlotRepository).deleteFreeSlotsOverlapping(1, absenceDate, LocalTime.of(12, 0), absenceDate.plusDays(1), LocalTime.of(10, 0));
+    }
+
+    @Test
+    void C2_addAbsence_should_throw_exception_when_end_is_not_after_start() {
+        // Arrange
+        DoctorAbsenceRequest request = DoctorAbsenceRequest.builder()
+                .doctor(1)
+                .startDateTime(testAbsence.getEndDateTime())
+                .endDateTime(testAbsence.getStartDateTime())
+                .build();
+
+        // Act
+        BadRequestException exception = assertThrows(BadRequestException.class, () -> doctorAbsenceService.addAbsence(request));
+
+        // Assert
+        assertEquals("bad_request.invalid_date_or_date_range", exception.getCode());
+        verify(doctorAbsenceRepository, never()).save(any(DoctorAbsenceEntity.class));
+        verify(appointmentSlotRepository, never()).deleteFreeSlotsOverlapping(any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void C3_absentMinutes_should_clip_absences_to_each_day_and_merge_overlapping_ones() {
+        // Arrange: una segunda ausencia solapa con la primera y la alarga hasta las 11:00
+        DoctorAbsenceEntity overlappingAbsence = DoctorAbsenceEntity.builder()
+                .id(2)
+                .doctor(testDoctor)
+                .startDateTime(absenceDate.plusDays(1).atTime(9, 0))
+                .endDateTime(absenceDate.plusDays(1).atTime(11, 0))
+                .build();
+        when(doctorAbsenceRepository.findByEndDateTimeAfter(any())).thenReturn(new ArrayList<>(List.of(overlappingAbsence, testAbsence)));
+
+        // Act
+        absenceIndex.rebuild();
+        IntervalSet firstDay = absenceIndex.absentMinutes(1, absenceDate);
+        IntervalSet secondDay = absenceIndex.absentMinutes(1, absenceDate.plusDays(1));
+        IntervalSet thirdDay = absenceIndex.absentMinutes(1, absenceDate.plusDays(2));
+
+        // Assert
+        assertAll(() -> {
+            assertTrue(firstDay.contains(12 * 60, 24 * 60));
+            assertFalse(firstDay.overlaps(0, 12 * 60));
+            assertTrue(secondDay.contains(0, 11 * 60));
+            assertFalse(secondDay.overlaps(11 * 60, 24 * 60));
+            assertTrue(thirdDay.isEmpty());
+            assertTrue(absenceIndex.overlaps(1, LocalDateTime.of(absenceDate.plusDays(1), LocalTime.of(10, 30)), LocalDateTime.of(absenceDate.plusDays(1), LocalTime.of(10, 45))));
+        });
+    }
+}
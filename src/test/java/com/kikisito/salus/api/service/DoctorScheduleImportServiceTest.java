@@ -0,0 +1,252 @@
+package com.kikisito.salus.api.service;
+
+import com.kikisito.salus.api.dto.ScheduleImportIssueDTO;
+import com.kikisito.salus.api.dto.request.DoctorScheduleRequest;
+import com.kikisito.salus.api.dto.response.DoctorScheduleImportResponse;
+import com.kikisito.salus.api.entity.*;
+import com.kikisito.salus.api.exception.BadRequestException;
+import com.kikisito.salus.api.repository.DoctorScheduleRepository;
+import com.kikisito.salus.api.repository.MedicalProfileRepository;
+import com.kikisito.salus.api.repository.RoomRepository;
+import com.kikisito.salus.api.repository.SpecialtyRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.time.DayOfWeek;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class DoctorScheduleImportServiceTest {
+
+    @MockitoBean
+    private DoctorScheduleRepository doctorScheduleRepository;
+
+    @MockitoBean
+    private MedicalProfileRepository medicalProfileRepository;
+
+    @MockitoBean
+    private SpecialtyRepository specialtyRepository;
+
+    @MockitoBean
+    private RoomRepository roomRepository;
+
+    @MockitoBean
+    private AppointmentSlotMaterializerService appointmentSlotMaterializerService;
+
+    @Autowired
+    private DoctorScheduleImportService doctorScheduleImportService;
+
+    private MedicalProfileEntity testDoctor;
+    private MedicalProfileEntity otherDoctor;
+    private SpecialtyEntity testSpecialty;
+    private RoomEntity testRoom;
+
+    @BeforeEach
+    void setUp() {
+        testSpecialty = SpecialtyEntity.builder()
+                .id(1)
+                .name("Cardiología")
+                .build();
+
+        testDoctor = MedicalProfileEntity.builder()
+                .id(1)
+                .license("COLEG-TEST-1")
+                .specialties(new ArrayList<>(List.of(testSpecialty)))
+                .build();
+
+        otherDoctor = MedicalProfileEntity.builder()
+                .id(2)
+                .license("COLEG-TEST-2")
+                .specialties(new ArrayList<>(List.of(testSpecialty)))
+                .build();
+
+        MedicalCenterEntity testMedicalCenter = MedicalCenterEntity.builder()
+                .id(1)
+                .name("Hospital de Pruebas")
+                .build();
+
+        testRoom = RoomEntity.builder()
+                .id(1)
+                .name("Consulta 1")
+                .medicalCenter(testMedicalCenter)
+                .build();
+
+        when(medicalProfileRepository.findWithSpecialtiesByIdIn(any())).thenReturn(List.of(testDoctor, otherDoctor));
+        when(specialtyRepository.findAllById(any())).thenReturn(List.of(testSpecialty));
+        when(roomRepository.findAllById(any())).thenReturn(List.of(testRoom));
+        when(doctorScheduleRepository.findByDoctorIdInOrRoomIdIn(any(), any())).thenReturn(List.of());
+    }
+
+    @Test
+    void C1_importSchedules_should_report_every_conflict_and_save_nothing() {
+        // Arrange: la consulta ya está ocupada los martes de 9:00 a 11:00 por otro turno guardado
+        DoctorScheduleEntity existingSchedule = DoctorScheduleEntity.builder()
+                .id(10)
+                .doctor(otherDoctor)
+                .specialty(testSpecialty)
+                .room(testRoom)
+                .dayOfWeek(DayOfWeek.TUESDAY)
+                .startTime(LocalTime.of(9, 0))
+                .endTime(LocalTime.of(11, 0))
+                .duration(30)
+                .build();
+        when(doctorScheduleRepository.findByDoctorIdInOrRoomIdIn(any(), any())).thenReturn(List.of(existingSchedule));
+
+        List<DoctorScheduleRequest> requests = new ArrayList<>();
+        requests.add(this.request(1, DayOfWeek.MONDAY, LocalTime.of(9, 0), LocalTime.of(12, 0)));
+        requests.add(this.request(1, DayOfWeek.MONDAY, LocalTime.of(11, 30), LocalTime.of(13, 0)));
+        requests.add(this.request(1, DayOfWeek.TUESDAY, LocalTime.of(10, 0), LocalTime.of(12, 0)));
+        requests.add(this.request(99, DayOfWeek.WEDNESDAY, LocalTime.of(9, 0), LocalTime.of(10, 0)));
+
+        // Act
+        DoctorScheduleImportResponse result = assertDoesNotThrow(() -> doctorScheduleImportService.importSchedules(requests));
+
+        // Assert: la fila 2 choca con la 1 por médico y por consulta, la 3 con el turno guardado y la 4 no tiene médico
+        List<ScheduleImportIssueDTO> issues = result.getIssues();
+        assertAll(() -> {
+            assertTrue(result.getSchedules().isEmpty());
+            assertEquals(4, issues.size());
+            assertTrue(issues.stream().anyMatch(issue -> issue.getRow() == 2 && issue.getConflictingRow() == 1 && issue.getCode().equals("conflict.schedule_conflict")));
+            assertTrue(issues.stream().anyMatch(issue -> issue.getRow() == 2 && issue.getConflictingRow() == 1 && issue.getCode().equals("conflict.room_schedule_conflict")));
+            assertTrue(issues.stream().anyMatch(issue -> issue.getRow() == 3 && issue.getConflictingScheduleId() == 10 && issue.getCode().equals("conflict.room_schedule_conflict")));
+            assertTrue(issues.stream().anyMatch(issue -> issue.getRow() == 4 && issue.getCode().equals("data_not_found.doctor")));
+        });
+
+        verify(doctorScheduleRepository, never()).saveAll(anyList());
+        verify(appointmentSlotMaterializerService, never()).onSchedulesCreated(any());
+    }
+
+    @Test
+    void C2_importSchedulesFromCsv_should_save_all_schedules_in_one_batch() {
+        // Arrange
+        String csv = """
+                doctor,room,specialty,dayOfWeek,startTime,endTime,duration
+                1,1,1,MONDAY,09:00,11:00,30
+                1,1,1,monday,11:00,13:00,30
+                2,1,1,TUESDAY,09:00,11:00,15
+                """;
+        when(doctorScheduleRepository.saveAll(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Act
+        DoctorScheduleImportResponse result = assertDoesNotThrow(() -> doctorScheduleImportService.importSchedulesFromCsv(csv));
+
+        // Assert
+        assertAll(() -> {
+            assertTrue(result.getIssues().isEmpty());
+            assertEquals(3, result.getSchedules().size());
+            assertEquals(DayOfWeek.MONDAY, result.getSchedules().get(1).getDayOfWeek());
+            assertEquals(15, result.getSchedules().get(2).getDuration());
+        });
+
+        verify(doctorScheduleRepository, times(1)).saveAll(anyList());
+        verify(appointmentSlotMaterializerService, times(1)).onSchedulesCreated(argThat(schedules -> schedules.size() == 3));
+    }
+
+    @Test
+    void C3_importSchedulesFromCsv_should_throw_exception_when_a_column_is_missing() {
+        // Arrange
+        String csv = """
+                doctor,room,dayOfWeek,startTime,endTime,duration
+                1,1,MONDAY,09:00,11:00,30
+                """;
+
+        // Act
+        BadRequestException exception = assertThrows(BadRequestException.class, () -> doctorScheduleImportService.importSchedulesFromCsv(csv));
+
+        // Assert
+        assertEquals("bad_request.invalid_schedule_import", exception.getCode());
+        verify(doctorScheduleRepository, never()).saveAll(anyList());
+    }
+
+    @Test
+    void C4_importSchedulesFromCsv_should_read_quoted_fields() {
+        // Arrange: cabecera y valores entre comillas, como los exporta una hoja de cálculo
+        String csv = """
+                "doctor","room","specialty","dayOfWeek","startTime","endTime","duration"
+                "1", "1" ,"1","MONDAY","09:00","11:00","30"
+                2,1,1,"TUESDAY",09:00,"11:00",15
+                """;
+        when(doctorScheduleRepository.saveAll(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Act
+        DoctorScheduleImportResponse result = assertDoesNotThrow(() -> doctorScheduleImportService.importSchedulesFromCsv(csv));
+
+        // Assert
+        assertAll(() -> {
+            assertTrue(result.getIssues().isEmpty());
+            assertEquals(2, result.getSchedules().size());
+            assertEquals(DayOfWeek.MONDAY, result.getSchedules().get(0).getDayOfWeek());
+            assertEquals(LocalTime.of(11, 0), result.getSchedules().get(1).getEndTime());
+        });
+    }
+
+    @Test
+    void C5_importSchedulesFromCsv_should_report_rows_with_badly_quoted_fields() {
+        // Arrange: la fila 1 tiene una coma dentro de un campo entre comillas y la fila 2 no cierra las comillas
+        String csv = """
+                doctor,room,specialty,dayOfWeek,startTime,endTime,duration
+                "1,2",1,1,MONDAY,09:00,11:00,30
+                1,1,1,"TUESDAY,09:00,11:00,30
+                """;
+
+        // Act
+        DoctorScheduleImportResponse result = assertDoesNotThrow(() -> doctorScheduleImportService.importSchedulesFromCsv(csv));
+
+        // Assert
+        assertAll(() -> {
+            assertTrue(result.getSchedules().isEmpty());
+            assertEquals(2, result.getIssues().size());
+            assertTrue(result.getIssues().stream().allMatch(issue -> issue.getCode().equals("bad_request.invalid_schedule")));
+        });
+        verify(doctorScheduleRepository, never()).saveAll(anyList());
+    }
+
+    @Test
+    void C6_importSchedules_should_report_every_pair_of_overlapping_rows() {
+        // Arrange: la fila 3 solapa con la 1 y también con la 2, aunque la 1 acabe más tarde
+        List<DoctorScheduleRequest> requests = new ArrayList<>();
+        requests.add(this.request(1, DayOfWeek.MONDAY, LocalTime.of(9, 0), LocalTime.of(13, 0)));
+        requests.add(this.request(1, DayOfWeek.MONDAY, LocalTime.of(10, 0), LocalTime.of(12, 0)));
+        requests.add(this.request(1, DayOfWeek.MONDAY, LocalTime.of(11, 0), LocalTime.of(14, 0)));
+
+        // Act
+        DoctorScheduleImportResponse result = assertDoesNotThrow(() -> doctorScheduleImportService.importSchedules(requests));
+
+        // Assert: tres parejas, por médico y por consulta
+        List<ScheduleImportIssueDTO> issues = result.getIssues().stream()
+                .filter(issue -> issue.getCode().equals("conflict.schedule_conflict"))
+                .toList();
+        assertAll(() -> {
+            assertTrue(result.getSchedules().isEmpty());
+            assertEquals(6, result.getIssues().size());
+            assertEquals(3, issues.size());
+            assertTrue(issues.stream().anyMatch(issue -> issue.getRow() == 2 && issue.getConflictingRow() == 1));
+            assertTrue(issues.stream().anyMatch(issue -> issue.getRow() == 3 && issue.getConflictingRow() == 1));
+            assertTrue(issues.stream().anyMatch(issue -> issue.getRow() == 3 && issue.getConflictingRow() == 2));
+        });
+
+        verify(doctorScheduleRepository, never()).saveAll(anyList());
+    }
+
+    private DoctorScheduleRequest request(Integer doctor, DayOfWeek dayOfWeek, LocalTime startTime, LocalTime endTime) {
+        return DoctorScheduleRequest.builder()
+                .doctor(doctor)
+                .specialty(1)
+                .room(1)
+                .dayOfWeek(dayOfWeek)
+                .startTime(startTime)
+                .endTime(endTime)
+                .duration(30)
+                .build();
+    }
+}
@@ -9,6 +9,7 @@ import com.kikisito.salus.api.entity.SpecialtyEntity;
 import com.kikisito.salus.api.entity.UserEntity;
 import com.kikisito.salus.api.exception.ConflictException;
 import com.kikisito.salus.api.exception.DataNotFoundException;
+import com.kikisito.salus.api.mapper.DtoMapper;
 import com.kikisito.salus.api.repository.DoctorScheduleRepository;
 import com.kikisito.salus.api.repository.MedicalProfileRepository;
 import com.kikisito.salus.api.repository.RoomRepository;
@@ -16,7 +17,6 @@ import com.kikisito.salus.api.repository.SpecialtyRepository;
 import com.kikisito.salus.api.type.RoleType;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
@@ -47,8 +47,14 @@ public class DoctorScheduleServiceTest {
     @MockitoBean
     private RoomRepository roomRepository;
 
+    @MockitoBean
+    private AppointmentSlotMaterializerService appointmentSlotMaterializerService;
+
+    @MockitoBean
+    private AppointmentRescheduleService appointmentRescheduleService;
+
     @Autowired
-    private ModelMapper modelMapper;
+    private DtoMapper dtoMapper;
 
     @Autowired
     private DoctorScheduleService doctorScheduleService;
@@ -112,7 +118,7 @@ public class DoctorScheduleServiceTest {
                 .duration(30)
                 .build();
 
-        testScheduleDTO = modelMapper.map(testSchedule, DoctorScheduleDTO.class);
+        testScheduleDTO = dtoMapper.toDoctorScheduleDTO(testSchedule);
 
         // Request de horario de prueba
         testScheduleRequest = DoctorScheduleRequest.builder()
@@ -216,6 +222,7 @@ public class DoctorScheduleServiceTest {
         verify(roomRepository).findById(1);
         verify(doctorScheduleRepository).findByDoctorAndDayOfWeek(testDoctor, DayOfWeek.MONDAY);
         verify(doctorScheduleRepository).save(any(DoctorScheduleEntity.class));
+        verify(appointmentSlotMaterializerService).onScheduleCreated(any(DoctorScheduleEntity.class));
     }
 
     @Test
@@ -304,6 +311,7 @@ public class DoctorScheduleServiceTest {
         verify(roomRepository).findById(1);
         verify(doctorScheduleRepository).findByDoctorAndDayOfWeek(testDoctor, DayOfWeek.MONDAY);
         verify(doctorScheduleRepository, never()).save(any(DoctorScheduleEntity.class));
+        verify(appointmentSlotMaterializerService, never()).onScheduleCreated(any());
     }
 
     @Test
@@ -355,26 +363,29 @@ public class DoctorScheduleServiceTest {
         verify(roomRepository).findById(1);
         verify(doctorScheduleRepository).findByDoctorAndDayOfWeek(testDoctor, DayOfWeek.MONDAY);
         verify(doctorScheduleRepository).save(any(DoctorScheduleEntity.class));
+        verify(appointmentSlotMaterializerService).onScheduleChanged(any());
     }
 
     @Test
     void C9_deleteSchedule_should_delete_the_schedule() {
         // Arrange
-        when(doctorScheduleRepository.existsById(1)).thenReturn(true);
-        doNothing().when(doctorScheduleRepository).deleteById(1);
+        when(doctorScheduleRepository.findById(1)).thenReturn(Optional.of(testSchedule));
+        doNothing().when(doctorScheduleRepository).delete(testSchedule);
 
         // Act
         assertDoesNotThrow(() -> doctorScheduleService.deleteSchedule(1));
 
         // Assert
-        verify(doctorScheduleRepository).existsById(1);
-        verify(doctorScheduleRepository).deleteById(1);
+        verify(doctorScheduleRepository).findById(1);
+        verify(doctorScheduleRepository).delete(testSchedule);
+        verify(appointmentSlotMaterializerService).onScheduleDeleting(any());
+        verify(appointmentSlotMaterializerService).onScheduleChanged(any());
     }
 
     @Test
     void C10_deleteSchedule_should_throw_exception_when_schedule_not_found() {
         // Arrange
-        when(doctorScheduleRepository.existsById(3)).thenReturn(false);
+        when(doctorScheduleRepository.findById(3)).thenReturn(Optional.empty());
 
         // Act
         DataNotFoundException exception = assertThrows(DataNotFoundException.class, () -> doctorScheduleService.deleteSchedule(3));
@@ -382,7 +393,8 @@ public class DoctorScheduleServiceTest {
         // Assert
         assertEquals("data_not_found.schedule", exception.getCode());
 
-        verify(doctorScheduleRepository).existsById(3);
-        verify(doctorScheduleRepository, never()).deleteById(anyInt());
+        verify(doctorScheduleRepository).findById(3);
+        verify(doctorScheduleRepository, never()).delete(any(DoctorScheduleEntity.class));
+        verify(appointmentSlotMaterializerService, never()).onScheduleChanged(any());
     }
 }
\ No newline at end of file
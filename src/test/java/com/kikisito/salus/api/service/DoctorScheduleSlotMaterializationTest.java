@@ -0,0 +1,222 @@
+package com.kikisito.salus.api.service;
+
+import com.kikisito.salus.api.config.AppointmentSlotsConfiguration;
+import com.kikisito.salus.api.dto.DoctorScheduleDTO;
+import com.kikisito.salus.api.dto.request.DoctorScheduleRequest;
+import com.kikisito.salus.api.dto.response.DoctorScheduleImportResponse;
+import com.kikisito.salus.api.entity.*;
+import com.kikisito.salus.api.repository.*;
+import com.kikisito.salus.api.type.RoleType;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Crea, modifica e importa turnos contra la base de datos de pruebas, para que la generación de huecos y el mapeo de la
+// respuesta se ejecuten en la misma transacción que en producción
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "application.appointment-slots.materializer-cron=-",
+        "application.appointment-slots.availability-calendar-reconcile-cron=-",
+        "application.appointment-slots.slot-hold-purge-cron=-",
+        "application.appointment-slots.generation-job-resume-cron=-",
+        "application.appointment-slots.waitlist-offer-expiry-cron=-",
+        "application.appointment-slots.cancellation-notice-retry-cron=-"
+})
+public class DoctorScheduleSlotMaterializationTest {
+    private static final AtomicInteger SEQUENCE = new AtomicInteger();
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private SpecialtyRepository specialtyRepository;
+
+    @Autowired
+    private MedicalCenterRepository medicalCenterRepository;
+
+    @Autowired
+    private RoomRepository roomRepository;
+
+    @Autowired
+    private MedicalProfileRepository medicalProfileRepository;
+
+    @Autowired
+    private DoctorScheduleRepository doctorScheduleRepository;
+
+    @Autowired
+    private AppointmentSlotRepository appointmentSlotRepository;
+
+    @Autowired
+    private DoctorScheduleService doctorScheduleService;
+
+    @Autowired
+    private DoctorScheduleImportService doctorScheduleImportService;
+
+    @Autowired
+    private AppointmentSlotService appointmentSlotService;
+
+    @Autowired
+    private AppointmentSlotsConfiguration appointmentSlotsConfiguration;
+
+    @Test
+    void C1_addSchedule_should_generate_the_slots_and_map_the_schedule() {
+        // Arrange
+        int n = SEQUENCE.incrementAndGet();
+        SpecialtyEntity specialty = specialtyRepository.save(SpecialtyEntity.builder().name("Especialidad horario " + n).description("Especialidad de pruebas").build());
+        MedicalProfileEntity doctor = this.doctor(n, specialty);
+        RoomEntity room = this.room(n);
+        LocalDate tomorrow = LocalDate.now().plusDays(1);
+
+        // Act
+        DoctorScheduleDTO schedule = assertDoesNotThrow(() -> doctorScheduleService.addSchedule(this.request(doctor, specialty, room, tomorrow, LocalTime.of(9, 0), LocalTime.of(11, 0))));
+
+        // Assert
+        List<AppointmentSlotEntity> slots = appointmentSlotRepository.findFreeGeneratedSlots(schedule.getId(), tomorrow);
+        assertAll(
+                () -> assertNotNull(schedule.getDoctor()),
+                () -> assertNotNull(schedule.getRoom()),
+                () -> assertFalse(slots.isEmpty()),
+                () -> assertTrue(slots.stream().anyMatch(slot -> slot.getDate().equals(tomorrow) && slot.getStartTime().equals(LocalTime.of(9, 0)))),
+                () -> assertNotNull(doctorScheduleRepository.findById(schedule.getId()).orElseThrow().getMaterializedUntil())
+        );
+    }
+
+    @Test
+    void C2_updateSchedule_should_regenerate_the_generated_slots_and_keep_the_manual_ones() {
+        // Arrange
+        int n = SEQUENCE.incrementAndGet();
+        SpecialtyEntity specialty = specialtyRepository.save(SpecialtyEntity.builder().name("Especialidad horario " + n).description("Especialidad de pruebas").build());
+        MedicalProfileEntity doctor = this.doctor(n, specialty);
+        RoomEntity room = this.room(n);
+        LocalDate tomorrow = LocalDate.now().plusDays(1);
+
+        DoctorScheduleDTO schedule = doctorScheduleService.addSchedule(this.request(doctor, specialty, room, tomorrow, LocalTime.of(9, 0), LocalTime.of(11, 0)));
+
+        // Hueco creado a mano fuera del turno, que no debe borrarse al cambiarlo
+        AppointmentSlotEntity manualSlot = appointmentSlotRepository.save(AppointmentSlotEntity.builder()
+                .doctor(doctor)
+                .specialty(specialty)
+                .room(room)
+                .date(tomorrow)
+                .startTime(LocalTime.of(12, 0))
+                .endTime(LocalTime.of(12, 30))
+                .build());
+
+        // Act
+        DoctorScheduleDTO updated = assertDoesNotThrow(() -> doctorScheduleService.updateSchedule(schedule.getId(), this.request(doctor, specialty, room, tomorrow, LocalTime.of(15, 0), LocalTime.of(16, 0))));
+
+        // Assert
+        List<AppointmentSlotEntity> slots = appointmentSlotRepository.findFreeGeneratedSlots(schedule.getId(), tomorrow);
+        assertAll(
+                () -> assertNotNull(updated.getDoctor()),
+                () -> assertNotNull(updated.getRoom()),
+                () -> assertFalse(slots.isEmpty()),
+                () -> assertTrue(slots.stream().noneMatch(slot -> slot.getStartTime().isBefore(LocalTime.of(15, 0)))),
+                () -> assertTrue(appointmentSlotRepository.existsById(manualSlot.getId()))
+        );
+    }
+
+    @Test
+    void C3_importSchedules_should_generate_the_slots_and_map_every_schedule() {
+        // Arrange: dos turnos del mismo médico el mismo día
+        int n = SEQUENCE.incrementAndGet();
+        SpecialtyEntity specialty = specialtyRepository.save(SpecialtyEntity.builder().name("Especialidad horario " + n).description("Especialidad de pruebas").build());
+        MedicalProfileEntity doctor = this.doctor(n, specialty);
+        RoomEntity room = this.room(n);
+        LocalDate tomorrow = LocalDate.now().plusDays(1);
+
+        List<DoctorScheduleRequest> requests = List.of(
+                this.request(doctor, specialty, room, tomorrow, LocalTime.of(9, 0), LocalTime.of(10, 0)),
+                this.request(doctor, specialty, room, tomorrow, LocalTime.of(16, 0), LocalTime.of(17, 0))
+        );
+
+        // Act
+        DoctorScheduleImportResponse result = assertDoesNotThrow(() -> doctorScheduleImportService.importSchedules(requests));
+
+        // Assert
+        assertAll(
+                () -> assertTrue(result.getIssues().isEmpty()),
+                () -> assertEquals(2, result.getSchedules().size()),
+                () -> assertTrue(result.getSchedules().stream().allMatch(schedule -> schedule.getDoctor() != null && schedule.getRoom() != null)),
+                () -> assertTrue(result.getSchedules().stream().allMatch(schedule -> !appointmentSlotRepository.findFreeGeneratedSlots(schedule.getId(), tomorrow).isEmpty())),
+                () -> assertTrue(result.getSchedules().stream().allMatch(schedule -> doctorScheduleRepository.findById(schedule.getId()).orElseThrow().getMaterializedUntil() != null))
+        );
+    }
+
+    @Test
+    void C4_updateSchedule_should_remove_the_slots_generated_for_the_schedule_on_demand() {
+        // Arrange: huecos de un día fuera del horizonte, que solo se generan al pedirlos para el turno
+        int n = SEQUENCE.incrementAndGet();
+        SpecialtyEntity specialty = specialtyRepository.save(SpecialtyEntity.builder().name("Especialidad horario " + n).description("Especialidad de pruebas").build());
+        MedicalProfileEntity doctor = this.doctor(n, specialty);
+        RoomEntity room = this.room(n);
+        LocalDate tomorrow = LocalDate.now().plusDays(1);
+        LocalDate farDate = tomorrow.plusWeeks(appointmentSlotsConfiguration.getHorizonWeeks() + 1);
+
+        DoctorScheduleDTO schedule = doctorScheduleService.addSchedule(this.request(doctor, specialty, room, tomorrow, LocalTime.of(9, 0), LocalTime.of(11, 0)));
+        appointmentSlotService.generateAppointmentSlotsByScheduleId(schedule.getId(), farDate);
+        assertFalse(appointmentSlotRepository.findFreeGeneratedSlots(schedule.getId(), farDate).isEmpty());
+
+        // Act
+        assertDoesNotThrow(() -> doctorScheduleService.updateSchedule(schedule.getId(), this.request(doctor, specialty, room, tomorrow, LocalTime.of(15, 0), LocalTime.of(16, 0))));
+
+        // Assert: ese día no queda ningún hueco del médico con el horario anterior
+        assertTrue(appointmentSlotRepository.findByDoctorAndDate(doctor, farDate).stream()
+                .noneMatch(slot -> slot.getStartTime().isBefore(LocalTime.of(15, 0))));
+    }
+
+    private DoctorScheduleRequest request(MedicalProfileEntity doctor, SpecialtyEntity specialty, RoomEntity room, LocalDate date, LocalTime startTime, LocalTime endTime) {
+        return DoctorScheduleRequest.builder()
+                .doctor(doctor.getId())
+                .specialty(specialty.getId())
+                .room(room.getId())
+                .dayOfWeek(date.getDayOfWeek())
+                .startTime(startTime)
+                .endTime(endTime)
+                .duration(30)
+                .build();
+    }
+
+    private MedicalProfileEntity doctor(int n, SpecialtyEntity specialty) {
+        UserEntity user = userRepository.save(UserEntity.builder()
+                .nombre("medicohorario" + n)
+                .apellidos("Pruebas")
+                .email("medicohorario" + n + "@salus.test")
+                .nif("MEDICOHORARIO" + n)
+                .password("password")
+                .rolesList(new ArrayList<>(List.of(RoleType.USER, RoleType.PROFESSIONAL)))
+                .build());
+
+        return medicalProfileRepository.save(MedicalProfileEntity.builder()
+                .user(user)
+                .license("COLEG-HORARIO-" + n)
+                .specialties(new ArrayList<>(List.of(specialty)))
+                .build());
+    }
+
+    private RoomEntity room(int n) {
+        MedicalCenterEntity medicalCenter = medicalCenterRepository.save(MedicalCenterEntity.builder()
+                .name("Hospital horario " + n)
+                .email("hospitalhorario" + n + "@salus.test")
+                .phone("600000000")
+                .addressLine1("Calle de Pruebas " + n)
+                .zipCode("03001")
+                .country("España")
+                .province("Alicante")
+                .municipality("Alicante")
+                .locality("Alicante")
+                .build());
+
+        return roomRepository.save(RoomEntity.builder()
+                .name("Consulta horario " + n)
+                .medicalCenter(medicalCenter)
+                .build());
+    }
+}
@@ -1,14 +1,18 @@
 package com.kikisito.salus.api.service;
 
+import com.kikisito.salus.api.dto.AppointmentSlotAvailabilityDTO;
 import com.kikisito.salus.api.dto.MedicalCenterDTO;
 import com.kikisito.salus.api.dto.request.NewMedicalCenterRequest;
 import com.kikisito.salus.api.dto.response.MedicalCentersListResponse;
-import com.kikisito.salus.api.entity.MedicalCenterEntity;
+import com.kikisito.salus.api.entity.*;
 import com.kikisito.salus.api.exception.DataNotFoundException;
+import com.kikisito.salus.api.mapper.DtoMapper;
+import com.kikisito.salus.api.mapper.RequestMapper;
+import com.kikisito.salus.api.occupancy.AvailabilityCalendar;
+import com.kikisito.salus.api.repository.AppointmentSlotRepository;
 import com.kikisito.salus.api.repository.MedicalCenterRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.data.domain.Page;
@@ -16,8 +20,12 @@ import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 
+import java.time.LocalDate;
+import java.time.LocalTime;
 import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -28,18 +36,31 @@ public class MedicalCenterServiceTest {
     @MockitoBean
     private MedicalCenterRepository medicalCenterRepository;
 
+    @MockitoBean
+    private AppointmentSlotRepository appointmentSlotRepository;
+
     @Autowired
-    private ModelMapper modelMapper;
+    private DtoMapper dtoMapper;
+
+    @Autowired
+    private RequestMapper requestMapper;
 
     @Autowired
     private MedicalCenterService medicalCenterService;
 
+    @Autowired
+    private AvailabilityCalendar availabilityCalendar;
+
     private MedicalCenterEntity testMedicalCenter;
     private MedicalCenterDTO testMedicalCenterDTO;
     private Page<MedicalCenterEntity> testPagedMedicalCenters;
+    private AppointmentSlotEntity testAppointmentSlot;
 
     @BeforeEach
     void setUp() {
+        // El calendario de disponibilidad se comparte entre pruebas, así que se vacía antes de cada una
+        availabilityCalendar.rebuild();
+
         // Entidad inicial de las pruebas
         testMedicalCenter = MedicalCenterEntity.builder()
                 .id(1)
@@ -54,10 +75,21 @@ public class MedicalCenterServiceTest {
                 .locality("Alicante")
                 .build();
 
-        testMedicalCenterDTO = modelMapper.map(testMedicalCenter, MedicalCenterDTO.class);
+        testMedicalCenterDTO = dtoMapper.toMedicalCenterDTO(testMedicalCenter);
 
         // Asignamos la entidad inicial al paginado de centros médicos
         testPagedMedicalCenters = new PageImpl<>(Collections.singletonList(testMedicalCenter));
+
+        // Hueco libre de la especialidad 1 en el centro médico de prueba
+        testAppointmentSlot = AppointmentSlotEntity.builder()
+                .id(1)
+                .doctor(MedicalProfileEntity.builder().id(1).build())
+                .specialty(SpecialtyEntity.builder().id(1).build())
+                .room(RoomEntity.builder().id(1).medicalCenter(testMedicalCenter).build())
+                .date(LocalDate.now().plusDays(7))
+                .startTime(LocalTime.of(9, 0))
+                .endTime(LocalTime.of(9, 30))
+                .build();
     }
 
     @Test
@@ -122,7 +154,8 @@ public class MedicalCenterServiceTest {
     @Test
     void C4_getMedicalCentersByAvailableSpecialtys_should_return_one_medical_center_when_specialty_id_is_1() {
         // Arrange
-        when(medicalCenterRepository.findByAvailableSpecialty(eq(1), any(PageRequest.class))).thenReturn(testPagedMedicalCenters);
+        availabilityCalendar.addSlot(testAppointmentSlot);
+        when(medicalCenterRepository.findByIdIn(eq(Set.of(1)), any(PageRequest.class))).thenReturn(testPagedMedicalCenters);
 
         // Act
         MedicalCentersListResponse response = medicalCenterService.getMedicalCentersByAvailableSpecialty(1, Optional.of(0), Optional.of(10));
@@ -136,13 +169,14 @@ public class MedicalCenterServiceTest {
             assertEquals(testMedicalCenterDTO.getName(), response.getMedicalCenters().get(0).getName());
         });
 
-        verify(medicalCenterRepository).findByAvailableSpecialty(anyInt(), any(PageRequest.class));
+        verify(medicalCenterRepository).findByIdIn(anyCollection(), any(PageRequest.class));
+        verify(medicalCenterRepository, never()).findByAvailableSpecialty(anyInt(), any(PageRequest.class));
     }
 
     @Test
     void C5_getMedicalCentersByAvailableSpecialtys_should_return_empty_list_when_specialty_id_is_2() {
         // Arrange
-        when(medicalCenterRepository.findByAvailableSpecialty(eq(2), any(PageRequest.class))).thenReturn(new PageImpl<>(Collections.emptyList()));
+        availabilityCalendar.addSlot(testAppointmentSlot);
 
         // Act
         MedicalCentersListResponse response = medicalCenterService.getMedicalCentersByAvailableSpecialty(2, Optional.of(0), Optional.of(10));
@@ -155,7 +189,7 @@ public class MedicalCenterServiceTest {
             assertArrayEquals(new MedicalCenterDTO[0], response.getMedicalCenters().toArray());
         });
 
-        verify(medicalCenterRepository).findByAvailableSpecialty(anyInt(), any(PageRequest.class));
+        verify(medicalCenterRepository, never()).findByIdIn(anyCollection(), any(PageRequest.class));
     }
 
     @Test
@@ -245,7 +279,7 @@ public class MedicalCenterServiceTest {
                 .build();
 
         when(medicalCenterRepository.findById(1)).thenReturn(Optional.of(testMedicalCenter));
-        when(medicalCenterRepository.save(any(MedicalCenterEntity.class))).thenReturn(modelMapper.map(updatedMedicalCenter, MedicalCenterEntity.class));
+        when(medicalCenterRepository.save(any(MedicalCenterEntity.class))).thenReturn(requestMapper.toMedicalCenterEntity(updatedMedicalCenter));
 
         // Act
         MedicalCenterDTO response = assertDoesNotThrow(() -> medicalCenterService.updateMedicalCenter(1, updatedMedicalCenter));
@@ -294,4 +328,47 @@ public class MedicalCenterServiceTest {
         assertEquals("data_not_found.medical_center", exception.getCode());
         verify(medicalCenterRepository).findById(anyInt());
     }
-}
\ No newline at end of file
+
+    @Test
+    void C11_getMedicalCentersByAvailableSpecialtys_should_return_empty_list_when_the_only_free_slot_is_booked() {
+        // Arrange
+        availabilityCalendar.addSlot(testAppointmentSlot);
+        availabilityCalendar.markBooked(testAppointmentSlot);
+
+        // Act
+        MedicalCentersListResponse response = medicalCenterService.getMedicalCentersByAvailableSpecialty(1, Optional.of(0), Optional.of(10));
+
+        // Assert
+        assertAll(() -> {
+            assertNotNull(response);
+            assertEquals(0, response.getCount());
+            assertEquals(0, response.getMedicalCenters().size());
+        });
+
+        verify(medicalCenterRepository, never()).findByIdIn(anyCollection(), any(PageRequest.class));
+
+        // Al anular la cita, el centro vuelve a tener huecos libres
+        availabilityCalendar.markFree(testAppointmentSlot);
+        assertTrue(availabilityCalendar.hasAvailability(1, 1, 1));
+    }
+
+    @Test
+    void C12_rebuild_should_keep_the_slots_booked_while_it_is_loading() {
+        // Arrange: la carga lee el hueco como libre y, mientras tanto, se confirma su reserva
+        availabilityCalendar.addSlot(testAppointmentSlot);
+        when(appointmentSlotRepository.findAvailabilityFrom(any(), any())).thenAnswer(invocation -> {
+            availabilityCalendar.markBooked(testAppointmentSlot);
+            return List.of(new AppointmentSlotAvailabilityDTO(1, 1, 1, testAppointmentSlot.getDate(), LocalTime.of(9, 0), LocalTime.of(9, 30), false));
+        });
+
+        // Act
+        availabilityCalendar.rebuild();
+
+        // Assert
+        assertAll(() -> {
+            assertFalse(availabilityCalendar.hasAvailability(1, 1, 1));
+            assertEquals(Set.of(), availabilityCalendar.findAvailableMedicalCenterIds(1));
+            assertEquals(Set.of(), availabilityCalendar.findAvailableDoctorIds(1, 1));
+        });
+    }
+}
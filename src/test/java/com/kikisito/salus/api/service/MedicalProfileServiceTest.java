@@ -9,11 +9,11 @@ import com.kikisito.salus.api.entity.MedicalProfileEntity;
 import com.kikisito.salus.api.entity.SpecialtyEntity;
 import com.kikisito.salus.api.entity.UserEntity;
 import com.kikisito.salus.api.exception.DataNotFoundException;
+import com.kikisito.salus.api.mapper.DtoMapper;
 import com.kikisito.salus.api.repository.*;
 import com.kikisito.salus.api.type.RoleType;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.data.domain.Page;
@@ -46,7 +46,7 @@ public class MedicalProfileServiceTest {
     private AppointmentRepository appointmentRepository;
 
     @Autowired
-    private ModelMapper modelMapper;
+    private DtoMapper dtoMapper;
 
     @Autowired
     private MedicalProfileService medicalProfileService;
@@ -75,7 +75,7 @@ public class MedicalProfileServiceTest {
                 .description("Especialidad de medicina general")
                 .build();
 
-        testSpecialtyDTO = modelMapper.map(testSpecialty, SpecialtyDTO.class);
+        testSpecialtyDTO = dtoMapper.toSpecialtyDTO(testSpecialty);
 
         testMedicalProfile = MedicalProfileEntity.builder()
                 .id(1)
@@ -84,7 +84,7 @@ public class MedicalProfileServiceTest {
                 .specialties(new ArrayList<>(Collections.singletonList(testSpecialty)))
                 .build();
 
-        testMedicalProfileDTO = modelMapper.map(testMedicalProfile, MedicalProfileDTO.class);
+        testMedicalProfileDTO = dtoMapper.toMedicalProfileDTO(testMedicalProfile);
 
         testPagedMedicalProfiles = new PageImpl<>(Collections.singletonList(testMedicalProfile));
     }
@@ -1,14 +1,15 @@
 package com.kikisito.salus.api.service;
 
+import com.kikisito.salus.api.cache.AccessDecisionCache;
 import com.kikisito.salus.api.dto.MedicalTestDTO;
 import com.kikisito.salus.api.dto.request.MedicalTestRequest;
 import com.kikisito.salus.api.entity.*;
 import com.kikisito.salus.api.type.RoleType;
 import com.kikisito.salus.api.exception.DataNotFoundException;
+import com.kikisito.salus.api.mapper.DtoMapper;
 import com.kikisito.salus.api.repository.*;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.mock.web.MockMultipartFile;
@@ -55,11 +56,14 @@ public class MedicalTestServiceTest {
     private MedicalCenterRepository medicalCenterRepository;
 
     @Autowired
-    private ModelMapper modelMapper;
+    private DtoMapper dtoMapper;
 
     @Autowired
     private MedicalTestService medicalTestService;
 
+    @Autowired
+    private AccessDecisionCache accessDecisionCache;
+
     private UserEntity testPatient;
     private MedicalProfileEntity testDoctor;
     private SpecialtyEntity testSpecialty;
@@ -71,6 +75,9 @@ public class MedicalTestServiceTest {
 
     @BeforeEach
     void setUp() {
+        // Las decisiones de acceso se guardan entre pruebas porque el contexto es el mismo
+        accessDecisionCache.invalidateAll();
+
         // Paciente de prueba
         testPatient = UserEntity.builder()
                 .id(1)
@@ -168,7 +175,7 @@ public class MedicalTestServiceTest {
                 .medicalTest(testMedicalTest)
                 .build();
 
-        testMedicalTestDTO = modelMapper.map(testMedicalTest, MedicalTestDTO.class);
+        testMedicalTestDTO = dtoMapper.toMedicalTestDTO(testMedicalTest);
 
         // MedicalTestRequest de prueba
         testMedicalTestRequest = MedicalTestRequest.builder()
@@ -303,8 +310,7 @@ public class MedicalTestServiceTest {
     @Test
     void C6_isDoctorResponsibleOfMedicalTest_should_return_true_when_medical_test_is_associated_to_doctor() {
         // Arrange
-        when(medicalTestRepository.findById(1)).thenReturn(Optional.of(testMedicalTest));
-        when(medicalProfileRepository.findById(1)).thenReturn(Optional.of(testDoctor));
+        when(medicalTestRepository.canDoctorAccessMedicalTest(1, 1)).thenReturn(true);
 
         // Act
         boolean result = assertDoesNotThrow(() -> medicalTestService.isDoctorResponsibleOfMedicalTest(1, 1));
@@ -312,21 +318,15 @@ public class MedicalTestServiceTest {
         // Assert
         assertTrue(result);
 
-        verify(medicalTestRepository).findById(1);
-        verify(medicalProfileRepository).findById(1);
+        verify(medicalTestRepository).canDoctorAccessMedicalTest(1, 1);
+        verify(medicalTestRepository, never()).findById(any());
     }
 
     @Test
     void C7_isDoctorResponsibleOfMedicalTest_should_return_false_when_medical_test_is_not_associated_to_doctor() {
         // Arrange
-        MedicalProfileEntity otherDoctor = MedicalProfileEntity.builder()
-                .id(2)
-                .user(UserEntity.builder().id(3).build())
-                .specialties(new ArrayList<>())
-                .build();
-
-        when(medicalTestRepository.findById(1)).thenReturn(Optional.of(testMedicalTest));
-        when(medicalProfileRepository.findById(2)).thenReturn(Optional.of(otherDoctor));
+        when(medicalTestRepository.canDoctorAccessMedicalTest(1, 2)).thenReturn(false);
+        when(medicalTestRepository.existsById(1)).thenReturn(true);
 
         // Act
         boolean result = assertDoesNotThrow(() -> medicalTestService.isDoctorResponsibleOfMedicalTest(1, 2));
@@ -334,8 +334,8 @@ public class MedicalTestServiceTest {
         // Assert
         assertFalse(result);
 
-        verify(medicalTestRepository).findById(1);
-        verify(medicalProfileRepository).findById(2);
+        verify(medicalTestRepository).canDoctorAccessMedicalTest(1, 2);
+        verify(medicalTestRepository).existsById(1);
     }
 
     @Test
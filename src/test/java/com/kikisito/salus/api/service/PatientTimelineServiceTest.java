@@ -0,0 +1,157 @@
+package com.kikisito.salus.api.service;
+
+import com.kikisito.salus.api.dto.PatientTimelineEntryDTO;
+import com.kikisito.salus.api.dto.TimelineAppointmentRowDTO;
+import com.kikisito.salus.api.dto.TimelineDocumentRowDTO;
+import com.kikisito.salus.api.dto.request.PatientTimelineRequest;
+import com.kikisito.salus.api.dto.response.PatientTimelineResponse;
+import com.kikisito.salus.api.exception.BadRequestException;
+import com.kikisito.salus.api.exception.DataNotFoundException;
+import com.kikisito.salus.api.repository.*;
+import com.kikisito.salus.api.type.AppointmentStatusType;
+import com.kikisito.salus.api.type.AppointmentType;
+import com.kikisito.salus.api.type.TimelineEntryType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class PatientTimelineServiceTest {
+
+    @MockitoBean
+    private AppointmentRepository appointmentRepository;
+
+    @MockitoBean
+    private ReportRepository reportRepository;
+
+    @MockitoBean
+    private PrescriptionRepository prescriptionRepository;
+
+    @MockitoBean
+    private MedicalTestRepository medicalTestRepository;
+
+    @MockitoBean
+    private UserRepository userRepository;
+
+    @MockitoBean
+    private MedicalProfileRepository medicalProfileRepository;
+
+    @Autowired
+    private PatientTimelineService patientTimelineService;
+
+    private LocalDate day;
+
+    @BeforeEach
+    void setUp() {
+        day = LocalDate.of(2025, 3, 10);
+
+        when(userRepository.existsById(1)).thenReturn(true);
+        when(medicalProfileRepository.existsById(2)).thenReturn(true);
+
+        when(appointmentRepository.findTimelineRows(any(), any(), any(), any(), any(), any())).thenReturn(List.of());
+        when(reportRepository.findTimelineRows(any(), any(), any(), any(), any())).thenReturn(List.of());
+        when(prescriptionRepository.findTimelineRows(any(), any(), any(), any(), any())).thenReturn(List.of());
+        when(medicalTestRepository.findTimelineRows(any(), any(), any(), any(), any())).thenReturn(List.of());
+    }
+
+    @Test
+    void C1_getPatientTimeline_should_merge_all_types_by_date_and_return_cursor_when_there_are_more() {
+        // Arrange: cada repositorio devuelve sus filas ya ordenadas de la más reciente a la más antigua
+        when(appointmentRepository.findTimelineRows(eq(1), eq(null), eq(null), eq(null), eq(null), any())).thenReturn(List.of(
+                this.appointmentRow(10, day, LocalTime.of(9, 0)),
+                this.appointmentRow(11, day.minusDays(5), LocalTime.of(12, 0))
+        ));
+        when(reportRepository.findTimelineRows(eq(1), eq(null), eq(null), eq(null), any())).thenReturn(List.of(
+                this.documentRow(20, day.atTime(9, 30))
+        ));
+        when(prescriptionRepository.findTimelineRows(eq(1), eq(null), eq(null), eq(null), any())).thenReturn(List.of(
+                this.documentRow(30, day.atTime(9, 30))
+        ));
+        when(medicalTestRepository.findTimelineRows(eq(1), eq(null), eq(null), eq(null), any())).thenReturn(List.of(
+                this.documentRow(40, day.minusDays(1).atTime(8, 0))
+        ));
+
+        // Act
+        PatientTimelineResponse response = assertDoesNotThrow(() -> patientTimelineService.getPatientTimeline(1, null, PatientTimelineRequest.builder().limit(4).build()));
+
+        // Assert
+        assertAll(() -> {
+            assertEquals(4, response.getEntries().size());
+            assertEquals(List.of(TimelineEntryType.REPORT, TimelineEntryType.PRESCRIPTION, TimelineEntryType.APPOINTMENT, TimelineEntryType.MEDICAL_TEST),
+                    response.getEntries().stream().map(PatientTimelineEntryDTO::getType).toList());
+            assertEquals(List.of(20, 30, 10, 40), response.getEntries().stream().map(PatientTimelineEntryDTO::getId).toList());
+            assertEquals(LocalDateTime.of(day, LocalTime.of(9, 0)), response.getEntries().get(2).getDate());
+            assertEquals(AppointmentStatusType.COMPLETED, response.getEntries().get(2).getAppointmentStatus());
+            assertNotNull(response.getNextCursor());
+        });
+
+        // Se pide una fila más de cada tipo para saber si hay otra página
+        verify(reportRepository).findTimelineRows(1, null, null, null, PageRequest.of(0, 5));
+    }
+
+    @Test
+    void C2_getPatientTimeline_should_continue_each_type_from_the_cursor() {
+        // Arrange: la primera página acaba en el informe 20
+        when(reportRepository.findTimelineRows(eq(1), eq(2), eq(null), eq(null), any())).thenReturn(List.of(
+                this.documentRow(20, day.atTime(9, 30))
+        ));
+        when(prescriptionRepository.findTimelineRows(eq(1), eq(2), eq(null), eq(null), any())).thenReturn(List.of(
+                this.documentRow(30, day.atTime(9, 30))
+        ));
+        PatientTimelineResponse firstPage = patientTimelineService.getPatientTimeline(1, 2, PatientTimelineRequest.builder().limit(1).build());
+
+        // Act
+        PatientTimelineResponse result = assertDoesNotThrow(() -> patientTimelineService.getPatientTimeline(1, 2, PatientTimelineRequest.builder().limit(1).cursor(firstPage.getNextCursor()).build()));
+
+        // Assert: con la misma fecha, las citas van antes que los informes y las recetas y pruebas después
+        assertNotNull(result);
+        verify(appointmentRepository).findTimelineRows(1, 2, day, LocalTime.of(9, 30), Integer.MIN_VALUE, PageRequest.of(0, 2));
+        verify(reportRepository).findTimelineRows(1, 2, day.atTime(9, 30), 20, PageRequest.of(0, 2));
+        verify(prescriptionRepository).findTimelineRows(1, 2, day.atTime(9, 30), Integer.MAX_VALUE, PageRequest.of(0, 2));
+        verify(medicalTestRepository).findTimelineRows(1, 2, day.atTime(9, 30), Integer.MAX_VALUE, PageRequest.of(0, 2));
+    }
+
+    @Test
+    void C3_getPatientTimeline_should_throw_exception_when_patient_does_not_exist() {
+        // Arrange
+        when(userRepository.existsById(99)).thenReturn(false);
+
+        // Act
+        DataNotFoundException exception = assertThrows(DataNotFoundException.class, () -> patientTimelineService.getPatientTimeline(99, null, new PatientTimelineRequest()));
+
+        // Assert
+        assertEquals("data_not_found.user", exception.getCode());
+        verify(appointmentRepository, never()).findTimelineRows(any(), any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void C4_getPatientTimeline_should_throw_exception_when_cursor_is_not_valid() {
+        // Act
+        BadRequestException exception = assertThrows(BadRequestException.class, () -> patientTimelineService.getPatientTimeline(1, null, PatientTimelineRequest.builder().cursor("not-a-cursor").build()));
+
+        // Assert
+        assertEquals("bad_request.invalid_cursor", exception.getCode());
+    }
+
+    private TimelineAppointmentRowDTO appointmentRow(Integer id, LocalDate date, LocalTime startTime) {
+        return new TimelineAppointmentRowDTO(id, date, startTime, AppointmentType.IN_PERSON, AppointmentStatusType.COMPLETED, "Revisión",
+                2, "Doctor", "Test", 3, "Cardiología");
+    }
+
+    private TimelineDocumentRowDTO documentRow(Integer id, LocalDateTime createdAt) {
+        return new TimelineDocumentRowDTO(id, createdAt, "Resumen", null, 2, "Doctor", "Test", 3, "Cardiología");
+    }
+}
@@ -1,15 +1,16 @@
 package com.kikisito.salus.api.service;
 
+import com.kikisito.salus.api.cache.AccessDecisionCache;
 import com.kikisito.salus.api.dto.PrescriptionDTO;
 import com.kikisito.salus.api.dto.request.MedicationRequest;
 import com.kikisito.salus.api.dto.request.PrescriptionRequest;
 import com.kikisito.salus.api.entity.*;
 import com.kikisito.salus.api.exception.DataNotFoundException;
+import com.kikisito.salus.api.mapper.DtoMapper;
 import com.kikisito.salus.api.repository.*;
 import com.kikisito.salus.api.type.RoleType;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
@@ -52,11 +53,14 @@ public class PrescriptionServiceTest {
     private MedicalCenterRepository medicalCenterRepository;
 
     @Autowired
-    private ModelMapper modelMapper;
+    private DtoMapper dtoMapper;
 
     @Autowired
     private PrescriptionService prescriptionService;
 
+    @Autowired
+    private AccessDecisionCache accessDecisionCache;
+
     private UserEntity testPatient;
     private MedicalProfileEntity testDoctor;
     private SpecialtyEntity testSpecialty;
@@ -68,6 +72,9 @@ public class PrescriptionServiceTest {
 
     @BeforeEach
     void setUp() {
+        // Las decisiones de acceso se guardan entre pruebas porque el contexto es el mismo
+        accessDecisionCache.invalidateAll();
+
         // Paciente de prueba
         testPatient = UserEntity.builder()
                 .id(1)
@@ -166,7 +173,7 @@ public class PrescriptionServiceTest {
         // Asignamos la receta a la medicación
         testMedication.setPrescription(testPrescription);
 
-        testPrescriptionDTO = modelMapper.map(testPrescription, PrescriptionDTO.class);
+        testPrescriptionDTO = dtoMapper.toPrescriptionDTO(testPrescription);
 
         // PrescriptionRequest de prueba
         MedicationRequest medicationRequest = MedicationRequest.builder()
@@ -344,8 +351,7 @@ public class PrescriptionServiceTest {
     @Test
     void C6_canProfessionalAccessPrescription_should_return_true_when_prescription_is_associated_to_doctor() {
         // Arrange
-        when(prescriptionRepository.findById(1)).thenReturn(Optional.of(testPrescription));
-        when(medicalProfileRepository.findById(1)).thenReturn(Optional.of(testDoctor));
+        when(prescriptionRepository.canDoctorAccessPrescription(1, 1)).thenReturn(true);
 
         // Act
         boolean result = assertDoesNotThrow(() -> prescriptionService.canProfessionalAccessPrescription(1, 1));
@@ -353,22 +359,15 @@ public class PrescriptionServiceTest {
         // Assert
         assertTrue(result);
 
-        verify(prescriptionRepository).findById(1);
-        verify(medicalProfileRepository).findById(1);
+        verify(prescriptionRepository).canDoctorAccessPrescription(1, 1);
+        verify(prescriptionRepository, never()).findById(any());
     }
 
     @Test
     void C7_canProfessionalAccessPrescription_should_return_false_when_prescription_is_not_associated_to_doctor() {
         // Arrange
-        MedicalProfileEntity otherDoctor = MedicalProfileEntity.builder()
-                .id(2)
-                .user(UserEntity.builder().id(3).build())
-                .license("COLEG-TEST-2")
-                .specialties(new ArrayList<>())
-                .build();
-
-        when(prescriptionRepository.findById(1)).thenReturn(Optional.of(testPrescription));
-        when(medicalProfileRepository.findById(2)).thenReturn(Optional.of(otherDoctor));
+        when(prescriptionRepository.canDoctorAccessPrescription(1, 2)).thenReturn(false);
+        when(prescriptionRepository.existsById(1)).thenReturn(true);
 
         // Act
         boolean result = assertDoesNotThrow(() -> prescriptionService.canProfessionalAccessPrescription(1, 2));
@@ -376,8 +375,8 @@ public class PrescriptionServiceTest {
         // Assert
         assertFalse(result);
 
-        verify(prescriptionRepository).findById(1);
-        verify(medicalProfileRepository).findById(2);
+        verify(prescriptionRepository).canDoctorAccessPrescription(1, 2);
+        verify(prescriptionRepository).existsById(1);
     }
 
     @Test
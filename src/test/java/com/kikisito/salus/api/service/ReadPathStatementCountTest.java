@@ -0,0 +1,520 @@
+package com.kikisito.salus.api.service;
+
+import com.kikisito.salus.api.cache.DoctorAgendaCache;
+import com.kikisito.salus.api.dto.AppointmentDTO;
+import com.kikisito.salus.api.dto.AppointmentSlotDTO;
+import com.kikisito.salus.api.dto.DoctorAgendaDTO;
+import com.kikisito.salus.api.entity.*;
+import com.kikisito.salus.api.repository.*;
+import com.kikisito.salus.api.type.AppointmentStatusType;
+import com.kikisito.salus.api.type.MessageSenderType;
+import com.kikisito.salus.api.type.RoleType;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Cuenta las sentencias SQL de cada lectura contra la base de datos de pruebas. Cada lectura se ejecuta con una fila y
+// con varias: si el número de sentencias cambia, alguna asociación se está cargando fila a fila
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "application.appointment-slots.materializer-cron=-",
+        "application.appointment-slots.availability-calendar-reconcile-cron=-",
+        "application.appointment-slots.slot-hold-purge-cron=-",
+        "application.appointment-slots.generation-job-resume-cron=-",
+        "application.appointment-slots.waitlist-offer-expiry-cron=-",
+        "application.appointment-slots.cancellation-notice-retry-cron=-"
+})
+public class ReadPathStatementCountTest {
+    private static final int ROWS = 3;
+    private static final AtomicInteger SEQUENCE = new AtomicInteger();
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private SpecialtyRepository specialtyRepository;
+
+    @Autowired
+    private MedicalCenterRepository medicalCenterRepository;
+
+    @Autowired
+    private RoomRepository roomRepository;
+
+    @Autowired
+    private MedicalProfileRepository medicalProfileRepository;
+
+    @Autowired
+    private AppointmentSlotRepository appointmentSlotRepository;
+
+    @Autowired
+    private AppointmentRepository appointmentRepository;
+
+    @Autowired
+    private ReportRepository reportRepository;
+
+    @Autowired
+    private PrescriptionRepository prescriptionRepository;
+
+    @Autowired
+    private MedicalTestRepository medicalTestRepository;
+
+    @Autowired
+    private ChatRepository chatRepository;
+
+    @Autowired
+    private ChatMessageRepository chatMessageRepository;
+
+    @Autowired
+    private AppointmentService appointmentService;
+
+    @Autowired
+    private AppointmentSlotService appointmentSlotService;
+
+    @Autowired
+    private ReportService reportService;
+
+    @Autowired
+    private PrescriptionService prescriptionService;
+
+    @Autowired
+    private MedicalTestService medicalTestService;
+
+    @Autowired
+    private ChatService chatService;
+
+    @Autowired
+    private DoctorAgendaCache doctorAgendaCache;
+
+    @Test
+    void C1_getUserAppointments_should_not_depend_on_the_number_of_appointments() {
+        // Arrange
+        PatientHistory one = this.patientHistory(1);
+        PatientHistory many = this.patientHistory(ROWS);
+
+        // Act
+        long oneCount = this.countStatements(() -> assertEquals(1, appointmentService.getUserAppointments(one.patientId()).size()));
+        long manyCount = this.countStatements(() -> assertEquals(ROWS, appointmentService.getUserAppointments(many.patientId()).size()));
+
+        // Assert
+        assertEquals(oneCount, manyCount);
+    }
+
+    @Test
+    void C2_getPatientAppointmentsWithDoctorOrItsSpecialties_should_not_depend_on_the_number_of_appointments() {
+        // Arrange
+        PatientHistory one = this.patientHistory(1);
+        PatientHistory many = this.patientHistory(ROWS);
+
+        // Act
+        long oneCount = this.countStatements(() -> assertEquals(1, appointmentService.getPatientAppointmentsWithDoctorOrItsSpecialties(one.patientId(), one.doctorId()).size()));
+        long manyCount = this.countStatements(() -> assertEquals(ROWS, appointmentService.getPatientAppointmentsWithDoctorOrItsSpecialties(many.patientId(), many.doctorId()).size()));
+
+        // Assert
+        assertEquals(oneCount, manyCount);
+    }
+
+    @Test
+    void C3_getPatientReportsWithDoctorOrItsSpecialties_should_not_depend_on_the_number_of_reports() {
+        // Arrange
+        PatientHistory one = this.patientHistory(1);
+        PatientHistory many = this.patientHistory(ROWS);
+
+        // Act
+        long oneCount = this.countStatements(() -> assertEquals(1, reportService.getPatientReportsWithDoctorOrItsSpecialties(one.patientId(), one.doctorId()).size()));
+        long manyCount = this.countStatements(() -> assertEquals(ROWS, reportService.getPatientReportsWithDoctorOrItsSpecialties(many.patientId(), many.doctorId()).size()));
+
+        // Assert
+        assertEquals(oneCount, manyCount);
+    }
+
+    @Test
+    void C4_getPatientPrescriptionsWithDoctorOrItsSpecialties_should_not_depend_on_the_number_of_prescriptions() {
+        // Arrange
+        PatientHistory one = this.patientHistory(1);
+        PatientHistory many = this.patientHistory(ROWS);
+
+        // Act
+        long oneCount = this.countStatements(() -> assertEquals(1, prescriptionService.getPatientPrescriptionsWithDoctorOrItsSpecialties(one.patientId(), one.doctorId()).size()));
+        long manyCount = this.countStatements(() -> assertEquals(ROWS, prescriptionService.getPatientPrescriptionsWithDoctorOrItsSpecialties(many.patientId(), many.doctorId()).size()));
+
+        // Assert
+        assertEquals(oneCount, manyCount);
+    }
+
+    @Test
+    void C5_getPatientMedicalTestsWithDoctorOrItsSpecialties_should_not_depend_on_the_number_of_medical_tests() {
+        // Arrange
+        PatientHistory one = this.patientHistory(1);
+        PatientHistory many = this.patientHistory(ROWS);
+
+        // Act
+        long oneCount = this.countStatements(() -> assertEquals(1, medicalTestService.getPatientMedicalTestsWithDoctorOrItsSpecialties(one.patientId(), one.doctorId()).size()));
+        long manyCount = this.countStatements(() -> assertEquals(ROWS, medicalTestService.getPatientMedicalTestsWithDoctorOrItsSpecialties(many.patientId(), many.doctorId()).size()));
+
+        // Assert
+        assertEquals(oneCount, manyCount);
+    }
+
+    @Test
+    void C6_getPatientChats_should_not_depend_on_the_number_of_chats() {
+        // Arrange
+        PatientHistory one = this.patientHistory(1);
+        PatientHistory many = this.patientHistory(ROWS);
+
+        // Act
+        long oneCount = this.countStatements(() -> assertEquals(1, chatService.getPatientChats(one.patientId()).size()));
+        long manyCount = this.countStatements(() -> assertEquals(ROWS, chatService.getPatientChats(many.patientId()).size()));
+
+        // Assert
+        assertEquals(oneCount, manyCount);
+    }
+
+    @Test
+    void C7_getDoctorChats_should_not_depend_on_the_number_of_chats() {
+        // Arrange
+        Integer oneDoctorId = this.doctorInbox(1);
+        Integer manyDoctorId = this.doctorInbox(ROWS);
+
+        // Act
+        long oneCount = this.countStatements(() -> assertEquals(1, chatService.getDoctorChats(oneDoctorId).size()));
+        long manyCount = this.countStatements(() -> assertEquals(ROWS, chatService.getDoctorChats(manyDoctorId).size()));
+
+        // Assert
+        assertEquals(oneCount, manyCount);
+    }
+
+    @Test
+    void C8_getDoctorAgenda_should_not_depend_on_the_number_of_patients() {
+        // Arrange
+        DoctorDay one = this.doctorDay(1);
+        DoctorDay many = this.doctorDay(ROWS);
+
+        // Act: la agenda se invalida antes de cada lectura para contar las consultas y no la caché
+        long oneCount = this.countStatements(() -> {
+            doctorAgendaCache.invalidateAll();
+            DoctorAgendaDTO agenda = appointmentService.getDoctorAgenda(one.doctorId(), one.date());
+            assertEquals(1, agenda.getAppointments().size());
+        });
+        long manyCount = this.countStatements(() -> {
+            doctorAgendaCache.invalidateAll();
+            DoctorAgendaDTO agenda = appointmentService.getDoctorAgenda(many.doctorId(), many.date());
+            assertAll(() -> {
+                assertEquals(ROWS, agenda.getAppointments().size());
+                agenda.getAppointments().forEach(appointment -> {
+                    assertEquals(1, appointment.getPriorVisits());
+                    assertEquals(1, appointment.getPendingMedicalTests().size());
+                    assertEquals(1, appointment.getActiveMedications().size());
+                });
+            });
+        });
+
+        // Assert
+        assertEquals(oneCount, manyCount);
+    }
+
+    @Test
+    void C9_streamAllDoctorAppointmentsByDate_should_not_depend_on_the_number_of_appointments() {
+        // Arrange
+        DoctorDay one = this.doctorDay(1);
+        DoctorDay many = this.doctorDay(ROWS);
+
+        // Act
+        long oneCount = this.countStatements(() -> {
+            List<AppointmentDTO> appointments = new ArrayList<>();
+            appointmentService.streamAllDoctorAppointmentsByDate(one.doctorId(), one.date(), appointments::add);
+            assertEquals(1, appointments.size());
+        });
+        long manyCount = this.countStatements(() -> {
+            List<AppointmentDTO> appointments = new ArrayList<>();
+            appointmentService.streamAllDoctorAppointmentsByDate(many.doctorId(), many.date(), appointments::add);
+            assertAll(() -> {
+                assertEquals(ROWS, appointments.size());
+                assertTrue(appointments.stream().allMatch(appointment -> appointment.getPatient() != null && appointment.getSlot().getRoom().getMedicalCenter() != null));
+            });
+        });
+
+        // Assert
+        assertEquals(oneCount, manyCount);
+    }
+
+    @Test
+    void C10_streamAppointmentSlotsByDoctorAndDate_should_not_depend_on_the_number_of_slots() {
+        // Arrange
+        DoctorDay one = this.doctorDay(1);
+        DoctorDay many = this.doctorDay(ROWS);
+
+        // Act
+        long oneCount = this.countStatements(() -> {
+            List<AppointmentSlotDTO> slots = new ArrayList<>();
+            appointmentSlotService.streamAppointmentSlotsByDoctorAndDate(one.doctorId(), one.date(), slots::add);
+            assertEquals(1, slots.size());
+        });
+        long manyCount = this.countStatements(() -> {
+            List<AppointmentSlotDTO> slots = new ArrayList<>();
+            appointmentSlotService.streamAppointmentSlotsByDoctorAndDate(many.doctorId(), many.date(), slots::add);
+            assertAll(() -> {
+                assertEquals(ROWS, slots.size());
+                assertTrue(slots.stream().allMatch(slot -> slot.getAppointmentId() != null && slot.getDoctor().getUser() != null));
+            });
+        });
+
+        // Assert
+        assertEquals(oneCount, manyCount);
+    }
+
+    // Las estadísticas son de toda la aplicación, así que se toma la menor de varias ejecuciones para no contar
+    // sentencias de otros hilos. Cada ejecución abre su propia transacción y no reutiliza entidades ya cargadas
+    private long countStatements(Runnable readPath) {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+
+        long count = Long.MAX_VALUE;
+        for(int i = 0; i < 3; i++) {
+            statistics.clear();
+            readPath.run();
+            count = Math.min(count, statistics.getPrepareStatementCount());
+        }
+        return count;
+    }
+
+    // Un paciente con tantas citas como se indique, cada una con un médico distinto de la misma especialidad.
+    // Cada cita tiene un informe, una receta con un medicamento y una prueba, y cada médico un chat con el paciente
+    private PatientHistory patientHistory(int rows) {
+        int n = SEQUENCE.incrementAndGet();
+
+        UserEntity patient = userRepository.save(this.user("paciente" + n));
+        SpecialtyEntity specialty = specialtyRepository.save(SpecialtyEntity.builder().name("Especialidad " + n).description("Especialidad de pruebas").build());
+        RoomEntity room = this.room(n);
+
+        Integer firstDoctorId = null;
+        for(int i = 0; i < rows; i++) {
+            MedicalProfileEntity doctor = this.doctor(n + "-" + i, specialty);
+            if(firstDoctorId == null) {
+                firstDoctorId = doctor.getId();
+            }
+
+            AppointmentSlotEntity slot = appointmentSlotRepository.save(AppointmentSlotEntity.builder()
+                    .doctor(doctor)
+                    .specialty(specialty)
+                    .room(room)
+                    .date(LocalDate.now().plusDays(7))
+                    .startTime(LocalTime.of(9 + i, 0))
+                    .endTime(LocalTime.of(9 + i, 30))
+                    .build());
+
+            AppointmentEntity appointment = appointmentRepository.save(AppointmentEntity.builder()
+                    .slot(slot)
+                    .patient(patient)
+                    .createdBy(patient)
+                    .lastModifiedBy(patient)
+                    .reason("Revisión")
+                    .build());
+
+            reportRepository.save(ReportEntity.builder()
+                    .appointment(appointment)
+                    .specialty(specialty)
+                    .doctor(doctor)
+                    .patient(patient)
+                    .createdBy(doctor.getUser())
+                    .lastModifiedBy(doctor.getUser())
+                    .description("Revisión")
+                    .diagnosis("Sin hallazgos")
+                    .build());
+
+            PrescriptionEntity prescription = PrescriptionEntity.builder()
+                    .appointment(appointment)
+                    .specialty(specialty)
+                    .doctor(doctor)
+                    .patient(patient)
+                    .createdBy(doctor.getUser())
+                    .lastModifiedBy(doctor.getUser())
+                    .build();
+            prescription.setMedications(new ArrayList<>(List.of(MedicationEntity.builder()
+                    .prescription(prescription)
+                    .name("Paracetamol")
+                    .dosage("1g")
+                    .frequency(new BigDecimal("8"))
+                    .startDate(LocalDate.now())
+                    .endDate(LocalDate.now().plusDays(5))
+                    .build())));
+            prescriptionRepository.save(prescription);
+
+            medicalTestRepository.save(MedicalTestEntity.builder()
+                    .appointment(appointment)
+                    .specialty(specialty)
+                    .doctor(doctor)
+                    .patient(patient)
+                    .createdBy(doctor.getUser())
+                    .lastModifiedBy(doctor.getUser())
+                    .name("Analítica")
+                    .description("Analítica general")
+                    .build());
+
+            this.chat(patient, doctor);
+        }
+
+        return new PatientHistory(patient.getId(), firstDoctorId);
+    }
+
+    // Un médico con tantas citas en el mismo día como se indique, cada una con un paciente distinto. Cada paciente
+    // tiene una visita atendida anterior, una prueba pendiente y una receta con un medicamento en curso
+    private DoctorDay doctorDay(int rows) {
+        int n = SEQUENCE.incrementAndGet();
+
+        SpecialtyEntity specialty = specialtyRepository.save(SpecialtyEntity.builder().name("Especialidad " + n).description("Especialidad de pruebas").build());
+        MedicalProfileEntity doctor = this.doctor(String.valueOf(n), specialty);
+        RoomEntity room = this.room(n);
+        LocalDate date = LocalDate.now().plusDays(7);
+
+        for(int i = 0; i < rows; i++) {
+            UserEntity patient = userRepository.save(this.user("paciente" + n + "-" + i));
+
+            for(LocalDate slotDate : List.of(LocalDate.now().minusDays(30), date)) {
+                AppointmentSlotEntity slot = appointmentSlotRepository.save(AppointmentSlotEntity.builder()
+                        .doctor(doctor)
+                        .specialty(specialty)
+                        .room(room)
+                        .date(slotDate)
+                        .startTime(LocalTime.of(9 + i, 0))
+                        .endTime(LocalTime.of(9 + i, 30))
+                        .build());
+
+                appointmentRepository.save(AppointmentEntity.builder()
+                        .slot(slot)
+                        .patient(patient)
+                        .createdBy(patient)
+                        .lastModifiedBy(patient)
+                        .status(slotDate.isBefore(date) ? AppointmentStatusType.COMPLETED : AppointmentStatusType.PENDING)
+                        .reason("Revisión")
+                        .build());
+            }
+
+            PrescriptionEntity prescription = PrescriptionEntity.builder()
+                    .specialty(specialty)
+                    .doctor(doctor)
+                    .patient(patient)
+                    .createdBy(doctor.getUser())
+                    .lastModifiedBy(doctor.getUser())
+                    .build();
+            prescription.setMedications(new ArrayList<>(List.of(MedicationEntity.builder()
+                    .prescription(prescription)
+                    .name("Ibuprofeno")
+                    .dosage("600mg")
+                    .frequency(new BigDecimal("8"))
+                    .startDate(LocalDate.now())
+                    .endDate(date.plusDays(3))
+                    .build())));
+            prescriptionRepository.save(prescription);
+
+            medicalTestRepository.save(MedicalTestEntity.builder()
+                    .specialty(specialty)
+                    .doctor(doctor)
+                    .patient(patient)
+                    .createdBy(doctor.getUser())
+                    .lastModifiedBy(doctor.getUser())
+                    .name("Radiografía")
+                    .description("Radiografía de tórax")
+                    .requestedAt(LocalDate.now())
+                    .build());
+        }
+
+        return new DoctorDay(doctor.getId(), date);
+    }
+
+    // Un médico con tantos chats como se indique, cada uno con un paciente distinto
+    private Integer doctorInbox(int rows) {
+        int n = SEQUENCE.incrementAndGet();
+
+        SpecialtyEntity specialty = specialtyRepository.save(SpecialtyEntity.builder().name("Especialidad " + n).description("Especialidad de pruebas").build());
+        MedicalProfileEntity doctor = this.doctor(String.valueOf(n), specialty);
+
+        for(int i = 0; i < rows; i++) {
+            UserEntity patient = userRepository.save(this.user("paciente" + n + "-" + i));
+            this.chat(patient, doctor);
+        }
+
+        return doctor.getId();
+    }
+
+    private UserEntity user(String name) {
+        return UserEntity.builder()
+                .nombre(name)
+                .apellidos("Pruebas")
+                .email(name + "@salus.test")
+                .nif(name.toUpperCase())
+                .password("password")
+                .rolesList(new ArrayList<>(List.of(RoleType.USER)))
+                .build();
+    }
+
+    private MedicalProfileEntity doctor(String name, SpecialtyEntity specialty) {
+        UserEntity user = this.user("medico" + name);
+        user.setRolesList(new ArrayList<>(List.of(RoleType.USER, RoleType.PROFESSIONAL)));
+        user = userRepository.save(user);
+
+        return medicalProfileRepository.save(MedicalProfileEntity.builder()
+                .user(user)
+                .license("COLEG-" + name)
+                .specialties(new ArrayList<>(List.of(specialty)))
+                .build());
+    }
+
+    private RoomEntity room(int n) {
+        MedicalCenterEntity medicalCenter = medicalCenterRepository.save(MedicalCenterEntity.builder()
+                .name("Hospital " + n)
+                .email("hospital" + n + "@salus.test")
+                .phone("600000000")
+                .addressLine1("Calle de Pruebas " + n)
+                .zipCode("03001")
+                .country("España")
+                .province("Alicante")
+                .municipality("Alicante")
+                .locality("Alicante")
+                .build());
+
+        return roomRepository.save(RoomEntity.builder()
+                .name("Consulta " + n)
+                .medicalCenter(medicalCenter)
+                .build());
+    }
+
+    private void chat(UserEntity patient, MedicalProfileEntity doctor) {
+        ChatEntity chat = chatRepository.save(ChatEntity.builder()
+                .patient(patient)
+                .doctor(doctor)
+                .build());
+
+        ChatMessagesEntity message = chatMessageRepository.save(ChatMessagesEntity.builder()
+                .chat(chat)
+                .senderType(MessageSenderType.DOCTOR)
+                .content("Hola")
+                .build());
+
+        // Resumen que guarda el envío de un mensaje en la fila del chat
+        chat.setLastMessageId(message.getId());
+        chat.setLastMessageSenderType(message.getSenderType());
+        chat.setLastMessagePreview(message.getContent());
+        chat.setLastMessageAt(message.getCreatedAt());
+        chat.setLastActivityAt(message.getCreatedAt());
+        chat.setPatientUnreadCount(1);
+        chatRepository.save(chat);
+    }
+
+    private record PatientHistory(Integer patientId, Integer doctorId) {}
+
+    private record DoctorDay(Integer doctorId, LocalDate date) {}
+}
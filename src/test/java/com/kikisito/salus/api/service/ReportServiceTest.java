@@ -1,15 +1,16 @@
 package com.kikisito.salus.api.service;
 
+import com.kikisito.salus.api.cache.AccessDecisionCache;
 import com.kikisito.salus.api.dto.ReportDTO;
 import com.kikisito.salus.api.dto.request.ReportRequest;
 import com.kikisito.salus.api.entity.*;
 import com.kikisito.salus.api.type.ReportType;
 import com.kikisito.salus.api.type.RoleType;
 import com.kikisito.salus.api.exception.DataNotFoundException;
+import com.kikisito.salus.api.mapper.DtoMapper;
 import com.kikisito.salus.api.repository.*;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
@@ -48,11 +49,14 @@ public class ReportServiceTest {
     private SpecialtyRepository specialtyRepository;
 
     @Autowired
-    private ModelMapper modelMapper;
+    private DtoMapper dtoMapper;
 
     @Autowired
     private ReportService reportService;
 
+    @Autowired
+    private AccessDecisionCache accessDecisionCache;
+
     private UserEntity testPatient;
     private MedicalProfileEntity testDoctor;
     private SpecialtyEntity testSpecialty;
@@ -63,6 +67,9 @@ public class ReportServiceTest {
 
     @BeforeEach
     void setUp() {
+        // Las decisiones de acceso se guardan entre pruebas porque el contexto es el mismo
+        accessDecisionCache.invalidateAll();
+
         // Paciente de prueba
         testPatient = UserEntity.builder()
                 .id(1)
@@ -153,7 +160,7 @@ public class ReportServiceTest {
                 .lastModifiedBy(testDoctor.getUser())
                 .build();
 
-        testReportDTO = modelMapper.map(testReport, ReportDTO.class);
+        testReportDTO = dtoMapper.toReportDTO(testReport);
 
         // ReportRequest de prueba
         testReportRequest = ReportRequest.builder()
@@ -302,36 +309,30 @@ public class ReportServiceTest {
     @Test
     void C7_canProfessionalAccessReport_should_return_true_when_report_is_associated_to_doctor() {
         // Arrange
-        when(reportRepository.findById(1)).thenReturn(Optional.of(testReport));
-        when(medicalProfileRepository.findById(1)).thenReturn(Optional.of(testDoctor));
+        when(reportRepository.canDoctorAccessReport(1, 1)).thenReturn(true);
 
         // Act
         boolean result = reportService.canProfessionalAccessReport(1, 1);
 
         // Assert
         assertTrue(result);
-        verify(reportRepository).findById(1);
-        verify(medicalProfileRepository).findById(1);
+        verify(reportRepository).canDoctorAccessReport(1, 1);
+        verify(reportRepository, never()).findById(any());
     }
 
     @Test
     void C8_canProfessionalAccessReport_should_return_false_when_report_is_not_associated_to_doctor() {
         // Arrange
-        MedicalProfileEntity medicalProfileEntity = MedicalProfileEntity.builder()
-                .id(3)
-                .specialties(new ArrayList<>())
-                .build();
-
-        when(reportRepository.findById(1)).thenReturn(Optional.of(testReport));
-        when(medicalProfileRepository.findById(1)).thenReturn(Optional.of(medicalProfileEntity));
+        when(reportRepository.canDoctorAccessReport(1, 3)).thenReturn(false);
+        when(reportRepository.existsById(1)).thenReturn(true);
 
         // Act
-        boolean result = reportService.canProfessionalAccessReport(1, 1);
+        boolean result = reportService.canProfessionalAccessReport(1, 3);
 
         // Assert
         assertFalse(result);
-        verify(reportRepository).findById(1);
-        verify(medicalProfileRepository).findById(1);
+        verify(reportRepository).canDoctorAccessReport(1, 3);
+        verify(reportRepository).existsById(1);
     }
 
     @Test
@@ -405,4 +406,39 @@ public class ReportServiceTest {
 
         verify(reportRepository).findById(1);
     }
+
+    @Test
+    void C12_canProfessionalAccessReport_should_reuse_the_decision_until_the_report_is_deleted() {
+        // Arrange
+        when(reportRepository.canDoctorAccessReport(1, 1)).thenReturn(true);
+        when(reportRepository.findById(1)).thenReturn(Optional.of(testReport));
+
+        // Act
+        boolean first = reportService.canProfessionalAccessReport(1, 1);
+        boolean second = reportService.canProfessionalAccessReport(1, 1);
+        assertDoesNotThrow(() -> reportService.deleteReport(1));
+        boolean afterDelete = reportService.canProfessionalAccessReport(1, 1);
+
+        // Assert
+        assertAll(() -> {
+            assertTrue(first);
+            assertTrue(second);
+            assertTrue(afterDelete);
+        });
+        verify(reportRepository, times(2)).canDoctorAccessReport(1, 1);
+    }
+
+    @Test
+    void C13_canProfessionalAccessReport_should_throw_exception_when_report_does_not_exist() {
+        // Arrange
+        when(reportRepository.canDoctorAccessReport(2, 1)).thenReturn(false);
+        when(reportRepository.existsById(2)).thenReturn(false);
+
+        // Act
+        DataNotFoundException exception = assertThrows(DataNotFoundException.class, () -> reportService.canProfessionalAccessReport(2, 1));
+
+        // Assert
+        assertEquals("data_not_found.report", exception.getCode());
+        verify(reportRepository).existsById(2);
+    }
 }
\ No newline at end of file
@@ -6,11 +6,11 @@ import com.kikisito.salus.api.dto.response.RoomsListResponse;
 import com.kikisito.salus.api.entity.MedicalCenterEntity;
 import com.kikisito.salus.api.entity.RoomEntity;
 import com.kikisito.salus.api.exception.DataNotFoundException;
+import com.kikisito.salus.api.mapper.DtoMapper;
 import com.kikisito.salus.api.repository.MedicalCenterRepository;
 import com.kikisito.salus.api.repository.RoomRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.data.domain.Page;
@@ -34,7 +34,7 @@ public class RoomServiceTest {
     private MedicalCenterRepository medicalCenterRepository;
 
     @Autowired
-    private ModelMapper modelMapper;
+    private DtoMapper dtoMapper;
 
     @Autowired
     private RoomService roomService;
@@ -65,7 +65,7 @@ public class RoomServiceTest {
                 .name("Consulta 1")
                 .medicalCenter(testMedicalCenter)
                 .build();
-        testRoomDTO = modelMapper.map(testRoom, RoomDTO.class);
+        testRoomDTO = dtoMapper.toRoomDTO(testRoom);
         testPagedRooms = new PageImpl<>(Collections.singletonList(testRoom));
     }
 
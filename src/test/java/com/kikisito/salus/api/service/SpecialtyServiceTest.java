@@ -5,10 +5,10 @@ import com.kikisito.salus.api.dto.request.AddSpecialtyRequest;
 import com.kikisito.salus.api.dto.response.SpecialtiesListResponse;
 import com.kikisito.salus.api.entity.SpecialtyEntity;
 import com.kikisito.salus.api.exception.DataNotFoundException;
+import com.kikisito.salus.api.mapper.DtoMapper;
 import com.kikisito.salus.api.repository.SpecialtyRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.data.domain.Page;
@@ -29,7 +29,7 @@ public class SpecialtyServiceTest {
     private SpecialtyRepository specialtyRepository;
 
     @Autowired
-    private ModelMapper modelMapper;
+    private DtoMapper dtoMapper;
 
     @Autowired
     private SpecialtyService specialtyService;
@@ -46,7 +46,7 @@ public class SpecialtyServiceTest {
                 .description("Un poco de todo")
                 .build();
 
-        testSpecialtyDTO = modelMapper.map(testSpecialty, SpecialtyDTO.class);
+        testSpecialtyDTO = dtoMapper.toSpecialtyDTO(testSpecialty);
         testPagedSpecialties = new PageImpl<>(Collections.singletonList(testSpecialty));
     }
 
@@ -11,13 +11,14 @@ import com.kikisito.salus.api.entity.PasswordResetEntity;
 import com.kikisito.salus.api.entity.UserEntity;
 import com.kikisito.salus.api.exception.ConflictException;
 import com.kikisito.salus.api.exception.DataNotFoundException;
+import com.kikisito.salus.api.mapper.DtoMapper;
+import com.kikisito.salus.api.mapper.RequestMapper;
 import com.kikisito.salus.api.repository.MedicalProfileRepository;
 import com.kikisito.salus.api.repository.UserRepository;
 import com.kikisito.salus.api.type.AccountStatusType;
 import com.kikisito.salus.api.type.RoleType;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.data.domain.Page;
@@ -52,7 +53,10 @@ public class UserServiceTest {
     private EmailingService emailingService;
 
     @Autowired
-    private ModelMapper modelMapper;
+    private DtoMapper dtoMapper;
+
+    @Autowired
+    private RequestMapper requestMapper;
 
     @MockitoBean
     private PasswordEncoder passwordEncoder;
@@ -77,7 +81,7 @@ public class UserServiceTest {
                 .municipio("Alicante")
                 .localidad("Alicante")
                 .build();
-        DireccionDTO testDireccionDTO = modelMapper.map(testDireccion, DireccionDTO.class);
+        DireccionDTO testDireccionDTO = dtoMapper.toDireccionDTO(testDireccion);
 
         testUser = UserEntity.builder()
                 .id(1)
@@ -94,7 +98,7 @@ public class UserServiceTest {
                 .loginAttempts(0)
                 .password("password")
                 .build();
-        testUserDTO = modelMapper.map(testUser, UserDTO.class);
+        testUserDTO = dtoMapper.toUserDTO(testUser);
         testUserDTO.setDireccion(testDireccionDTO);
 
         testMedicalProfile = MedicalProfileEntity.builder()
@@ -270,7 +274,7 @@ public class UserServiceTest {
                 .nif("12345678A")
                 .telefono("637199234")
                 .fechaNacimiento(LocalDate.of(1997, 6, 12))
-                .direccion(modelMapper.map(updateAddressRequest, DireccionEmbeddable.class))
+                .direccion(requestMapper.toDireccionEmbeddable(updateAddressRequest))
                 .rolesList(new ArrayList<>(List.of(RoleType.USER)))
                 .accountStatusType(AccountStatusType.VERIFIED)
                 .restricted(false)
@@ -0,0 +1,302 @@
+package com.kikisito.salus.api.service;
+
+import com.kikisito.salus.api.dto.WaitlistEntryDTO;
+import com.kikisito.salus.api.dto.WaitlistOfferDTO;
+import com.kikisito.salus.api.dto.request.WaitlistRequest;
+import com.kikisito.salus.api.entity.*;
+import com.kikisito.salus.api.event.AppointmentSlotReleasedEvent;
+import com.kikisito.salus.api.exception.BadRequestException;
+import com.kikisito.salus.api.exception.ConflictException;
+import com.kikisito.salus.api.occupancy.SlotHoldTable;
+import com.kikisito.salus.api.repository.*;
+import com.kikisito.salus.api.type.RoleType;
+import com.kikisito.salus.api.type.WaitlistStatusType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class WaitlistServiceTest {
+
+    @MockitoBean
+    private WaitlistEntryRepository waitlistEntryRepository;
+
+    @MockitoBean
+    private AppointmentSlotRepository appointmentSlotRepository;
+
+    @MockitoBean
+    private AppointmentSlotHoldRepository appointmentSlotHoldRepository;
+
+    @MockitoBean
+    private SpecialtyRepository specialtyRepository;
+
+    @MockitoBean
+    private MedicalCenterRepository medicalCenterRepository;
+
+    @MockitoBean
+    private UserRepository userRepository;
+
+    @MockitoBean
+    private WebSocketService webSocketService;
+
+    @Autowired
+    private WaitlistService waitlistService;
+
+    @Autowired
+    private SlotHoldTable slotHoldTable;
+
+    private UserEntity testPatient;
+    private SpecialtyEntity testSpecialty;
+    private MedicalCenterEntity testMedicalCenter;
+    private AppointmentSlotEntity testAppointmentSlot;
+    private WaitlistEntryEntity testWaitlistEntry;
+
+    @BeforeEach
+    void setUp() {
+        // Se descartan las retenciones de otras pruebas
+        slotHoldTable.evictExpired(LocalDateTime.MAX);
+
+        testPatient = UserEntity.builder()
+                .id(1)
+                .nombre("Juan")
+                .apellidos("García")
+                .email("juang@salus.com")
+                .rolesList(new ArrayList<>(List.of(RoleType.USER)))
+                .build();
+
+        testSpecialty = SpecialtyEntity.builder()
+                .id(1)
+                .name("Medicina General")
+                .build();
+
+        testMedicalCenter = MedicalCenterEntity.builder()
+                .id(1)
+                .name("Hospital de Pruebas")
+                .build();
+
+        MedicalProfileEntity testDoctor = MedicalProfileEntity.builder()
+                .id(1)
+                .user(UserEntity.builder().id(2).build())
+                .license("COLEG-TEST-1")
+                .build();
+
+        testAppointmentSlot = AppointmentSlotEntity.builder()
+                .id(1)
+                .doctor(testDoctor)
+                .specialty(testSpecialty)
+                .room(RoomEntity.builder().id(1).name("Consulta 1").medicalCenter(testMedicalCenter).build())
+                .date(LocalDate.now().plusDays(7))
+                .startTime(LocalTime.of(10, 0))
+                .endTime(LocalTime.of(10, 30))
+                .build();
+
+        testWaitlistEntry = WaitlistEntryEntity.builder()
+                .id(1)
+                .patient(testPatient)
+                .specialty(testSpecialty)
+                .medicalCenter(testMedicalCenter)
+                .startDate(LocalDate.now())
+                .endDate(LocalDate.now().plusDays(14))
+                .build();
+
+        when(userRepository.getReferenceById(1)).thenReturn(testPatient);
+        when(appointmentSlotHoldRepository.findBySlot_Id(any())).thenReturn(Optional.empty());
+    }
+
+    @Test
+    void C1_addToWaitlist_should_return_created_entry() {
+        // Arrange
+        when(specialtyRepository.findById(1)).thenReturn(Optional.of(testSpecialty));
+        when(medicalCenterRepository.findById(1)).thenReturn(Optional.of(testMedicalCenter));
+        when(waitlistEntryRepository.save(any(WaitlistEntryEntity.class))).thenReturn(testWaitlistEntry);
+
+        WaitlistRequest request = WaitlistRequest.builder()
+                .specialty(1)
+                .medicalCenter(1)
+                .startDate(LocalDate.now())
+                .endDate(LocalDate.now().plusDays(14))
+                .build();
+
+        // Act
+        WaitlistEntryDTO result = assertDoesNotThrow(() -> waitlistService.addToWaitlist(request, testPatient));
+
+        // Assert
+        assertAll(() -> {
+            assertEquals(1, result.getId());
+            assertEquals(WaitlistStatusType.WAITING, result.getStatus());
+            assertNull(result.getDoctor());
+        });
+        verify(waitlistEntryRepository).save(any(WaitlistEntryEntity.class));
+    }
+
+    @Test
+    void C2_addToWaitlist_should_throw_exception_when_date_range_is_not_valid() {
+        // Arrange
+        WaitlistRequest request = WaitlistRequest.builder()
+                .specialty(1)
+                .medicalCenter(1)
+                .startDate(LocalDate.now().plusDays(14))
+                .endDate(LocalDate.now())
+                .build();
+
+        // Act
+        BadRequestException exception = assertThrows(BadRequestException.class, () -> waitlistService.addToWaitlist(request, testPatient));
+
+        // Assert
+        assertEquals("bad_request.invalid_date_or_date_range", exception.getCode());
+        verify(waitlistEntryRepository, never()).save(any(WaitlistEntryEntity.class));
+    }
+
+    @Test
+    void C3_onAppointmentSlotReleased_should_hold_slot_for_first_waiting_patient_and_notify_them() {
+        // Arrange
+        when(appointmentSlotRepository.findById(1)).thenReturn(Optional.of(testAppointmentSlot));
+        when(waitlistEntryRepository.findWaitingFor(eq(1), eq(1), eq(1), eq(2), eq(testAppointmentSlot.getDate()), any())).thenReturn(List.of(testWaitlistEntry));
+
+        // Act
+        assertDoesNotThrow(() -> waitlistService.onAppointmentSlotReleased(new AppointmentSlotReleasedEvent(1)));
+
+        // Assert: el hueco queda retenido para el paciente y no para los demás
+        assertAll(() -> {
+            assertEquals(WaitlistStatusType.OFFERED, testWaitlistEntry.getStatus());
+            assertEquals(testAppointmentSlot, testWaitlistEntry.getOfferedSlot());
+            assertTrue(slotHoldTable.isHeldByOther(1, 3));
+            assertFalse(slotHoldTable.isHeldByOther(1, testPatient.getId()));
+        });
+
+        ArgumentCaptor<WaitlistOfferDTO> offer = ArgumentCaptor.forClass(WaitlistOfferDTO.class);
+        verify(webSocketService).sendWaitlistOfferToUser(eq(testPatient), offer.capture());
+        assertEquals(1, offer.getValue().getSlot().getId());
+        assertEquals(1, offer.getValue().getWaitlistEntryId());
+    }
+
+    @Test
+    void C4_onAppointmentSlotReleased_should_do_nothing_when_nobody_is_waiting() {
+        // Arrange
+        when(appointmentSlotRepository.findById(1)).thenReturn(Optional.of(testAppointmentSlot));
+        when(waitlistEntryRepository.findWaitingFor(any(), any(), any(), any(), any(), any())).thenReturn(List.of());
+
+        // Act
+        assertDoesNotThrow(() -> waitlistService.onAppointmentSlotReleased(new AppointmentSlotReleasedEvent(1)));
+
+        // Assert
+        assertFalse(slotHoldTable.isHeld(1));
+        verify(appointmentSlotHoldRepository, never()).saveAndFlush(any());
+        verify(webSocketService, never()).sendWaitlistOfferToUser(any(), any());
+    }
+
+    @Test
+    void C5_onAppointmentSlotReleased_should_offer_slot_to_next_patient_when_hold_conflicts_for_the_first_one() {
+        // Arrange: el primero en espera es el propio médico del hueco, que no lo puede retener
+        WaitlistEntryEntity doctorEntry = WaitlistEntryEntity.builder()
+                .id(2)
+                .patient(testAppointmentSlot.getDoctor().getUser())
+                .specialty(testSpecialty)
+                .medicalCenter(testMedicalCenter)
+                .startDate(LocalDate.now())
+                .endDate(LocalDate.now().plusDays(14))
+                .build();
+        when(userRepository.getReferenceById(2)).thenReturn(testAppointmentSlot.getDoctor().getUser());
+        when(appointmentSlotRepository.findById(1)).thenReturn(Optional.of(testAppointmentSlot));
+        when(waitlistEntryRepository.findWaitingFor(any(), any(), any(), any(), any(), any())).thenReturn(List.of(doctorEntry, testWaitlistEntry));
+
+        // Act
+        assertDoesNotThrow(() -> waitlistService.onAppointmentSlotReleased(new AppointmentSlotReleasedEvent(1)));
+
+        // Assert
+        assertAll(() -> {
+            assertEquals(WaitlistStatusType.WAITING, doctorEntry.getStatus());
+            assertEquals(WaitlistStatusType.OFFERED, testWaitlistEntry.getStatus());
+            assertNotNull(testWaitlistEntry.getOfferExpiresAt());
+            assertFalse(slotHoldTable.isHeldByOther(1, testPatient.getId()));
+        });
+        verify(webSocketService).sendWaitlistOfferToUser(eq(testPatient), any());
+    }
+
+    @Test
+    void C6_expireOffers_should_expire_offer_and_offer_slot_to_next_waiting_patient() {
+        // Arrange: una oferta caducada sin reservar y otro paciente en espera
+        UserEntity nextPatient = UserEntity.builder().id(3).nombre("Ana").rolesList(new ArrayList<>(List.of(RoleType.USER))).build();
+        WaitlistEntryEntity nextEntry = WaitlistEntryEntity.builder()
+                .id(3)
+                .patient(nextPatient)
+                .specialty(testSpecialty)
+                .medicalCenter(testMedicalCenter)
+                .startDate(LocalDate.now())
+                .endDate(LocalDate.now().plusDays(14))
+                .build();
+
+        testWaitlistEntry.setStatus(WaitlistStatusType.OFFERED);
+        testWaitlistEntry.setOfferedSlot(testAppointmentSlot);
+        testWaitlistEntry.setOfferExpiresAt(LocalDateTime.now().minusMinutes(1));
+
+        when(userRepository.getReferenceById(3)).thenReturn(nextPatient);
+        when(waitlistEntryRepository.findExpiredOffers(any())).thenReturn(List.of(testWaitlistEntry));
+        when(waitlistEntryRepository.closeOffer(1, WaitlistStatusType.EXPIRED)).thenReturn(1);
+        when(appointmentSlotRepository.findById(1)).thenReturn(Optional.of(testAppointmentSlot));
+        when(waitlistEntryRepository.findWaitingFor(any(), any(), any(), any(), any(), any())).thenReturn(List.of(nextEntry));
+
+        // Act
+        assertDoesNotThrow(() -> waitlistService.expireOffers());
+
+        // Assert
+        assertAll(() -> {
+            assertEquals(WaitlistStatusType.OFFERED, nextEntry.getStatus());
+            assertEquals(testAppointmentSlot, nextEntry.getOfferedSlot());
+            assertFalse(slotHoldTable.isHeldByOther(1, nextPatient.getId()));
+        });
+        verify(waitlistEntryRepository).closeOffer(1, WaitlistStatusType.EXPIRED);
+        verify(webSocketService).sendWaitlistOfferToUser(eq(nextPatient), any());
+    }
+
+    @Test
+    void C7_expireOffers_should_not_offer_slot_again_when_offer_was_already_closed() {
+        // Arrange: el paciente reservó el hueco justo antes de caducar la oferta
+        testWaitlistEntry.setStatus(WaitlistStatusType.OFFERED);
+        testWaitlistEntry.setOfferedSlot(testAppointmentSlot);
+        testWaitlistEntry.setOfferExpiresAt(LocalDateTime.now().minusMinutes(1));
+
+        when(waitlistEntryRepository.findExpiredOffers(any())).thenReturn(List.of(testWaitlistEntry));
+        when(waitlistEntryRepository.closeOffer(1, WaitlistStatusType.EXPIRED)).thenReturn(0);
+
+        // Act
+        assertDoesNotThrow(() -> waitlistService.expireOffers());
+
+        // Assert
+        verify(waitlistEntryRepository, never()).findWaitingFor(any(), any(), any(), any(), any(), any());
+        verify(webSocketService, never()).sendWaitlistOfferToUser(any(), any());
+    }
+
+    @Test
+    void C8_cancelWaitlistEntry_should_throw_exception_when_entry_is_already_fulfilled() {
+        // Arrange
+        testWaitlistEntry.setStatus(WaitlistStatusType.FULFILLED);
+        testWaitlistEntry.setOfferedSlot(testAppointmentSlot);
+        when(waitlistEntryRepository.findById(1)).thenReturn(Optional.of(testWaitlistEntry));
+
+        // Act
+        ConflictException exception = assertThrows(ConflictException.class, () -> waitlistService.cancelWaitlistEntry(1));
+
+        // Assert
+        assertAll(() -> {
+            assertEquals("conflict.waitlist_entry_is_closed", exception.getCode());
+            assertEquals(WaitlistStatusType.FULFILLED, testWaitlistEntry.getStatus());
+        });
+        verify(waitlistEntryRepository, never()).save(any());
+    }
+}